@@ -22,6 +22,8 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.Platform;
@@ -45,10 +47,8 @@ import com.microsoft.windowsazure.core.OperationStatus;
 import com.microsoft.windowsazure.core.OperationStatusResponse;
 import com.microsoft.windowsazure.management.compute.models.DeploymentGetResponse;
 import com.microsoft.windowsazure.management.compute.models.DeploymentSlot;
-import com.microsoft.windowsazure.management.compute.models.DeploymentStatus;
 import com.microsoft.windowsazure.management.compute.models.HostedServiceCreateParameters;
 import com.microsoft.windowsazure.management.compute.models.HostedServiceListResponse.HostedService;
-import com.microsoft.windowsazure.management.compute.models.RoleInstance;
 import com.microsoft.windowsazure.management.storage.models.StorageAccountCreateParameters;
 import com.microsoftopentechnologies.azurecommons.deploy.DeploymentEventArgs;
 import com.microsoftopentechnologies.azurecommons.deploy.DeploymentManagerUtilMethods;
@@ -56,12 +56,14 @@ import com.microsoftopentechnologies.azurecommons.deploy.model.CertificateUpload
 import com.microsoftopentechnologies.azurecommons.deploy.model.DeployDescriptor;
 import com.microsoftopentechnologies.azurecommons.exception.DeploymentException;
 import com.microsoftopentechnologies.azurecommons.exception.RestAPIException;
-import com.microsoftopentechnologies.azuremanagementutil.model.InstanceStatus;
 import com.microsoftopentechnologies.azuremanagementutil.model.Notifier;
 import com.microsoftopentechnologies.azuremanagementutil.model.StorageService;
+import com.microsoftopentechnologies.azuremanagementutil.rest.DeploymentWatcher;
+import com.microsoftopentechnologies.azuremanagementutil.rest.ManagementClientRegistry;
 import com.microsoftopentechnologies.azuremanagementutil.rest.WindowsAzureRestUtils;
 import com.microsoftopentechnologies.azuremanagementutil.rest.WindowsAzureServiceManagement;
 import com.microsoftopentechnologies.azuremanagementutil.rest.WindowsAzureStorageServices;
+import com.microsoftopentechnologies.azuremanagementutil.task.TaskGraph;
 import com.microsoftopentechnologies.azurecommons.storageregistry.StorageAccount;
 import com.microsoftopentechnologies.azurecommons.storageregistry.StorageAccountRegistry;
 import com.microsoftopentechnologies.wacommon.storageregistry.PreferenceUtilStrg;
@@ -97,20 +99,21 @@ public final class DeploymentManager {
 	public void deploy(IProject selectedProject) throws InterruptedException,
 			DeploymentException {
 
-		DeployDescriptor deploymentDesc = WizardCacheManager
+		final DeployDescriptor deploymentDesc = WizardCacheManager
 				.collectConfiguration();
 
 		String deployState = deploymentDesc.getDeployState();
+		TaskGraph graph = null;
 		try {
 
 			int conditionalProgress = 20;
 
-			HostedService hostedService = deploymentDesc.getHostedService();
+			final HostedService hostedService = deploymentDesc.getHostedService();
 			addDeployment(hostedService.getServiceName(), deploymentDesc);
 
-			StorageService storageAccount = deploymentDesc.getStorageAccount();
+			final StorageService storageAccount = deploymentDesc.getStorageAccount();
 
-			WindowsAzureServiceManagement service = WizardCacheManager
+			final WindowsAzureServiceManagement service = WizardCacheManager
 					.createServiceManagementHelper();
 
 			openWindowsAzureActivityLogView(deploymentDesc);
@@ -122,36 +125,63 @@ public final class DeploymentManager {
 				return;
 			}
 
+			/*
+			 * The steps before the deployment runs as a graph: the package upload, usually the longest
+			 * step, starts as soon as the storage account exists, while the hosted service and its
+			 * certificates are set up and remote desktop is configured in parallel.
+			 */
 			// need to improve this check (maybe hostedSerivce.isExisting())?
-			if (hostedService.getUri() == null
-					|| hostedService.getUri().toString().isEmpty()) { 
-				notifyProgress(deploymentDesc.getDeploymentId(), null, 5,
-						OperationStatus.InProgress, String.format("%s - %s",
-								Messages.createHostedService,
-								hostedService.getServiceName()));
-				createHostedService(hostedService.getServiceName(),
-						hostedService.getServiceName(), hostedService
-								.getProperties().getLocation(), hostedService
-								.getProperties().getDescription());
+			final boolean hostedServiceNeeded = hostedService.getUri() == null
+					|| hostedService.getUri().toString().isEmpty();
+			// same goes here
+			final boolean storageAccountNeeded = storageAccount.getUrl() == null
+					|| storageAccount.getUrl().isEmpty();
+			if (hostedServiceNeeded) {
 				conditionalProgress -= 5;
 			}
-
-			// same goes here
-			if (storageAccount.getUrl() == null
-					|| storageAccount.getUrl().isEmpty()) { 
-				notifyProgress(deploymentDesc.getDeploymentId(), null, 10,
-						OperationStatus.InProgress, String.format("%s - %s",
-								Messages.createStorageAccount,
-								storageAccount.getServiceName()));
-				createStorageAccount(storageAccount.getServiceName(),
-						storageAccount.getServiceName(), storageAccount
-								.getStorageAccountProperties().getLocation(),
-						storageAccount.getStorageAccountProperties()
-								.getDescription());
+			if (storageAccountNeeded) {
 				conditionalProgress -= 10;
 			}
 
-			checkContainerExistance();
+			final Notifier notifier = new NotifierImp();
+			final String targetCspckgName = createCspckTargetName(deploymentDesc);
+			graph = new TaskGraph();
+
+			Future<Void> hostedServiceTask = graph.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					if (hostedServiceNeeded) {
+						notifyProgress(deploymentDesc.getDeploymentId(), null, 5,
+								OperationStatus.InProgress, String.format("%s - %s",
+										Messages.createHostedService,
+										hostedService.getServiceName()));
+						createHostedService(hostedService.getServiceName(),
+								hostedService.getServiceName(), hostedService
+										.getProperties().getLocation(), hostedService
+										.getProperties().getDescription());
+					}
+					return null;
+				}
+			});
+
+			Future<Void> storageAccountTask = graph.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					if (storageAccountNeeded) {
+						notifyProgress(deploymentDesc.getDeploymentId(), null, 10,
+								OperationStatus.InProgress, String.format("%s - %s",
+										Messages.createStorageAccount,
+										storageAccount.getServiceName()));
+						createStorageAccount(storageAccount.getServiceName(),
+								storageAccount.getServiceName(), storageAccount
+										.getStorageAccountProperties().getLocation(),
+								storageAccount.getStorageAccountProperties()
+										.getDescription());
+					}
+					checkContainerExistance();
+					return null;
+				}
+			});
 
 			// upload certificates
 			if (deploymentDesc.getCertList() != null) {
@@ -159,47 +189,59 @@ public final class DeploymentManager {
 						.getList();
 				if (certList != null && certList.size() > 0) {
 					for (int i = 0; i < certList.size(); i++) {
-						CertificateUpload cert = certList.get(i);
-						DeploymentManagerUtilMethods
-								.uploadCertificateIfNeededGeneric(service,
-										deploymentDesc, cert.getPfxPath(),
-										cert.getPfxPwd());
-						notifyProgress(deploymentDesc.getDeploymentId(), null,
-								0, OperationStatus.InProgress, String.format(
-										"%s%s", Messages.deplUploadCert,
-										cert.getName()));
+						final CertificateUpload cert = certList.get(i);
+						graph.submit(new Callable<Void>() {
+							@Override
+							public Void call() throws Exception {
+								DeploymentManagerUtilMethods
+										.uploadCertificateIfNeededGeneric(service,
+												deploymentDesc, cert.getPfxPath(),
+												cert.getPfxPwd());
+								notifyProgress(deploymentDesc.getDeploymentId(), null,
+										0, OperationStatus.InProgress, String.format(
+												"%s%s", Messages.deplUploadCert,
+												cert.getName()));
+								return null;
+							}
+						}, hostedServiceTask);
 					}
 				}
 			}
 
-			if (deploymentDesc.getRemoteDesktopDescriptor().isEnabled()) {
-
-				notifyProgress(deploymentDesc.getDeploymentId(), null,
-						conditionalProgress, OperationStatus.InProgress,
-						Messages.deplConfigRdp);
-				DeploymentManagerUtilMethods.configureRemoteDesktop(
-						deploymentDesc,
-						WizardCacheManager.getCurrentDeployConfigFile(),
-						PluginUtil.getEncPath());
-			} else {
-				notifyProgress(deploymentDesc.getDeploymentId(), null,
-						conditionalProgress, OperationStatus.InProgress,
-						Messages.deplConfigRdp);
-			}
-
-			Notifier notifier = new NotifierImp();
-
-			String targetCspckgName = createCspckTargetName(deploymentDesc);
-
-			notifyProgress(deploymentDesc.getDeploymentId(), null, 20,
-					OperationStatus.InProgress,
-					Messages.uploadingServicePackage);
+			final int rdpProgress = conditionalProgress;
+			graph.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					notifyProgress(deploymentDesc.getDeploymentId(), null,
+							rdpProgress, OperationStatus.InProgress,
+							Messages.deplConfigRdp);
+					if (deploymentDesc.getRemoteDesktopDescriptor().isEnabled()) {
+						DeploymentManagerUtilMethods.configureRemoteDesktop(
+								deploymentDesc,
+								WizardCacheManager.getCurrentDeployConfigFile(),
+								PluginUtil.getEncPath());
+					}
+					return null;
+				}
+			});
+
+			graph.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					notifyProgress(deploymentDesc.getDeploymentId(), null, 20,
+							OperationStatus.InProgress,
+							Messages.uploadingServicePackage);
+
+					DeploymentManagerUtilMethods.uploadPackageService(
+							WizardCacheManager.createStorageServiceHelper(),
+							deploymentDesc.getCspkgFile(), targetCspckgName,
+							Messages.eclipseDeployContainer.toLowerCase(),
+							deploymentDesc, notifier);
+					return null;
+				}
+			}, storageAccountTask);
 
-			DeploymentManagerUtilMethods.uploadPackageService(
-					WizardCacheManager.createStorageServiceHelper(),
-					deploymentDesc.getCspkgFile(), targetCspckgName,
-					Messages.eclipseDeployContainer.toLowerCase(),
-					deploymentDesc, notifier);
+			graph.awaitAll();
 
 			notifyProgress(deploymentDesc.getDeploymentId(), null, 20,
 					OperationStatus.InProgress, Messages.creatingDeployment);
@@ -236,7 +278,8 @@ public final class DeploymentManager {
 
 			DeploymentGetResponse deployment = waitForDeployment(
 					deploymentDesc.getConfiguration(),
-					hostedService.getServiceName(), deployState);
+					hostedService.getServiceName(), deployState,
+					deploymentDesc.getDeploymentId());
 
 			boolean displayHttpsLink = deploymentDesc.getDisplayHttpsLink();
 			WindowsAzureProjectManager waProjManager = WindowsAzureProjectManager
@@ -294,8 +337,9 @@ public final class DeploymentManager {
 								.getUserName(), pluginFolder);
 			}
 		} catch (Throwable t) {
-			String msg = (t != null ? t.getMessage() : "");
-			if (msg.equalsIgnoreCase("sleep interrupted")
+			String msg = (t != null && t.getMessage() != null ? t.getMessage() : "");
+			if (t instanceof InterruptedException
+					|| msg.equalsIgnoreCase("sleep interrupted")
 					|| msg.equalsIgnoreCase("java.lang.InterruptedException: sleep interrupted")
 					|| msg.equalsIgnoreCase("java.lang.InterruptedException")
 					|| msg.equalsIgnoreCase("Exception when create deployment")) {
@@ -311,6 +355,14 @@ public final class DeploymentManager {
 				throw (DeploymentException) t;
 			}
 			throw new DeploymentException(msg, t);
+		} finally {
+			if (graph != null) {
+				graph.shutdown();
+			}
+			// the clients of the subscription are kept between deployments, so these add up
+			Activator.getDefault().log(String.format("Management requests: %d, connections opened: %d",
+					ManagementClientRegistry.getRequestCount(deploymentDesc.getConfiguration()),
+					ManagementClientRegistry.getOpenedConnectionCount(deploymentDesc.getConfiguration())));
 		}
 	}
 
@@ -359,12 +411,10 @@ public final class DeploymentManager {
 	}
 
 	private DeploymentGetResponse waitForDeployment(
-			Configuration configuration, String serviceName,
-			String deployState)
+			final Configuration configuration, final String serviceName,
+			String deployState, final String deploymentId)
 					throws Exception {
-		DeploymentGetResponse deployment = null;
-		String status = null;
-		DeploymentSlot deploymentSlot;
+		final DeploymentSlot deploymentSlot;
 		if (DeploymentSlot.Staging.toString().equalsIgnoreCase(deployState)) {
 			deploymentSlot = DeploymentSlot.Staging;
 		} else if (DeploymentSlot.Production.toString().equalsIgnoreCase(deployState)) {
@@ -372,39 +422,25 @@ public final class DeploymentManager {
 		} else {
 			throw new Exception("Invalid deployment slot name");
 		}
-		// check role status
-		do {
-			Thread.sleep(5000);
-			deployment = WindowsAzureRestUtils.getDeploymentBySlot(configuration, serviceName, deploymentSlot);
-
-			for (RoleInstance instance : deployment.getRoleInstances()) {
-				status = instance.getInstanceStatus();
-				if (InstanceStatus.ReadyRole.getInstanceStatus().equals(status)
-						|| InstanceStatus.CyclingRole.getInstanceStatus().equals(status)
-						|| InstanceStatus.FailedStartingVM.getInstanceStatus().equals(status)
-						|| InstanceStatus.UnresponsiveRole.getInstanceStatus().equals(status)) {
-					break;
+		// check status of every role instance, and let Transitioning phase to finish
+		try {
+			return new DeploymentWatcher(new Callable<DeploymentGetResponse>() {
+				@Override
+				public DeploymentGetResponse call() throws Exception {
+					return WindowsAzureRestUtils.getDeploymentBySlot(configuration, serviceName, deploymentSlot);
 				}
-			}
-		} while (status != null
-				&& !(InstanceStatus.ReadyRole.getInstanceStatus().equals(status)
-						|| InstanceStatus.CyclingRole.getInstanceStatus().equals(status)
-						|| InstanceStatus.FailedStartingVM.getInstanceStatus().equals(status)
-						|| InstanceStatus.UnresponsiveRole.getInstanceStatus().equals(status)));
-
-		if (!InstanceStatus.ReadyRole.getInstanceStatus().equals(status)) {
-			throw new DeploymentException(status);
+			}, new DeploymentWatcher.Listener() {
+				@Override
+				public void instanceStatusChanged(String roleName, String instanceName, String oldStatus, String newStatus) {
+					notifyProgress(deploymentId, null, 0, OperationStatus.InProgress,
+							Messages.deplInstanceStatus, roleName, instanceName, newStatus);
+				}
+			}).waitUntilReady();
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new DeploymentException(e.getMessage(), e);
 		}
-		// check deployment status. And let Transitioning phase to finish
-		DeploymentStatus deploymentStatus = null;
-		do {
-			Thread.sleep(10000);
-			deployment = WindowsAzureRestUtils.getDeploymentBySlot(configuration, serviceName, deploymentSlot);
-			deploymentStatus = deployment.getStatus();
-		} while(deploymentStatus != null
-				&& (deploymentStatus.equals(DeploymentStatus.RunningTransitioning)
-						|| deploymentStatus.equals(DeploymentStatus.SuspendedTransitioning)));
-		return deployment;
 	}
 
 	private OperationStatus waitForStatus(Configuration configuration,
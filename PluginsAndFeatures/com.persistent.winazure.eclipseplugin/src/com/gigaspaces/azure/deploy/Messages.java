@@ -54,6 +54,7 @@ public final class Messages extends NLS {
 	public static String deplCantOpenView;
 	public static String deplCompleted;
 	public static String deplConfigRdp;
+	public static String deplInstanceStatus;
 	public static String deplDesc;
 	public static String deplError;
 	public static String deplErrorCode;
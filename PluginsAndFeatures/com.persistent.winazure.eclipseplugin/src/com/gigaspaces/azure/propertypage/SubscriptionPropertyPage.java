@@ -299,6 +299,7 @@ public class SubscriptionPropertyPage extends PropertyPage {
 		 * also to update Publish data cache.
 		 */
 		WizardCacheManager.getPublishSettingsPerSubscription().remove(id);
+		WizardCacheManager.removeSubscriptionSnapshot(id);
 		PreferenceUtil.save();
 		tableViewer.refresh();
 	}
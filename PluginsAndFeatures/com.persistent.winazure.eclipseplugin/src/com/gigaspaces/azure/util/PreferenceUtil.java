@@ -103,6 +103,7 @@ public class PreferenceUtil {
 					WizardCacheManager.addPublishSettingsPerSubscription(publishSettingsPerSubscription);
 					// To do - Need to test below function call.
 					// Test case - Publish wizard reload data while coming via Subscription property page
+					WizardCacheManager.cancelRefresh();
 					WizardCacheManager.getPublishDataList().clear();
 					WizardCacheManager.preparePubDataPerFileMap();
 					Map<String, PublishData> map = WizardCacheManager.getPubDataPerFileMap();
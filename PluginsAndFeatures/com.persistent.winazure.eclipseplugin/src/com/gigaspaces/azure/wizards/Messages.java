@@ -160,6 +160,7 @@ public final class Messages extends NLS {
 	public static String deployErr;
 	public static String dfltImprted;
 	public static String tryAzureLnk;
+	public static String refreshSubsJob;
 	static {
 		// initialize resource bundle
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
@@ -61,6 +61,8 @@ import com.interopbridges.tools.windowsazure.WindowsAzureInvalidProjectOperation
 import com.interopbridges.tools.windowsazure.WindowsAzurePackageType;
 import com.interopbridges.tools.windowsazure.WindowsAzureProjectManager;
 import com.microsoft.windowsazure.management.compute.models.HostedServiceListResponse.HostedService;
+import com.microsoftopentechnologies.azurecommons.deploy.tasks.AccountCachingExceptionEvent;
+import com.microsoftopentechnologies.azurecommons.deploy.tasks.LoadingAccoutListener;
 import com.microsoftopentechnologies.azurecommons.deploy.util.PublishData;
 import com.microsoftopentechnologies.azurecommons.deploy.wizard.ConfigurationEventArgs;
 import com.microsoftopentechnologies.azuremanagementutil.model.KeyName;
@@ -113,6 +115,54 @@ public class SignInPage extends WindowsAzurePage {
 	public ArrayList<String> newServices = new ArrayList<String>();
 	private Button unpublishChBox;
 	String[] items = { Messages.deplStaging, Messages.deplProd };
+	/*
+	 * Subscriptions restored from their snapshot are loaded again in the background,
+	 * update the combo boxes with what has changed.
+	 */
+	private final LoadingAccoutListener refreshListener = new LoadingAccoutListener() {
+		@Override
+		public void onLoadedSubscriptions() {
+			if (subscriptionCombo == null || subscriptionCombo.isDisposed()) {
+				return;
+			}
+			String subscriptionId = publishData == null ? null
+					: publishData.getCurrentSubscription().getId();
+			subscriptionCombo = UIUtils.populateSubscriptionCombo(subscriptionCombo);
+			String subscriptionName = subscriptionId == null ? null
+					: WizardCacheManager.findSubscriptionNameBySubscriptionId(subscriptionId);
+			if (subscriptionName != null) {
+				UIUtils.selectByText(subscriptionCombo, subscriptionName);
+			}
+		}
+
+		@Override
+		public void onLoadedHostedServices() {
+			if (hostedServiceCombo != null && !hostedServiceCombo.isDisposed()) {
+				populateHostedServices();
+				setPageComplete(validatePageComplete());
+			}
+		}
+
+		@Override
+		public void onLoadedStorageServices() {
+			if (storageAccountCmb != null && !storageAccountCmb.isDisposed()) {
+				populateStorageAccounts();
+				setPageComplete(validatePageComplete());
+			}
+		}
+
+		@Override
+		public void onLoadedLocations() {
+		}
+
+		@Override
+		public void onRestAPIError(AccountCachingExceptionEvent e) {
+		}
+
+		@Override
+		public void setNumberOfAccounts(int num) {
+		}
+	};
 
 	/**
 	 * Constructor.
@@ -172,6 +222,13 @@ public class SignInPage extends WindowsAzurePage {
 			Activator.getDefault().log(Messages.error, e);
 		}
 		setPageComplete(validatePageComplete());
+		WizardCacheManager.addLoadingAccountListener(refreshListener);
+	}
+
+	@Override
+	public void dispose() {
+		WizardCacheManager.removeLoadingAccountListener(refreshListener);
+		super.dispose();
 	}
 
 	/**
@@ -27,15 +27,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import javax.swing.event.EventListenerList;
+
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.viewers.ISelection;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.swt.widgets.Display;
@@ -49,6 +53,7 @@ import org.eclipse.ui.PlatformUI;
 import waeclipseplugin.Activator;
 
 import com.gigaspaces.azure.runnable.CacheAccountWithProgressWindow;
+import com.gigaspaces.azure.util.MethodUtils;
 import com.interopbridges.tools.windowsazure.WindowsAzurePackageType;
 import com.microsoft.windowsazure.Configuration;
 import com.microsoft.windowsazure.management.compute.models.HostedServiceCreateParameters;
@@ -62,13 +67,18 @@ import com.microsoftopentechnologies.azurecommons.deploy.model.CertificateUpload
 import com.microsoftopentechnologies.azurecommons.deploy.model.DeployDescriptor;
 import com.microsoftopentechnologies.azurecommons.deploy.model.RemoteDesktopDescriptor;
 import com.microsoftopentechnologies.azurecommons.deploy.propertypages.CredentialsPropertyPageUtilMethods;
+import com.microsoftopentechnologies.azurecommons.deploy.tasks.AccountCachingExceptionEvent;
 import com.microsoftopentechnologies.azurecommons.deploy.tasks.LoadingAccoutListener;
 import com.microsoftopentechnologies.azurecommons.deploy.tasks.LoadingHostedServicesTask;
 import com.microsoftopentechnologies.azurecommons.deploy.tasks.LoadingLocationsTask;
 import com.microsoftopentechnologies.azurecommons.deploy.tasks.LoadingStorageAccountTask;
 import com.microsoftopentechnologies.azurecommons.deploy.tasks.LoadingSubscriptionTask;
 import com.microsoftopentechnologies.azurecommons.deploy.tasks.LoadingTaskRunner;
+import com.microsoftopentechnologies.azurecommons.deploy.tasks.LoadingTaskScheduler;
 import com.microsoftopentechnologies.azurecommons.deploy.util.PublishData;
+import com.microsoftopentechnologies.azurecommons.deploy.util.PublishProfile;
+import com.microsoftopentechnologies.azurecommons.deploy.util.SubscriptionSnapshot;
+import com.microsoftopentechnologies.azurecommons.deploy.util.SubscriptionSnapshotStore;
 import com.microsoftopentechnologies.azurecommons.deploy.wizard.ConfigurationEventArgs;
 import com.microsoftopentechnologies.azurecommons.deploy.wizard.ConfigurationEventListener;
 import com.microsoftopentechnologies.azurecommons.deploy.wizard.WizardCacheManagerUtilMethods;
@@ -106,6 +116,13 @@ public final class WizardCacheManager {
 	private static Map<String, String> publishSettingsPerSubscriptionMap = new HashMap<String, String>();
 	private static Map<String, PublishData> pubDataPerFileMap = new HashMap<String, PublishData>();
 
+	// subscriptions are shown from their snapshot for up to a day, while they are loaded again
+	private static final String SNAPSHOT_FILE_NAME = "subscriptions.snapshot";
+	private static final long SNAPSHOT_TIME_TO_LIVE = TimeUnit.DAYS.toMillis(1);
+	private static final Object REFRESH_FAMILY = new Object();
+	private static final EventListenerList REFRESH_LISTENERS = new EventListenerList();
+	private static SubscriptionSnapshotStore snapshotStore;
+
 	public static WizardCacheManager getInstrance() {
 		return INSTANCE;
 	}
@@ -451,8 +468,8 @@ public final class WizardCacheManager {
 			throws RestAPIException, IOException {
 
 		boolean canceled = false;
+		boolean restored = false;
 		List<Subscription> subscriptions = null;
-		int OPERATIONS_TIMEOUT = 60 * 5;
 
 		if (publishData == null) {
 			return;
@@ -516,114 +533,384 @@ public final class WizardCacheManager {
 		publishData.setConfigurationPerSubscription(configurationPerSubscription);
 
 		if (publishData.isInitialized() == false && publishData.isInitializing().compareAndSet(false, true)) {
+			if (getSnapshotStore().restore(publishData)) {
+				restored = true;
+				if (publishData.getCurrentSubscription() == null) {
+					publishData.setCurrentSubscription(publishData.getPublishProfile().getSubscriptions().get(0));
+				}
+			} else {
+				canceled = !loadPublishData(publishData, isNewSchema, listener);
+				if (!canceled) {
+					getSnapshotStore().update(publishData);
+				}
+			}
+		}
+
+
+		if (publishData.getPublishProfile().getSubscriptions().size() > 0) {
+			if (!empty(publishData) && !canceled) {
+				removeDuplicateSubscriptions(publishData);
+				PUBLISHS.add(publishData);
+				publishData.isInitializing().compareAndSet(true, false);
+				currentPublishData = publishData;
+				if (restored) {
+					scheduleRefresh(publishData, isNewSchema);
+				}
+			}
+		}
+	}
 
-			List<Future<?>> loadServicesFutures = null;
-			Future<?> loadSubscriptionsFuture = null;
-			try {
-				List<Subscription> subBackup = publishData.getPublishProfile().getSubscriptions();
+	/**
+	 * Loads the subscriptions of the publish data, then their cloud services,
+	 * locations and storage accounts.
+	 * @param publishData
+	 * @param isNewSchema
+	 * @param listener
+	 * @return false if loading was interrupted
+	 */
+	private static boolean loadPublishData(PublishData publishData, boolean isNewSchema,
+			LoadingAccoutListener listener) {
+		int OPERATIONS_TIMEOUT = 60 * 5;
+		List<Subscription> subscriptions = publishData.getPublishProfile().getSubscriptions();
+		// the calls of all the tasks run on the shared scheduler and are cancelled together
+		LoadingTaskScheduler.Batch batch = LoadingTaskScheduler.getInstance().newBatch();
+		try {
+			List<Subscription> subBackup = publishData.getPublishProfile().getSubscriptions();
+
+			LoadingSubscriptionTask loadingSubscriptionTask = new LoadingSubscriptionTask(publishData);
+			loadingSubscriptionTask.setSubscriptionIds(subscriptions);
+			loadingSubscriptionTask.setBatch(batch);
+			if (listener != null) {
+				loadingSubscriptionTask.addLoadingAccountListener(listener);
+			}
 
-				// thread pool size is number of subscriptions
-				ScheduledExecutorService subscriptionThreadPool = Executors.newScheduledThreadPool(subscriptions.size());
+			Future<?> loadSubscriptionsFuture = batch.start(new LoadingTaskRunner(loadingSubscriptionTask));
+			loadSubscriptionsFuture.get(OPERATIONS_TIMEOUT, TimeUnit.SECONDS);
 
-				LoadingSubscriptionTask loadingSubscriptionTask = new LoadingSubscriptionTask(publishData);
-				loadingSubscriptionTask.setSubscriptionIds(subscriptions);
-				if (listener != null) {
-					loadingSubscriptionTask.addLoadingAccountListener(listener);
+			/*
+			 * add explicitly management URL and certificate which was removed
+			 * Changes are did to support both publish setting schema versions.
+			 */
+			if (isNewSchema) {
+				for (int i = 0; i < subBackup.size(); i++) {
+					publishData.getPublishProfile().getSubscriptions().get(i).
+					setServiceManagementUrl(subBackup.get(i).getServiceManagementUrl());
+					publishData.getPublishProfile().getSubscriptions().get(i).
+					setManagementCertificate(subBackup.get(i).getManagementCertificate());
 				}
+			}
 
-				loadSubscriptionsFuture = subscriptionThreadPool.submit(new LoadingTaskRunner(loadingSubscriptionTask));				
-				loadSubscriptionsFuture.get(OPERATIONS_TIMEOUT, TimeUnit.SECONDS);
+			if (publishData.getCurrentSubscription() == null && publishData.getPublishProfile().getSubscriptions().size() > 0) {
+				publishData.setCurrentSubscription(publishData.getPublishProfile().getSubscriptions().get(0));
+			}
 
+			List<Future<?>> loadServicesFutures = new ArrayList<Future<?>>();
+
+			// Hosted services
+			LoadingHostedServicesTask loadingHostedServicesTask = new LoadingHostedServicesTask(publishData);
+			loadingHostedServicesTask.setBatch(batch);
+			if (listener != null) {
+				loadingHostedServicesTask.addLoadingAccountListener(listener);
+			}
+			Future<?> submitHostedServices = batch.start(new LoadingTaskRunner(loadingHostedServicesTask));
+			loadServicesFutures.add(submitHostedServices);
+
+			// locations
+			LoadingLocationsTask loadingLocationsTask = new LoadingLocationsTask(publishData);
+			loadingLocationsTask.setBatch(batch);
+			if (listener != null) {
+				loadingLocationsTask.addLoadingAccountListener(listener);
+			}
+			Future<?> submitLocations = batch.start(new LoadingTaskRunner(loadingLocationsTask));
+			loadServicesFutures.add(submitLocations);
+
+			// storage accounts
+			LoadingStorageAccountTask loadingStorageAccountTask = new LoadingStorageAccountTask(publishData);
+			loadingStorageAccountTask.setBatch(batch);
+			if (listener != null) {
+				loadingStorageAccountTask.addLoadingAccountListener(listener);
+			}
+			Future<?> submitStorageAccounts = batch.start(new LoadingTaskRunner(loadingStorageAccountTask));
+			loadServicesFutures.add(submitStorageAccounts);
+
+			for (Future<?> future : loadServicesFutures) {
+				future.get(OPERATIONS_TIMEOUT, TimeUnit.SECONDS);
+			}
+
+			for (Subscription sub : publishData.getPublishProfile().getSubscriptions()) {
 				/*
-				 * add explicitly management URL and certificate which was removed
-				 * Changes are did to support both publish setting schema versions.
+				 * Get collection of storage services in each subscription.
 				 */
-				if (isNewSchema) {
-					for (int i = 0; i < subBackup.size(); i++) {
-						publishData.getPublishProfile().getSubscriptions().get(i).
-						setServiceManagementUrl(subBackup.get(i).getServiceManagementUrl());
-						publishData.getPublishProfile().getSubscriptions().get(i).
-						setManagementCertificate(subBackup.get(i).getManagementCertificate());
+				StorageServices services = publishData.getStoragesPerSubscription().get(sub.getId());
+				for (StorageService strgService : services) {
+					List<URI> endpoints = strgService.getStorageAccountProperties().getEndpoints();
+					if (endpoints.get(0).toString().startsWith("https://")) {
+						endpoints.set(0, URI.create(endpoints.get(0).toString().replaceFirst("https://", "http://")));
+						endpoints.set(1, URI.create(endpoints.get(1).toString().replaceFirst("https://", "http://")));
+						endpoints.set(2, URI.create(endpoints.get(2).toString().replaceFirst("https://", "http://")));
 					}
 				}
+			}
+		}
+		catch (InterruptedException e) {
+			return false;
+		}
+		catch (ExecutionException e) {
+		}
+		catch (TimeoutException e) {
+		}
+		finally {
+			LoadingTaskScheduler scheduler = LoadingTaskScheduler.getInstance();
+			Activator.getDefault().getLog().log(new Status(IStatus.INFO, Activator.PLUGIN_ID, String.format(
+					"Account loading calls: %d, average wait: %d ms, longest wait: %d ms, average run: %d ms, still queued: %d",
+					scheduler.getCompletedCount(), scheduler.getAverageWaitMillis(), scheduler.getMaxWaitMillis(),
+					scheduler.getAverageRunMillis(), scheduler.getQueueDepth())));
+			// stops what is still running after a cancel or time out
+			batch.cancel();
+		}
+		return true;
+	}
 
-				if (publishData.getCurrentSubscription() == null && publishData.getPublishProfile().getSubscriptions().size() > 0) {
-					publishData.setCurrentSubscription(publishData.getPublishProfile().getSubscriptions().get(0));
-				}
+	private static synchronized SubscriptionSnapshotStore getSnapshotStore() {
+		if (snapshotStore == null) {
+			File file = Activator.getDefault().getStateLocation().append(SNAPSHOT_FILE_NAME).toFile();
+			snapshotStore = new SubscriptionSnapshotStore(file, SNAPSHOT_TIME_TO_LIVE);
+		}
+		return snapshotStore;
+	}
+
+	/**
+	 * Loads again in the background the subscriptions restored from their snapshots,
+	 * and updates the publish data with what has changed since.
+	 * @param publishData
+	 * @param isNewSchema
+	 */
+	private static void scheduleRefresh(final PublishData publishData, final boolean isNewSchema) {
+		Job job = new Job(Messages.refreshSubsJob) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				final PublishData loaded = copyForRefresh(publishData);
+				boolean completed = loadPublishData(loaded, isNewSchema, new LoadingAccoutListener() {
+					@Override
+					public void onRestAPIError(AccountCachingExceptionEvent e) {
+						// the subscriptions stay as restored
+						Activator.getDefault().log(e.getMessage(), e.getException());
+					}
 
-				// thread pool size is 3 to load hosted services, locations and storage accounts.
-				ScheduledExecutorService threadPool = Executors.newScheduledThreadPool(3);
-				loadServicesFutures = new ArrayList<Future<?>>();
+					@Override
+					public void onLoadedSubscriptions() {
+					}
 
-				// Hosted services
-				LoadingHostedServicesTask loadingHostedServicesTask = new LoadingHostedServicesTask(publishData);
-				if (listener != null) {
-					loadingHostedServicesTask.addLoadingAccountListener(listener);
-				}
-				Future<?> submitHostedServices = threadPool.submit(new LoadingTaskRunner(loadingHostedServicesTask));
-				loadServicesFutures.add(submitHostedServices);
+					@Override
+					public void onLoadedStorageServices() {
+					}
 
-				// locations
-				LoadingLocationsTask loadingLocationsTask = new LoadingLocationsTask(publishData);
-				if (listener != null) {
-					loadingLocationsTask.addLoadingAccountListener(listener);
-				}
-				Future<?> submitLocations = threadPool.submit(new LoadingTaskRunner(loadingLocationsTask));
-				loadServicesFutures.add(submitLocations);
+					@Override
+					public void onLoadedHostedServices() {
+					}
 
-				// storage accounts
-				LoadingStorageAccountTask loadingStorageAccountTask = new LoadingStorageAccountTask(publishData);
-				if (listener != null) {
-					loadingStorageAccountTask.addLoadingAccountListener(listener);
+					@Override
+					public void onLoadedLocations() {
+					}
+
+					@Override
+					public void setNumberOfAccounts(int num) {
+					}
+				});
+				if (!completed || monitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
 				}
-				Future<?> submitStorageAccounts = threadPool.submit(new LoadingTaskRunner(loadingStorageAccountTask));
-				loadServicesFutures.add(submitStorageAccounts);
+				Display.getDefault().asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						applyRefresh(publishData, loaded);
+					}
+				});
+				return Status.OK_STATUS;
+			}
 
-				for (Future<?> future : loadServicesFutures) {
-					future.get(OPERATIONS_TIMEOUT, TimeUnit.SECONDS);
+			@Override
+			protected void canceling() {
+				// the loading tasks stop waiting when interrupted
+				Thread thread = getThread();
+				if (thread != null) {
+					thread.interrupt();
 				}
+			}
 
-				for (Subscription sub : publishData.getPublishProfile().getSubscriptions()) {
-					/*
-					 * Get collection of storage services in each subscription.
-					 */
-					StorageServices services = publishData.getStoragesPerSubscription().get(sub.getId());
-					for (StorageService strgService : services) {
-						List<URI> endpoints = strgService.getStorageAccountProperties().getEndpoints();
-						if (endpoints.get(0).toString().startsWith("https://")) {
-							endpoints.set(0, URI.create(endpoints.get(0).toString().replaceFirst("https://", "http://")));
-							endpoints.set(1, URI.create(endpoints.get(1).toString().replaceFirst("https://", "http://")));
-							endpoints.set(2, URI.create(endpoints.get(2).toString().replaceFirst("https://", "http://")));
+			@Override
+			public boolean belongsTo(Object family) {
+				return family == REFRESH_FAMILY;
+			}
+		};
+		job.schedule();
+	}
+
+	/**
+	 * Cancels the refreshes of restored subscriptions not done yet,
+	 * when the publish data is about to be loaded again.
+	 */
+	public static void cancelRefresh() {
+		Job.getJobManager().cancel(REFRESH_FAMILY);
+	}
+
+	private static PublishData copyForRefresh(PublishData publishData) {
+		PublishProfile profile = new PublishProfile();
+		PublishProfile restoredProfile = publishData.getPublishProfile();
+		profile.setSchemaVersion(restoredProfile.getSchemaVersion());
+		profile.setUrl(restoredProfile.getUrl());
+		List<Subscription> subscriptions = new ArrayList<Subscription>();
+		Map<String, Configuration> configurationPerSubscription = new HashMap<String, Configuration>();
+		synchronized (publishData) {
+			for (Subscription restored : restoredProfile.getSubscriptions()) {
+				Subscription subscription = new Subscription();
+				subscription.setSubscriptionID(restored.getId());
+				subscription.setServiceManagementUrl(restored.getServiceManagementUrl());
+				subscription.setManagementCertificate(restored.getManagementCertificate());
+				subscriptions.add(subscription);
+				configurationPerSubscription.put(restored.getId(), publishData.getConfiguration(restored.getId()));
+			}
+		}
+		profile.setSubscriptions(subscriptions);
+		PublishData loaded = new PublishData();
+		loaded.setPublishProfile(profile);
+		loaded.setConfigurationPerSubscription(configurationPerSubscription);
+		return loaded;
+	}
+
+	/**
+	 * Replaces the restored values which have changed with the loaded ones, keeping the
+	 * cloud services and storage accounts created in the wizard, then notifies the listeners
+	 * of what has changed. Runs in the UI thread, like the wizard pages reading the publish data.
+	 * @param publishData
+	 * @param loaded
+	 */
+	private static void applyRefresh(PublishData publishData, PublishData loaded) {
+		// loaded again meanwhile
+		if (!PUBLISHS.contains(publishData)) {
+			return;
+		}
+		boolean subscriptionsChanged = false;
+		boolean hostedServicesChanged = false;
+		boolean storageServicesChanged = false;
+		boolean locationsChanged = false;
+		long now = System.currentTimeMillis();
+		for (Subscription subscription : publishData.getPublishProfile().getSubscriptions()) {
+			String id = subscription.getId();
+			Subscription loadedSubscription = null;
+			for (Subscription s : loaded.getPublishProfile().getSubscriptions()) {
+				if (id.equals(s.getId())) {
+					loadedSubscription = s;
+				}
+			}
+			SubscriptionSnapshot after = loadedSubscription == null ? null
+					: SubscriptionSnapshot.of(loaded, loadedSubscription, now);
+			if (after == null) {
+				// not loaded, keep it as restored
+				continue;
+			}
+			SubscriptionSnapshot before = SubscriptionSnapshot.of(publishData, subscription, now);
+			if (before == null || !before.hasSameDetails(after)) {
+				after.applyDetails(subscription);
+				subscriptionsChanged = true;
+			}
+			if (before == null || !before.hasSameHostedServices(after)) {
+				ArrayList<HostedService> services = loaded.getServicesPerSubscription().get(id);
+				List<HostedService> current = publishData.getServicesPerSubscription().get(id);
+				if (current != null) {
+					for (HostedService hostedService : current) {
+						if ((hostedService.getUri() == null || hostedService.getUri().toString().isEmpty())
+								&& !containsHostedService(services, hostedService.getServiceName())) {
+							services.add(hostedService);
 						}
 					}
 				}
+				publishData.getServicesPerSubscription().put(id, services);
+				hostedServicesChanged = true;
 			}
-			catch (InterruptedException e) {
-				if (loadSubscriptionsFuture != null) {
-					loadSubscriptionsFuture.cancel(true);
-				}
-				if (loadServicesFutures != null) {
-					for (Future<?> future : loadServicesFutures) {
-						future.cancel(true);
+			if (before == null || !before.hasSameStorageServices(after)) {
+				StorageServices storages = loaded.getStoragesPerSubscription().get(id);
+				StorageServices current = publishData.getStoragesPerSubscription().get(id);
+				if (current != null && !current.isEmpty()) {
+					for (StorageService storageService : current) {
+						if ((storageService.getUrl() == null || storageService.getUrl().isEmpty())
+								&& !containsStorageService(storages, storageService.getServiceName())) {
+							storages.add(storageService);
+						}
 					}
 				}
-				canceled = true;
+				publishData.getStoragesPerSubscription().put(id, storages);
+				storageServicesChanged = true;
 			}
-			catch (ExecutionException e) {
+			if (before == null || !before.hasSameLocations(after)) {
+				publishData.getLocationsPerSubscription().put(id, loaded.getLocationsPerSubscription().get(id));
+				locationsChanged = true;
 			}
-			catch (TimeoutException e) {
+		}
+		getSnapshotStore().update(publishData);
+		if (storageServicesChanged) {
+			// keys may have been regenerated
+			MethodUtils.prepareListFromPublishData();
+		}
+		Object[] list = REFRESH_LISTENERS.getListenerList();
+		for (int i = 0; i < list.length; i += 2) {
+			if (list[i] == LoadingAccoutListener.class) {
+				LoadingAccoutListener listener = (LoadingAccoutListener) list[i + 1];
+				if (subscriptionsChanged) {
+					listener.onLoadedSubscriptions();
+				}
+				if (hostedServicesChanged) {
+					listener.onLoadedHostedServices();
+				}
+				if (storageServicesChanged) {
+					listener.onLoadedStorageServices();
+				}
+				if (locationsChanged) {
+					listener.onLoadedLocations();
+				}
 			}
 		}
+	}
 
+	private static boolean containsHostedService(List<HostedService> services, String name) {
+		for (HostedService hostedService : services) {
+			if (hostedService.getServiceName().equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
 
-		if (publishData.getPublishProfile().getSubscriptions().size() > 0) {
-			if (!empty(publishData) && !canceled) {
-				removeDuplicateSubscriptions(publishData);
-				PUBLISHS.add(publishData);
-				publishData.isInitializing().compareAndSet(true, false);
-				currentPublishData = publishData;
+	private static boolean containsStorageService(StorageServices storages, String name) {
+		if (!storages.isEmpty()) {
+			for (StorageService storageService : storages) {
+				if (storageService.getServiceName().equalsIgnoreCase(name)) {
+					return true;
+				}
 			}
 		}
+		return false;
+	}
+
+	/**
+	 * Adds a listener notified in the UI thread of the subscriptions, cloud services, storage accounts
+	 * and locations which have changed when restored subscriptions have been loaded again.
+	 * @param listener
+	 */
+	public static void addLoadingAccountListener(LoadingAccoutListener listener) {
+		REFRESH_LISTENERS.add(LoadingAccoutListener.class, listener);
+	}
+
+	public static void removeLoadingAccountListener(LoadingAccoutListener listener) {
+		REFRESH_LISTENERS.remove(LoadingAccoutListener.class, listener);
+	}
+
+	/**
+	 * Forgets the data kept for a subscription removed by the user.
+	 * @param subscriptionId
+	 */
+	public static void removeSubscriptionSnapshot(String subscriptionId) {
+		getSnapshotStore().remove(subscriptionId);
 	}
 
 	private static void removeDuplicateSubscriptions(PublishData publishData) {
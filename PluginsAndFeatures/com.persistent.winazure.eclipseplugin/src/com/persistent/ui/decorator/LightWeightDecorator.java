@@ -89,6 +89,11 @@ public class LightWeightDecorator implements ILightweightLabelDecorator {
                 		WAProjectNature.NATURE_ID)) {
                     return;
                 }
+                // role folders are at the top of the project,
+                // no need to load the project for the folders below.
+                if (!project.equals(folder.getParent())) {
+                    return;
+                }
                 WindowsAzureProjectManager projMngr =
                     WindowsAzureProjectManager.load(project.getLocation().toFile());
                 WindowsAzureRole role = projMngr.roleFromPath(
@@ -1564,7 +1564,13 @@ public class JdkSrvConfig {
 			directory = dialog.open();
 			if (directory != null) {
 				// Auto detect server family
-				String newServerType = WAEclipseHelper.detectServer(new File(directory));
+				String newServerType;
+				try {
+					newServerType = WAEclipseHelper.detectServer(new File(directory));
+				} catch (InterruptedException e) {
+					// detection cancelled by user, keep the current server and path
+					return null;
+				}
 				boolean setPath = true;
 				if (oldServerType.isEmpty()) {
 					// if server family is not selected already
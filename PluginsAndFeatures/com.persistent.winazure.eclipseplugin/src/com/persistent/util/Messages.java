@@ -168,6 +168,7 @@ public final class Messages extends NLS {
 	public static String srvTtl;
 	public static String srvNoDetectionMsg;
 	public static String srvWrngDetectionMsg;
+	public static String srvDetectMsg;
     static {
         // initialize resource bundle
         NLS.initializeMessages(BUNDLE_NAME, Messages.class);
@@ -17,6 +17,7 @@ package com.persistent.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -30,6 +31,8 @@ import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.jface.operation.IRunnableWithProgress;
 import org.eclipse.jface.preference.IPreferencePage;
 import org.eclipse.jface.preference.PreferenceDialog;
 import org.eclipse.jface.preference.PreferenceManager;
@@ -675,7 +678,44 @@ public class WAEclipseHelper {
 		return windowsAzureRole;
 	}
 
-	public static String detectServer(File path) {
-		return WAEclipseHelperMethods.detectServer(path, getTemplateFile(Messages.cmpntFileName));
+	/**
+	 * Detects the server installed under path.
+	 * Detection runs in the background showing a busy cursor,
+	 * if it takes long a progress dialog allows to cancel it.
+	 * @param path
+	 * @return server name, null if not detected
+	 * @throws InterruptedException if the user cancelled the detection
+	 */
+	public static String detectServer(final File path) throws InterruptedException {
+		final String templateFilePath = getTemplateFile(Messages.cmpntFileName);
+		final String[] serverName = new String[1];
+		IRunnableWithProgress runnable = new IRunnableWithProgress() {
+			@Override
+			public void run(IProgressMonitor monitor)
+					throws InvocationTargetException, InterruptedException {
+				monitor.beginTask(Messages.srvDetectMsg, IProgressMonitor.UNKNOWN);
+				Thread thread = new Thread("Server detection") {
+					@Override
+					public void run() {
+						serverName[0] = WAEclipseHelperMethods.detectServer(path, templateFilePath);
+					}
+				};
+				thread.start();
+				while (thread.isAlive()) {
+					if (monitor.isCanceled()) {
+						thread.interrupt();
+						throw new InterruptedException();
+					}
+					thread.join(100);
+				}
+				monitor.done();
+			}
+		};
+		try {
+			PlatformUI.getWorkbench().getProgressService().busyCursorWhile(runnable);
+		} catch (InvocationTargetException e) {
+			Activator.getDefault().log(e.getMessage(), e);
+		}
+		return serverName[0];
 	}
 }
\ No newline at end of file
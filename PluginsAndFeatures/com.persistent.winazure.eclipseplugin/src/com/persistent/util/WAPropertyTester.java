@@ -100,8 +100,9 @@ public class WAPropertyTester extends PropertyTester {
         IFolder folder = (IFolder) object;
         IProject project = folder.getProject();
 
-        if (project.isOpen() && project.hasNature(
-                WAProjectNature.NATURE_ID)) {
+        // role folders are at the top of the project
+        if (project.isOpen() && project.equals(folder.getParent())
+                && project.hasNature(WAProjectNature.NATURE_ID)) {
             WindowsAzureProjectManager projMngr =
                 WindowsAzureProjectManager.load(
                         project.getLocation().toFile());
@@ -25,15 +25,31 @@ import java.net.URI;
 import java.net.URL;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FileDeleteStrategy;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.WorkspaceJob;
 import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.ui.IStartup;
 import org.eclipse.wst.xml.core.internal.XMLCorePlugin;
 import org.eclipse.wst.xml.core.internal.catalog.provisional.ICatalog;
@@ -42,7 +58,9 @@ import org.eclipse.wst.xml.core.internal.catalog.provisional.INextCatalog;
 
 import waeclipseplugin.Activator;
 
+import com.interopbridges.tools.windowsazure.WindowsAzureConstants;
 import com.interopbridges.tools.windowsazure.WindowsAzureProjectManager;
+import com.interopbridges.tools.windowsazure.WindowsAzureRole;
 import com.microsoftopentechnologies.azurecommons.startup.WAStartUpUtilMethods;
 import com.microsoftopentechnologies.azurecommons.util.WAEclipseHelperMethods;
 import com.microsoftopentechnologies.wacommon.storageregistry.PreferenceUtilStrg;
@@ -74,6 +92,7 @@ public class WAStartUp implements IStartup {
             PreferenceUtilStrg.load();
             //Get all the projects in workspace
             IProject[] projects = root.getProjects();
+            List<IProject> azureProjects = new ArrayList<IProject>();
             for (IProject iProject : projects) {
                 Activator.getDefault().log(iProject.getName()
                         + "isOpen" + iProject.isOpen(), null);
@@ -83,32 +102,18 @@ public class WAStartUp implements IStartup {
                     Activator.getDefault().log(iProject.getName()
                             + "isNature" + isNature, null);
                     if (isNature) {
-                        WindowsAzureProjectManager projMngr =
-                                WindowsAzureProjectManager.load(
-                                        iProject.getLocation().toFile());
-                        if (!projMngr.isCurrVersion()) {
-                        	WAEclipseHelper.handleProjectUpgrade(iProject,projMngr);
-                        }
-                        // Correct name if its invalid
-                        if (!iProject.getName().
-                        		equalsIgnoreCase(projMngr.getProjectName())) {
-                        	WAEclipseHelper.
-                        	correctProjectName(iProject, projMngr);
-                        }
-                        projMngr = initializeStorageAccountRegistry(projMngr);
-                        projMngr = changeLocalToAuto(projMngr, iProject.getName());
-                        // save object so that access key will get saved in PML.
-                        projMngr.save();
+                        azureProjects.add(iProject);
                     }
                 }
             }
+            Map<IProject, Collection<String>> changedProjects =
+                    processProjects(azureProjects);
             // save preference file.
             PreferenceUtilStrg.save();
             //this code is for copying componentset.xml in plugins folder
             copyPluginComponents();
-            // refresh workspace as package.xml may have got changed.
-            WAEclipseHelper.refreshWorkspace(Messages.resCLJobName,
-            		Messages.resCLExWkspRfrsh);
+            // refresh projects whose package.xml or other files have changed.
+            refreshProjects(changedProjects);
             // delete %proj% directory from temporary folder during eclipse start
             String tmpPath = System.getProperty("java.io.tmpdir");
             String projPath = String.format("%s%s%s", tmpPath, File.separator, "%proj%");
@@ -123,6 +128,150 @@ public class WAStartUp implements IStartup {
         }
     }
 
+    /**
+     * Loads the Azure projects in parallel, upgrades and corrects them in
+     * workspace order, since the storage account registry is shared, then
+     * saves them in parallel. Files are only written if their content changed.
+     * @param projects
+     * @return projects whose files were written, with the project relative
+     *         paths of those files, or null if the whole project changed
+     */
+    private Map<IProject, Collection<String>> processProjects(
+            List<IProject> projects) {
+        final Map<IProject, Collection<String>> changedProjects =
+                Collections.synchronizedMap(
+                        new LinkedHashMap<IProject, Collection<String>>());
+        if (projects.isEmpty()) {
+            return changedProjects;
+        }
+        ExecutorService threadPool = Executors.newFixedThreadPool(Math.min(
+                projects.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<WindowsAzureProjectManager>> loads =
+                    new ArrayList<Future<WindowsAzureProjectManager>>();
+            for (IProject iProject : projects) {
+                final File location = iProject.getLocation().toFile();
+                loads.add(threadPool.submit(new Callable<WindowsAzureProjectManager>() {
+                    @Override
+                    public WindowsAzureProjectManager call() throws Exception {
+                        return WindowsAzureProjectManager.load(location);
+                    }
+                }));
+            }
+            List<Future<?>> saves = new ArrayList<Future<?>>();
+            for (int i = 0; i < projects.size(); i++) {
+                final IProject iProject = projects.get(i);
+                try {
+                    WindowsAzureProjectManager projMngr = loads.get(i).get();
+                    if (!projMngr.isCurrVersion()) {
+                        WAEclipseHelper.handleProjectUpgrade(iProject,projMngr);
+                        changedProjects.put(iProject, null);
+                    }
+                    // Correct name if its invalid
+                    if (!iProject.getName().
+                            equalsIgnoreCase(projMngr.getProjectName())) {
+                        WAEclipseHelper.
+                        correctProjectName(iProject, projMngr);
+                        changedProjects.put(iProject, null);
+                    }
+                    projMngr = initializeStorageAccountRegistry(projMngr);
+                    final WindowsAzureProjectManager changedMngr =
+                            changeLocalToAuto(projMngr, iProject.getName());
+                    // save object so that access key will get saved in PML.
+                    saves.add(threadPool.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            if (changedMngr.saveChanges()
+                                    && !changedProjects.containsKey(iProject)) {
+                                changedProjects.put(iProject,
+                                        getSavedFiles(changedMngr));
+                            }
+                            return null;
+                        }
+                    }));
+                } catch (Exception e) {
+                    Activator.getDefault().log(Messages.expErlStrtUp, e);
+                }
+            }
+            for (Future<?> save : saves) {
+                try {
+                    save.get();
+                } catch (Exception e) {
+                    Activator.getDefault().log(Messages.expErlStrtUp, e);
+                }
+            }
+        } finally {
+            threadPool.shutdown();
+        }
+        return changedProjects;
+    }
+
+    /**
+     * Returns the project relative paths of the files
+     * written by saveChanges.
+     * @param projMngr
+     * @return
+     * @throws Exception
+     */
+    private static Collection<String> getSavedFiles(
+            WindowsAzureProjectManager projMngr) throws Exception {
+        List<String> files = new ArrayList<String>();
+        files.add("package.xml");
+        files.add("ServiceDefinition.csdef");
+        files.add("ServiceConfiguration.cscfg");
+        for (WindowsAzureRole role : projMngr.getRoles()) {
+            files.add(String.format("%s/%s/%s/%s", role.getName(),
+                    WindowsAzureConstants.APPROOT_NAME,
+                    WindowsAzureConstants.SA_FOLDER_NAME,
+                    WindowsAzureConstants.SA_CONFIG_FILE));
+        }
+        return files;
+    }
+
+    /**
+     * Refreshes, in a workspace job, the files written at startup
+     * so that the workspace sees them. Projects that were upgraded
+     * or renamed are refreshed as a whole.
+     * @param projects
+     */
+    private void refreshProjects(
+            final Map<IProject, Collection<String>> projects) {
+        if (projects.isEmpty()) {
+            return;
+        }
+        WorkspaceJob job = new WorkspaceJob(Messages.resCLJobName) {
+
+            @Override
+            public IStatus runInWorkspace(IProgressMonitor monitor)
+                    throws CoreException {
+                for (Map.Entry<IProject, Collection<String>> entry
+                        : projects.entrySet()) {
+                    IProject iProject = entry.getKey();
+                    try {
+                        if (!iProject.isOpen()) {
+                            continue;
+                        }
+                        if (entry.getValue() == null) {
+                            iProject.refreshLocal(IResource.DEPTH_INFINITE,
+                                    monitor);
+                        } else {
+                            for (String file : entry.getValue()) {
+                                iProject.getFile(file).refreshLocal(
+                                        IResource.DEPTH_ZERO, monitor);
+                            }
+                        }
+                    } catch (CoreException e) {
+                        Activator.getDefault().log(
+                                Messages.resCLExWkspRfrsh, e);
+                    }
+                }
+                return Status.OK_STATUS;
+            }
+        };
+        job.setRule(ResourcesPlugin.getWorkspace().getRoot());
+        job.schedule();
+    }
+
     /**
      * Storage account registry project open logic.
      * Plugin needs to detect and aggregate the information
@@ -726,7 +726,13 @@ public class WAServerConfiguration extends PropertyPage {
 					if (file.exists()
 							&& file.isDirectory()) {
 						// Server auto-detection
-						String serverName = WAEclipseHelper.detectServer(file);
+						String serverName;
+						try {
+							serverName = WAEclipseHelper.detectServer(file);
+						} catch (InterruptedException e) {
+							// detection cancelled by user, keep the current server
+							serverName = null;
+						}
 						if (serverName != null) {
 							JdkSrvConfig.getComboServer().setText(serverName);
 						} else {
@@ -40,6 +40,7 @@ import com.microsoftopentechnologies.azurecommons.deploy.DeploymentEventArgs;
 import com.microsoftopentechnologies.azurecommons.deploy.DeploymentEventListener;
 import com.microsoftopentechnologies.azurecommons.deploy.UploadProgressEventArgs;
 import com.microsoftopentechnologies.azurecommons.deploy.UploadProgressEventListener;
+import com.microsoftopentechnologies.azuremanagementutil.rest.ManagementClientRegistry;
 
 /**
  * The activator class controls the plug-in life cycle
@@ -101,6 +102,8 @@ public class Activator extends AbstractUIPlugin {
      * @see org.eclipse.ui.plugin.AbstractUIPlugin#stop(org.osgi.framework.BundleContext)
      */
     public void stop(BundleContext context) throws Exception {
+        // release the connections of the shared management clients
+        ManagementClientRegistry.closeAll();
         plugin = null;
         super.stop(context);
     }
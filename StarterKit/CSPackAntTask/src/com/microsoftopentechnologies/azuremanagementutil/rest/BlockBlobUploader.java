@@ -0,0 +1,318 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.microsoftopentechnologies.azuremanagementutil.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.BlockEntry;
+import com.microsoft.azure.storage.blob.BlockListingFilter;
+import com.microsoft.azure.storage.blob.CloudBlockBlob;
+import com.microsoftopentechnologies.azuremanagementutil.model.Notifier;
+import com.microsoftopentechnologies.azuremanagementutil.rest.UploadJournal.JournalBlock;
+import com.microsoftopentechnologies.azuremanagementutil.util.Base64;
+
+/**
+ * Uploads a file to a block blob by staging its blocks concurrently and committing the block list at the end.
+ * <p>
+ * Block size and the number of blocks in flight come from the retry policy. When a block fails with
+ * throttling, a timeout or a network error, the policy decreases both and the block is staged again in
+ * smaller pieces; after a run of successful blocks the policy increases them back towards their initial values.
+ * Progress is reported to the notifier in percent steps as blocks complete.
+ * <p>
+ * With a journal, every staged block is recorded with its MD5. A later upload of the same file to the same
+ * blob stages only the ranges not found among the blob's uncommitted blocks.
+ */
+public class BlockBlobUploader {
+
+	/** Successful blocks in a row before concurrency and block size are increased again. */
+	private static final int RAMP_UP_BLOCKS = 8;
+	/** Attempts of the same byte range before the upload fails. */
+	private static final int MAX_ATTEMPTS = 5;
+
+	private final CloudBlockBlob blob;
+	private final File file;
+	private final MultipartUploadRetryPolicy policy;
+	private final Notifier notifier;
+	private final long length;
+	private UploadJournal journal;
+	private long bytesSent;
+	private int percentSent;
+
+	/**
+	 * @param blob - target blob
+	 * @param file - file to upload
+	 * @param policy - block size and number of blocks staged at once, and how they adapt to failures
+	 * @param notifier - receives progress, may be null
+	 */
+	public BlockBlobUploader(CloudBlockBlob blob, File file,
+			MultipartUploadRetryPolicy policy, Notifier notifier) {
+		this.blob = blob;
+		this.file = file;
+		this.policy = policy;
+		this.notifier = notifier;
+		this.length = file.length();
+	}
+
+	/**
+	 * Makes the upload resumable: blocks recorded in the journal and still uncommitted on the blob are reused.
+	 */
+	public void setJournal(UploadJournal journal) {
+		this.journal = journal;
+	}
+
+	public void upload() throws Exception {
+		MultipartUploadParameters parameters = policy.getMultipartUploadParameters();
+		if (length <= parameters.getChunkSize()) {
+			// a single put is cheaper than put block + put block list
+			InputStream in = new FileInputStream(file);
+			try {
+				blob.upload(in, length);
+			} finally {
+				in.close();
+			}
+			blockSent(length);
+			if (journal != null) {
+				journal.delete();
+			}
+			return;
+		}
+
+		SortedMap<Long, String> staged = new TreeMap<Long, String>();
+		LinkedList<Block> pending = new LinkedList<Block>();
+		long covered = 0;
+		for (JournalBlock block : resumeBlocks()) {
+			if (block.getOffset() > covered) {
+				pending.add(new Block(covered, block.getOffset() - covered, 0));
+			}
+			staged.put(block.getOffset(), block.getBlockId());
+			blockSent(block.getSize());
+			covered = block.getOffset() + block.getSize();
+		}
+		if (covered < length) {
+			pending.add(new Block(covered, length - covered, 0));
+		}
+
+		// the pool is sized for the initial parameters, which are never exceeded
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parameters.getThreadpoolSize()));
+		CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executor);
+		Map<Future<Void>, Block> running = new HashMap<Future<Void>, Block>();
+		int generation = 0;
+		int successes = 0;
+		try {
+			while (!pending.isEmpty() || !running.isEmpty()) {
+				while (running.size() < Math.max(1, parameters.getThreadpoolSize()) && !pending.isEmpty()) {
+					// pending ranges are cut to the current chunk size as they are scheduled
+					int chunkSize = parameters.getChunkSize();
+					Block block = pending.removeFirst();
+					if (block.size > chunkSize) {
+						pending.addFirst(new Block(block.offset + chunkSize,
+								block.size - chunkSize, block.attempts));
+						block = new Block(block.offset, chunkSize, block.attempts);
+					}
+					block.generation = generation;
+					running.put(completionService.submit(createTask(block)), block);
+				}
+
+				Future<Void> future = completionService.take();
+				Block block = running.remove(future);
+				try {
+					future.get();
+					staged.put(block.offset, getBlockId(block.offset));
+					blockSent(block.size);
+					if (++successes >= RAMP_UP_BLOCKS && policy.canIncreaseParameters()) {
+						parameters = policy.increaseParameters();
+						generation++;
+						successes = 0;
+					}
+				} catch (ExecutionException e) {
+					Exception cause = e.getCause() instanceof Exception
+							? (Exception) e.getCause() : new Exception(e.getCause());
+					if (!isTransient(cause) || ++block.attempts >= MAX_ATTEMPTS) {
+						throw cause;
+					}
+					successes = 0;
+					// blocks already in flight with the old parameters fail for the same reason;
+					// only the first of them decreases the parameters
+					if (block.generation == generation && policy.canDecreaseParameters()) {
+						parameters = policy.decreaseParameters();
+						generation++;
+					}
+					pending.addFirst(block);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			if (journal != null) {
+				journal.close();
+			}
+		}
+
+		List<BlockEntry> blockList = new ArrayList<BlockEntry>(staged.size());
+		for (String blockId : staged.values()) {
+			blockList.add(new BlockEntry(blockId));
+		}
+		blob.commitBlockList(blockList);
+		if (journal != null) {
+			journal.delete();
+		}
+	}
+
+	/**
+	 * Returns journaled blocks that are still uncommitted on the blob and whose content did not change,
+	 * ordered by offset and not overlapping.
+	 */
+	private List<JournalBlock> resumeBlocks() throws Exception {
+		List<JournalBlock> resumed = new ArrayList<JournalBlock>();
+		if (journal == null || journal.getBlocks().isEmpty()) {
+			return resumed;
+		}
+		Map<String, Long> uncommitted = new HashMap<String, Long>();
+		try {
+			for (BlockEntry entry : blob.downloadBlockList(BlockListingFilter.UNCOMMITTED, null, null, null)) {
+				uncommitted.put(entry.getId(), entry.getSize());
+			}
+		} catch (StorageException e) {
+			if (e.getHttpStatusCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+				throw e;
+			}
+			// no blob, so nothing was staged that could be resumed
+		}
+		long covered = 0;
+		for (JournalBlock block : journal.getBlocks()) {
+			Long size = uncommitted.get(block.getBlockId());
+			if (block.getOffset() < covered || size == null || size.longValue() != block.getSize()
+					|| block.getOffset() + block.getSize() > length
+					|| !block.getMd5().equals(getMd5(readBlock(block.getOffset(), (int) block.getSize())))) {
+				continue;
+			}
+			resumed.add(block);
+			covered = block.getOffset() + block.getSize();
+		}
+		journal.retain(resumed);
+		return resumed;
+	}
+
+	private Callable<Void> createTask(final Block block) {
+		return new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				byte[] buffer = readBlock(block.offset, (int) block.size);
+				String blockId = getBlockId(block.offset);
+				blob.uploadBlock(blockId, new ByteArrayInputStream(buffer), buffer.length);
+				if (journal != null) {
+					journal.blockStaged(new JournalBlock(block.offset, buffer.length, blockId, getMd5(buffer)));
+				}
+				return null;
+			}
+		};
+	}
+
+	private byte[] readBlock(long offset, int size) throws IOException {
+		byte[] buffer = new byte[size];
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			in.seek(offset);
+			in.readFully(buffer);
+		} finally {
+			in.close();
+		}
+		return buffer;
+	}
+
+	private static String getMd5(byte[] buffer) throws NoSuchAlgorithmException {
+		return Base64.encode(MessageDigest.getInstance("MD5").digest(buffer));
+	}
+
+	private synchronized void blockSent(long size) {
+		bytesSent += size;
+		int percent = length == 0 ? 100 : (int) (bytesSent * 100 / length);
+		if (notifier != null && percent > percentSent) {
+			// notifier takes the step, not the total
+			notifier.notifyProgress(percent - percentSent);
+		}
+		percentSent = percent;
+	}
+
+	public synchronized long getBytesSent() {
+		return bytesSent;
+	}
+
+	/**
+	 * Throttling, server timeouts and network errors are worth retrying with smaller parameters.
+	 */
+	private static boolean isTransient(Exception e) {
+		if (e instanceof StorageException) {
+			int status = ((StorageException) e).getHttpStatusCode();
+			if (status == HttpURLConnection.HTTP_UNAVAILABLE
+					|| status == HttpURLConnection.HTTP_INTERNAL_ERROR
+					|| status == HttpURLConnection.HTTP_CLIENT_TIMEOUT
+					|| status == -1) {
+				return true;
+			}
+			return e.getCause() instanceof IOException;
+		}
+		return e instanceof IOException;
+	}
+
+	/**
+	 * Block ids of one blob must all have the same length; the id is derived from the
+	 * block offset so that a range staged again in smaller pieces keeps distinct ids.
+	 */
+	private static String getBlockId(long offset) {
+		try {
+			return Base64.encode(String.format("block-%016d", offset).getBytes("UTF-8"));
+		} catch (IOException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class Block {
+		final long offset;
+		final long size;
+		int attempts;
+		int generation;
+
+		Block(long offset, long size, int attempts) {
+			this.offset = offset;
+			this.size = size;
+			this.attempts = attempts;
+		}
+	}
+}
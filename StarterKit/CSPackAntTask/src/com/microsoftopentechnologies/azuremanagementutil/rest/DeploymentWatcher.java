@@ -0,0 +1,170 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.microsoftopentechnologies.azuremanagementutil.rest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.windowsazure.management.compute.models.DeploymentGetResponse;
+import com.microsoft.windowsazure.management.compute.models.DeploymentStatus;
+import com.microsoft.windowsazure.management.compute.models.RoleInstance;
+import com.microsoftopentechnologies.azuremanagementutil.model.InstanceStatus;
+
+/**
+ * Waits for a new deployment to be ready, tracking the status of every role instance.
+ * <p>
+ * The deployment is polled every 2 seconds at first. While no instance changes its status the interval doubles,
+ * up to 30 seconds, and it starts over after every change. The deployment is ready once it has instances,
+ * all of them are ReadyRole and the deployment is no longer transitioning; it failed as soon as any instance
+ * is cycling, unresponsive or failed to start, if it has no instances once it is no longer starting, or if it
+ * is not ready before the timeout.
+ */
+public class DeploymentWatcher {
+
+	private static final long MIN_POLL_INTERVAL = 2000;
+	private static final long MAX_POLL_INTERVAL = 30000;
+	/** default time to wait for the instances, in minutes */
+	public static final long DEFAULT_TIMEOUT = 60;
+
+	/**
+	 * Receives the status changes of role instances, including the first status seen for each instance.
+	 */
+	public interface Listener {
+		void instanceStatusChanged(String roleName, String instanceName, String oldStatus, String newStatus);
+	}
+
+	private final Callable<DeploymentGetResponse> deploymentSource;
+	private final Listener listener;
+	private final long timeout;
+	/** last status of every instance, by role and instance name */
+	private final Map<String, String> statuses = new TreeMap<String, String>();
+
+	/**
+	 * @param deploymentSource - gets the current state of the deployment
+	 * @param listener - receives instance status changes, may be null
+	 */
+	public DeploymentWatcher(Callable<DeploymentGetResponse> deploymentSource, Listener listener) {
+		this(deploymentSource, listener, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * @param deploymentSource - gets the current state of the deployment
+	 * @param listener - receives instance status changes, may be null
+	 * @param timeout - time to wait for the instances to be ready, in minutes
+	 */
+	public DeploymentWatcher(Callable<DeploymentGetResponse> deploymentSource, Listener listener, long timeout) {
+		this.deploymentSource = deploymentSource;
+		this.listener = listener;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @return - the deployment as it was when it became ready
+	 * @throws Exception - with the status of the first failed instance as message, if the deployment has no instances
+	 * or is not ready before the timeout, or if the deployment cannot be read
+	 * @throws InterruptedException - if the waiting thread is interrupted, e.g. to cancel the deployment
+	 */
+	public DeploymentGetResponse waitUntilReady() throws Exception {
+		long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(timeout);
+		long interval = MIN_POLL_INTERVAL;
+		while (true) {
+			DeploymentGetResponse deployment = deploymentSource.call();
+			boolean changed = update(deployment.getRoleInstances());
+			String failedStatus = getFailedStatus(deployment.getRoleInstances());
+			if (failedStatus != null) {
+				throw new Exception(failedStatus);
+			}
+			if (isReady(deployment)) {
+				return deployment;
+			}
+			if (statuses.isEmpty() && !isStarting(deployment)) {
+				throw new Exception("The deployment has no role instances");
+			}
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				throw new Exception(String.format(
+						"Timed out after %d minutes waiting for the role instances to be ready, last statuses: %s",
+						timeout, statuses));
+			}
+			interval = changed ? MIN_POLL_INTERVAL : Math.min(interval * 2, MAX_POLL_INTERVAL);
+			Thread.sleep(Math.min(interval, remaining));
+		}
+	}
+
+	private boolean update(List<RoleInstance> instances) {
+		boolean changed = false;
+		if (instances == null) {
+			return changed;
+		}
+		for (RoleInstance instance : instances) {
+			String key = instance.getRoleName() + "/" + instance.getInstanceName();
+			String status = instance.getInstanceStatus();
+			String oldStatus = statuses.put(key, status);
+			if (status != null && !status.equals(oldStatus)) {
+				changed = true;
+				if (listener != null) {
+					listener.instanceStatusChanged(instance.getRoleName(), instance.getInstanceName(), oldStatus, status);
+				}
+			}
+		}
+		return changed;
+	}
+
+	private static String getFailedStatus(List<RoleInstance> instances) {
+		if (instances == null) {
+			return null;
+		}
+		for (RoleInstance instance : instances) {
+			String status = instance.getInstanceStatus();
+			if (InstanceStatus.CyclingRole.getInstanceStatus().equals(status)
+					|| InstanceStatus.FailedStartingVM.getInstanceStatus().equals(status)
+					|| InstanceStatus.UnresponsiveRole.getInstanceStatus().equals(status)) {
+				return status;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isReady(DeploymentGetResponse deployment) {
+		List<RoleInstance> instances = deployment.getRoleInstances();
+		if (instances == null || instances.isEmpty()) {
+			return false;
+		}
+		for (RoleInstance instance : instances) {
+			if (!InstanceStatus.ReadyRole.getInstanceStatus().equals(instance.getInstanceStatus())) {
+				return false;
+			}
+		}
+		return !isTransitioning(deployment);
+	}
+
+	private static boolean isTransitioning(DeploymentGetResponse deployment) {
+		DeploymentStatus deploymentStatus = deployment.getStatus();
+		return DeploymentStatus.RunningTransitioning.equals(deploymentStatus)
+				|| DeploymentStatus.SuspendedTransitioning.equals(deploymentStatus);
+	}
+
+	/** whether the deployment may not have its instances yet */
+	private static boolean isStarting(DeploymentGetResponse deployment) {
+		DeploymentStatus deploymentStatus = deployment.getStatus();
+		return isTransitioning(deployment)
+				|| DeploymentStatus.Deploying.equals(deploymentStatus)
+				|| DeploymentStatus.Starting.equals(deploymentStatus);
+	}
+}
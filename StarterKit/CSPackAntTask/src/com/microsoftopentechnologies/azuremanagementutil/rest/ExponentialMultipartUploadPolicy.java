@@ -18,9 +18,13 @@ package com.microsoftopentechnologies.azuremanagementutil.rest;
 public class ExponentialMultipartUploadPolicy implements MultipartUploadRetryPolicy {
 
 	private MultipartUploadParameters parameters;
+	private final int maxThreadpoolSize;
+	private final int maxChunkSize;
 	
 	public ExponentialMultipartUploadPolicy(int maxThreadpoolSize) {
 		parameters = new MultipartUploadParameters(maxThreadpoolSize);
+		this.maxThreadpoolSize = maxThreadpoolSize;
+		this.maxChunkSize = parameters.getChunkSize();
 	}
 	
 	/**
@@ -41,13 +45,29 @@ public class ExponentialMultipartUploadPolicy implements MultipartUploadRetryPol
 	@Override
 	public boolean canDecreaseParameters() {
 	
-		if (parameters.getThreadpoolSize() == 1) {
+		if (parameters.getThreadpoolSize() <= 1) {
 			return false;
 		}
 		
 		return true;
 	}
 
+	/**
+	 * this implementation doubles both parameters at once, up to their initial values
+	 */
+	@Override
+	public MultipartUploadParameters increaseParameters() {
+		parameters.setChunkSize(Math.min(parameters.getChunkSize() * 2, maxChunkSize));
+		parameters.setThreadpoolSize(Math.min(parameters.getThreadpoolSize() * 2, maxThreadpoolSize));
+		return parameters;
+	}
+
+	@Override
+	public boolean canIncreaseParameters() {
+		return parameters.getThreadpoolSize() < maxThreadpoolSize
+				|| parameters.getChunkSize() < maxChunkSize;
+	}
+
 	@Override
 	public MultipartUploadParameters getMultipartUploadParameters() {
 		return parameters;
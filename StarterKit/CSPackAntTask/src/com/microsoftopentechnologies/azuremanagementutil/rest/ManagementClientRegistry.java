@@ -0,0 +1,294 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.microsoftopentechnologies.azuremanagementutil.rest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.HttpClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+
+import com.microsoft.windowsazure.Configuration;
+import com.microsoft.windowsazure.core.pipeline.apache.ApacheConfigurationProperties;
+import com.microsoft.windowsazure.credentials.CloudCredentials;
+import com.microsoft.windowsazure.management.ManagementClient;
+import com.microsoft.windowsazure.management.ManagementService;
+import com.microsoft.windowsazure.management.compute.ComputeManagementClient;
+import com.microsoft.windowsazure.management.compute.ComputeManagementService;
+import com.microsoft.windowsazure.management.configuration.ManagementConfiguration;
+import com.microsoft.windowsazure.management.storage.StorageManagementClient;
+import com.microsoft.windowsazure.management.storage.StorageManagementService;
+
+/**
+ * Management clients shared by all the REST calls made with the same subscription configuration.
+ * <p>
+ * The clients of a configuration share one pool of connections, sized for the calls the account
+ * loading tasks and the publish steps make in parallel, so that the calls reuse open connections
+ * instead of authenticating new ones with the management certificate. Clients are kept until they
+ * are closed with {@link #close(Configuration)} at the end of an Ant task or {@link #closeAll()} when
+ * the plugin stops; the clients of a configuration no longer in use are closed on a later call.
+ * The pool counts the requests it serves and the connections it opens for them, so callers can
+ * report how often connections were reused.
+ */
+public final class ManagementClientRegistry {
+
+	// all the management calls of a subscription go to the same host
+	private static final int MAX_CONNECTIONS_PER_ROUTE = 16;
+	private static final int MAX_CONNECTIONS = 32;
+
+	/** The clients of a configuration, created on first use, closed once the configuration is collected. */
+	private static final class Clients extends WeakReference<Configuration> {
+		private final CountingConnectionManager connections;
+		private ManagementClient management;
+		private ComputeManagementClient compute;
+		private StorageManagementClient storage;
+
+		private Clients(Configuration configuration, CountingConnectionManager connections) {
+			super(configuration, COLLECTED);
+			this.connections = connections;
+		}
+
+		private List<Closeable> all() {
+			List<Closeable> clients = new ArrayList<Closeable>();
+			if (management != null) {
+				clients.add(management);
+			}
+			if (compute != null) {
+				clients.add(compute);
+			}
+			if (storage != null) {
+				clients.add(storage);
+			}
+			return clients;
+		}
+	}
+
+	private static final ReferenceQueue<Configuration> COLLECTED = new ReferenceQueue<Configuration>();
+
+	// configurations do not override equals, so they are compared by identity
+	private static final Map<Configuration, Clients> CLIENTS = new WeakHashMap<Configuration, Clients>();
+
+	/** Connection pool which counts the requests asking for a connection and the connections opened. */
+	private static final class CountingConnectionManager extends PoolingHttpClientConnectionManager {
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong opened = new AtomicLong();
+
+		private CountingConnectionManager(Registry<ConnectionSocketFactory> socketFactories) {
+			super(socketFactories);
+		}
+
+		@Override
+		public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+			// every request asks for a connection
+			requests.incrementAndGet();
+			return super.requestConnection(route, state);
+		}
+
+		@Override
+		public void connect(HttpClientConnection connection, HttpRoute route, int connectTimeout,
+				HttpContext context) throws IOException {
+			// only called for a leased connection which is not open yet
+			super.connect(connection, route, connectTimeout, context);
+			opened.incrementAndGet();
+		}
+	}
+
+	private ManagementClientRegistry() {
+	}
+
+	public static ManagementClient getManagementClient(Configuration configuration) {
+		synchronized (CLIENTS) {
+			Clients clients = getClients(configuration);
+			if (clients.management == null) {
+				clients.management = ManagementService.create(configuration);
+			}
+			return clients.management;
+		}
+	}
+
+	public static ComputeManagementClient getComputeClient(Configuration configuration) {
+		synchronized (CLIENTS) {
+			Clients clients = getClients(configuration);
+			if (clients.compute == null) {
+				clients.compute = ComputeManagementService.create(configuration);
+			}
+			return clients.compute;
+		}
+	}
+
+	public static StorageManagementClient getStorageClient(Configuration configuration) {
+		synchronized (CLIENTS) {
+			Clients clients = getClients(configuration);
+			if (clients.storage == null) {
+				clients.storage = StorageManagementService.create(configuration);
+			}
+			return clients.storage;
+		}
+	}
+
+	private static Clients getClients(Configuration configuration) {
+		closeCollected();
+		Clients clients = CLIENTS.get(configuration);
+		if (clients == null) {
+			clients = new Clients(configuration, createConnectionManager(configuration));
+			CLIENTS.put(configuration, clients);
+		}
+		return clients;
+	}
+
+	/**
+	 * Creates the pool of connections shared by the clients of the configuration.
+	 * A connection manager set on the configuration replaces the socket factory which
+	 * presents the management certificate, so the pool is given that factory.
+	 */
+	private static CountingConnectionManager createConnectionManager(Configuration configuration) {
+		Object connections = configuration.getProperty(ApacheConfigurationProperties.PROPERTY_CONNECTION_MANAGER);
+		if (connections instanceof HttpClientConnectionManager) {
+			// configured by the caller, who owns it
+			return null;
+		}
+		Object credentials = configuration.getProperty(ManagementConfiguration.SUBSCRIPTION_CLOUD_CREDENTIALS);
+		if (credentials instanceof CloudCredentials) {
+			((CloudCredentials) credentials).applyConfig("", configuration.getProperties());
+		}
+		Object sslSocketFactory = configuration.getProperty(
+				ApacheConfigurationProperties.PROPERTY_SSL_CONNECTION_SOCKET_FACTORY);
+		CountingConnectionManager pool = new CountingConnectionManager(
+				RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory())
+				.register("https", sslSocketFactory instanceof LayeredConnectionSocketFactory
+						? (LayeredConnectionSocketFactory) sslSocketFactory
+						: SSLConnectionSocketFactory.getSocketFactory())
+				.build());
+		pool.setMaxTotal(MAX_CONNECTIONS);
+		pool.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+		configuration.setProperty(ApacheConfigurationProperties.PROPERTY_CONNECTION_MANAGER, pool);
+		return pool;
+	}
+
+	/**
+	 * Closes the clients of the configurations which have been garbage collected without being closed.
+	 */
+	private static void closeCollected() {
+		Clients clients;
+		while ((clients = (Clients) COLLECTED.poll()) != null) {
+			close(clients);
+		}
+	}
+
+	/**
+	 * Closes the clients of the configuration, the next call creates new ones.
+	 * @param configuration
+	 */
+	public static void close(Configuration configuration) {
+		if (configuration == null) {
+			return;
+		}
+		Clients clients;
+		synchronized (CLIENTS) {
+			clients = CLIENTS.remove(configuration);
+			if (clients != null) {
+				clients.clear();
+				if (clients.connections != null) {
+					configuration.getProperties().remove(ApacheConfigurationProperties.PROPERTY_CONNECTION_MANAGER);
+				}
+			}
+		}
+		if (clients != null) {
+			close(clients);
+		}
+		synchronized (CLIENTS) {
+			closeCollected();
+		}
+	}
+
+	/**
+	 * Closes the clients of all the configurations.
+	 */
+	public static void closeAll() {
+		List<Clients> all = new ArrayList<Clients>();
+		synchronized (CLIENTS) {
+			for (Map.Entry<Configuration, Clients> entry : CLIENTS.entrySet()) {
+				Clients clients = entry.getValue();
+				clients.clear();
+				if (clients.connections != null) {
+					entry.getKey().getProperties().remove(ApacheConfigurationProperties.PROPERTY_CONNECTION_MANAGER);
+				}
+				all.add(clients);
+			}
+			CLIENTS.clear();
+			closeCollected();
+		}
+		for (Clients clients : all) {
+			close(clients);
+		}
+	}
+
+	private static void close(Clients clients) {
+		for (Closeable client : clients.all()) {
+			try {
+				client.close();
+			} catch (IOException e) {
+				// the connections are released anyway
+			}
+		}
+		if (clients.connections != null) {
+			// in case no client was created
+			clients.connections.shutdown();
+		}
+	}
+
+	/**
+	 * Number of requests sent with the connections of the configuration; 0 if the caller
+	 * configured its own connection manager or the clients have been closed.
+	 * @param configuration
+	 */
+	public static long getRequestCount(Configuration configuration) {
+		synchronized (CLIENTS) {
+			Clients clients = CLIENTS.get(configuration);
+			return clients == null || clients.connections == null ? 0 : clients.connections.requests.get();
+		}
+	}
+
+	/**
+	 * Number of connections opened for the requests of {@link #getRequestCount(Configuration)};
+	 * the other requests reused an open connection.
+	 * @param configuration
+	 */
+	public static long getOpenedConnectionCount(Configuration configuration) {
+		synchronized (CLIENTS) {
+			Clients clients = CLIENTS.get(configuration);
+			return clients == null || clients.connections == null ? 0 : clients.connections.opened.get();
+		}
+	}
+}
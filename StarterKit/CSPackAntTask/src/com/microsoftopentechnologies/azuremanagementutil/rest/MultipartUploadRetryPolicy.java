@@ -28,6 +28,17 @@ public interface MultipartUploadRetryPolicy {
 	 */
 	public boolean canDecreaseParameters();
 	
+	/**
+	 * this method implements the increase logic, used after sustained success
+	 */
+	public MultipartUploadParameters increaseParameters();
+	
+	/**
+	 * 
+	 * @return - returns whether or not the parameters are below their initial values
+	 */
+	public boolean canIncreaseParameters();
+	
 	/**
 	 * @return - the current upload parameters set
 	 */
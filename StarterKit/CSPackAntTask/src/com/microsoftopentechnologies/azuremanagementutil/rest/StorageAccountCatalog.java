@@ -0,0 +1,177 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.microsoftopentechnologies.azuremanagementutil.rest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.microsoft.windowsazure.Configuration;
+import com.microsoft.windowsazure.management.storage.models.StorageAccount;
+import com.microsoftopentechnologies.azuremanagementutil.model.StorageService;
+import com.microsoftopentechnologies.azuremanagementutil.task.LoadStorageServiceTask;
+
+/**
+ * The storage accounts of a subscription, as listed by a single REST call.
+ * <p>
+ * Names and properties are available right away and indexed by name ignoring case; the keys of an account
+ * are loaded on first use and kept. Keys of several accounts are loaded in parallel on a pool shared by all
+ * catalogs, so listing many subscriptions at once does not start a thread per account.
+ */
+public class StorageAccountCatalog {
+
+	private static final int MAX_KEY_LOADERS = 8;
+	private static final long KEY_LOAD_TIMEOUT = 60;
+
+	private static final ThreadPoolExecutor KEY_LOADERS = new ThreadPoolExecutor(MAX_KEY_LOADERS, MAX_KEY_LOADERS,
+			60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Storage account keys");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	static {
+		KEY_LOADERS.allowCoreThreadTimeOut(true);
+	}
+
+	private final Configuration configuration;
+	// by lower case name, in the order listed
+	private final Map<String, StorageAccount> accounts = new LinkedHashMap<String, StorageAccount>();
+	private final Map<String, StorageService> loaded = new HashMap<String, StorageService>();
+
+	public StorageAccountCatalog(Configuration configuration, List<StorageAccount> storageAccounts) {
+		this.configuration = configuration;
+		if (storageAccounts != null) {
+			for (StorageAccount storageAccount : storageAccounts) {
+				String key = storageAccount.getName().toLowerCase(Locale.ENGLISH);
+				if (!accounts.containsKey(key)) {
+					accounts.put(key, storageAccount);
+				}
+			}
+		}
+	}
+
+	public boolean contains(String name) {
+		return name != null && accounts.containsKey(name.toLowerCase(Locale.ENGLISH));
+	}
+
+	public List<String> getNames() {
+		List<String> names = new ArrayList<String>();
+		for (StorageAccount storageAccount : accounts.values()) {
+			names.add(storageAccount.getName());
+		}
+		return names;
+	}
+
+	/**
+	 * Returns the account with its keys, loading them if needed.
+	 * @param name
+	 * @return account, null if the subscription has no account of this name
+	 * @throws Exception
+	 */
+	public StorageService getStorageService(String name) throws Exception {
+		if (!contains(name)) {
+			return null;
+		}
+		String key = name.toLowerCase(Locale.ENGLISH);
+		synchronized (loaded) {
+			StorageService storageService = loaded.get(key);
+			if (storageService != null) {
+				return storageService;
+			}
+		}
+		StorageService storageService = createTask(accounts.get(key)).call();
+		synchronized (loaded) {
+			loaded.put(key, storageService);
+		}
+		return storageService;
+	}
+
+	/**
+	 * Returns all the accounts with their keys, loading the missing keys in parallel.
+	 * @return accounts in the order listed
+	 * @throws Exception
+	 */
+	public List<StorageService> getStorageServices() throws Exception {
+		Map<String, Future<StorageService>> pending = new LinkedHashMap<String, Future<StorageService>>();
+		// the shared threads load the azure libraries with the caller's class loader
+		final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		synchronized (loaded) {
+			for (Map.Entry<String, StorageAccount> entry : accounts.entrySet()) {
+				if (!loaded.containsKey(entry.getKey())) {
+					final LoadStorageServiceTask task = createTask(entry.getValue());
+					pending.put(entry.getKey(), KEY_LOADERS.submit(new Callable<StorageService>() {
+						public StorageService call() throws Exception {
+							Thread thread = Thread.currentThread();
+							ClassLoader previous = thread.getContextClassLoader();
+							thread.setContextClassLoader(classLoader);
+							try {
+								return task.call();
+							} finally {
+								thread.setContextClassLoader(previous);
+							}
+						}
+					}));
+				}
+			}
+		}
+		try {
+			for (Map.Entry<String, Future<StorageService>> entry : pending.entrySet()) {
+				// Get will block until time expires or until task completes
+				StorageService storageService = entry.getValue().get(KEY_LOAD_TIMEOUT, TimeUnit.SECONDS);
+				synchronized (loaded) {
+					loaded.put(entry.getKey(), storageService);
+				}
+			}
+		} catch (TimeoutException timeoutException) {
+			throw new Exception("Timed out occurred while getting storage services information, please try again",
+					timeoutException);
+		} catch (ExecutionException e) {
+			throw new Exception("Exception when getting storage services", e.getCause());
+		} finally {
+			for (Future<StorageService> future : pending.values()) {
+				future.cancel(true);
+			}
+		}
+		List<StorageService> storageServices = new ArrayList<StorageService>();
+		synchronized (loaded) {
+			for (String key : accounts.keySet()) {
+				storageServices.add(loaded.get(key));
+			}
+		}
+		return storageServices;
+	}
+
+	private LoadStorageServiceTask createTask(StorageAccount storageAccount) {
+		LoadStorageServiceTask storage = new LoadStorageServiceTask();
+		storage.setConfiguration(configuration);
+		storage.setStorageAccount(storageAccount);
+		return storage;
+	}
+}
@@ -0,0 +1,198 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.microsoftopentechnologies.azuremanagementutil.rest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Append-only record of the blocks staged for one blob upload.
+ * <p>
+ * The first line is the uri of the target blob; every following line describes a staged block as
+ * "offset size blockId md5". A journal written for another blob is discarded, and a line cut short by a crash
+ * is ignored, so an interrupted upload can always be resumed from what was recorded.
+ * The file itself is usually rebuilt before the upload is retried, so the journal does not depend on its
+ * size or modification time: a block is only reused while the MD5 recorded for it matches the content
+ * at its offset, which keeps the unchanged blocks of a rebuilt package.
+ */
+public class UploadJournal {
+
+	private final File file;
+	private final String fingerprint;
+	private final SortedMap<Long, JournalBlock> blocks = new TreeMap<Long, JournalBlock>();
+	private OutputStream out;
+	private boolean closed;
+
+	/**
+	 * @param file - journal file
+	 * @param blobUri - uri of the target blob
+	 */
+	public UploadJournal(File file, String blobUri) {
+		this.file = file;
+		this.fingerprint = blobUri;
+		load();
+	}
+
+	/**
+	 * Returns the journal file for uploads of the given file. It is kept in the temporary directory,
+	 * because the directory of the file, e.g. the deploy directory of a package, is recreated by every build.
+	 */
+	public static File getJournalFile(File source) {
+		String path = source.getAbsolutePath();
+		// file names differing in case are the same file on Windows
+		String key = Integer.toHexString(path.toLowerCase(Locale.ENGLISH).hashCode());
+		return new File(System.getProperty("java.io.tmpdir"), source.getName() + "-" + key + ".upload");
+	}
+
+	private void load() {
+		if (!file.isFile()) {
+			return;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			if (!fingerprint.equals(reader.readLine())) {
+				return;
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] parts = line.split(" ");
+				if (parts.length != 4) {
+					continue;
+				}
+				try {
+					long offset = Long.parseLong(parts[0]);
+					// a later line for the same offset replaces the earlier one
+					blocks.put(offset, new JournalBlock(offset, Long.parseLong(parts[1]), parts[2], parts[3]));
+				} catch (NumberFormatException e) {
+					// partially written line
+				}
+			}
+		} catch (IOException e) {
+			// unreadable journal is the same as no journal
+			blocks.clear();
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return - blocks recorded by earlier attempts, ordered by offset
+	 */
+	public synchronized Collection<JournalBlock> getBlocks() {
+		return blocks.values();
+	}
+
+	/**
+	 * Records a block as staged. The first call of an upload starts the journal over,
+	 * keeping only the blocks that were resumed. Blocks finishing after {@link #close()} are not recorded.
+	 */
+	public synchronized void blockStaged(JournalBlock block) throws IOException {
+		if (closed) {
+			return;
+		}
+		blocks.put(block.getOffset(), block);
+		if (out == null) {
+			out = new FileOutputStream(file);
+			StringBuilder content = new StringBuilder(fingerprint).append('\n');
+			for (JournalBlock staged : blocks.values()) {
+				content.append(staged).append('\n');
+			}
+			out.write(content.toString().getBytes("UTF-8"));
+		} else {
+			out.write((block + "\n").getBytes("UTF-8"));
+		}
+		out.flush();
+	}
+
+	/**
+	 * Keeps only the given blocks, e.g. the ones still present on the blob.
+	 */
+	public synchronized void retain(Collection<JournalBlock> resumed) {
+		blocks.values().retainAll(resumed);
+	}
+
+	public synchronized void close() {
+		closed = true;
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 * Removes the journal once the block list is committed.
+	 */
+	public synchronized void delete() {
+		close();
+		file.delete();
+		blocks.clear();
+	}
+
+	public static class JournalBlock {
+		private final long offset;
+		private final long size;
+		private final String blockId;
+		private final String md5;
+
+		public JournalBlock(long offset, long size, String blockId, String md5) {
+			this.offset = offset;
+			this.size = size;
+			this.blockId = blockId;
+			this.md5 = md5;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public String getBlockId() {
+			return blockId;
+		}
+
+		public String getMd5() {
+			return md5;
+		}
+
+		@Override
+		public String toString() {
+			return offset + " " + size + " " + blockId + " " + md5;
+		}
+	}
+}
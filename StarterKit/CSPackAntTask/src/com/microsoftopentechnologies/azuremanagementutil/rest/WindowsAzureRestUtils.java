@@ -29,9 +29,7 @@ import com.microsoft.windowsazure.core.OperationStatusResponse;
 import com.microsoft.windowsazure.core.utils.KeyStoreType;
 import com.microsoft.windowsazure.exception.ServiceException;
 import com.microsoft.windowsazure.management.ManagementClient;
-import com.microsoft.windowsazure.management.ManagementService;
 import com.microsoft.windowsazure.management.compute.ComputeManagementClient;
-import com.microsoft.windowsazure.management.compute.ComputeManagementService;
 import com.microsoft.windowsazure.management.compute.models.DeploymentCreateParameters;
 import com.microsoft.windowsazure.management.compute.models.DeploymentGetResponse;
 import com.microsoft.windowsazure.management.compute.models.DeploymentSlot;
@@ -50,7 +48,6 @@ import com.microsoft.windowsazure.management.models.AffinityGroupListResponse;
 import com.microsoft.windowsazure.management.models.LocationsListResponse;
 import com.microsoft.windowsazure.management.models.SubscriptionGetResponse;
 import com.microsoft.windowsazure.management.storage.StorageManagementClient;
-import com.microsoft.windowsazure.management.storage.StorageManagementService;
 import com.microsoft.windowsazure.management.storage.models.CheckNameAvailabilityResponse;
 import com.microsoft.windowsazure.management.storage.models.StorageAccountCreateParameters;
 import com.microsoft.windowsazure.management.storage.models.StorageAccountGetKeysResponse;
@@ -140,7 +137,7 @@ public class WindowsAzureRestUtils {
 	public static SubscriptionGetResponse getSubscription(Configuration configuration)
 			throws ServiceException, Exception {
 		try {
-			ManagementClient client = ManagementService.create(configuration);
+			ManagementClient client = ManagementClientRegistry.getManagementClient(configuration);
 			SubscriptionGetResponse response = client.getSubscriptionsOperations().get();
 			return response;
 		} catch (ServiceException ex) {
@@ -153,7 +150,7 @@ public class WindowsAzureRestUtils {
 	public static HostedServiceListResponse getHostedServices(Configuration configuration)
 			throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			HostedServiceListResponse response = client.getHostedServicesOperations().list();
 			return response;
 		} catch (ServiceException ex) {
@@ -166,7 +163,7 @@ public class WindowsAzureRestUtils {
 	public static LocationsListResponse getLocations(Configuration configuration)
 			throws ServiceException, Exception {
 		try {
-			ManagementClient client = ManagementService.create(configuration);
+			ManagementClient client = ManagementClientRegistry.getManagementClient(configuration);
 			LocationsListResponse response = client.getLocationsOperations().list();
 			return response;
 		} catch (ServiceException ex) {
@@ -179,7 +176,7 @@ public class WindowsAzureRestUtils {
 	public static StorageAccountListResponse getStorageServices(Configuration configuration)
 			throws ServiceException, Exception {
 		try {
-			StorageManagementClient client = StorageManagementService.create(configuration);
+			StorageManagementClient client = ManagementClientRegistry.getStorageClient(configuration);
 			StorageAccountListResponse response = client.getStorageAccountsOperations().list();
 			return response;
 		} catch (ServiceException ex) {
@@ -192,7 +189,7 @@ public class WindowsAzureRestUtils {
 	public static StorageAccountGetKeysResponse getStorageKeys(Configuration configuration, String serviceName)
 			throws ServiceException, Exception {
 		try {
-			StorageManagementClient client = StorageManagementService.create(configuration);
+			StorageManagementClient client = ManagementClientRegistry.getStorageClient(configuration);
 			StorageAccountGetKeysResponse response = client.getStorageAccountsOperations().getKeys(serviceName);
 			return response;
 		} catch (ServiceException ex) {
@@ -212,7 +209,7 @@ public class WindowsAzureRestUtils {
 				}
 			}
 			
-			StorageManagementClient client = StorageManagementService.create(configuration);
+			StorageManagementClient client = ManagementClientRegistry.getStorageClient(configuration);
 			OperationStatusResponse response = client.getStorageAccountsOperations().create(accountParameters);
 			return response;
 		} catch (ServiceException ex) {
@@ -225,7 +222,7 @@ public class WindowsAzureRestUtils {
 	public static StorageAccountGetResponse getStorageAccount(Configuration configuration, String serviceName)
 			throws ServiceException, Exception {
 		try {
-			StorageManagementClient client = StorageManagementService.create(configuration);
+			StorageManagementClient client = ManagementClientRegistry.getStorageClient(configuration);
 			StorageAccountGetResponse response = client.getStorageAccountsOperations().get(serviceName);
 			return response;
 		} catch (ServiceException ex) {
@@ -238,7 +235,7 @@ public class WindowsAzureRestUtils {
 	public static CheckNameAvailabilityResponse checkStorageNameAvailability(Configuration configuration, String storageAccountName)
 			throws ServiceException, Exception {
 		try {
-			StorageManagementClient client = StorageManagementService.create(configuration);
+			StorageManagementClient client = ManagementClientRegistry.getStorageClient(configuration);
 			CheckNameAvailabilityResponse response = client.getStorageAccountsOperations().checkNameAvailability(storageAccountName);
 			return response;
 		} catch (ServiceException ex) {
@@ -251,7 +248,7 @@ public class WindowsAzureRestUtils {
 	public static HostedServiceGetDetailedResponse getHostedServicesDetailed(Configuration configuration, String serviceName)
 			throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			HostedServiceGetDetailedResponse response = client.getHostedServicesOperations().getDetailed(serviceName);
 			return response;
 		} catch (ServiceException ex) {
@@ -264,7 +261,7 @@ public class WindowsAzureRestUtils {
 	public static OperationResponse createHostedService(Configuration configuration, HostedServiceCreateParameters hostedServiceCreateParameters)
 			throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			OperationResponse response = client.getHostedServicesOperations().create(hostedServiceCreateParameters);
 			return response;
 		} catch (ServiceException ex) {
@@ -277,7 +274,7 @@ public class WindowsAzureRestUtils {
 	public static HostedServiceCheckNameAvailabilityResponse checkHostedServiceNameAvailability(Configuration configuration, String hostedServiceName)
 			throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			HostedServiceCheckNameAvailabilityResponse response = client.getHostedServicesOperations().checkNameAvailability(hostedServiceName);
 			return response;
 		} catch (ServiceException ex) {
@@ -290,7 +287,7 @@ public class WindowsAzureRestUtils {
 	public static DeploymentGetResponse getDeployment(Configuration configuration, String serviceName, String deploymentName)
 			throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			DeploymentGetResponse response = client.getDeploymentsOperations().getByName(serviceName, deploymentName);
 			return response;
 		} catch (ServiceException ex) {
@@ -303,7 +300,7 @@ public class WindowsAzureRestUtils {
 	public static DeploymentGetResponse getDeploymentBySlot(Configuration configuration, String serviceName, DeploymentSlot deploymentSlot)
 			throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			DeploymentGetResponse response = client.getDeploymentsOperations().getBySlot(serviceName, deploymentSlot);
 			return response;
 		} catch (ServiceException ex) {
@@ -316,7 +313,7 @@ public class WindowsAzureRestUtils {
 	public static OperationResponse updateDeploymentStatus(Configuration configuration, String serviceName, String deploymentName,
 			DeploymentUpdateStatusParameters deploymentStatus) throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			OperationResponse response = client.getDeploymentsOperations().beginUpdatingStatusByDeploymentName(serviceName, deploymentName, deploymentStatus);
 			return response;
 		} catch (ServiceException ex) {
@@ -329,7 +326,7 @@ public class WindowsAzureRestUtils {
 	public static OperationResponse deleteDeployment(Configuration configuration, String serviceName, String deploymentName,
 			boolean deleteFromStorage) throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			OperationResponse response = client.getDeploymentsOperations().deleteByName(serviceName, deploymentName, deleteFromStorage);
 			return response;
 		} catch (ServiceException ex) {
@@ -346,7 +343,7 @@ public class WindowsAzureRestUtils {
 	public static OperationStatusResponse getOperationStatus(Configuration configuration, String requestId)
 			throws ServiceException, Exception {
 		try {
-			ManagementClient client = ManagementService.create(configuration);
+			ManagementClient client = ManagementClientRegistry.getManagementClient(configuration);
 			OperationStatusResponse response = client.getOperationStatus(requestId);
 			return response;
 		} catch (ServiceException ex) {
@@ -359,7 +356,7 @@ public class WindowsAzureRestUtils {
 	public static List<ServiceCertificateListResponse.Certificate> getCertificates(Configuration configuration, String serviceName)
 			throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			ServiceCertificateListResponse response = client.getServiceCertificatesOperations().list(serviceName);
 			return response.getCertificates();
 		} catch (ServiceException ex) {
@@ -372,7 +369,7 @@ public class WindowsAzureRestUtils {
 	public static OperationStatusResponse addCertificate(Configuration configuration, String serviceName, ServiceCertificateCreateParameters parameters)
 			throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			OperationStatusResponse response = client.getServiceCertificatesOperations().create(serviceName, parameters);
 			return response;
 		} catch (ServiceException ex) {
@@ -386,7 +383,7 @@ public class WindowsAzureRestUtils {
 			DeploymentCreateParameters parameters)
 					throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			OperationStatusResponse response = client.getDeploymentsOperations().create(serviceName, deploymentSlot, parameters);
 			return response;
 		} catch (ServiceException ex) {
@@ -406,7 +403,7 @@ public class WindowsAzureRestUtils {
 			String serviceName, DeploymentSlot deploymentSlot,
 			DeploymentUpgradeParameters parameters) throws ServiceException, Exception {
 		try {
-			ComputeManagementClient client = ComputeManagementService.create(configuration);
+			ComputeManagementClient client = ManagementClientRegistry.getComputeClient(configuration);
 			OperationStatusResponse response = client.getDeploymentsOperations().upgradeBySlot(serviceName, deploymentSlot, parameters);
 			return response;
 		} catch (ServiceException ex) {
@@ -425,7 +422,7 @@ public class WindowsAzureRestUtils {
 	public static AffinityGroupListResponse listAffinityGroups(Configuration configuration)
 			throws ServiceException, Exception {
 		try {
-			ManagementClient client = ManagementService.create(configuration);
+			ManagementClient client = ManagementClientRegistry.getManagementClient(configuration);
 			AffinityGroupListResponse response = client.getAffinityGroupsOperations().list();
 			return response;
 		} catch (ServiceException ex) {
@@ -20,12 +20,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 import com.microsoft.windowsazure.Configuration;
 import com.microsoft.windowsazure.core.OperationResponse;
@@ -51,7 +45,6 @@ import com.microsoft.windowsazure.management.models.LocationsListResponse;
 import com.microsoft.windowsazure.management.models.LocationsListResponse.Location;
 import com.microsoft.windowsazure.management.models.SubscriptionGetResponse;
 import com.microsoft.windowsazure.management.storage.models.CheckNameAvailabilityResponse;
-import com.microsoft.windowsazure.management.storage.models.StorageAccount;
 import com.microsoft.windowsazure.management.storage.models.StorageAccountCreateParameters;
 import com.microsoft.windowsazure.management.storage.models.StorageAccountGetKeysResponse;
 import com.microsoft.windowsazure.management.storage.models.StorageAccountGetResponse;
@@ -60,7 +53,6 @@ import com.microsoftopentechnologies.azuremanagementutil.exception.InvalidThumbp
 import com.microsoftopentechnologies.azuremanagementutil.model.ModelFactory;
 import com.microsoftopentechnologies.azuremanagementutil.model.StorageService;
 import com.microsoftopentechnologies.azuremanagementutil.model.Subscription;
-import com.microsoftopentechnologies.azuremanagementutil.task.LoadStorageServiceTask;
 
 
 public class WindowsAzureServiceManagement extends WindowsAzureServiceImpl {
@@ -119,55 +111,27 @@ public class WindowsAzureServiceManagement extends WindowsAzureServiceImpl {
 		return response;
 	}
 	
-	public synchronized List<StorageService> listStorageAccounts(Configuration configuration)
+	/**
+	 * Lists the storage accounts of the subscription with a single REST call,
+	 * their keys are loaded when needed.
+	 * @param configuration
+	 * @return
+	 * @throws Exception
+	 */
+	public StorageAccountCatalog getStorageAccountCatalog(Configuration configuration)
+			throws Exception {
+		StorageAccountListResponse response;
+		try {
+			response = WindowsAzureRestUtils.getStorageServices(configuration);
+		} catch (Exception ex) {
+			throw new Exception("Exception when getting storage services", ex);
+		}
+		return new StorageAccountCatalog(configuration, response.getStorageAccounts());
+	}
+
+	public List<StorageService> listStorageAccounts(Configuration configuration)
 			throws Exception, ServiceException {
-        List<StorageService> storageServices = new ArrayList<StorageService>();
-        StorageAccountListResponse response;
-        try {
-            response = WindowsAzureRestUtils.getStorageServices(configuration);
-        } catch (Exception ex) {
-        	throw new Exception("Exception when getting storage services", ex);
-        }
-        
-        if (response.getStorageAccounts() != null && response.getStorageAccounts().size() > 0) {
-	        ExecutorService executorService = Executors.newCachedThreadPool();
-	        
-	        List<Callable<StorageService>> taskList = new ArrayList<Callable<StorageService>>();
-	        
-	        // Prepare tasks for parallel execution
-	        for (StorageAccount ss : response.getStorageAccounts()) {
-	        	LoadStorageServiceTask storage = new LoadStorageServiceTask();
-	        	storage.setConfiguration(configuration);
-	        	storage.setStorageAccount(ss);
-	        	taskList.add(storage);
-	        }
-	        
-	        // Execute tasks
-	        // see if it is possible to gracefully ignore individual task failures
-	        try {
-	        	List<Future<StorageService>> taskResultList = null;
-				try {
-					taskResultList = executorService.invokeAll(taskList);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-				}
-	        	
-				if (taskResultList != null) {
-		        	for(Future<StorageService> taskResult : taskResultList) {
-		        		// Get will block until time expires or until task completes
-				    	StorageService storageService = taskResult.get(60, TimeUnit.SECONDS);
-				    	storageServices.add(storageService);
-		        	}
-				}
-	        } catch (TimeoutException timeoutException) {
-	        	throw new Exception("Timed out occurred while getting storage services information, please try again", timeoutException);
-	        } catch (Exception e) {
-	        	throw new Exception("Exception when getting storage services", e);
-	        } finally {
-	        	executorService.shutdown();
-	        }
-        }
-		return storageServices;
+		return getStorageAccountCatalog(configuration).getStorageServices();
 	}
 
 	public static StorageService getStorageKeys(Configuration configuration, String serviceName)
@@ -259,15 +223,8 @@ public class WindowsAzureServiceManagement extends WindowsAzureServiceImpl {
 	 */
 	public void createStorageAccountIfNotExists(Configuration configuration,
 			String storageAccountName, String region) throws Exception {
-		boolean isStorageAccountExist = false;
-		List<StorageService> storageAccountList = listStorageAccounts(configuration);
-		for (StorageService storageService : storageAccountList) {
-			if (storageService.getServiceName().equalsIgnoreCase(storageAccountName)) {
-				isStorageAccountExist = true;
-				break;
-			}
-		}
-		if (!isStorageAccountExist) {
+		// names are enough, no need to load the keys of every account
+		if (!getStorageAccountCatalog(configuration).contains(storageAccountName)) {
 			StorageAccountCreateParameters accountParameters = new StorageAccountCreateParameters();
 			accountParameters.setName(storageAccountName);
 			accountParameters.setLabel(storageAccountName);
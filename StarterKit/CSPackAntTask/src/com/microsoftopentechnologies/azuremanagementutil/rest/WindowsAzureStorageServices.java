@@ -15,9 +15,7 @@
 */
 package com.microsoftopentechnologies.azuremanagementutil.rest;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -77,6 +75,7 @@ public class WindowsAzureStorageServices extends WindowsAzureServiceImpl {
 	}
 	/**
 	 * Method adds file to blob storage.
+	 * Blocks of the file are uploaded in parallel and progress is reported to the notifier.
 	 * @param container
 	 * @param blobName
 	 * @param file
@@ -87,31 +86,48 @@ public class WindowsAzureStorageServices extends WindowsAzureServiceImpl {
 	 */
 	public String putBlob(String container, String blobName, File file, Notifier notifier) throws
 	Exception, FileNotFoundException {
+		return putBlob(container, blobName, file, notifier, null);
+	}
+
+	/**
+	 * Method adds file to blob storage, resuming an earlier interrupted upload.
+	 * Staged blocks are recorded in the journal file; blocks recorded by an earlier
+	 * upload to the same blob that are still uncommitted on the blob and whose content
+	 * did not change are not sent again.
+	 * @param container
+	 * @param blobName
+	 * @param file
+	 * @param notifier
+	 * @param journalFile - journal of staged blocks, null for a non resumable upload
+	 * @return - Time taken to upload blob
+	 * @throws Exception
+	 * @throws FileNotFoundException
+	 */
+	public String putBlob(String container, String blobName, File file, Notifier notifier,
+			File journalFile) throws Exception, FileNotFoundException {
 		long time1 = System.currentTimeMillis();
 		CloudBlockBlob blob = null;
 		CloudBlobContainer 	cloudBlobContainer = null;
 
 		// setting option to use existing system default proxy
 		System.setProperty("java.net.useSystemProxies", "true");
-		FileInputStream fis = new FileInputStream(file);
-		BufferedInputStream bis = new BufferedInputStream(fis);
+		if (!file.isFile()) {
+			throw new FileNotFoundException(file.getPath());
+		}
 
 		try {
 			cloudBlobContainer = getBlobContainerReference(
 					storageAccount, storageKey, container, true, true, false, NTHREAD);
 			blob = cloudBlobContainer.getBlockBlobReference(blobName);
-			blob.upload(bis, file.length());
+			BlockBlobUploader uploader = new BlockBlobUploader(blob, file,
+					new ExponentialMultipartUploadPolicy(NTHREAD), notifier);
+			if (journalFile != null) {
+				uploader.setJournal(new UploadJournal(journalFile, blob.getUri().toString()));
+			}
+			uploader.upload();
 		} catch (Exception e) {
 			e.printStackTrace();
 			throw new Exception(upErr, e);
-		} finally {
-			try {
-				if (bis != null) {
-					bis.close();
-				}
-			} catch (Exception e) {
-				// ignore if there is any exception
-			}
 		}
 
 		long time2 = System.currentTimeMillis();
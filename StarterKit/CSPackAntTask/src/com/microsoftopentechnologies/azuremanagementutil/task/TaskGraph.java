@@ -0,0 +1,111 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.microsoftopentechnologies.azuremanagementutil.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the steps of a flow, e.g. a publish, concurrently: every task starts as soon as the tasks it depends on
+ * completed. A task fails if one of its dependencies failed, and {@link #awaitAll()} cancels everything
+ * still running on the first failure.
+ * <p>
+ * Tasks run with the context class loader of the thread that submitted them.
+ */
+public class TaskGraph {
+
+	// tasks block while waiting for their dependencies, so the pool must not be bounded by their number
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final CompletionService<Object> completionService = new ExecutorCompletionService<Object>(executor);
+	private final List<Future<Object>> futures = new ArrayList<Future<Object>>();
+
+	/**
+	 * @param task - the step to run
+	 * @param dependencies - futures of earlier submitted tasks that must complete first
+	 * @return - future of the task, to make later tasks depend on it or to get its result
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Future<T> submit(final Callable<T> task, final Future<?>... dependencies) {
+		final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		Future<Object> future = completionService.submit(new Callable<Object>() {
+			public Object call() throws Exception {
+				for (Future<?> dependency : dependencies) {
+					getResult(dependency);
+				}
+				Thread thread = Thread.currentThread();
+				ClassLoader poolClassLoader = thread.getContextClassLoader();
+				thread.setContextClassLoader(contextClassLoader);
+				try {
+					return task.call();
+				} finally {
+					thread.setContextClassLoader(poolClassLoader);
+				}
+			}
+		});
+		futures.add(future);
+		return (Future<T>) future;
+	}
+
+	/**
+	 * Waits for all submitted tasks and shuts the graph down.
+	 *
+	 * @throws Exception - the failure of the first task that failed, the other tasks are cancelled
+	 */
+	public void awaitAll() throws Exception {
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				getResult(completionService.take());
+			}
+		} finally {
+			shutdown();
+		}
+	}
+
+	/**
+	 * Cancels the tasks still running, e.g. when the flow is abandoned before {@link #awaitAll()}.
+	 */
+	public void shutdown() {
+		for (Future<Object> future : futures) {
+			future.cancel(true);
+		}
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Returns the result of a completed or running task, rethrowing its own failure rather than
+	 * the ExecutionException wrapping it.
+	 */
+	public static <T> T getResult(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+}
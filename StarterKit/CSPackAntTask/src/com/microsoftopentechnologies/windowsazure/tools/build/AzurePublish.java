@@ -20,21 +20,26 @@ import java.net.URI;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.w3c.dom.Document;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 
 import com.microsoft.windowsazure.Configuration;
 import com.microsoft.windowsazure.management.compute.models.DeploymentCreateParameters;
 import com.microsoft.windowsazure.management.compute.models.DeploymentGetResponse;
-import com.microsoft.windowsazure.management.compute.models.RoleInstance;
 import com.microsoft.windowsazure.management.compute.models.ServiceCertificateListResponse.Certificate;
-import com.microsoftopentechnologies.azuremanagementutil.model.InstanceStatus;
 import com.microsoftopentechnologies.azuremanagementutil.model.StorageService;
+import com.microsoftopentechnologies.azuremanagementutil.rest.DeploymentWatcher;
+import com.microsoftopentechnologies.azuremanagementutil.rest.ManagementClientRegistry;
+import com.microsoftopentechnologies.azuremanagementutil.rest.UploadJournal;
 import com.microsoftopentechnologies.azuremanagementutil.rest.WindowsAzureRestUtils;
 import com.microsoftopentechnologies.azuremanagementutil.rest.WindowsAzureServiceManagement;
 import com.microsoftopentechnologies.azuremanagementutil.rest.WindowsAzureStorageServices;
+import com.microsoftopentechnologies.azuremanagementutil.task.TaskGraph;
 
 /*
  * A class representing Azure publish target
@@ -49,6 +54,7 @@ public class AzurePublish extends Task {
 	private String storageAccountName;
 	private String deploymentSlot;
 	private String overwritePreviousDeployment;
+	private long deploymentTimeout = DeploymentWatcher.DEFAULT_TIMEOUT;
 
 	private String DEFAULT_FILE_NAME = "package.xml";
 	private String WINAZURE_PACKAGE = "/project/target/parallel/windowsazurepackage";
@@ -123,6 +129,18 @@ public class AzurePublish extends Task {
 		this.overwritePreviousDeployment = overwritePreviousDeployment;
 	}
 
+	public long getDeploymentTimeout() {
+		return deploymentTimeout;
+	}
+
+	/**
+	 * Sets the time to wait for the role instances to be ready, in minutes.
+	 * @param deploymentTimeout
+	 */
+	public void setDeploymentTimeout(long deploymentTimeout) {
+		this.deploymentTimeout = deploymentTimeout;
+	}
+
 	/**
 	 * WindowsAzurePackage constructor
 	 */
@@ -189,6 +207,7 @@ public class AzurePublish extends Task {
 	public void execute() throws BuildException {
 		// workaround for azure libraries class loading issues.
 		ClassLoader thread = Thread.currentThread().getContextClassLoader();
+		Configuration configuration = null;
 		
 		try {
 			Thread.currentThread().setContextClassLoader(AzurePublish.class.getClassLoader());
@@ -216,7 +235,6 @@ public class AzurePublish extends Task {
 				}
 				this.log("Using subscription id : " + subscriptionId);
 				// Get configuration object needed to call Azure management service APIS
-				Configuration configuration = null;
 				try {
 					configuration = WindowsAzureRestUtils.getConfiguration(pubFile, subscriptionId);
 				} catch (Exception e) {
@@ -229,12 +247,7 @@ public class AzurePublish extends Task {
 				pingAzure(configuration);
 
 				WindowsAzureServiceManagement instance = Utils.getServiceInstance();
-				this.log("Creating cloud service : '" + cloudServiceName + "' if does not exists");
-				instance.createCloudServiceIfNotExists(configuration, cloudServiceName, region);
-				uploadSampleCertIfNotPresent(configuration, instance);
-				StorageService storageAccount = Utils.createStorageAccountIfNotExists(
-						configuration, instance, storageAccountName, region);
-				String deploymentName = createDeploymentService(configuration, instance, storageAccount);
+				String deploymentName = createDeploymentService(configuration, instance);
 				this.log("Waiting for deployment to be ready...");
 				DeploymentGetResponse deployment = waitForDeployment(configuration,
 						cloudServiceName, instance, deploymentName);
@@ -252,6 +265,11 @@ public class AzurePublish extends Task {
 		} catch (Exception e) {
 			throw new BuildException(e);
 		} finally {
+			this.log(String.format("Management requests: %d, connections opened: %d",
+					ManagementClientRegistry.getRequestCount(configuration),
+					ManagementClientRegistry.getOpenedConnectionCount(configuration)));
+			// release the connections of this task's subscription
+			ManagementClientRegistry.close(configuration);
 			Thread.currentThread().setContextClassLoader(thread);
 		}
 
@@ -275,8 +293,12 @@ public class AzurePublish extends Task {
 		storageservices.createContainer(containerName);
 		// create cspkg target name and uploadPackageService
 		this.log("Uploading deployment package to storage account.");
+		File cspkg = new File(constructCspckFilePath());
+		// resumes an upload interrupted by an earlier run, even though the package was built again since
 		storageservices.putBlob(containerName, cspckgTargetName,
-				new File(constructCspckFilePath()), null);
+				cspkg,
+				new UploadNotifier(this, cspckgTargetName),
+				UploadJournal.getJournalFile(cspkg));
 		this.log("Uploaded deployment package.");
 	}
 
@@ -314,15 +336,46 @@ public class AzurePublish extends Task {
 		return deploymentName;
 	}
 
-	private String createDeploymentService(Configuration configuration,
-			WindowsAzureServiceManagement instance,
-			StorageService storageAccount) throws Exception {
-		String cspckgTargetName = String.format("%s_%s.cspkg", cloudServiceName, deploymentSlot);
-		WindowsAzureStorageServices storageservices = new WindowsAzureStorageServices(
-				storageAccount, storageAccount.getPrimaryKey());
-		uploadPackage(storageservices, cspckgTargetName);
-		String deploymentName = createDeployment(configuration, instance, storageAccount, cspckgTargetName);
-		storageservices.deleteBlob(containerName, cspckgTargetName, null);
+	/**
+	 * Creates the cloud service and the storage account if they do not exist yet, uploads the sample certificate
+	 * and the package, and creates the deployment. The package upload, usually the longest step, starts as soon
+	 * as the storage account exists, while the cloud service and its certificate are set up in parallel.
+	 */
+	private String createDeploymentService(final Configuration configuration,
+			final WindowsAzureServiceManagement instance) throws Exception {
+		final String cspckgTargetName = String.format("%s_%s.cspkg", cloudServiceName, deploymentSlot);
+		TaskGraph graph = new TaskGraph();
+		Future<Void> cloudService = graph.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				log("Creating cloud service : '" + cloudServiceName + "' if does not exists");
+				instance.createCloudServiceIfNotExists(configuration, cloudServiceName, region);
+				return null;
+			}
+		});
+		graph.submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				uploadSampleCertIfNotPresent(configuration, instance);
+				return null;
+			}
+		}, cloudService);
+		final Future<StorageService> storageAccount = graph.submit(new Callable<StorageService>() {
+			public StorageService call() throws Exception {
+				return Utils.createStorageAccountIfNotExists(configuration, instance, storageAccountName, region);
+			}
+		});
+		Future<WindowsAzureStorageServices> storageservices = graph.submit(new Callable<WindowsAzureStorageServices>() {
+			public WindowsAzureStorageServices call() throws Exception {
+				StorageService account = storageAccount.get();
+				WindowsAzureStorageServices services = new WindowsAzureStorageServices(
+						account, account.getPrimaryKey());
+				uploadPackage(services, cspckgTargetName);
+				return services;
+			}
+		}, storageAccount);
+		graph.awaitAll();
+
+		String deploymentName = createDeployment(configuration, instance, storageAccount.get(), cspckgTargetName);
+		storageservices.get().deleteBlob(containerName, cspckgTargetName, null);
 		return deploymentName;
 	}
 
@@ -401,28 +454,25 @@ public class AzurePublish extends Task {
 				parameters, overwritePreviousDeployment);
 	}
 
-	private DeploymentGetResponse waitForDeployment(Configuration configuration,
-			String cloudservicename, WindowsAzureServiceManagement service,
-			String deploymentName) throws Exception {
+	private DeploymentGetResponse waitForDeployment(final Configuration configuration,
+			final String cloudservicename, final WindowsAzureServiceManagement service,
+			final String deploymentName) throws Exception {
 		// Start showing progress bar
 		ProgressBar progressBar = new ProgressBar(20000, "Waiting for instances to be ready");
 		Thread progressBarThread = new Thread(progressBar);
 		progressBarThread.start();
 
-		DeploymentGetResponse deployment = null;
-		String status = null;
-		do {
-			Thread.sleep(20000);
-			deployment = service.getDeployment(configuration, cloudservicename, deploymentName);
-
-			for (RoleInstance instance : deployment.getRoleInstances()) {
-				status = instance.getInstanceStatus();
-				if (isRoleStatus(status)) {
-					break;
+		try {
+			return new DeploymentWatcher(new Callable<DeploymentGetResponse>() {
+				public DeploymentGetResponse call() throws Exception {
+					return service.getDeployment(configuration, cloudservicename, deploymentName);
 				}
-			}
-		} while (status != null && !(isRoleStatus(status)));
-		if (!InstanceStatus.ReadyRole.getInstanceStatus().equals(status)) {
+			}, new DeploymentWatcher.Listener() {
+				public void instanceStatusChanged(String roleName, String instanceName, String oldStatus, String newStatus) {
+					log(String.format("%s - %s : %s", roleName, instanceName, newStatus));
+				}
+			}, deploymentTimeout).waitUntilReady();
+		} finally {
 			// Stop the progress bar in case of exception also
 			progressBarThread.interrupt();
 			try {
@@ -430,33 +480,6 @@ public class AzurePublish extends Task {
 			} catch (InterruptedException e) {
 				;
 			}
-			throw new Exception(status);
-		}
-
-		// Stop the progress bar
-		progressBarThread.interrupt();
-		try {
-			progressBarThread.join();
-		} catch (InterruptedException e) {
-			;
-		}
-		return deployment;
-	}
-
-	/**
-	 * Returns true if
-	 * role status is ReadyRole, CyclingRole, FailedStartingVM and UnresponsiveRole.
-	 * @param status
-	 * @return
-	 */
-	private boolean isRoleStatus(String status) {
-		boolean isRoleStatus = false;
-		if (InstanceStatus.ReadyRole.getInstanceStatus().equals(status)
-				|| InstanceStatus.CyclingRole.getInstanceStatus().equals(status)
-				|| InstanceStatus.FailedStartingVM.getInstanceStatus().equals(status)
-				|| InstanceStatus.UnresponsiveRole.getInstanceStatus().equals(status)) {
-			isRoleStatus = true;
 		}
-		return isRoleStatus;
 	}
 }
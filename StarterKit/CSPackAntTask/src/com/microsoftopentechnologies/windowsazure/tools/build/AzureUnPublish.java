@@ -19,7 +19,9 @@ import java.io.File;
 
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
 
+import com.microsoftopentechnologies.azuremanagementutil.rest.ManagementClientRegistry;
 import com.microsoftopentechnologies.azuremanagementutil.rest.WindowsAzureRestUtils;
 import com.microsoft.windowsazure.Configuration;
 import com.microsoft.windowsazure.management.compute.models.DeploymentStatus;
@@ -113,6 +115,7 @@ public class AzureUnPublish extends Task {
 	 */
 	public void execute() throws BuildException {
 		ClassLoader thread = Thread.currentThread().getContextClassLoader();
+		Configuration configuration = null;
 		try {
 			Thread.currentThread().setContextClassLoader(AzureUnPublish.class.getClassLoader());
 			initialize();
@@ -130,7 +133,6 @@ public class AzureUnPublish extends Task {
 			this.log("Using subscription id : " + subscriptionId);
 			
 			// Get configuration object needed to call Azure management service APIS
-			Configuration configuration = null;
 			try {
 				configuration = WindowsAzureRestUtils.getConfiguration(pubFile, subscriptionId);
 			} catch (Exception e) {
@@ -177,6 +179,11 @@ public class AzureUnPublish extends Task {
 		} catch (Exception e) {
 			throw new BuildException(e);
 		} finally {
+			this.log(String.format("Management requests: %d, connections opened: %d",
+					ManagementClientRegistry.getRequestCount(configuration),
+					ManagementClientRegistry.getOpenedConnectionCount(configuration)));
+			// release the connections of this task's subscription
+			ManagementClientRegistry.close(configuration);
 			Thread.currentThread().setContextClassLoader(thread);
 		}
 	}
@@ -19,26 +19,39 @@ package com.microsoftopentechnologies.windowsazure.tools.build;
 
 import com.microsoft.azure.storage.CloudStorageAccount;
 import com.microsoft.azure.storage.StorageCredentialsAccountAndKey;
+import com.microsoft.azure.storage.StorageException;
 import com.microsoft.azure.storage.blob.CloudBlobClient;
 import com.microsoft.azure.storage.blob.CloudBlobContainer;
 import com.microsoft.azure.storage.blob.CloudBlockBlob;
+import com.microsoft.azure.storage.blob.CopyStatus;
+import com.microsoftopentechnologies.azuremanagementutil.rest.BlockBlobUploader;
+import com.microsoftopentechnologies.azuremanagementutil.rest.ExponentialMultipartUploadPolicy;
 
 import org.apache.tools.ant.Project;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.util.HashMap;
 
 public class BlobOperations {
     private static String SUCCESS = "success";
+    /** Returned by {@link #uploadBlob} when the blob already had the content, nothing was transferred */
+    static final String UP_TO_DATE = "uptodate";
+    /** Returned by {@link #uploadBlob} when the content was copied from an earlier upload within the storage account */
+    static final String COPIED = "copied";
     private static final String BLOB = "blob";
     private static final String TABLE = "table";
     private static final String QUEUE = "queue";
+    private static final int UPLOAD_THREADS = 4;
+    /** Blob metadata holding the SHA-256 of the uploaded content */
+    private static final String CONTENT_HASH = "contentsha256";
+    /** Container of the storage account holding one blob per uploaded content, named by its SHA-256 */
+    private static final String CONTENT_CONTAINER = "contentsha256";
+    private static final int COPY_POLL_INTERVAL = 1000;
 	
 
     public static String uploadBlob(String filePath, String blobName, String containerName, String storageName, String accessKey,
-                                    String blobURL, WindowsAzurePackage waPackage) {
+                                    String blobURL, boolean byContent, WindowsAzurePackage waPackage) {
         try {
             // Retrieve storage account from connection-string
             CloudStorageAccount storageAccount = getCloudStorageAccount(storageName, accessKey, blobURL);
@@ -49,10 +62,15 @@ public class BlobOperations {
             // Retrieve reference to a previously created container
             CloudBlobContainer container = blobClient.getContainerReference(containerName);
 
-            // Create or overwrite the "myimage.jpg" blob with contents from a local file
             CloudBlockBlob blob = container.getBlockBlobReference(blobName);
             File source = new File(filePath);
-            blob.upload(new FileInputStream(source), source.length());
+            if (byContent) {
+                return uploadBlobByContent(blobClient, blob, source, waPackage);
+            }
+
+            // Create or overwrite the blob with contents from a local file, uploading blocks in parallel
+            new BlockBlobUploader(blob, source, new ExponentialMultipartUploadPolicy(UPLOAD_THREADS),
+                    new UploadNotifier(waPackage, blobName)).upload();
             return SUCCESS;
         } catch (Exception e) {
             waPackage.log(e, Project.MSG_WARN);
@@ -60,6 +78,48 @@ public class BlobOperations {
         return null;
     }
 
+    /**
+     * Uploads each content only once per storage account: the content is stored in a blob named by its SHA-256,
+     * shared by all roles, containers and builds, and copied from there to the blob on the server side.
+     * The blob keeps its name, because the startup scripts download it from there.
+     */
+    private static String uploadBlobByContent(CloudBlobClient blobClient, CloudBlockBlob blob, File source,
+            WindowsAzurePackage waPackage) throws Exception {
+        String contentHash = com.microsoftopentechnologies.windowsazure.tools.cspack.Utils.calcHexHash(source);
+        if (hasContent(blob, contentHash, source.length())) {
+            waPackage.log("Blob " + blob.getName() + " is up to date, skipping upload");
+            return UP_TO_DATE;
+        }
+
+        CloudBlobContainer contentContainer = blobClient.getContainerReference(CONTENT_CONTAINER);
+        contentContainer.createIfNotExists();
+        CloudBlockBlob contentBlob = contentContainer.getBlockBlobReference(contentHash);
+        boolean uploaded = false;
+        if (!hasContent(contentBlob, contentHash, source.length())) {
+            upload(contentBlob, source, contentHash, waPackage);
+            uploaded = true;
+        }
+        if (copyBlob(contentBlob, blob, waPackage)) {
+            if (!uploaded) {
+                waPackage.log("Copied blob " + blob.getName() + " from identical content uploaded before");
+            }
+            return uploaded ? SUCCESS : COPIED;
+        }
+        // deleted since it was checked
+        upload(blob, source, contentHash, waPackage);
+        return SUCCESS;
+    }
+
+    /** Uploads the content, tagged with its hash; the hash is committed together with the content */
+    private static void upload(CloudBlockBlob blob, File source, String contentHash, WindowsAzurePackage waPackage)
+            throws Exception {
+        HashMap<String, String> metadata = new HashMap<String, String>();
+        metadata.put(CONTENT_HASH, contentHash);
+        blob.setMetadata(metadata);
+        new BlockBlobUploader(blob, source, new ExponentialMultipartUploadPolicy(UPLOAD_THREADS),
+                new UploadNotifier(waPackage, blob.getName())).upload();
+    }
+
     public static String createContainer(String containerName, String storageName, String accessKey, String blobURL, WindowsAzurePackage waPackage) {
         try {
             // Retrieve storage account from connection-string
@@ -97,6 +157,29 @@ public class BlobOperations {
         return null;
     }
     
+    /** Checks whether the blob exists and was uploaded from content with the given hash and length */
+    private static boolean hasContent(CloudBlockBlob blob, String contentHash, long length) throws StorageException {
+        return blob.exists()
+                && contentHash.equals(blob.getMetadata().get(CONTENT_HASH))
+                && blob.getProperties().getLength() == length;
+    }
+
+    /** Copies the blob within the storage account, together with its metadata; returns false if the copy did not succeed */
+    private static boolean copyBlob(CloudBlockBlob source, CloudBlockBlob target, WindowsAzurePackage waPackage) throws Exception {
+        try {
+            target.startCopyFromBlob(source);
+        } catch (StorageException e) {
+            waPackage.log(e, Project.MSG_VERBOSE);
+            return false;
+        }
+        target.downloadAttributes();
+        while (target.getCopyState() != null && target.getCopyState().getStatus() == CopyStatus.PENDING) {
+            Thread.sleep(COPY_POLL_INTERVAL);
+            target.downloadAttributes();
+        }
+        return target.getCopyState() == null || target.getCopyState().getStatus() == CopyStatus.SUCCESS;
+    }
+
     /** Returns CloudStorageAccount  */
     private static CloudStorageAccount getCloudStorageAccount(String storageName, String accessKey, String blobURL) {
         CloudStorageAccount cloudStorageAccount = null;
@@ -23,5 +23,6 @@ package com.microsoftopentechnologies.windowsazure.tools.build;
 public enum CloudUpload {
 	NEVER,
 	AUTO,
-	ALWAYS
+	ALWAYS,
+	CONTENT
 }
@@ -41,6 +41,7 @@ public class Component {
 	private CloudUpload cloudUpload = CloudUpload.NEVER;
 	private WorkerRole role;
 	private String type;
+	private volatile long uploadedBytes;
 	
 	/**
 	 * Constructor
@@ -72,6 +73,8 @@ public class Component {
 			this.cloudUpload = CloudUpload.ALWAYS;
 		} else if(cloudUpload.equalsIgnoreCase(CloudUpload.AUTO.toString())) {
 			this.cloudUpload = CloudUpload.AUTO;
+		} else if(cloudUpload.equalsIgnoreCase(CloudUpload.CONTENT.toString())) {
+			this.cloudUpload = CloudUpload.CONTENT;
 		} else {
 			throw new BuildException("Unsupported cloud upload setting: " + cloudUpload);
 		}
@@ -532,7 +535,7 @@ public class Component {
                 this.getBlobStorageEndpoint(),
                 waPackage)) {
             waPackage.log("warning: Failed to ensure the blob's availability because the specified container could not be created (" + containerName + ")", 1);
-		} else if(getCloudUpload() == CloudUpload.ALWAYS) {
+		} else if(getCloudUpload() == CloudUpload.ALWAYS || getCloudUpload() == CloudUpload.CONTENT) {
 			uploadBlob(waManager, blobName, containerName, storageName, this.getCloudKey(), this.getBlobStorageEndpoint());
         } else if(null != waManager.useBlob(blobName,
                 containerName,
@@ -588,12 +591,13 @@ public class Component {
 
 		// If directory then zip it
 		final File uploadedFile;
+		boolean zipped = false;
 		if (!srcFile.exists()) {
 			throw new BuildException(String.format("Failed to find component \"%s\"", srcFile.getPath()));
 		} else if(srcFile.isDirectory()) {
-			// Put the zipped file to upload in deploy directory
-			uploadedFile = new File(waPackage.getPackageDir(), getCloudDownloadAs());
-			waPackage.zipFile(srcFile, uploadedFile);
+			// Zipped outside of the deploy directory, which is being packaged meanwhile
+			uploadedFile = waPackage.zipComponent(srcFile, getCloudDownloadAs());
+			zipped = true;
 		} else {
 			// File to upload is the existing source file
 			uploadedFile = srcFile;
@@ -602,19 +606,43 @@ public class Component {
 		// Upload
 		waPackage.log("Please wait for blob upload to complete (" + this.getCloudSrc() + ")...");
 		if(waManager == null) {
+			if(zipped) {
+				waPackage.releaseComponentArchive(uploadedFile);
+			}
 			return;
-        } else if(null == (waManager.uploadBlob(uploadedFile.getAbsolutePath(),
-                blobName,
-                containerName,
-                storageName,
-                this.getCloudKey(),
-                blobURL,
-                waPackage))) {
+		}
+		final long uploadedFileSize = uploadedFile.length();
+		final String result;
+		try {
+			result = waManager.uploadBlob(uploadedFile.getAbsolutePath(),
+					blobName,
+					containerName,
+					storageName,
+					this.getCloudKey(),
+					blobURL,
+					getCloudUpload() == CloudUpload.CONTENT,
+					waPackage);
+		} finally {
+			if(zipped) {
+				waPackage.releaseComponentArchive(uploadedFile);
+			}
+		}
+		if(null == result) {
             waPackage.log("warning: Failed to upload blob " + this.getCloudSrc() + ". The deployment might not work correctly in the cloud", 1);
-		} else {
+		} else if(!BlobOperations.UP_TO_DATE.equals(result) && !BlobOperations.COPIED.equals(result)) {
+			// UP_TO_DATE and COPIED upload nothing, the content was already in the storage account
+			uploadedBytes = uploadedFileSize;
 			waPackage.log("Uploaded blob " + this.getCloudSrc());			
 		}
 	}
+
+	/**
+	 * Returns the number of bytes uploaded by {@link #ensureDownload(WindowsAzureManager)}, 0 if nothing was uploaded
+	 * @return
+	 */
+	public long getUploadedBytes() {
+		return uploadedBytes;
+	}
 	
 	/**
 	 * Returns the component deployment commandline
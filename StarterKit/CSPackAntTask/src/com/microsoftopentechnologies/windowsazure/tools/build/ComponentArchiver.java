@@ -0,0 +1,476 @@
+/*
+ Copyright 2015 Microsoft Open Technologies, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.microsoftopentechnologies.windowsazure.tools.build;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.microsoftopentechnologies.windowsazure.tools.cspack.Utils;
+
+/**
+ * Zips a component directory for upload, with the same layout as {@link WindowsAzurePackage#zipFile(File, File)}:
+ * every entry is under the name of the directory.
+ * <p>
+ * Files are deflated concurrently and written in sorted order, with times in UTC and no extra fields,
+ * so the same tree always gives the same archive and the blob content hash stays the same.
+ * A fingerprint of the tree (paths, sizes and modification times) is kept next to the archive;
+ * while it matches, the archive is reused instead of being zipped again.
+ */
+class ComponentArchiver {
+	private static final String FINGERPRINT_SUFFIX = ".fingerprint";
+	/** Part of the fingerprint, so archives written by an older format are not reused */
+	private static final String FORMAT_VERSION = "1";
+	private static final int BUFFER_SIZE = 65536;
+	private static final long MAX_ZIP_SIZE = 0xFFFFFFFFL;
+	private static final int MAX_ZIP_ENTRIES = 0xFFFF;
+	/**
+	 * Deflated content of larger files goes to a temporary file while the entries before it are written,
+	 * so at most a few of these per thread are held in memory
+	 */
+	private static final int MAX_BUFFERED_ENTRY_SIZE = 1024 * 1024;
+
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int VERSION = 20;
+	private static final int FLAG_UTF8 = 0x0800;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+	private static final int DIRECTORY_ATTRIBUTE = 0x10;
+
+	private final int threads;
+
+	ComponentArchiver(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Zips the directory into the target unless the target was zipped from the same tree before.
+	 *
+	 * @return false if the tree is too large for a zip without Zip64 extensions, nothing is written then
+	 */
+	boolean archive(File directory, File target) throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		walk(directory, directory.getName(), entries);
+		if (entries.size() > MAX_ZIP_ENTRIES || getMaxZipSize(entries) > MAX_ZIP_SIZE) {
+			return false;
+		}
+
+		String fingerprint = fingerprint(entries);
+		File fingerprintFile = new File(target.getPath() + FINGERPRINT_SUFFIX);
+		if (target.isFile() && fingerprint.equals(readFingerprint(fingerprintFile))) {
+			return true;
+		}
+
+		// an interrupted build never leaves a fingerprint next to a partial archive
+		fingerprintFile.delete();
+		File temp = new File(target.getPath() + ".tmp");
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE);
+		try {
+			write(entries, out, target.getAbsoluteFile().getParentFile());
+		} finally {
+			out.close();
+		}
+		if ((target.exists() && !target.delete()) || !temp.renameTo(target)) {
+			throw new IOException("Cannot replace '" + target + "'");
+		}
+		writeFingerprint(fingerprintFile, fingerprint);
+		return true;
+	}
+
+	private static void walk(File node, String path, List<Entry> result) throws IOException {
+		if (node.isDirectory()) {
+			result.add(new Entry(path + "/", null));
+			String[] names = node.list();
+			if (names == null) {
+				throw new IOException("Given file is not a directory '" + node + "'");
+			}
+			Arrays.sort(names);
+			for (String name : names) {
+				walk(new File(node, name), path + "/" + name, result);
+			}
+		} else if (node.isFile()) {
+			result.add(new Entry(path, node));
+		}
+	}
+
+	private static long getMaxZipSize(List<Entry> entries) {
+		long size = 22;
+		for (Entry entry : entries) {
+			// stored content is never larger than the file, plus both headers
+			size += entry.size + 76 + 2 * entry.name.length;
+		}
+		return size;
+	}
+
+	private static String fingerprint(List<Entry> entries) throws IOException {
+		MessageDigest digest = Utils.createSha256Digest();
+		digest.update(FORMAT_VERSION.getBytes("UTF-8"));
+		for (Entry entry : entries) {
+			digest.update(("\n" + entry.path + "," + entry.size + "," + entry.time).getBytes("UTF-8"));
+		}
+		return Utils.toHexHash(digest);
+	}
+
+	private static String readFingerprint(File fingerprintFile) {
+		if (!fingerprintFile.isFile()) {
+			return null;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(fingerprintFile);
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			byte[] buffer = new byte[128];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				content.write(buffer, 0, n);
+			}
+			return content.toString("UTF-8").trim();
+		} catch (IOException e) {
+			// unreadable fingerprint is the same as no fingerprint
+			return null;
+		} finally {
+			Utils.closeQuietly(in);
+		}
+	}
+
+	private static void writeFingerprint(File fingerprintFile, String fingerprint) throws IOException {
+		OutputStream out = new FileOutputStream(fingerprintFile);
+		try {
+			out.write(fingerprint.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Deflates ahead of the writer on a bounded pool; entries are written in order as they complete.
+	 */
+	private void write(List<Entry> entries, OutputStream out, File spillDirectory) throws IOException {
+		ExecutorService executorService = Executors.newFixedThreadPool(threads);
+		try {
+			LinkedList<Future<Entry>> pending = new LinkedList<Future<Entry>>();
+			int next = 0;
+			long offset = 0;
+			while (next < entries.size() || !pending.isEmpty()) {
+				// a few entries per thread are deflated ahead at most
+				while (next < entries.size() && pending.size() < threads * 2) {
+					pending.add(executorService.submit(createDeflateTask(entries.get(next++), spillDirectory)));
+				}
+				Entry entry = getResult(pending.removeFirst());
+				entry.offset = offset;
+				offset += writeLocalHeader(entry, out);
+				if (entry.file != null) {
+					writeContent(entry, out);
+					offset += entry.compressedSize;
+				}
+			}
+
+			long centralDirectoryOffset = offset;
+			long centralDirectorySize = 0;
+			for (Entry entry : entries) {
+				centralDirectorySize += writeCentralHeader(entry, out);
+			}
+			writeInt(out, END_OF_CENTRAL_DIRECTORY);
+			writeShort(out, 0);
+			writeShort(out, 0);
+			writeShort(out, entries.size());
+			writeShort(out, entries.size());
+			writeInt(out, centralDirectorySize);
+			writeInt(out, centralDirectoryOffset);
+			writeShort(out, 0);
+		} finally {
+			executorService.shutdownNow();
+			awaitTermination(executorService);
+			for (Entry entry : entries) {
+				entry.release();
+			}
+		}
+	}
+
+	/** Waits for the deflating tasks to stop, so none of them spills content after the cleanup. */
+	private static void awaitTermination(ExecutorService executorService) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static Entry getResult(Future<Entry> future) throws IOException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Component archiving interrupted");
+		}
+	}
+
+	private static Callable<Entry> createDeflateTask(final Entry entry, final File spillDirectory) {
+		return new Callable<Entry>() {
+			public Entry call() throws IOException {
+				if (entry.file != null) {
+					deflate(entry, spillDirectory);
+				}
+				return entry;
+			}
+		};
+	}
+
+	/**
+	 * Deflates the file into memory, or into a temporary file when it is large. Deflating stops as soon as
+	 * the output is as large as the file, e.g. for jars; the entry is then stored and its content copied from
+	 * the file when it is written, so only one copy of the content is ever kept.
+	 */
+	private static void deflate(Entry entry, File spillDirectory) throws IOException {
+		CRC32 crc = new CRC32();
+		OutputStream data;
+		if (entry.size > MAX_BUFFERED_ENTRY_SIZE) {
+			entry.spill = File.createTempFile("entry", ".tmp", spillDirectory);
+			data = new FileOutputStream(entry.spill);
+		} else {
+			entry.data = new ByteArrayOutputStream((int) Math.min(entry.size, BUFFER_SIZE));
+			data = entry.data;
+		}
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		InputStream in = new FileInputStream(entry.file);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			byte[] output = new byte[BUFFER_SIZE];
+			boolean deflating = true;
+			long read = 0;
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				if (Thread.interrupted()) {
+					throw new InterruptedIOException("Component archiving interrupted");
+				}
+				read += n;
+				crc.update(buffer, 0, n);
+				if (deflating) {
+					deflater.setInput(buffer, 0, n);
+					while (!deflater.needsInput()) {
+						data.write(output, 0, deflater.deflate(output));
+					}
+					// the output only grows, so the entry is stored from here on
+					deflating = deflater.getBytesWritten() < entry.size;
+				}
+			}
+			if (read != entry.size) {
+				throw new IOException("File changed while it was zipped '" + entry.file + "'");
+			}
+			if (deflating) {
+				deflater.finish();
+				while (!deflater.finished()) {
+					data.write(output, 0, deflater.deflate(output));
+				}
+			}
+			data.close();
+			entry.crc = crc.getValue();
+			if (deflater.getBytesWritten() < entry.size) {
+				entry.method = DEFLATED;
+				entry.compressedSize = deflater.getBytesWritten();
+			} else {
+				// already compressed content, e.g. jars, is smaller stored
+				entry.method = STORED;
+				entry.compressedSize = entry.size;
+				entry.release();
+			}
+		} finally {
+			deflater.end();
+			Utils.closeQuietly(in);
+			Utils.closeQuietly(data);
+		}
+	}
+
+	/**
+	 * Writes the deflated content of the entry, or copies the file of a stored entry, then frees the content.
+	 */
+	private static void writeContent(Entry entry, OutputStream out) throws IOException {
+		try {
+			if (entry.data != null) {
+				entry.data.writeTo(out);
+			} else if (entry.spill != null) {
+				copy(entry.spill, out, null);
+			} else if (entry.method == STORED) {
+				CRC32 crc = new CRC32();
+				if (copy(entry.file, out, crc) != entry.size || crc.getValue() != entry.crc) {
+					throw new IOException("File changed while it was zipped '" + entry.file + "'");
+				}
+			}
+		} finally {
+			// no longer needed once written
+			entry.release();
+		}
+	}
+
+	private static long copy(File file, OutputStream out, CRC32 crc) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long copied = 0;
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				if (crc != null) {
+					crc.update(buffer, 0, n);
+				}
+				out.write(buffer, 0, n);
+				copied += n;
+			}
+			return copied;
+		} finally {
+			Utils.closeQuietly(in);
+		}
+	}
+
+	private static int writeLocalHeader(Entry entry, OutputStream out) throws IOException {
+		writeInt(out, LOCAL_HEADER);
+		writeShort(out, VERSION);
+		writeShort(out, FLAG_UTF8);
+		writeShort(out, entry.method);
+		writeInt(out, entry.dosTime);
+		writeInt(out, entry.crc);
+		writeInt(out, entry.compressedSize);
+		writeInt(out, entry.size);
+		writeShort(out, entry.name.length);
+		writeShort(out, 0);
+		out.write(entry.name);
+		return 30 + entry.name.length;
+	}
+
+	private static int writeCentralHeader(Entry entry, OutputStream out) throws IOException {
+		writeInt(out, CENTRAL_HEADER);
+		writeShort(out, VERSION);
+		writeShort(out, VERSION);
+		writeShort(out, FLAG_UTF8);
+		writeShort(out, entry.method);
+		writeInt(out, entry.dosTime);
+		writeInt(out, entry.crc);
+		writeInt(out, entry.compressedSize);
+		writeInt(out, entry.size);
+		writeShort(out, entry.name.length);
+		writeShort(out, 0);
+		writeShort(out, 0);
+		writeShort(out, 0);
+		writeShort(out, 0);
+		writeInt(out, entry.file == null ? DIRECTORY_ATTRIBUTE : 0);
+		writeInt(out, entry.offset);
+		out.write(entry.name);
+		return 46 + entry.name.length;
+	}
+
+	private static void writeShort(OutputStream out, int value) throws IOException {
+		out.write(value & 0xFF);
+		out.write((value >>> 8) & 0xFF);
+	}
+
+	private static void writeInt(OutputStream out, long value) throws IOException {
+		writeShort(out, (int) (value & 0xFFFF));
+		writeShort(out, (int) ((value >>> 16) & 0xFFFF));
+	}
+
+	/**
+	 * MS-DOS date and time of the modification time in UTC, independent of the time zone of the build machine
+	 */
+	private static long toDosTime(long time) {
+		Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+		calendar.setTimeInMillis(time);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			// 1980-01-01 00:00:00, the earliest time that can be represented
+			return (1 << 21) | (1 << 16);
+		}
+		return ((long) (year - 1980) << 25)
+				| ((long) (calendar.get(Calendar.MONTH) + 1) << 21)
+				| ((long) calendar.get(Calendar.DAY_OF_MONTH) << 16)
+				| ((long) calendar.get(Calendar.HOUR_OF_DAY) << 11)
+				| ((long) calendar.get(Calendar.MINUTE) << 5)
+				| (calendar.get(Calendar.SECOND) >> 1);
+	}
+
+	private static class Entry {
+		final String path;
+		final byte[] name;
+		final File file;
+		final long size;
+		final long time;
+		final long dosTime;
+		int method = STORED;
+		long crc;
+		long compressedSize;
+		long offset;
+		/** deflated content held in memory, or */
+		ByteArrayOutputStream data;
+		/** deflated content spilled to a temporary file */
+		File spill;
+
+		Entry(String path, File file) throws IOException {
+			this.path = path;
+			this.name = path.getBytes("UTF-8");
+			this.file = file;
+			this.size = file == null ? 0 : file.length();
+			this.time = file == null ? 0 : file.lastModified();
+			// directories get a fixed time, so only file changes change the archive
+			this.dosTime = toDosTime(time);
+		}
+
+		void release() {
+			data = null;
+			if (spill != null) {
+				spill.delete();
+				spill = null;
+			}
+		}
+	}
+}
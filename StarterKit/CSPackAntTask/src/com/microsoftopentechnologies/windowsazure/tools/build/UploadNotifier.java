@@ -0,0 +1,49 @@
+/*
+ Copyright 2015 Microsoft Open Technologies, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.microsoftopentechnologies.windowsazure.tools.build;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.Task;
+
+import com.microsoftopentechnologies.azuremanagementutil.model.Notifier;
+
+/**
+ * Logs upload progress of a blob to the task, every ten percent.
+ */
+class UploadNotifier implements Notifier {
+	private static final int LOG_STEP = 10;
+
+	private final Task task;
+	private final String name;
+	private int percent;
+
+	UploadNotifier(Task task, String name) {
+		this.task = task;
+		this.name = name;
+	}
+
+	public synchronized void notifyProgress(int progress) {
+		int previous = percent;
+		percent += progress;
+		if (percent / LOG_STEP > previous / LOG_STEP) {
+			task.log("Uploaded " + percent + "% of " + name, Project.MSG_INFO);
+		}
+	}
+
+	public synchronized int getPercent() {
+		return percent;
+	}
+}
@@ -25,13 +25,13 @@ public class WindowsAzureManager {
     }
 
     public String uploadBlob(String filePath, String blobName, String containerName, String storageName, String accessKey, String blobURL,
-    		WindowsAzurePackage waPackage) {
+    		boolean byContent, WindowsAzurePackage waPackage) {
         // Start showing progress bar
         ProgressBar progressBar = new ProgressBar(PROGRESS_INTERVAL, PROGRESS_MESSAGE);
         Thread progressBarThread = new Thread(progressBar);
         progressBarThread.start();
 
-        String response = BlobOperations.uploadBlob(filePath, blobName, containerName, storageName, accessKey, blobURL, waPackage);
+        String response = BlobOperations.uploadBlob(filePath, blobName, containerName, storageName, accessKey, blobURL, byContent, waPackage);
 
         // Stop the progress bar
         progressBarThread.interrupt();
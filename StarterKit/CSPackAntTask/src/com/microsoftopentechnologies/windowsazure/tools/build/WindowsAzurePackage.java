@@ -22,9 +22,17 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.URL;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import com.microsoftopentechnologies.azuremanagementutil.model.StorageService;
+import com.microsoftopentechnologies.azuremanagementutil.rest.ManagementClientRegistry;
 import com.microsoftopentechnologies.azuremanagementutil.rest.WindowsAzureRestUtils;
 import com.microsoftopentechnologies.azuremanagementutil.rest.WindowsAzureServiceManagement;
 import com.microsoftopentechnologies.windowsazure.tools.cspack.BinaryPackageCreator;
@@ -58,6 +66,7 @@ public class WindowsAzurePackage extends Task {
 	private static final String DEFAULT_EMULATOR_TOOLS_SUBDIR = "emulatorTools";
 	private static final String DEFAULT_CLOUD_TOOLS_SUBDIR = "cloudTools";
 	private static final String BUILD_ERROR_FILENAME = "BuildFailure.txt";
+	private static final int DEFAULT_TRANSFER_THREADS = 4;
 	public static final String DEFAULT_UTIL_SUBDIR = "util"; // relative to approot
 	public static final String UTIL_UNZIP_FILENAME = "unzip.vbs";
 	public static final String UTIL_DOWNLOAD_FILENAME = "download.vbs";
@@ -115,6 +124,10 @@ public class WindowsAzurePackage extends Task {
 	private String rolePropertiesFileName = null;
 	private UseCTPFormat useCtpPackageFormat = UseCTPFormat.AUTO;
 	private boolean verifyDownloads = true;
+	private int packagingThreads = 0;
+	private int transferThreads = DEFAULT_TRANSFER_THREADS;
+	private String cacheDir;
+	private boolean virtualLayout;
 	private Thread downloadManagerThread = null;
 	
 	private DownloadManager downloadManager;
@@ -332,6 +345,43 @@ public class WindowsAzurePackage extends Task {
 	public boolean getVerifyDownloads() {
 		return this.verifyDownloads;
 	}
+
+	/**
+	 * Sets packagingthreads attribute, i.e. the maximum number of role archives
+	 * built concurrently; defaults to the number of available processors
+	 * @param packagingThreads
+	 */
+	public void setPackagingThreads(int packagingThreads) {
+		this.packagingThreads = packagingThreads;
+	}
+
+	/**
+	 * Sets transferthreads attribute, i.e. the maximum number of components
+	 * verified, zipped and uploaded concurrently; defaults to 4
+	 * @param transferThreads
+	 */
+	public void setTransferThreads(int transferThreads) {
+		this.transferThreads = transferThreads;
+	}
+
+	/**
+	 * Sets cachedir attribute, i.e. the directory where file hashes and built
+	 * archives are kept between builds so unchanged content is not packaged again;
+	 * must be outside of packagedir
+	 * @param cacheDir
+	 */
+	public void setCacheDir(String cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+
+	/**
+	 * Sets virtuallayout attribute; if true, the role archives are built from approot
+	 * and the SDK files where they are, instead of copying them to packagedir first (default)
+	 * @param virtualLayout
+	 */
+	public void setVirtualLayout(boolean virtualLayout) {
+		this.virtualLayout = virtualLayout;
+	}
 	
 	private String getThrdPartyJdkCloudValue(WorkerRole role) {
 		String cldVal = "";
@@ -550,17 +600,19 @@ public class WindowsAzurePackage extends Task {
 		
 		StorageService storageAccount = null;
 		ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
+		com.microsoft.windowsazure.Configuration configuration = null;
 		try {
 			WindowsAzureServiceManagement instance = Utils.getServiceInstance();
 			
 			Thread.currentThread().setContextClassLoader(WindowsAzurePackage.class.getClassLoader());
 			
-			com.microsoft.windowsazure.Configuration configuration =
-					WindowsAzureRestUtils.getConfiguration(pubFile, subscriptionId);
+			configuration = WindowsAzureRestUtils.getConfiguration(pubFile, subscriptionId);
 			
 			storageAccount = Utils.createStorageAccountIfNotExists(
 					configuration, instance, storageAccountName, region);
 		} finally {
+			// release the connections of this task's subscription
+			ManagementClientRegistry.close(configuration);
 			Thread.currentThread().setContextClassLoader(currentClassLoader);
 		}
 		
@@ -710,6 +762,9 @@ public class WindowsAzurePackage extends Task {
         configuration.setSdkDir(sdkDir);
         configuration.setSdkKit(sdkKit);
         configuration.setTemplatesDir(templatesDir);
+        configuration.setPackagingThreads(packagingThreads);
+        configuration.setCacheDir(cacheDir);
+        configuration.setVirtualLayout(virtualLayout);
 
         configuration.init();
 
@@ -1118,10 +1173,21 @@ public class WindowsAzurePackage extends Task {
 	 * @param dest
 	 */
 	public void copyFile(File src, File dest) {
+		copyFile(src, dest, false);
+	}
+
+	/**
+	 * Import as a copy
+	 * @param src
+	 * @param dest
+	 * @param preserveLastModified keep modification times of the source files
+	 */
+	public void copyFile(File src, File dest, boolean preserveLastModified) {
 
 		Copy copyTask = new Copy();
 		copyTask.bindToOwner(this);
 		copyTask.init();
+		copyTask.setPreserveLastModified(preserveLastModified);
 
 		// Determine src and dest type
 		if (src.isFile()) {
@@ -1138,6 +1204,69 @@ public class WindowsAzurePackage extends Task {
 		copyTask.perform();
 	}
 
+	/**
+	 * Zips a component directory for upload, outside of packagedir so the archive never ends up in the package.
+	 * With a cachedir the archive is kept there and reused while the directory does not change,
+	 * otherwise it is written to a temporary directory and removed by {@link #releaseComponentArchive(File)}
+	 * @param src
+	 * @param name
+	 * @return the archive to upload
+	 */
+	public File zipComponent(File src, String name) {
+		int threads = packagingThreads > 0 ? packagingThreads : Runtime.getRuntime().availableProcessors();
+		long start = System.currentTimeMillis();
+		File dest;
+		try {
+			dest = new File(getComponentArchiveDir(src), name);
+			if (!new ComponentArchiver(threads).archive(src, dest)) {
+				// Zip64 is only supported by Ant
+				zipFile(src, dest);
+			}
+		} catch (IOException e) {
+			throw new BuildException(String.format("Failed to zip component \"%s\"", src.getPath()), e);
+		}
+		this.log(String.format("Zipped %s in %.1f sec.", src.getPath(), (System.currentTimeMillis() - start) / 1000.0));
+		return dest;
+	}
+
+	/**
+	 * Removes an archive returned by {@link #zipComponent(File, String)} once it is uploaded, unless it is cached
+	 * @param archive
+	 */
+	public void releaseComponentArchive(File archive) {
+		if (cacheDir == null) {
+			// the temporary directory holds nothing else than the archive and its fingerprint
+			try {
+				com.microsoftopentechnologies.windowsazure.tools.cspack.Utils.delete(archive.getParentFile());
+			} catch (RuntimeException e) {
+				this.log("warning: " + e.getMessage(), 1);
+			}
+		}
+	}
+
+	/**
+	 * Directory of the archive, fingerprint and temporary files of a component; one per source directory
+	 * in cachedir, or a new temporary directory
+	 */
+	private File getComponentArchiveDir(File src) throws IOException {
+		File dir;
+		if (cacheDir != null) {
+			// file names differing in case are the same file on Windows
+			String key = src.getAbsolutePath().toLowerCase(Locale.ENGLISH);
+			MessageDigest digest = com.microsoftopentechnologies.windowsazure.tools.cspack.Utils.createSha256Digest();
+			digest.update(key.getBytes("UTF-8"));
+			dir = new File(new File(cacheDir, "components"),
+					com.microsoftopentechnologies.windowsazure.tools.cspack.Utils.toHexHash(digest).substring(0, 16));
+		} else {
+			dir = File.createTempFile("component", "");
+			dir.delete();
+		}
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create directory '" + dir + "'");
+		}
+		return dir;
+	}
+
 	/**
 	 * Import as a Zip
 	 * @param src
@@ -1420,7 +1549,9 @@ public class WindowsAzurePackage extends Task {
 	
 	
 	/**
-	 * Class to implement the component download management as a separate thread
+	 * Class to implement the component download management as a separate thread.
+	 * Components are verified, zipped and uploaded concurrently, at most transferthreads at a time;
+	 * the first failure cancels the remaining transfers.
 	 */
 	private class DownloadManager implements Runnable {
 		private WindowsAzurePackage windowsAzurePackage = null;
@@ -1432,16 +1563,110 @@ public class WindowsAzurePackage extends Task {
 		}
 		
 	    public void run() {
+	    	List<List<Component>> transfers = groupTransfers();
+			if(transfers.isEmpty()) {
+				return;
+			}
+
 	    	// Ensure download availability
+			int threads = Math.max(1, Math.min(transferThreads, transfers.size()));
+			ExecutorService executorService = Executors.newFixedThreadPool(threads);
 			try {
-				for(WorkerRole role : windowsAzurePackage.roles) {
-					for(Component component : role.getComponents()) {
-	    				component.ensureDownload(windowsAzureManager);
+				CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executorService);
+				for(List<Component> components : transfers) {
+					completionService.submit(createTransferTask(components));
+				}
+				for(int i = 0; i < transfers.size(); i++) {
+					try {
+						completionService.take().get();
+					} catch (ExecutionException e) {
+						Throwable cause = e.getCause();
+						exception = cause instanceof BuildException ? (BuildException) cause : new BuildException(cause);
+						return;
+					}
+				}
+			} catch(InterruptedException e) {
+				exception = new BuildException("Component transfers interrupted", e);
+			} finally {
+				executorService.shutdownNow();
+			}
+	    }
+
+	    /**
+	     * Components with the same cloud source upload to the same blob, and components whose cloud sources have
+	     * the same file name zip to the same file of the package directory, so either are handled one after the other
+	     * by the same task.
+	     */
+	    private List<List<Component>> groupTransfers() {
+	    	List<List<Component>> transfers = new ArrayList<List<Component>>();
+	    	Map<String, List<Component>> transfersByKey = new HashMap<String, List<Component>>();
+			for(WorkerRole role : windowsAzurePackage.roles) {
+				for(Component component : role.getComponents()) {
+					if(component.getCloudSrc() == null) {
+						continue;
 					}
+					String source = getSourceKey(component);
+					String target = getTargetKey(component);
+					List<Component> bySource = transfersByKey.get(source);
+					List<Component> byTarget = transfersByKey.get(target);
+					List<Component> transfer = bySource != null ? bySource : byTarget;
+					if(transfer == null) {
+						transfer = new ArrayList<Component>();
+						transfers.add(transfer);
+					} else if(byTarget != null && byTarget != bySource) {
+						// the component joins two transfers sharing neither source nor target so far
+						for(Iterator<List<Component>> iterator = transfers.iterator(); iterator.hasNext();) {
+							if(iterator.next() == byTarget) {
+								iterator.remove();
+							}
+						}
+						for(Component merged : byTarget) {
+							transfersByKey.put(getSourceKey(merged), transfer);
+							transfersByKey.put(getTargetKey(merged), transfer);
+						}
+						transfer.addAll(byTarget);
+					}
+					transfer.add(component);
+					transfersByKey.put(source, transfer);
+					transfersByKey.put(target, transfer);
 				}
-			} catch(BuildException e) {
-				exception = e;
 			}
+			return transfers;
+	    }
+
+	    private String getSourceKey(Component component) {
+	    	return "src:" + component.getCloudSrc();
+	    }
+
+	    private String getTargetKey(Component component) {
+	    	// components zipped under the same name may share an archive in cachedir,
+	    	// and file names differing in case are the same file on Windows
+	    	return "zip:" + String.valueOf(component.getCloudDownloadAs()).toLowerCase(Locale.ENGLISH);
+	    }
+
+	    private Callable<Void> createTransferTask(final List<Component> components) {
+	    	return new Callable<Void>() {
+	    		public Void call() {
+	    			for(Component component : components) {
+	    				long start = System.currentTimeMillis();
+	    				component.ensureDownload(windowsAzureManager);
+	    				logThroughput(component, System.currentTimeMillis() - start);
+	    			}
+	    			return null;
+	    		}
+	    	};
+	    }
+
+	    private void logThroughput(Component component, long elapsedMillis) {
+	    	long bytes = component.getUploadedBytes();
+	    	if(bytes > 0) {
+	    		windowsAzurePackage.log(String.format("Transferred %s: %d KB in %.1f sec. (%d KB/sec.)",
+	    				component.getCloudSrc(), bytes / 1024, elapsedMillis / 1000.0,
+	    				bytes * 1000 / 1024 / Math.max(1, elapsedMillis)));
+	    	} else {
+	    		windowsAzurePackage.log(String.format("Verified %s in %.1f sec.",
+	    				component.getCloudSrc(), elapsedMillis / 1000.0));
+	    	}
 	    }
 	}
 
@@ -25,12 +25,30 @@ import com.microsoftopentechnologies.windowsazure.tools.cspack.domain.xsd.servic
 
 import javax.xml.bind.JAXBException;
 import java.io.*;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipOutputStream;
 
 import static com.microsoftopentechnologies.windowsazure.tools.cspack.Configuration.*;
 
 public class BinaryPackageCreator {
+    /**
+     * Changed files up to this total size are hashed before packing, so regenerated files with the same content
+     * still let the stored archive be reused; larger ones are hashed while they are deflated
+     */
+    private static final long MAX_PREHASH_SIZE = 1024 * 1024;
+
     private Configuration configuration;
+    // .cspack.jar read in place by the virtual layout
+    private JarFile sdkJar;
 
     public BinaryPackageCreator(Configuration configuration) {
         this.configuration = configuration;
@@ -39,56 +57,167 @@ public class BinaryPackageCreator {
     public void createPackage() throws IOException, JAXBException {
         ServiceConfiguration serviceConfiguration = Utils.parseXmlFile(ServiceConfiguration.class,
                 configuration.getProjectDir() + File.separator + configuration.getConfigurationFileName());
-        ServiceDefinition serviceDefinition = getServiceDefinition(serviceConfiguration);
-
-        createNamedStreamPackage(serviceDefinition.getWorkerRole());
-
-        createServiceDefinitionPackage(serviceDefinition);
+        final ServiceDefinition serviceDefinition = getServiceDefinition(serviceConfiguration);
+        if (configuration.isVirtualLayout()) {
+            sdkJar = new JarFile(getSdkJarName());
+        }
+        try {
+            createPackage(serviceDefinition);
+        } finally {
+            if (sdkJar != null) {
+                sdkJar.close();
+                sdkJar = null;
+            }
+        }
+    }
 
-        createServiceModelPackage(serviceDefinition);
+    private void createPackage(final ServiceDefinition serviceDefinition) throws IOException, JAXBException {
 
-        createWorkerRolePackage(serviceDefinition);
+        // every archive except the root one is built from its own folder, so they are created concurrently
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        tasks.add(new Callable<Void>() {
+            public Void call() throws Exception {
+                createNamedStreamPackage(serviceDefinition.getWorkerRole());
+                return null;
+            }
+        });
+        tasks.add(new Callable<Void>() {
+            public Void call() throws Exception {
+                createServiceDefinitionPackage(serviceDefinition);
+                return null;
+            }
+        });
+        tasks.add(new Callable<Void>() {
+            public Void call() throws Exception {
+                createServiceModelPackage(serviceDefinition);
+                return null;
+            }
+        });
+        for (final Role role : serviceDefinition.getWorkerRole()) {
+            tasks.add(new Callable<Void>() {
+                public Void call() throws Exception {
+                    createWorkerRolePackage(serviceDefinition, role);
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
 
         createRelsCsmanAndContentTypes(configuration.getPackageDir(), "cb832ab2-764a-4dcb-adc9-c7abf4593de9.csman", configuration.getPackageFileName(), false, true, serviceDefinition.getWorkerRole());
     }
 
-    private void createWorkerRolePackage(ServiceDefinition serviceDefinition) throws IOException {
-        for (Role role : serviceDefinition.getWorkerRole()) {
-            String roleFolder = configuration.getPackageDir() + File.separator + role.getName();
-            Utils.createDirectory(roleFolder);
-            RoleWrapper roleWrapper = new RoleWrapper(role, new RuntimeModel(), false);
-            Utils.applyTemplate("LocalContent/Roles/RoleModel.xml", roleWrapper, roleFolder + File.separator + "RoleModel.xml");
-            Utils.applyTemplate("LocalContent/Roles/RuntimeSetup.Manifest", serviceDefinition.isRemoteAccess(), roleFolder + File.separator + "RuntimeSetup.Manifest");
-
-            String sdkKit = configuration.getSdkKit();
-            addDirectoryToPackage(configuration.getProjectDir() + File.separator + role.getName() + File.separator + "approot", "approot", role.getName());
-            addSdkEntryToPackage(sdkKit + BASE_SDK, role.getName(), (sdkKit + BASE_SDK).length());
-            if (role.isRemoteAccess()) {
-                addSdkEntryToPackage(sdkKit + PLUGINS_SDK + File.separator + Role.REMOTE_ACCESS, role.getName(), SDK_KIT.length());
+    /**
+     * Runs tasks on a pool bounded by {@link Configuration#getPackagingThreads()}; the first failure cancels the rest.
+     */
+    private void runAll(List<Callable<Void>> tasks) throws IOException, JAXBException {
+        int threads = Math.max(1, Math.min(configuration.getPackagingThreads(), tasks.size()));
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executorService);
+            for (Callable<Void> task : tasks) {
+                completionService.submit(task);
             }
-            if (role.isRemoteForwarder()) {
-                addSdkEntryToPackage(sdkKit + PLUGINS_SDK + File.separator + Role.REMOTE_FORWARDER, role.getName(), SDK_KIT.length());
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof JAXBException) {
+                        throw (JAXBException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IOException(cause.getMessage(), cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Package creation interrupted");
+                }
             }
-            if (role.isCaching()) {
-                addSdkEntryToPackage(sdkKit + PLUGINS_SDK + File.separator + Role.CACHING, role.getName(), SDK_KIT.length());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private void createWorkerRolePackage(ServiceDefinition serviceDefinition, Role role) throws IOException {
+        String roleFolder = configuration.getPackageDir() + File.separator + role.getName();
+        Utils.createDirectory(roleFolder);
+        RoleWrapper roleWrapper = new RoleWrapper(role, new RuntimeModel(), false);
+        Utils.applyTemplate("LocalContent/Roles/RoleModel.xml", roleWrapper, roleFolder + File.separator + "RoleModel.xml");
+        Utils.applyTemplate("LocalContent/Roles/RuntimeSetup.Manifest", serviceDefinition.isRemoteAccess(), roleFolder + File.separator + "RuntimeSetup.Manifest");
+
+        String sdkKit = configuration.getSdkKit();
+        List<String> sdkSources = new ArrayList<String>();
+        List<Integer> sdkSubstringLengths = new ArrayList<Integer>();
+        sdkSources.add(sdkKit + BASE_SDK);
+        sdkSubstringLengths.add((sdkKit + BASE_SDK).length());
+        if (role.isRemoteAccess()) {
+            sdkSources.add(sdkKit + PLUGINS_SDK + File.separator + Role.REMOTE_ACCESS);
+            sdkSubstringLengths.add(SDK_KIT.length());
+        }
+        if (role.isRemoteForwarder()) {
+            sdkSources.add(sdkKit + PLUGINS_SDK + File.separator + Role.REMOTE_FORWARDER);
+            sdkSubstringLengths.add(SDK_KIT.length());
+        }
+        if (role.isCaching()) {
+            sdkSources.add(sdkKit + PLUGINS_SDK + File.separator + Role.CACHING);
+            sdkSubstringLengths.add(SDK_KIT.length());
+        }
+        if (role.isWebDeploy()) {
+            sdkSources.add(sdkKit + PLUGINS_SDK + File.separator + Role.WEB_DEPLOY);
+            sdkSubstringLengths.add(SDK_KIT.length());
+        }
+        String approot = configuration.getProjectDir() + File.separator + role.getName() + File.separator + "approot";
+        String csmanName = role.getName() + File.separator + "98663f99-fdef-4cc2-9430-69489a29cc1f.csman";
+        String archiveName = role.getName() + "_" + role.getFilename() + ".cssx";
+
+        if (configuration.isVirtualLayout()) {
+            // approot and SDK files are read where they are, only generated files live in the role folder
+            PackageFolder packageFolder = PackageFolder.scan(new File(roleFolder));
+            packageFolder.mount("approot", new File(approot));
+            for (int i = 0; i < sdkSources.size(); i++) {
+                mountSdkEntries(packageFolder, sdkSources.get(i), sdkSubstringLengths.get(i));
             }
-            if (role.isWebDeploy()) {
-                addSdkEntryToPackage(sdkKit + PLUGINS_SDK + File.separator + Role.WEB_DEPLOY, role.getName(), SDK_KIT.length());
+            createRelsCsmanAndContentTypes(packageFolder, csmanName, archiveName, true, false, null);
+        } else {
+            addDirectoryToPackage(approot, "approot", role.getName());
+            for (int i = 0; i < sdkSources.size(); i++) {
+                addSdkEntryToPackage(sdkSources.get(i), role.getName(), sdkSubstringLengths.get(i));
             }
-            createRelsCsmanAndContentTypes(roleFolder, role.getName() + File.separator + "98663f99-fdef-4cc2-9430-69489a29cc1f.csman",
-                    role.getName() + "_" + role.getFilename() + ".cssx", true, false, null);
+            createRelsCsmanAndContentTypes(roleFolder, csmanName, archiveName, true, false, null);
         }
     }
 
+    private void mountSdkEntries(PackageFolder packageFolder, String sourceFolder, int substringLength) throws IOException {
+        for (String entryName : Utils.getJarEntries(getSdkJarName(), sourceFolder.replace("\\", "/"))) {
+            String path = entryName.substring(substringLength);
+            while (path.startsWith("/")) {
+                path = path.substring(1);
+            }
+            JarEntry jarEntry = sdkJar.getJarEntry(entryName);
+            if (jarEntry == null) {
+                throw new IOException(entryName + " not found");
+            }
+            packageFolder.mount(path, sdkJar, jarEntry);
+        }
+    }
+
+    private String getSdkJarName() {
+        return String.format("%s%s%s", configuration.getProjectDir(), File.separatorChar, ".cspack.jar");
+    }
+
     private void addDirectoryToPackage(String sourceFolder, String destFolder, String roleName) {
-        configuration.getWaPackage().copyFile(new File(sourceFolder), new File(configuration.getPackageDir() + File.separator + roleName + File.separator + destFolder));
+        // source timestamps are kept so the package cache recognizes unchanged files
+        configuration.getWaPackage().copyFile(new File(sourceFolder), new File(configuration.getPackageDir() + File.separator + roleName + File.separator + destFolder), true);
     }
 
     private void addSdkEntryToPackage(String sourceFolder, String roleName, int substringLength) {
         List<String> fileEntries = null;
         try {
-            String jarName = String.format("%s%s%s", configuration.getProjectDir(), File.separatorChar, ".cspack.jar");
-            fileEntries = Utils.getJarEntries(jarName, sourceFolder.replace("\\", "/"));
+            fileEntries = Utils.getJarEntries(getSdkJarName(), sourceFolder.replace("\\", "/"));
 
             for (String entryName : fileEntries) {
                 File newFile = new File(configuration.getPackageDir() + File.separator + roleName + File.separator + entryName.substring(substringLength));
@@ -119,30 +248,197 @@ public class BinaryPackageCreator {
 
     private void createRelsCsmanAndContentTypes(String folder, String fileName, String archiveName, boolean deleteSourceFolder, boolean isRoot,
                                                 List<Role> roles) throws IOException {
-        List<File> files = new ArrayList<File>();
-        Utils.generateFileList(files, new File(folder));
+        // the tree is walked once; files generated below are picked up from the root listing
+        createRelsCsmanAndContentTypes(PackageFolder.scan(new File(folder)), fileName, archiveName, deleteSourceFolder, isRoot, roles);
+    }
 
-        List<FileWithHash> filesWithHash = new ArrayList<FileWithHash>();
-        for (File file : files) {
-            if (file.isFile() && !file.getName().equals(".rels")) {
-                FileWithHash fileWithHash = new FileWithHash(file.getPath().substring(folder.length() + 1).replaceAll("[\\\\]", "/"), Utils.calcHexHash(file));
-                filesWithHash.add(fileWithHash);
+    private void createRelsCsmanAndContentTypes(PackageFolder packageFolder, String fileName, String archiveName, boolean deleteSourceFolder,
+                                                boolean isRoot, List<Role> roles) throws IOException {
+        String folder = packageFolder.getRoot().getPath();
+        File archive = new File(configuration.getPackageDir() + File.separator + archiveName);
+        packageFolder.exclude(archive.getName());
+        File csman = new File(configuration.getPackageDir() + File.separator + fileName);
+        PackageCache cache = configuration.getCacheDir() == null ? null
+                : new PackageCache(new File(configuration.getCacheDir()), getCacheName(archiveName, folder));
+
+        // path -> hash for every file, including .rels which are not listed in the manifest
+        List<PackageFolder.Entry> entries = packageFolder.getEntries();
+        Map<String, String> hashes = new HashMap<String, String>();
+        boolean csmanCreated = false;
+        if (cache != null) {
+            // files changed since the last build are hashed while they are deflated below, unless they are small
+            boolean allHashed = true;
+            long prehashed = 0;
+            for (PackageFolder.Entry entry : entries) {
+                if (!entry.isDirectory()) {
+                    String hash = cache.getHash(entry);
+                    if (hash == null && entry.getSize() >= 0 && prehashed + entry.getSize() <= MAX_PREHASH_SIZE) {
+                        hash = Utils.calcHexHash(entry);
+                        prehashed += entry.getSize();
+                    }
+                    if (hash != null) {
+                        hashes.put(entry.getPath(), hash);
+                    } else {
+                        allHashed = false;
+                    }
+                }
+            }
+            if (allHashed) {
+                createCsman(csman, entries, hashes, isRoot, roles);
+                csmanCreated = true;
+                if (cache.restore(fingerprint(csman, entries, hashes, isRoot), archive)) {
+                    packageFolder.deleteContent();
+                    if (deleteSourceFolder) {
+                        Utils.delete(new File(folder));
+                    }
+                    return;
+                }
             }
         }
-        Utils.applyTemplate("csman.csman", new FilesWithHash(filesWithHash, isRoot, roles), configuration.getPackageDir() + File.separator + fileName);
-        files = new ArrayList<File>();
-        Utils.generateFileList(files, new File(folder));
-        createRels(folder, files, isRoot);
-
-        files = new ArrayList<File>();
-        Utils.generateFileList(files, new File(folder));
-        createContentTypes2(files, folder);
-        Utils.pack(new File(folder), configuration.getPackageDir() + File.separator + archiveName, true);
+
+        if (cache != null && cache.getArchive() != null && PackageArchiveWriter.fits(entries)) {
+            packReusingArchive(packageFolder, entries, hashes, csman, !csmanCreated, cache, archive, isRoot, roles);
+        } else {
+            pack(packageFolder, entries, hashes, csman, !csmanCreated, archive, isRoot, roles);
+        }
+        if (cache != null) {
+            for (PackageFolder.Entry entry : entries) {
+                if (!entry.isDirectory()) {
+                    cache.putHash(entry, hashes.get(entry.getPath()));
+                }
+            }
+            cache.store(fingerprint(csman, entries, hashes, isRoot), archive);
+        }
+        packageFolder.deleteContent();
         if (deleteSourceFolder) {
             Utils.delete(new File(folder));
         }
     }
 
+    /**
+     * Names the cache of an archive after the project and the folder it is built from,
+     * so projects and roles sharing a cache directory keep separate entries.
+     */
+    private String getCacheName(String archiveName, String folder) throws IOException {
+        MessageDigest digest = Utils.createSha256Digest();
+        String key = new File(configuration.getProjectDir()).getAbsolutePath() + File.pathSeparator + new File(folder).getAbsolutePath();
+        // file names differing in case are the same file on Windows
+        digest.update(key.toLowerCase(Locale.ENGLISH).getBytes("UTF-8"));
+        return archiveName + "_" + Utils.toHexHash(digest).substring(0, 16);
+    }
+
+    private void pack(PackageFolder packageFolder, List<PackageFolder.Entry> entries, Map<String, String> hashes, File csman,
+                      boolean createCsman, File archive, boolean isRoot, List<Role> roles) throws IOException {
+        String folder = packageFolder.getRoot().getPath();
+        ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(archive)));
+        try {
+            // content is hashed while it is deflated; the manifest and the generated parts go to the end of the archive
+            Set<String> packed = new HashSet<String>();
+            for (PackageFolder.Entry entry : entries) {
+                if (entry.isDirectory() || hashes.containsKey(entry.getPath())) {
+                    Utils.pack(entry, out, null);
+                } else {
+                    MessageDigest digest = Utils.createSha256Digest();
+                    Utils.pack(entry, out, digest);
+                    hashes.put(entry.getPath(), Utils.toHexHash(digest));
+                }
+                packed.add(entry.getPath());
+            }
+            if (createCsman) {
+                createCsman(csman, entries, hashes, isRoot, roles);
+            }
+            createRels(folder, packageFolder.getFileEntries(), isRoot);
+            createContentTypes2(packageFolder.getFileEntries(), folder);
+
+            for (PackageFolder.Entry entry : packageFolder.getEntries()) {
+                if (!packed.contains(entry.getPath())) {
+                    Utils.pack(entry, out, null);
+                }
+            }
+        } finally {
+            Utils.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Packs the files, copying the compressed data of those whose hash is known and the same as in the archive
+     * kept by the last build; the others are hashed while they are deflated. The manifest and the generated parts
+     * go to the end of the archive.
+     */
+    private void packReusingArchive(PackageFolder packageFolder, List<PackageFolder.Entry> entries, Map<String, String> hashes,
+                                    File csman, boolean createCsman, PackageCache cache, File archive, boolean isRoot,
+                                    List<Role> roles) throws IOException {
+        String folder = packageFolder.getRoot().getPath();
+        PackageArchiveWriter out = new PackageArchiveWriter(new BufferedOutputStream(new FileOutputStream(archive)),
+                cache.getArchive());
+        try {
+            Set<String> packed = new HashSet<String>();
+            for (PackageFolder.Entry entry : entries) {
+                String hash = hashes.get(entry.getPath());
+                if (entry.isDirectory()) {
+                    out.pack(entry, null);
+                } else if (hash == null) {
+                    MessageDigest digest = Utils.createSha256Digest();
+                    out.pack(entry, digest);
+                    hashes.put(entry.getPath(), Utils.toHexHash(digest));
+                } else if (!hash.equals(cache.getArchivedHash(entry.getPath())) || !out.copy(entry)) {
+                    out.pack(entry, null);
+                }
+                packed.add(entry.getPath());
+            }
+            if (createCsman) {
+                createCsman(csman, entries, hashes, isRoot, roles);
+            }
+            createRels(folder, packageFolder.getFileEntries(), isRoot);
+            createContentTypes2(packageFolder.getFileEntries(), folder);
+
+            for (PackageFolder.Entry entry : packageFolder.getEntries()) {
+                if (!packed.contains(entry.getPath())) {
+                    out.pack(entry, null);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private void createCsman(File csman, List<PackageFolder.Entry> entries, Map<String, String> hashes, boolean isRoot,
+                             List<Role> roles) throws IOException {
+        List<FileWithHash> filesWithHash = new ArrayList<FileWithHash>();
+        for (PackageFolder.Entry entry : entries) {
+            if (!entry.isDirectory() && !entry.getName().equals(".rels")) {
+                filesWithHash.add(new FileWithHash(entry.getPath(), hashes.get(entry.getPath())));
+            }
+        }
+        Utils.applyTemplate("csman.csman", new FilesWithHash(filesWithHash, isRoot, roles), csman.getPath());
+    }
+
+    /**
+     * Identifies the archive content: the manifest covers file hashes and role settings,
+     * the rest of the generated parts only depends on file names and the SDK version.
+     */
+    private String fingerprint(File csman, List<PackageFolder.Entry> entries, Map<String, String> hashes, boolean isRoot)
+            throws IOException {
+        MessageDigest digest = Utils.createSha256Digest();
+        for (PackageFolder.Entry entry : entries) {
+            digest.update((entry.getPath() + "=" + hashes.get(entry.getPath()) + "\n").getBytes("UTF-8"));
+        }
+        if (isRoot) {
+            digest.update(String.valueOf(System.getProperty("sdkVersion")).getBytes("UTF-8"));
+        }
+        InputStream in = new FileInputStream(csman);
+        try {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            Utils.closeQuietly(in);
+        }
+        return Utils.toHexHash(digest);
+    }
+
     private void createNamedStreamPackage(List<Role> roles) throws IOException {
         Utils.createDirectory(configuration.getNamedStreamsPath());
         for (Role role : roles) {
@@ -158,11 +454,11 @@ public class BinaryPackageCreator {
                 "NamedStreamPackage_285fe43b-7fcf-4ddf-b80b-f242e0ee0e3d.csnsx", true, false, null);
     }
 
-    private void createRels(String folder, List<File> files, boolean isRoot) throws IOException {
+    private void createRels(String folder, List<PackageFolder.Entry> files, boolean isRoot) throws IOException {
         Utils.createDirectory(folder + File.separator + "_rels");
         List<Relationship> rels = new ArrayList<Relationship>();
         RelationshipTypes.TypeId typeId;
-        for (File file : files) {
+        for (PackageFolder.Entry file : files) {
             if (file.getName().equals("Cloud.uar.csman")) {
                 typeId = RelationshipTypes.get(file.getName()); // special case for Cloud.uar.csman
             } else {
@@ -233,10 +529,10 @@ public class BinaryPackageCreator {
                         role.getRole().getName() + File.separator + "1.0");
     }
 
-    private void createContentTypes2(Collection<File> files, String path) throws IOException {
+    private void createContentTypes2(Collection<PackageFolder.Entry> files, String path) throws IOException {
         Map<String, ContentType> model = new HashMap<String, ContentType>();
         boolean hasCloudUarCsman = false;
-        for (File file : files) {
+        for (PackageFolder.Entry file : files) {
             if ("Cloud.uar.csman".equals(file.getName())) {
                 hasCloudUarCsman = true;
             }
@@ -41,6 +41,9 @@ public class Configuration {
     private String emulatorToolsDir;
     private String cloudToolsDir;
     private String templatesDir;
+    private int packagingThreads = Runtime.getRuntime().availableProcessors();
+    private String cacheDir;
+    private boolean virtualLayout;
 
     // derived properties
     private String namedStreamsPath;
@@ -155,6 +158,38 @@ public class Configuration {
         this.templatesDir = templatesDir;
     }
 
+    public int getPackagingThreads() {
+        return packagingThreads;
+    }
+
+    public void setPackagingThreads(int packagingThreads) {
+        if (packagingThreads > 0) {
+            this.packagingThreads = packagingThreads;
+        }
+    }
+
+    /**
+     * Directory of the package cache kept between builds; null disables caching.
+     */
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    public void setCacheDir(String cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * If true, role archives are assembled from approot and .cspack.jar in place, without staging a copy in packageDir.
+     */
+    public boolean isVirtualLayout() {
+        return virtualLayout;
+    }
+
+    public void setVirtualLayout(boolean virtualLayout) {
+        this.virtualLayout = virtualLayout;
+    }
+
     public String getNamedStreamsPath() {
         return namedStreamsPath;
     }
@@ -185,6 +220,9 @@ public class Configuration {
                 ", configurationFileName='" + configurationFileName + '\'' +
                 ", emulatorToolsDir='" + emulatorToolsDir + '\'' +
                 ", templatesDir='" + templatesDir + '\'' +
+                ", packagingThreads=" + packagingThreads +
+                ", cacheDir='" + cacheDir + '\'' +
+                ", virtualLayout=" + virtualLayout +
                 '}';
     }
 }
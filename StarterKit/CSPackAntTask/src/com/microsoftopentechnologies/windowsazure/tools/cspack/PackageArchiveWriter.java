@@ -0,0 +1,371 @@
+/*
+ Copyright 2015 Microsoft Open Technologies, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.microsoftopentechnologies.windowsazure.tools.cspack;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a package archive, copying the compressed data of files which did not change from the archive
+ * of the previous build instead of deflating them again.
+ * <p>
+ * Only archives without Zip64 extensions are written, callers check {@link #fits(List)} first.
+ * Entries of the previous archive are looked up by path; the caller decides whether the content is the
+ * same, from the hashes recorded with that archive.
+ */
+class PackageArchiveWriter implements Closeable {
+    private static final int BUFFER_SIZE = 16384;
+    private static final long MAX_ZIP_SIZE = 0xFFFFFFFFL;
+    private static final int MAX_ZIP_ENTRIES = 0xFFFF;
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int FLAG_ENCRYPTED = 0x0001;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private final OutputStream out;
+    private final RandomAccessFile previous;
+    private final Map<String, Entry> previousEntries = new HashMap<String, Entry>();
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private long offset;
+
+    /**
+     * @param out receives the archive, closed with the writer
+     * @param previousArchive archive of the previous build, null or unreadable if there is none
+     */
+    PackageArchiveWriter(OutputStream out, File previousArchive) {
+        this.out = out;
+        RandomAccessFile file = null;
+        if (previousArchive != null && previousArchive.isFile()) {
+            try {
+                file = new RandomAccessFile(previousArchive, "r");
+                readCentralDirectory(file);
+            } catch (IOException e) {
+                // everything is deflated again
+                Utils.closeQuietly(file);
+                file = null;
+                previousEntries.clear();
+            }
+        }
+        this.previous = file;
+    }
+
+    /**
+     * Returns false if the entries might need Zip64 extensions, which this writer does not support.
+     */
+    static boolean fits(List<PackageFolder.Entry> entries) throws IOException {
+        if (entries.size() > MAX_ZIP_ENTRIES) {
+            return false;
+        }
+        long size = 22;
+        for (PackageFolder.Entry entry : entries) {
+            if (entry.getSize() < 0) {
+                return false;
+            }
+            // deflating adds at most 5 bytes per 16 KB block, plus both headers and the data descriptor
+            int nameLength = entry.getPath().getBytes("UTF-8").length;
+            size += entry.getSize() + 5 * (entry.getSize() / BUFFER_SIZE + 1) + 100 + 2 * nameLength;
+        }
+        return size <= MAX_ZIP_SIZE;
+    }
+
+    /**
+     * Copies the compressed data of the entry from the previous archive.
+     *
+     * @return false if the previous archive has no such entry, the caller packs it then
+     */
+    boolean copy(PackageFolder.Entry entry) throws IOException {
+        Entry previousEntry = previousEntries.get(entry.getPath());
+        if (previousEntry == null || previousEntry.size != entry.getSize()) {
+            return false;
+        }
+        previous.seek(previousEntry.offset);
+        if (readInt(previous) != LOCAL_HEADER) {
+            return false;
+        }
+        previous.seek(previousEntry.offset + 26);
+        int nameLength = readShort(previous);
+        int extraLength = readShort(previous);
+        previous.seek(previousEntry.offset + 30 + nameLength + extraLength);
+
+        Entry copy = new Entry(entry.getPath(), previousEntry.method, previousEntry.dosTime);
+        copy.crc = previousEntry.crc;
+        copy.compressedSize = previousEntry.compressedSize;
+        copy.size = previousEntry.size;
+        writeLocalHeader(copy, 0);
+        long remaining = copy.compressedSize;
+        while (remaining > 0) {
+            int n = previous.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n == -1) {
+                throw new IOException("Unexpected end of cached archive");
+            }
+            out.write(buffer, 0, n);
+            remaining -= n;
+        }
+        offset += copy.compressedSize;
+        return true;
+    }
+
+    /**
+     * Deflates the entry, or adds a directory.
+     *
+     * @param digest digest to update with the file content, may be null
+     */
+    void pack(PackageFolder.Entry entry, MessageDigest digest) throws IOException {
+        if (entry.isDirectory()) {
+            Entry directory = new Entry(entry.getPath(), STORED, toDosTime(System.currentTimeMillis()));
+            writeLocalHeader(directory, 0);
+            return;
+        }
+        // sizes are only known once deflated, they follow the data
+        Entry packed = new Entry(entry.getPath(), DEFLATED, toDosTime(entry.getTime()));
+        writeLocalHeader(packed, FLAG_DATA_DESCRIPTOR);
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        InputStream in = entry.openStream();
+        try {
+            byte[] output = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+                if (digest != null) {
+                    digest.update(buffer, 0, n);
+                }
+                deflater.setInput(buffer, 0, n);
+                while (!deflater.needsInput()) {
+                    out.write(output, 0, deflater.deflate(output));
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                out.write(output, 0, deflater.deflate(output));
+            }
+            packed.crc = crc.getValue();
+            packed.compressedSize = deflater.getBytesWritten();
+            packed.size = deflater.getBytesRead();
+        } finally {
+            deflater.end();
+            Utils.closeQuietly(in);
+        }
+        if (packed.compressedSize > MAX_ZIP_SIZE || packed.size > MAX_ZIP_SIZE) {
+            throw new IOException("Package file too large for a zip without Zip64 extensions '" + entry.getPath() + "'");
+        }
+        offset += packed.compressedSize;
+        writeInt(DATA_DESCRIPTOR);
+        writeInt(packed.crc);
+        writeInt(packed.compressedSize);
+        writeInt(packed.size);
+        offset += 16;
+    }
+
+    /**
+     * Writes the central directory and closes the archive.
+     */
+    public void close() throws IOException {
+        try {
+            long centralDirectoryOffset = offset;
+            for (Entry entry : entries) {
+                writeCentralHeader(entry);
+            }
+            writeInt(END_OF_CENTRAL_DIRECTORY);
+            writeShort(0);
+            writeShort(0);
+            writeShort(entries.size());
+            writeShort(entries.size());
+            writeInt(offset - centralDirectoryOffset);
+            writeInt(centralDirectoryOffset);
+            writeShort(0);
+        } finally {
+            Utils.closeQuietly(previous);
+            out.close();
+        }
+    }
+
+    private void readCentralDirectory(RandomAccessFile file) throws IOException {
+        // the end of central directory record is followed by a comment of at most 64 KB
+        long length = file.length();
+        long start = Math.max(0, length - 22 - 0xFFFF);
+        byte[] tail = new byte[(int) (length - start)];
+        file.seek(start);
+        file.readFully(tail);
+        int end = -1;
+        for (int i = tail.length - 22; i >= 0; i--) {
+            if (getInt(tail, i) == END_OF_CENTRAL_DIRECTORY) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1) {
+            throw new IOException("Not a zip file");
+        }
+        int count = getShort(tail, end + 10);
+        long centralDirectorySize = getInt(tail, end + 12);
+        long centralDirectoryOffset = getInt(tail, end + 16);
+        if (count == 0xFFFF || centralDirectoryOffset == 0xFFFFFFFFL
+                || centralDirectoryOffset + centralDirectorySize > length) {
+            throw new IOException("Zip64 archives are not reused");
+        }
+        byte[] centralDirectory = new byte[(int) centralDirectorySize];
+        file.seek(centralDirectoryOffset);
+        file.readFully(centralDirectory);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (getInt(centralDirectory, position) != CENTRAL_HEADER) {
+                throw new IOException("Corrupt central directory");
+            }
+            int flags = getShort(centralDirectory, position + 8);
+            int method = getShort(centralDirectory, position + 10);
+            int nameLength = getShort(centralDirectory, position + 28);
+            int extraLength = getShort(centralDirectory, position + 30);
+            int commentLength = getShort(centralDirectory, position + 32);
+            String name = new String(centralDirectory, position + 46, nameLength, "UTF-8");
+            if ((flags & FLAG_ENCRYPTED) == 0 && (method == STORED || method == DEFLATED)) {
+                Entry entry = new Entry(name, method, getInt(centralDirectory, position + 12));
+                entry.crc = getInt(centralDirectory, position + 16);
+                entry.compressedSize = getInt(centralDirectory, position + 20);
+                entry.size = getInt(centralDirectory, position + 24);
+                entry.offset = getInt(centralDirectory, position + 42);
+                previousEntries.put(name, entry);
+            }
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private void writeLocalHeader(Entry entry, int flags) throws IOException {
+        entry.flags = FLAG_UTF8 | flags;
+        entry.offset = offset;
+        entries.add(entry);
+        writeInt(LOCAL_HEADER);
+        writeShort(VERSION);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        writeShort(entry.name.length);
+        writeShort(0);
+        out.write(entry.name);
+        offset += 30 + entry.name.length;
+    }
+
+    private void writeCentralHeader(Entry entry) throws IOException {
+        writeInt(CENTRAL_HEADER);
+        writeShort(VERSION);
+        writeShort(VERSION);
+        writeShort(entry.flags);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(entry.compressedSize);
+        writeInt(entry.size);
+        writeShort(entry.name.length);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeShort(0);
+        writeInt(0);
+        writeInt(entry.offset);
+        out.write(entry.name);
+        offset += 46 + entry.name.length;
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xFFFF));
+        writeShort((int) ((value >>> 16) & 0xFFFF));
+    }
+
+    private static int readShort(RandomAccessFile file) throws IOException {
+        int low = file.read();
+        int high = file.read();
+        if ((low | high) < 0) {
+            throw new IOException("Unexpected end of cached archive");
+        }
+        return low | (high << 8);
+    }
+
+    private static long readInt(RandomAccessFile file) throws IOException {
+        return readShort(file) | ((long) readShort(file) << 16);
+    }
+
+    private static int getShort(byte[] bytes, int index) {
+        return (bytes[index] & 0xFF) | ((bytes[index + 1] & 0xFF) << 8);
+    }
+
+    private static long getInt(byte[] bytes, int index) {
+        return getShort(bytes, index) | ((long) getShort(bytes, index + 2) << 16);
+    }
+
+    /**
+     * MS-DOS date and time in the time zone of the build machine, as {@link java.util.zip.ZipEntry#setTime(long)} gives
+     */
+    private static long toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if (year < 1980) {
+            // 1980-01-01 00:00:00, the earliest time that can be represented
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (year - 1980) << 25)
+                | ((long) (calendar.get(Calendar.MONTH) + 1) << 21)
+                | ((long) calendar.get(Calendar.DAY_OF_MONTH) << 16)
+                | ((long) calendar.get(Calendar.HOUR_OF_DAY) << 11)
+                | ((long) calendar.get(Calendar.MINUTE) << 5)
+                | (calendar.get(Calendar.SECOND) >> 1);
+    }
+
+    private static class Entry {
+        final byte[] name;
+        final int method;
+        final long dosTime;
+        int flags;
+        long crc;
+        long compressedSize;
+        long size;
+        long offset;
+
+        Entry(String path, int method, long dosTime) throws IOException {
+            this.name = path.getBytes("UTF-8");
+            this.method = method;
+            this.dosTime = dosTime;
+        }
+    }
+}
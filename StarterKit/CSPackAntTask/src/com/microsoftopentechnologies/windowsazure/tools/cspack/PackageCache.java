@@ -0,0 +1,161 @@
+/*
+ Copyright 2015 Microsoft Open Technologies, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.microsoftopentechnologies.windowsazure.tools.cspack;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+
+/**
+ * On-disk cache of one package archive, kept between builds.
+ * <p>
+ * The index maps every packaged file to its size, modification time and SHA-256, so unchanged
+ * files are not hashed again. The archive built last time is kept next to the index together with
+ * a fingerprint of its content; when the fingerprint of a new build is the same, the stored archive
+ * is reused instead of deflating everything again. Otherwise the compressed data of the files whose
+ * hash did not change can still be copied from the stored archive.
+ */
+public class PackageCache {
+    private static final String INDEX_SUFFIX = ".index";
+    private static final String FILE_PREFIX = "file:";
+    private static final String FINGERPRINT = "fingerprint";
+
+    private final File indexFile;
+    private final File archiveFile;
+    private final Properties index = new Properties();
+    private final Properties updatedIndex = new Properties();
+
+    public PackageCache(File cacheDir, String archiveName) {
+        this.indexFile = new File(cacheDir, archiveName + INDEX_SUFFIX);
+        this.archiveFile = new File(cacheDir, archiveName);
+        if (indexFile.isFile()) {
+            InputStream in = null;
+            try {
+                in = new BufferedInputStream(new FileInputStream(indexFile));
+                index.load(in);
+            } catch (IOException e) {
+                // unreadable cache is the same as no cache
+                index.clear();
+            } finally {
+                Utils.closeQuietly(in);
+            }
+        }
+    }
+
+    /**
+     * Returns the hash stored for the file if its size and modification time did not change, otherwise null.
+     */
+    public String getHash(PackageFolder.Entry entry) {
+        String value = index.getProperty(FILE_PREFIX + entry.getPath());
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(",");
+        if (parts.length != 3
+                || !parts[0].equals(String.valueOf(entry.getSize()))
+                || !parts[1].equals(String.valueOf(entry.getTime()))) {
+            return null;
+        }
+        return parts[2];
+    }
+
+    /**
+     * Returns the hash of the content stored under the path in the archive kept by the last build, or null.
+     */
+    public String getArchivedHash(String path) {
+        String value = index.getProperty(FILE_PREFIX + path);
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(",");
+        return parts.length == 3 ? parts[2] : null;
+    }
+
+    /**
+     * Returns the archive kept by the last build, null if there is none or it may not match the index.
+     */
+    public File getArchive() {
+        // the index gets its fingerprint only once the archive is stored
+        return index.getProperty(FINGERPRINT) != null && archiveFile.isFile() ? archiveFile : null;
+    }
+
+    /**
+     * Records the hash of a packaged file; only files recorded during this build are written back by {@link #store}.
+     */
+    public void putHash(PackageFolder.Entry entry, String hash) {
+        updatedIndex.setProperty(FILE_PREFIX + entry.getPath(),
+                entry.getSize() + "," + entry.getTime() + "," + hash);
+    }
+
+    /**
+     * Copies the stored archive to the target if it was built from content with the same fingerprint.
+     *
+     * @return true if the archive was reused
+     */
+    public boolean restore(String fingerprint, File target) throws IOException {
+        if (!fingerprint.equals(index.getProperty(FINGERPRINT)) || !archiveFile.isFile()) {
+            return false;
+        }
+        copyFile(archiveFile, target);
+        // keeps the cached hash of the enclosing package valid
+        target.setLastModified(archiveFile.lastModified());
+        return true;
+    }
+
+    /**
+     * Keeps a copy of the archive and writes the index of this build.
+     */
+    public void store(String fingerprint, File archive) throws IOException {
+        File cacheDir = indexFile.getParentFile();
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            throw new IOException("Cannot create cache directory '" + cacheDir + "'");
+        }
+        // the index goes last, so an interrupted store never pairs a fingerprint with a wrong archive
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("Cannot delete '" + indexFile + "'");
+        }
+        copyFile(archive, archiveFile);
+        archiveFile.setLastModified(archive.lastModified());
+
+        updatedIndex.setProperty(FINGERPRINT, fingerprint);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(indexFile));
+        try {
+            updatedIndex.store(out, null);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void copyFile(File source, File destination) throws IOException {
+        FileInputStream in = new FileInputStream(source);
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(destination);
+            FileChannel inChannel = in.getChannel();
+            FileChannel outChannel = out.getChannel();
+            long size = inChannel.size();
+            long position = 0;
+            while (position < size) {
+                position += inChannel.transferTo(position, size - position, outChannel);
+            }
+        } finally {
+            Utils.closeQuietly(in);
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ Copyright 2015 Microsoft Open Technologies, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.microsoftopentechnologies.windowsazure.tools.cspack;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Snapshot of a package source folder taken with a single recursive walk.
+ * <p>
+ * Entries are remembered per top-level name, so files generated later directly under the root
+ * (manifest, _rels, [Content_Types].xml) only cost a listing of the root folder and never a new
+ * walk of the whole tree. The order of the returned entries is the same as a fresh walk would give.
+ * <p>
+ * Directories and jar entries can be mounted into the layout; they are packaged from where they are,
+ * after the content of the folder itself, and are never copied to or deleted from the folder.
+ * A path found more than once is packaged once, with the content mounted last, like copying everything
+ * into the folder in mount order would leave it.
+ */
+public class PackageFolder {
+    private final File root;
+    private final Map<String, List<Entry>> entries = new HashMap<String, List<Entry>>();
+    private final Map<String, List<Entry>> mounted = new LinkedHashMap<String, List<Entry>>();
+    private final Set<String> mountedDirectories = new HashSet<String>();
+    private final Set<String> excluded = new HashSet<String>();
+
+    private PackageFolder(File root) {
+        this.root = root;
+    }
+
+    public static PackageFolder scan(File root) throws IOException {
+        PackageFolder folder = new PackageFolder(root);
+        folder.getEntries();
+        return folder;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Hides a top-level file, e.g. an archive being written into the folder it is built from.
+     */
+    public void exclude(String name) {
+        excluded.add(name);
+    }
+
+    /**
+     * Adds a directory tree to the layout under the given top-level name, without copying it.
+     */
+    public void mount(String name, File directory) throws IOException {
+        if (!directory.isDirectory()) {
+            throw new IOException("Given file is not a directory '" + directory + "'");
+        }
+        List<Entry> nameEntries = new ArrayList<Entry>();
+        walk(directory, name, nameEntries);
+        getMounted(name).addAll(nameEntries);
+    }
+
+    /**
+     * Adds a single jar entry to the layout at the given '/' separated path, without extracting it.
+     */
+    public void mount(String path, JarFile jarFile, JarEntry jarEntry) {
+        int separator = path.indexOf('/');
+        List<Entry> nameEntries = getMounted(separator < 0 ? path : path.substring(0, separator));
+        // parent directories are listed before their content, like in a walk
+        for (int i = separator; i >= 0; i = path.indexOf('/', i + 1)) {
+            String directory = path.substring(0, i + 1);
+            if (mountedDirectories.add(directory)) {
+                nameEntries.add(new DirectoryEntry(directory));
+            }
+        }
+        nameEntries.add(new JarFileEntry(path, jarFile, jarEntry));
+    }
+
+    private List<Entry> getMounted(String name) {
+        List<Entry> nameEntries = mounted.get(name);
+        if (nameEntries == null) {
+            nameEntries = new ArrayList<Entry>();
+            mounted.put(name, nameEntries);
+        }
+        return nameEntries;
+    }
+
+    /**
+     * Returns files and directories in walk order; a directory precedes its content.
+     * Each path is listed once, where it is found first, with the content found last.
+     */
+    public List<Entry> getEntries() throws IOException {
+        String[] names = root.list();
+        if (names == null) {
+            throw new IOException("Given file is not a directory '" + root + "'");
+        }
+        Map<String, Entry> result = new LinkedHashMap<String, Entry>();
+        for (String name : names) {
+            if (excluded.contains(name)) {
+                continue;
+            }
+            List<Entry> nameEntries = entries.get(name);
+            if (nameEntries == null) {
+                nameEntries = new ArrayList<Entry>();
+                walk(new File(root, name), name, nameEntries);
+                entries.put(name, nameEntries);
+            }
+            addAll(result, nameEntries);
+        }
+        for (List<Entry> nameEntries : mounted.values()) {
+            addAll(result, nameEntries);
+        }
+        return new ArrayList<Entry>(result.values());
+    }
+
+    private static void addAll(Map<String, Entry> result, List<Entry> nameEntries) {
+        for (Entry entry : nameEntries) {
+            // a file replaces the one at its path but keeps its position
+            if (!entry.isDirectory() || !result.containsKey(entry.getPath())) {
+                result.put(entry.getPath(), entry);
+            }
+        }
+    }
+
+    /**
+     * Returns files only, in the same order as {@link #getEntries()}.
+     */
+    public List<Entry> getFileEntries() throws IOException {
+        List<Entry> files = new ArrayList<Entry>();
+        for (Entry entry : getEntries()) {
+            if (!entry.isDirectory()) {
+                files.add(entry);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Deletes everything currently in the folder except excluded files; the folder itself is kept.
+     * Mounted content is left untouched.
+     */
+    public void deleteContent() throws IOException {
+        String[] names = root.list();
+        if (names == null) {
+            throw new IOException("Given file is not a directory '" + root + "'");
+        }
+        for (String name : names) {
+            if (!excluded.contains(name)) {
+                Utils.delete(new File(root, name));
+            }
+        }
+        entries.clear();
+    }
+
+    private static void walk(File node, String path, List<Entry> result) throws IOException {
+        if (node.isDirectory()) {
+            result.add(new DirectoryEntry(path + "/"));
+            String[] names = node.list();
+            if (names == null) {
+                throw new IOException("Given file is not a directory '" + node + "'");
+            }
+            for (String name : names) {
+                walk(new File(node, name), path + "/" + name, result);
+            }
+        } else if (node.isFile()) {
+            result.add(new FileEntry(path, node.getAbsoluteFile()));
+        }
+    }
+
+    public abstract static class Entry {
+        private final String path;
+
+        Entry(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Path relative to the folder root, '/' separated; directories end with '/'.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Last path segment, e.g. the file name.
+         */
+        public String getName() {
+            String name = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+            return name.substring(name.lastIndexOf('/') + 1);
+        }
+
+        public abstract boolean isDirectory();
+
+        public abstract long getSize();
+
+        public abstract long getTime();
+
+        public abstract InputStream openStream() throws IOException;
+    }
+
+    private static class DirectoryEntry extends Entry {
+        DirectoryEntry(String path) {
+            super(path);
+        }
+
+        public boolean isDirectory() {
+            return true;
+        }
+
+        public long getSize() {
+            return 0;
+        }
+
+        public long getTime() {
+            return -1;
+        }
+
+        public InputStream openStream() throws IOException {
+            throw new IOException("Cannot read directory '" + getPath() + "'");
+        }
+    }
+
+    private static class FileEntry extends Entry {
+        private final File file;
+
+        FileEntry(String path, File file) {
+            super(path);
+            this.file = file;
+        }
+
+        public boolean isDirectory() {
+            return false;
+        }
+
+        public long getSize() {
+            return file.length();
+        }
+
+        public long getTime() {
+            return file.lastModified();
+        }
+
+        public InputStream openStream() throws IOException {
+            return new FileInputStream(file);
+        }
+    }
+
+    private static class JarFileEntry extends Entry {
+        private final JarFile jarFile;
+        private final JarEntry jarEntry;
+
+        JarFileEntry(String path, JarFile jarFile, JarEntry jarEntry) {
+            super(path);
+            this.jarFile = jarFile;
+            this.jarEntry = jarEntry;
+        }
+
+        public boolean isDirectory() {
+            return false;
+        }
+
+        public long getSize() {
+            return jarEntry.getSize();
+        }
+
+        public long getTime() {
+            return jarEntry.getTime();
+        }
+
+        public InputStream openStream() throws IOException {
+            return jarFile.getInputStream(jarEntry);
+        }
+    }
+}
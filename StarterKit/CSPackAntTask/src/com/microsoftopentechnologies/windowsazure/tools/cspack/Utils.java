@@ -149,6 +149,77 @@ public class Utils {
         }
     }
 
+    /**
+     * Adds a scanned entry to the archive. When a digest is given, it is updated from the same read
+     * that feeds the deflater, so a file is read once for both the manifest and the archive.
+     *
+     * @param entry
+     *          scanned file or directory.
+     * @param out
+     *          ZIP output stream.
+     * @param digest
+     *          digest to update with the file content, may be null.
+     */
+    public static void pack(PackageFolder.Entry entry, ZipOutputStream out, MessageDigest digest) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(entry.getPath());
+        if (!entry.isDirectory()) {
+            if (entry.getSize() >= 0) {
+                zipEntry.setSize(entry.getSize());
+            }
+            zipEntry.setTime(entry.getTime());
+        }
+        out.putNextEntry(zipEntry);
+        if (!entry.isDirectory()) {
+            InputStream in = entry.openStream();
+            try {
+                byte[] buffer = new byte[16384];
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    if (digest != null) {
+                        digest.update(buffer, 0, n);
+                    }
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                closeQuietly(in);
+            }
+        }
+        out.closeEntry();
+    }
+
+    public static MessageDigest createSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new BuildException(e);
+        }
+    }
+
+    /**
+     * Calculate Sha256 hash of a scanned file, formatted like {@link #calcHexHash(File)}
+     */
+    public static String calcHexHash(PackageFolder.Entry entry) throws IOException {
+        MessageDigest digest = createSha256Digest();
+        InputStream in = entry.openStream();
+        try {
+            byte[] buffer = new byte[16384];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        } finally {
+            closeQuietly(in);
+        }
+        return toHexHash(digest);
+    }
+
+    /**
+     * Completes the digest and formats it the way the csman manifest expects it.
+     */
+    public static String toHexHash(MessageDigest digest) {
+        return convertByteArrayToHexString(digest.digest()).toUpperCase();
+    }
+
     /**
      * Compresses the given directory and all its sub-directories into a ZIP file.
      *
@@ -290,7 +361,6 @@ public class Utils {
 
     public static List<String> getJarEntries(String jarName, String entryName) throws IOException {
         List<String> files = new ArrayList<String>();
-        System.out.println("entryName = " + entryName);
         JarURLConnection urlConnection = (JarURLConnection) new URL("jar:file:" + jarName + "!/" + entryName).openConnection();
 //        URLConnection urlConnection = originUrl.openConnection();
             JarURLConnection jarConnection = ((JarURLConnection)urlConnection);
@@ -40,13 +40,14 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import com.microsoftopentechnologies.acs.saml.InvalidAssertionException;
 import com.microsoftopentechnologies.acs.saml.SAMLAssertion;
+import com.microsoftopentechnologies.acs.util.DeflaterUtils;
+import com.microsoftopentechnologies.acs.util.ThreadResources;
 import com.microsoftopentechnologies.acs.util.Utils;
 import com.microsoftopentechnologies.acs.xmldsig.TrustParameters;
 
@@ -58,6 +59,8 @@ public class ACSFederationAuthFilter implements Filter {
 	private static final String CERTIFICATE_PATH = "CertificatePath";
 	private static final String SECRET_KEY = "SecretKey";
 	private static final String ALLOW_HTTP = "AllowHTTP";	
+	private static final String ASSERTION_CACHE_SIZE = "AssertionCacheSize";
+	private static final int DEFAULT_ASSERTION_CACHE_SIZE = 1000;
 	public static final String ACS_SAML = "ACSSAML";
 	public static final String EMBEDDED_CERT_LOC = "cert/_acs_signing.cer";
 	
@@ -67,6 +70,7 @@ public class ACSFederationAuthFilter implements Filter {
 	protected String secretKey;
 	protected TrustParameters trustParams;
 	protected boolean allowHttp = false;
+	protected int assertionCacheSize = DEFAULT_ASSERTION_CACHE_SIZE;
 	private StatelessFilterCommand filterCommand;
 	private static final String UNAUTHORIZED_ERROR_MESSAGE = "Provided authentication details are invalid.";
 
@@ -106,6 +110,17 @@ public class ACSFederationAuthFilter implements Filter {
 		}
 		
 		allowHttp = Boolean.parseBoolean(filterConfig.getInitParameter(ALLOW_HTTP));
+
+		// Number of assertions kept decoded between requests, 0 disables the cache
+		String cacheSize = filterConfig.getInitParameter(ASSERTION_CACHE_SIZE);
+		if (cacheSize != null) {
+			try {
+				assertionCacheSize = Integer.parseInt(cacheSize.trim());
+			} catch (NumberFormatException e) {
+				throw new ServletException(ASSERTION_CACHE_SIZE + " init parameter is not a number.");
+			}
+		}
+		Utils.logInfo("Assertion cache size:" + assertionCacheSize, LOG);
 		
 		//create keystore
 		Key publicKey = getPublicKey(certificatePath,filterConfig);
@@ -118,6 +133,7 @@ public class ACSFederationAuthFilter implements Filter {
 	}
 
 	public void destroy() {
+		DeflaterUtils.release();
 	}
 
 	public void doFilter(ServletRequest request, ServletResponse response,	FilterChain chain) throws IOException, ServletException {
@@ -137,15 +153,11 @@ public class ACSFederationAuthFilter implements Filter {
 			return null;
 		}
 
-		// None of Java XML objects are thread-safe. Better to create instance on demand rather than caching.
-		DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-		docBuilderFactory.setNamespaceAware(true); // very important, must
-		DocumentBuilder docBuilder;
 		SAMLAssertion assertion = null;
 
 		try {
-			docBuilder = docBuilderFactory.newDocumentBuilder();
-			Document respDoc = docBuilder.parse(new ByteArrayInputStream(Utils.getUTF8Bytes(securityTokenResponse)));
+			// None of Java XML objects are thread-safe, the builder is confined to this thread
+			Document respDoc = ThreadResources.getDocumentBuilder().parse(new ByteArrayInputStream(Utils.getUTF8Bytes(securityTokenResponse)));
 			// Find the response token
 			Element responseToken = (Element) respDoc.getDocumentElement().getElementsByTagNameNS("http://schemas.xmlsoap.org/ws/2005/02/trust", "RequestedSecurityToken").item(0);
 			assertion = SAMLAssertion.getAssertionFromSecurityToken(responseToken);
@@ -155,16 +167,32 @@ public class ACSFederationAuthFilter implements Filter {
 		return assertion;
 	}
 
-	void invokeChainWithRemoteUser(FilterChain chain, HttpServletRequest httpRequest, HttpServletResponse httpResponse, SAMLAssertion assertion) throws IOException, ServletException	{
+	void invokeChainWithRemoteUser(FilterChain chain, HttpServletRequest httpRequest, HttpServletResponse httpResponse, SAMLAssertion assertion)
+			throws IOException, ServletException, InvalidAssertionException {
+		invokeChainWithRemoteUser(chain, httpRequest, httpResponse, createVerifiedAssertion(assertion));
+	}
+
+	void invokeChainWithRemoteUser(FilterChain chain, HttpServletRequest httpRequest, HttpServletResponse httpResponse,
+			VerifiedAssertionCache.VerifiedAssertion verifiedAssertion) throws IOException, ServletException	{
 		// set assertion as an attribute in the request
+		httpRequest.setAttribute(ACS_SAML, verifiedAssertion.getAssertionXML());
+		invokeChainWithRemoteUser(chain, httpRequest, httpResponse, verifiedAssertion.getRemoteUser());
+	}
+
+	/*
+	 * Serializes the assertion and finds the remote user once, so that both can be reused for later requests.
+	 */
+	VerifiedAssertionCache.VerifiedAssertion createVerifiedAssertion(SAMLAssertion assertion)
+			throws ServletException, InvalidAssertionException {
+		String assertionXML;
 		try {
-			httpRequest.setAttribute(ACS_SAML, Utils.getXMLStringFromNode(assertion.getAssertionXMLElement()));
+			// Same XML as serializing the assertion element, without building a DOM for assertions read from cookies
+			assertionXML = Utils.getStringFromUTF8Bytes(assertion.getSerializedContent());
 		}catch(Exception e ){
 			Utils.logError("Invalid Saml Content.", e, LOG);
 			throw new ServletException("Invalid SAML Content");
 		}
-		String remoteUser = getUserFromAssertion(assertion);
-		invokeChainWithRemoteUser(chain, httpRequest, httpResponse, remoteUser);
+		return new VerifiedAssertionCache.VerifiedAssertion(assertion, assertionXML, getUserFromAssertion(assertion));
 	}
 
 	private String getUserFromAssertion(SAMLAssertion assertion) {
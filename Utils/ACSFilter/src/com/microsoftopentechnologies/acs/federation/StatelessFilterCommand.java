@@ -15,7 +15,6 @@
  */
 package com.microsoftopentechnologies.acs.federation; 
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
@@ -32,11 +31,8 @@ import javax.servlet.ServletException;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
-import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 import com.microsoftopentechnologies.acs.saml.AssertionNotFoundException;
@@ -61,9 +57,11 @@ public class StatelessFilterCommand {
 	public static final String COOKIE_PREFIX = "ACSFedAuth";
 	
 	private final ACSFederationAuthFilter fedAuthFilter;
+	private final VerifiedAssertionCache assertionCache;
 
 	public StatelessFilterCommand(ACSFederationAuthFilter fedAuthFilter) {
 		this.fedAuthFilter = fedAuthFilter;
+		this.assertionCache = new VerifiedAssertionCache(fedAuthFilter.assertionCacheSize);
 	}
 
 	public void execute(HttpServletRequest httpRequest, HttpServletResponse httpResponse, FilterChain filterChain) throws IOException, ServletException {
@@ -140,12 +138,20 @@ public class StatelessFilterCommand {
 			//Assertion present in cookies
 			Utils.logDebug(String.format("Assertion present in cookies. Number of assertion cookies is %s. Building assertion from cookie content...", assertionCookies.size()), LOG);
 
-			// inflate it and get assertion
+			// inflate it and get assertion, unless the same cookie content was seen before
+			String deflatedAssertionContent;
+			VerifiedAssertionCache.VerifiedAssertion verifiedAssertion;
 			SAMLAssertion assertion;
 			try {
 				// Sort these assertion cookies in the right order and extract content from all of them
-				String deflatedAssertionContent = extractAssertionContentFromCookies(assertionCookies);
-				assertion = getAssertionFromDefaltedContent(deflatedAssertionContent,this.fedAuthFilter.trustParams,httpRequest);
+				deflatedAssertionContent = extractAssertionContentFromCookies(assertionCookies);
+				verifiedAssertion = assertionCache.get(deflatedAssertionContent);
+				if (verifiedAssertion != null) {
+					Utils.logDebug("Assertion found in the assertion cache.", LOG);
+					assertion = verifiedAssertion.getAssertion();
+				} else {
+					assertion = getAssertionFromDefaltedContent(deflatedAssertionContent,this.fedAuthFilter.trustParams,httpRequest);
+				}
 			} catch (Exception e) {
 				Utils.logError("Exception occured while building SAML Assertion from the cookie content", e, LOG);
 				// Send error
@@ -163,10 +169,15 @@ public class StatelessFilterCommand {
 			try {
 				assertion.checkAssertionValidity(this.fedAuthFilter.trustParams,false);
 
+				if (verifiedAssertion == null) {
+					verifiedAssertion = fedAuthFilter.createVerifiedAssertion(assertion);
+					assertionCache.put(deflatedAssertionContent, verifiedAssertion);
+				}
 				// Authenticated. Invoke the resource
-				fedAuthFilter.invokeChainWithRemoteUser(filterChain, httpRequest, httpResponse, assertion);
+				fedAuthFilter.invokeChainWithRemoteUser(filterChain, httpRequest, httpResponse, verifiedAssertion);
 				return;
 			} catch (InvalidAssertionException e) {
+				assertionCache.remove(deflatedAssertionContent);
 				// Assertion present in the cookies is either expired or tampered
 				Utils.logInfo("Invalid SAML assertion. Redirecting to ACS...", LOG);
 				// Remove assertion cookies..
@@ -207,12 +218,8 @@ public class StatelessFilterCommand {
 		assertionXML        = Utils.decrypt(trustParams.getSecretKey(), assertionXML);
 		Utils.logDebug("Assertion received in the cookie is :" + Utils.getStringFromUTF8Bytes(assertionXML), LOG);
 		
-		// load into xml
-		DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
-		docBuilderFactory.setNamespaceAware(true); // very important
-		DocumentBuilder docBuilder = docBuilderFactory.newDocumentBuilder();
-		Document doc = docBuilder.parse(new ByteArrayInputStream(assertionXML));
-		return SAMLAssertion.getAssertionFromAssertionDocument(doc);
+		// The signature was verified before the filter put the assertion in the cookie, so no DOM is needed
+		return SAMLAssertion.getAssertionFromAssertionXML(assertionXML);
 	}
 
 	private String deflateAssertionXML(byte[] assertionXMLContent)	{
@@ -0,0 +1,150 @@
+/*
+ Copyright 2015 Microsoft Open Technologies, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.microsoftopentechnologies.acs.federation;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.microsoftopentechnologies.acs.saml.InvalidAssertionException;
+import com.microsoftopentechnologies.acs.saml.SAMLAssertion;
+import com.microsoftopentechnologies.acs.util.Base64;
+import com.microsoftopentechnologies.acs.util.Utils;
+
+/**
+ * Bounded cache of assertions already decoded from the ACS cookies, keyed by a digest of the cookie content.
+ * A hit skips Base64 decoding, inflating, decrypting, parsing and serializing of the assertion.
+ * Entries are dropped once the assertion reaches its NotOnOrAfter time; the least recently used
+ * entry is dropped when the cache is full.
+ */
+class VerifiedAssertionCache {
+	private static final Logger LOG = Logger.getLogger(VerifiedAssertionCache.class.getName());
+
+	private final int maxSize;
+	private final Map<String, VerifiedAssertion> entries;
+
+	VerifiedAssertionCache(final int maxSize) {
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<String, VerifiedAssertion>(16, 0.75f, true) {
+			private static final long serialVersionUID = 4236125417869311046L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, VerifiedAssertion> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/*
+	 * Returns the assertion built from the same cookie content earlier, or null if there is none or it expired.
+	 */
+	VerifiedAssertion get(String cookieContent) {
+		if (!isEnabled()) {
+			return null;
+		}
+		String key = digest(cookieContent);
+		synchronized (entries) {
+			VerifiedAssertion verified = entries.get(key);
+			if (verified != null && System.currentTimeMillis() >= verified.getExpiryTime()) {
+				entries.remove(key);
+				verified = null;
+			}
+			return verified;
+		}
+	}
+
+	void put(String cookieContent, VerifiedAssertion verified) {
+		if (!isEnabled()) {
+			return;
+		}
+		String key = digest(cookieContent);
+		synchronized (entries) {
+			entries.put(key, verified);
+		}
+	}
+
+	void remove(String cookieContent) {
+		if (!isEnabled()) {
+			return;
+		}
+		String key = digest(cookieContent);
+		synchronized (entries) {
+			entries.remove(key);
+		}
+	}
+
+	private static String digest(String cookieContent) {
+		try {
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+			return Base64.encode(messageDigest.digest(Utils.getUTF8Bytes(cookieContent)));
+		} catch (NoSuchAlgorithmException e) {
+			// Never arise.. SHA-256 is supported by every JRE
+			Utils.logError("SHA-256 algorithm not found on the JRE.", e, LOG);
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * An assertion together with what the filter derives from it for every request.
+	 */
+	static class VerifiedAssertion {
+		private final SAMLAssertion assertion;
+		private final String assertionXML;
+		private final String remoteUser;
+		private final long expiryTime;
+
+		VerifiedAssertion(SAMLAssertion assertion, String assertionXML, String remoteUser)
+				throws InvalidAssertionException {
+			this.assertion = assertion;
+			this.assertionXML = assertionXML;
+			this.remoteUser = remoteUser;
+			/*
+			 * The assertion reads its DOM lazily and the DOM is not thread-safe. Reading everything now means
+			 * threads sharing the cached assertion never touch the DOM again.
+			 */
+			assertion.getIssuer();
+			assertion.getAttributes();
+			assertion.getSubject();
+			SAMLAssertion.Conditions conditions = assertion.getConditions();
+			if (conditions == null) {
+				throw new InvalidAssertionException("Assertion has no Conditions element.");
+			}
+			this.expiryTime = conditions.getNotOnOrAfter();
+		}
+
+		SAMLAssertion getAssertion() {
+			return assertion;
+		}
+
+		String getAssertionXML() {
+			return assertionXML;
+		}
+
+		String getRemoteUser() {
+			return remoteUser;
+		}
+
+		long getExpiryTime() {
+			return expiryTime;
+		}
+	}
+}
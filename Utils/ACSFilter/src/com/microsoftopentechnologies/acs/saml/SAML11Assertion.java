@@ -16,6 +16,9 @@
 package com.microsoftopentechnologies.acs.saml; 
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
 import java.text.ParseException;
 import java.util.Date;
 import java.util.HashMap;
@@ -71,6 +74,7 @@ class SAML11Assertion extends SAMLAssertion {
 	}
 
 	private Element assertionXMLElement;
+	private byte[] serializedContent;
 	private transient String issuer;
 	private transient Attribute[] attributes;
 	private transient Subject subject;
@@ -81,6 +85,19 @@ class SAML11Assertion extends SAMLAssertion {
 		this.assertionXMLElement = assertionXMLElement;
 	}
 
+	/*
+	 * For an assertion read from its serialized content, see SAMLAssertionReader. The DOM is only built if
+	 * the assertion element is asked for.
+	 */
+	SAML11Assertion(byte[] serializedContent, String issuer, Attribute[] attributes, Subject subject, Conditions conditions) {
+		super();
+		this.serializedContent = serializedContent;
+		this.issuer = issuer;
+		this.attributes = attributes;
+		this.subject = subject;
+		this.conditions = conditions;
+	}
+
 	@Override
 	public String getIssuer() {
 		if (issuer == null) {
@@ -144,8 +161,9 @@ class SAML11Assertion extends SAMLAssertion {
 			//CustomIdentifiedElement customIdentifiedElement = new CustomIdentifiedElement(assertionXMLElement, new QName(null, ATTR_ASSERTION_ID));
 			
 			SignatureValidator signatureValidator = new SignatureValidator();
-			assertionXMLElement.setIdAttribute(ATTR_ASSERTION_ID, true);
-			SignatureValidationResult validationResult = signatureValidator.validateSignature(certTrustParams, assertionXMLElement);
+			Element assertionElement = getAssertionXMLElement();
+			assertionElement.setIdAttribute(ATTR_ASSERTION_ID, true);
+			SignatureValidationResult validationResult = signatureValidator.validateSignature(certTrustParams, assertionElement);
 			if (!validationResult.isSignatureValid()) {
 				throw new InvalidAssertionException("XML Signature in the assertion failed validation." + validationResult.getReasonForFailure());
 			}
@@ -225,6 +243,9 @@ class SAML11Assertion extends SAMLAssertion {
 
 	@Override
 	public byte[] getSerializedContent() {
+		if (serializedContent != null) {
+			return serializedContent;
+		}
 		ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		try {
 			Utils.writeXMLToStream(this.assertionXMLElement, baos, false);
@@ -255,7 +276,26 @@ class SAML11Assertion extends SAMLAssertion {
 		
 	}
 	
-	public Element getAssertionXMLElement() {
+	public Element getAssertionXMLElement() throws InvalidAssertionException {
+		if (assertionXMLElement == null) {
+			assertionXMLElement = parseAssertionElement(serializedContent, ASSERTION_11_NAMESPACE);
+		}
 		return this.assertionXMLElement;
 	}
+
+	/*
+	 * The values read with the serialized content are transient, rebuild the DOM they are read from otherwise.
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (assertionXMLElement == null) {
+			try {
+				assertionXMLElement = parseAssertionElement(serializedContent, ASSERTION_11_NAMESPACE);
+			} catch (InvalidAssertionException e) {
+				InvalidObjectException ex = new InvalidObjectException(e.getMessage());
+				ex.initCause(e);
+				throw ex;
+			}
+		}
+	}
 }
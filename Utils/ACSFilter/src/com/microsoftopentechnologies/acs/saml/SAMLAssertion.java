@@ -14,6 +14,7 @@
  */
 package com.microsoftopentechnologies.acs.saml; 
 
+import java.io.ByteArrayInputStream;
 import java.io.Serializable;
 import java.util.logging.Logger;
 
@@ -21,6 +22,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import com.microsoftopentechnologies.acs.util.ThreadResources;
 import com.microsoftopentechnologies.acs.util.Utils;
 import com.microsoftopentechnologies.acs.xmldsig.TrustParameters;
 
@@ -76,6 +78,31 @@ public abstract class SAMLAssertion implements Serializable {
 		}
 	}
 
+	/*
+	 * Reads an assertion from its serialized content without building a DOM tree. Use only for content whose
+	 * signature was already verified, like the assertion the filter put in the cookies.
+	 */
+	public static SAMLAssertion getAssertionFromAssertionXML(byte[] assertionXML) throws AssertionNotFoundException, InvalidAssertionException {
+		return SAMLAssertionReader.readAssertion(assertionXML);
+	}
+
+	/*
+	 * Builds the DOM of serialized assertion content on demand.
+	 */
+	static Element parseAssertionElement(byte[] assertionXML, String namespace) throws InvalidAssertionException {
+		Element assertionElement;
+		try {
+			Document doc = ThreadResources.getDocumentBuilder().parse(new ByteArrayInputStream(assertionXML));
+			assertionElement = (Element) doc.getElementsByTagNameNS(namespace, ELEMENT_NAME_ASSERTION).item(0);
+		} catch (Exception e) {
+			Utils.logError("Exception while parsing the assertion.", e, LOG);
+			throw new InvalidAssertionException("Assertion content can not be parsed.", e);
+		}
+		if (assertionElement == null) {
+			throw new InvalidAssertionException("Assertion element not found in the assertion content.");
+		}
+		return assertionElement;
+	}
 	
 	public static class Attribute {
 		private String name;
@@ -154,6 +181,14 @@ public abstract class SAMLAssertion implements Serializable {
 		public void setNotOnOrAfter(long notOnOrAfter) {
 			this.notOnOrAfter = notOnOrAfter;
 		}
+
+		public long getNotBefore() {
+			return notBefore;
+		}
+
+		public long getNotOnOrAfter() {
+			return notOnOrAfter;
+		}
 		public String getAudienceRestriction() {
 			return audienceRestriction;
 		}
@@ -213,7 +248,7 @@ public abstract class SAMLAssertion implements Serializable {
 	
 	public abstract void checkSubjectConfirmationMethod() throws InvalidAssertionException;
 	
-	public abstract Element getAssertionXMLElement();
+	public abstract Element getAssertionXMLElement() throws InvalidAssertionException;
 
 	public boolean areConditionsValidNow(TrustParameters certTrustParams) {
 		return (this.getConditions().areValid() && (this.getConditions().getAudienceRestriction().equals(certTrustParams.getRelyingPartyRealm())));
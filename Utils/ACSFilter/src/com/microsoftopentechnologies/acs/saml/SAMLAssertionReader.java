@@ -0,0 +1,235 @@
+/*
+ Copyright 2015 Microsoft Open Technologies, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.microsoftopentechnologies.acs.saml;
+
+import java.io.ByteArrayInputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.microsoftopentechnologies.acs.util.ThreadResources;
+import com.microsoftopentechnologies.acs.util.Utils;
+
+/*
+ * Reads the issuer, attributes, subject and conditions of a serialized SAML 1.1 or 2.0 assertion in a single
+ * streaming pass, without building a DOM tree. Meant for assertions whose signature was verified before they were
+ * serialized, e.g. the one in the ACS cookies; the DOM is still built on demand if the assertion element is asked for.
+ * The values read are the same as the XPath lookups in SAML11Assertion and SAML20Assertion give.
+ */
+class SAMLAssertionReader {
+	private static final Logger LOG = Logger.getLogger(SAMLAssertionReader.class.getName());
+
+	private final byte[] assertionXML;
+	private boolean saml20;
+	// Path of the current element below the assertion element, e.g. "Subject/NameID"
+	private final StringBuilder path = new StringBuilder();
+	private final List<Integer> pathLengths = new ArrayList<Integer>();
+	private StringBuilder text;
+	private int textDepth;
+
+	private String issuer;
+	private final List<SAMLAssertion.Attribute> attributes = new ArrayList<SAMLAssertion.Attribute>();
+	private String attributeName;
+	private String attributeFriendlyName;
+	private String attributeNameFormat;
+	private List<String> attributeValues;
+	private boolean subjectRead;
+	private String nameIdentifier;
+	private final List<String> confirmationMethods = new ArrayList<String>();
+	private boolean conditionsRead;
+	private final SAMLAssertion.Conditions conditions = new SAMLAssertion.Conditions();
+	private String audience;
+
+	private SAMLAssertionReader(byte[] assertionXML) {
+		this.assertionXML = assertionXML;
+	}
+
+	static SAMLAssertion readAssertion(byte[] assertionXML) throws AssertionNotFoundException, InvalidAssertionException {
+		return new SAMLAssertionReader(assertionXML).read();
+	}
+
+	private SAMLAssertion read() throws AssertionNotFoundException, InvalidAssertionException {
+		XMLStreamReader reader = null;
+		try {
+			reader = ThreadResources.getXMLInputFactory().createXMLStreamReader(new ByteArrayInputStream(assertionXML));
+			// Find the assertion element, then read its content
+			while (reader.hasNext()) {
+				if (reader.next() == XMLStreamConstants.START_ELEMENT
+						&& SAMLAssertion.ELEMENT_NAME_ASSERTION.equals(reader.getLocalName())) {
+					if (SAMLAssertion.ASSERTION_20_NAMESPACE.equals(reader.getNamespaceURI())) {
+						saml20 = true;
+						return readAssertionElement(reader);
+					} else if (SAMLAssertion.ASSERTION_11_NAMESPACE.equals(reader.getNamespaceURI())) {
+						saml20 = false;
+						return readAssertionElement(reader);
+					}
+				}
+			}
+		} catch (XMLStreamException e) {
+			Utils.logError("Exception while reading the assertion.", e, LOG);
+			throw new InvalidAssertionException("Assertion is not well formed.", e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// Ignore exception silently here
+				}
+			}
+		}
+		throw new AssertionNotFoundException("Invalid Assertion or Assertion not found in the security token.");
+	}
+
+	private SAMLAssertion readAssertionElement(XMLStreamReader reader) throws XMLStreamException {
+		String namespace = reader.getNamespaceURI();
+		if (!saml20) {
+			issuer = getAttribute(reader, "Issuer");
+		}
+		int depth = 0;
+		while (depth >= 0) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				pathLengths.add(path.length());
+				if (path.length() > 0) {
+					path.append('/');
+				}
+				// Elements of other namespaces, e.g. the signature, never match a path
+				path.append(namespace.equals(reader.getNamespaceURI()) ? reader.getLocalName() : "#");
+				startElement(reader, depth);
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if (text != null) {
+					text.append(reader.getText());
+				}
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				if (depth > 0) {
+					endElement(depth);
+					path.setLength(pathLengths.remove(pathLengths.size() - 1));
+				}
+				depth--;
+				break;
+			default:
+				break;
+			}
+		}
+
+		SAMLAssertion.Attribute[] attributeArray = attributes.toArray(new SAMLAssertion.Attribute[attributes.size()]);
+		SAMLAssertion.Subject subject = new SAMLAssertion.Subject(nameIdentifier == null ? "" : nameIdentifier,
+				confirmationMethods.toArray(new String[confirmationMethods.size()]));
+		conditions.setAudienceRestriction(audience == null ? "" : audience);
+		if (saml20) {
+			return new SAML20Assertion(assertionXML, issuer == null ? "" : issuer, attributeArray, subject, conditions);
+		} else {
+			return new SAML11Assertion(assertionXML, issuer, attributeArray, subject, conditions);
+		}
+	}
+
+	private void startElement(XMLStreamReader reader, int depth) {
+		String current = path.toString();
+		if (current.equals("AttributeStatement/Attribute")) {
+			if (saml20) {
+				attributeName = getAttribute(reader, "Name");
+			} else {
+				// 1.1 style
+				attributeName = getAttribute(reader, "AttributeNamespace") + "/" + getAttribute(reader, "AttributeName");
+			}
+			attributeFriendlyName = getAttribute(reader, "FriendlyName");
+			attributeNameFormat = getAttribute(reader, "NameFormat");
+			attributeValues = new ArrayList<String>();
+		} else if (current.equals("AttributeStatement/Attribute/AttributeValue")) {
+			startText(depth);
+		} else if (!subjectRead && saml20 && current.equals("Subject/SubjectConfirmation")) {
+			confirmationMethods.add(getAttribute(reader, "Method"));
+		} else if (!subjectRead && current.equals(saml20 ? "Subject/NameID" : "AttributeStatement/Subject/NameIdentifier")) {
+			startText(depth);
+		} else if (!subjectRead && !saml20 && current.equals("AttributeStatement/Subject/SubjectConfirmation/ConfirmationMethod")) {
+			startText(depth);
+		} else if (saml20 && issuer == null && current.equals("Issuer")) {
+			startText(depth);
+		} else if (!conditionsRead && current.equals("Conditions")) {
+			readConditions(reader);
+		} else if (audience == null && current.equals(saml20
+				? "Conditions/AudienceRestriction/Audience" : "Conditions/AudienceRestrictionCondition/Audience")) {
+			startText(depth);
+		}
+	}
+
+	private void endElement(int depth) {
+		String current = path.toString();
+		if (text != null && depth == textDepth) {
+			String value = text.toString();
+			text = null;
+			if (current.equals("AttributeStatement/Attribute/AttributeValue")) {
+				attributeValues.add(value);
+			} else if (current.equals(saml20 ? "Subject/NameID" : "AttributeStatement/Subject/NameIdentifier")) {
+				if (nameIdentifier == null) {
+					nameIdentifier = value;
+				}
+			} else if (current.equals("AttributeStatement/Subject/SubjectConfirmation/ConfirmationMethod")) {
+				confirmationMethods.add(value);
+			} else if (current.equals("Issuer")) {
+				issuer = value;
+			} else {
+				audience = value;
+			}
+		} else if (current.equals("AttributeStatement/Attribute")) {
+			attributes.add(new SAMLAssertion.Attribute(attributeName,
+					attributeValues.toArray(new String[attributeValues.size()]), attributeFriendlyName, attributeNameFormat));
+		} else if (current.equals(saml20 ? "Subject" : "AttributeStatement/Subject")) {
+			// Only the first subject counts
+			subjectRead = true;
+		} else if (current.equals("Conditions")) {
+			conditionsRead = true;
+		}
+	}
+
+	private void readConditions(XMLStreamReader reader) {
+		String notBeforeAsString = getAttribute(reader, "NotBefore");
+		Utils.logDebug("NotBefore attribute value is " + notBeforeAsString, LOG);
+		try {
+			conditions.setNotBefore(Utils.parseTimeFromXSDTIMEString(notBeforeAsString).getTime());
+		} catch (ParseException e) {
+			Utils.logError("NotBefore attribute value of the assertion conditions is not in valid format.", e, LOG);
+		}
+		String notOnAfterAsString = getAttribute(reader, "NotOnOrAfter");
+		Utils.logDebug("NotOnOrAfter attribute value is " + notOnAfterAsString, LOG);
+		try {
+			conditions.setNotOnOrAfter(Utils.parseTimeFromXSDTIMEString(notOnAfterAsString).getTime());
+		} catch (ParseException e) {
+			Utils.logError("NotOnOrAfter attribute value of the assertion conditions is not in valid format.", e, LOG);
+		}
+	}
+
+	private void startText(int depth) {
+		text = new StringBuilder();
+		textDepth = depth;
+	}
+
+	// Like Element.getAttribute, an absent attribute is an empty string
+	private static String getAttribute(XMLStreamReader reader, String localName) {
+		String value = reader.getAttributeValue(null, localName);
+		return value == null ? "" : value;
+	}
+}
@@ -13,14 +13,24 @@
  See the License for the specific language governing permissions and
  limitations under the License.
  */
-package com.microsoftopentechnologies.acs.util; 
+package com.microsoftopentechnologies.acs.util;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 
 public class DeflaterUtils {
+	/*
+	 * Deflaters and inflaters hold native zlib memory until end() is called. They are pooled instead of
+	 * created per request; instances beyond the pool size and the pooled ones at release() are ended.
+	 */
+	private static final int MAX_POOLED = 32;
+	private static final Deque<Deflater> DEFLATERS = new ArrayDeque<Deflater>();
+	private static final Deque<Inflater> INFLATERS = new ArrayDeque<Inflater>();
+
 	public static byte[] deflate(byte[] inputBytes)	{
 		/*
 		 * For smaller inputs, the size of deflated content can be bigger than the input.
@@ -30,12 +40,15 @@ public class DeflaterUtils {
 		int deflaterBufferSize = inputBytes.length + additionalBufferSize;
 		// Deflate the content
 		byte[] deflatedBytes = new byte[deflaterBufferSize];
-		// Set nowrap to true, to ignore the ZLIB headers
-		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
-		deflater.setInput(inputBytes);
-		deflater.finish();
-		int number_deflated_bytes = deflater.deflate(deflatedBytes);
-		return Arrays.copyOf(deflatedBytes, number_deflated_bytes);
+		Deflater deflater = borrowDeflater();
+		try {
+			deflater.setInput(inputBytes);
+			deflater.finish();
+			int number_deflated_bytes = deflater.deflate(deflatedBytes);
+			return Arrays.copyOf(deflatedBytes, number_deflated_bytes);
+		} finally {
+			returnDeflater(deflater);
+		}
 	}
 
 	public static byte[] inflate(byte[] inputBytes) throws DataFormatException	{
@@ -48,12 +61,75 @@ public class DeflaterUtils {
 		 */
 		byte[] inputWithDummyByteAdded = Arrays.copyOf(inputBytes, inputBytes.length + 1);
 
+		Inflater inflater = borrowInflater();
+		try {
+			inflater.setInput(inputWithDummyByteAdded);
+			int number_inflated_bytes = inflater.inflate(inflatedBytes);
+			return Arrays.copyOf(inflatedBytes, number_inflated_bytes);
+		} finally {
+			returnInflater(inflater);
+		}
+	}
+
+	/*
+	 * Ends the pooled deflaters and inflaters, e.g. when the filter is destroyed.
+	 */
+	public static void release() {
+		synchronized (DEFLATERS) {
+			for (Deflater deflater : DEFLATERS) {
+				deflater.end();
+			}
+			DEFLATERS.clear();
+		}
+		synchronized (INFLATERS) {
+			for (Inflater inflater : INFLATERS) {
+				inflater.end();
+			}
+			INFLATERS.clear();
+		}
+	}
+
+	private static Deflater borrowDeflater() {
+		synchronized (DEFLATERS) {
+			Deflater deflater = DEFLATERS.poll();
+			if (deflater != null) {
+				return deflater;
+			}
+		}
 		// Set nowrap to true, to ignore the ZLIB headers
-		Inflater inflater = new Inflater(true);
-		inflater.setInput(inputWithDummyByteAdded);
-		int number_inflated_bytes = inflater.inflate(inflatedBytes);
-		inflater.end();
-		return Arrays.copyOf(inflatedBytes, number_inflated_bytes);
+		return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
 	}
 
+	private static void returnDeflater(Deflater deflater) {
+		deflater.reset();
+		synchronized (DEFLATERS) {
+			if (DEFLATERS.size() < MAX_POOLED) {
+				DEFLATERS.push(deflater);
+				return;
+			}
+		}
+		deflater.end();
+	}
+
+	private static Inflater borrowInflater() {
+		synchronized (INFLATERS) {
+			Inflater inflater = INFLATERS.poll();
+			if (inflater != null) {
+				return inflater;
+			}
+		}
+		// Set nowrap to true, to ignore the ZLIB headers
+		return new Inflater(true);
+	}
+
+	private static void returnInflater(Inflater inflater) {
+		inflater.reset();
+		synchronized (INFLATERS) {
+			if (INFLATERS.size() < MAX_POOLED) {
+				INFLATERS.push(inflater);
+				return;
+			}
+		}
+		inflater.end();
+	}
 }
@@ -0,0 +1,118 @@
+/*
+ Copyright 2015 Microsoft Open Technologies, Inc.
+
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+
+ http://www.apache.org/licenses/LICENSE-2.0
+
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+package com.microsoftopentechnologies.acs.util;
+
+import java.security.GeneralSecurityException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import javax.crypto.Cipher;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+
+/*
+ * Per-thread instances of the JDK objects the filter needs on every request. None of them is thread safe,
+ * and creating them looks up providers and factories each time. An instance must not be kept beyond the
+ * call that got it, the next call on the same thread gets the same instance back.
+ *
+ * Plain ThreadLocals holding only JDK objects, so a redeployed web application does not stay referenced
+ * from the container's request threads.
+ */
+public class ThreadResources {
+	private static final String AES_TRANSFORMATION = "AES/CBC/PKCS5Padding";
+	private static final String ACS_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
+
+	private static final ThreadLocal<Cipher> AES_CIPHER = new ThreadLocal<Cipher>();
+	private static final ThreadLocal<DocumentBuilder> DOCUMENT_BUILDER = new ThreadLocal<DocumentBuilder>();
+	private static final ThreadLocal<Transformer> TRANSFORMER = new ThreadLocal<Transformer>();
+	private static final ThreadLocal<XMLInputFactory> XML_INPUT_FACTORY = new ThreadLocal<XMLInputFactory>();
+	private static final ThreadLocal<SimpleDateFormat> XSD_TIME_FORMAT = new ThreadLocal<SimpleDateFormat>();
+
+	/*
+	 * The caller must init the cipher, which resets whatever the previous call left.
+	 */
+	public static Cipher getAESCipher() throws GeneralSecurityException {
+		Cipher cipher = AES_CIPHER.get();
+		if (cipher == null) {
+			cipher = Cipher.getInstance(AES_TRANSFORMATION);
+			AES_CIPHER.set(cipher);
+		}
+		return cipher;
+	}
+
+	/*
+	 * Namespace aware builder, like every parse in the filter needs.
+	 */
+	public static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		DocumentBuilder docBuilder = DOCUMENT_BUILDER.get();
+		if (docBuilder == null) {
+			DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory.newInstance();
+			docBuilderFactory.setNamespaceAware(true); // very important, must
+			docBuilder = docBuilderFactory.newDocumentBuilder();
+			DOCUMENT_BUILDER.set(docBuilder);
+		} else {
+			docBuilder.reset();
+		}
+		return docBuilder;
+	}
+
+	/*
+	 * Identity transformer with its output properties reset.
+	 */
+	public static Transformer getTransformer() throws TransformerConfigurationException {
+		Transformer transformer = TRANSFORMER.get();
+		if (transformer == null) {
+			transformer = TransformerFactory.newInstance().newTransformer();
+			TRANSFORMER.set(transformer);
+		} else {
+			transformer.reset();
+		}
+		return transformer;
+	}
+
+	/*
+	 * Namespace aware, coalescing stream reader factory that does not resolve DTDs.
+	 */
+	public static XMLInputFactory getXMLInputFactory() {
+		XMLInputFactory factory = XML_INPUT_FACTORY.get();
+		if (factory == null) {
+			factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			XML_INPUT_FACTORY.set(factory);
+		}
+		return factory;
+	}
+
+	/*
+	 * Format of the times in the assertions, in GMT instead of the local time zone.
+	 */
+	public static SimpleDateFormat getXSDTimeFormat() {
+		SimpleDateFormat format = XSD_TIME_FORMAT.get();
+		if (format == null) {
+			format = new SimpleDateFormat(ACS_TIME_FORMAT);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			XSD_TIME_FORMAT.set(format);
+		}
+		return format;
+	}
+}
@@ -22,9 +22,7 @@ import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.security.spec.AlgorithmParameterSpec;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.TimeZone;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,7 +33,6 @@ import javax.crypto.spec.SecretKeySpec;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -45,8 +42,7 @@ import org.w3c.dom.Node;
 public class Utils {
 	private static final Logger LOG = Logger.getLogger(Utils.class.getName());
 	public static final String UTF8_ENCODING = "UTF-8";
-	private static final String ACS_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'";
-	private static final SimpleDateFormat GMT_DATE_FMT = new SimpleDateFormat(ACS_TIME_FORMAT);
+	private static final byte[] INITIALIZATION_VECTOR = new byte[] {0, 9, 8, 7, 6, 2, 3, 4, 5, 0,1, 5, 7, 8, 9, 4};
 	
 	public static final void logError(String text, Throwable error, Logger logger) {
 		if (logger != null && logger.isLoggable(Level.SEVERE)) {
@@ -72,11 +68,6 @@ public class Utils {
 		}
 	}
 
-	static {
-		// Use GMT time zone, instead of the local time zone
-		GMT_DATE_FMT.setTimeZone(TimeZone.getTimeZone("GMT"));
-	}
-
 	/*
 	 * Just to move the try-catch to a separate method and keep the code clean at
 	 * other places where URL decoding is required.
@@ -124,15 +115,14 @@ public class Utils {
 		return utf8Msg;
 	}
 
-	// Synchronized as SimpleDateFormat is not thread safe..shall I create an instance on demand?
-	public synchronized static Date parseTimeFromXSDTIMEString(String timeAsString) throws ParseException {
-		return GMT_DATE_FMT.parse(timeAsString);
+	// SimpleDateFormat is not thread safe, so every thread parses with its own instance
+	public static Date parseTimeFromXSDTIMEString(String timeAsString) throws ParseException {
+		return ThreadResources.getXSDTimeFormat().parse(timeAsString);
 	}
 
 	// Using Transformer.. Just in case.. we need to log XML element
 	public static void writeXMLToStream(Node node, OutputStream outputStream, boolean indented) throws TransformerException	{
-		TransformerFactory transFact = TransformerFactory.newInstance();
-		Transformer transformer = transFact.newTransformer();
+		Transformer transformer = ThreadResources.getTransformer();
 		String indent = indented ? "yes" : "no";
 		transformer.setOutputProperty(OutputKeys.INDENT, indent);
 		transformer.transform(new DOMSource(node), new StreamResult(outputStream));
@@ -144,8 +134,7 @@ public class Utils {
 		
 		StringWriter writer = new StringWriter();
 		StreamResult result = new StreamResult(writer);
-		TransformerFactory tf = TransformerFactory.newInstance();
-		Transformer transformer = tf.newTransformer();
+		Transformer transformer = ThreadResources.getTransformer();
 		transformer.transform(domSource, result);
 		return result.getWriter().toString();
 	}
@@ -179,12 +168,11 @@ public class Utils {
 	}
 	
 	public static byte[] encrypt(SecretKey secretKey,byte[] assertionContent) throws Exception {
-		byte[] initializationVector = new byte[] {0, 9, 8, 7, 6, 2, 3, 4, 5, 0,1, 5, 7, 8, 9, 4};
-		AlgorithmParameterSpec ivParameterSpec = new IvParameterSpec(initializationVector);
+		AlgorithmParameterSpec ivParameterSpec = new IvParameterSpec(INITIALIZATION_VECTOR);
 		byte[] encryptedText = null;
 		
 		try {		
-			Cipher encrypter = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			Cipher encrypter = ThreadResources.getAESCipher();
 			encrypter.init(Cipher.ENCRYPT_MODE, secretKey, ivParameterSpec);
 			encryptedText = encrypter.doFinal(assertionContent);			
 		}catch(Exception e) {
@@ -199,11 +187,10 @@ public class Utils {
 	
 	public static byte[] decrypt(SecretKey secretKey,byte[] encryptedText) throws Exception {
 		byte[] decryptedText = null;
-		byte[] initializationVector = new byte[] {0, 9, 8, 7, 6, 2, 3, 4, 5, 0,1, 5, 7, 8, 9, 4};
-		AlgorithmParameterSpec ivParameterSpec = new IvParameterSpec(initializationVector);
+		AlgorithmParameterSpec ivParameterSpec = new IvParameterSpec(INITIALIZATION_VECTOR);
 		
 		try {		
-			Cipher decrypter = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			Cipher decrypter = ThreadResources.getAESCipher();
 			decrypter.init(Cipher.DECRYPT_MODE, secretKey, ivParameterSpec);
 			decryptedText = decrypter.doFinal(encryptedText);				
 		}catch(Exception e) {
@@ -55,6 +55,7 @@ import com.microsoftopentechnologies.azurecommons.deploy.model.RemoteDesktopDesc
 import com.microsoftopentechnologies.azurecommons.exception.DeploymentException;
 import com.microsoftopentechnologies.azurecommons.messagehandler.PropUtil;
 import com.microsoftopentechnologies.azuremanagementutil.model.Notifier;
+import com.microsoftopentechnologies.azuremanagementutil.rest.UploadJournal;
 import com.microsoftopentechnologies.azuremanagementutil.rest.WindowsAzureServiceManagement;
 import com.microsoftopentechnologies.azuremanagementutil.rest.WindowsAzureStorageServices;
 import com.microsoftopentechnologies.azurecommons.wacommonutil.CerPfxUtil;
@@ -331,7 +332,9 @@ public class DeploymentManagerUtilMethods {
 			final String container, DeployDescriptor deploymentDesc,
 			Notifier notifier) throws Exception {
 		File file = new File(cspkg);
-		service.putBlob(container,cspckgTargetName, file, notifier);
+		// the journal lets an interrupted upload continue where it stopped, even if the package was built again
+		File journal = UploadJournal.getJournalFile(file);
+		service.putBlob(container,cspckgTargetName, file, notifier, journal);
 	}
 
 	public static String createDeployment(DeployDescriptor deploymentDesc,
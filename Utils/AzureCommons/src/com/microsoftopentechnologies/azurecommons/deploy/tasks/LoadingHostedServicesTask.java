@@ -19,9 +19,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -42,7 +40,6 @@ public class LoadingHostedServicesTask extends LoadingTask<Map<String, ArrayList
 	private final WindowsAzureServiceManagement service = getServiceInstance();
 	private final Map<String, ArrayList<HostedService>> hostedServicesMap = new ConcurrentHashMap<String, ArrayList<HostedService>>();
 	private List<Future<?>> futures = new ArrayList<Future<?>>();
-	private ScheduledExecutorService threadPool;
 
 
 	@Override
@@ -50,12 +47,10 @@ public class LoadingHostedServicesTask extends LoadingTask<Map<String, ArrayList
 
 		List<Subscription> subscriptions = data.getPublishProfile().getSubscriptions();
 		if (!subscriptions.isEmpty()) {
-			int numberOfSubscriptions = subscriptions.size();
-			threadPool = Executors.newScheduledThreadPool(numberOfSubscriptions);
 			for (Subscription sub : subscriptions) {
 				LoadHostetServicesPerSubscription task = new LoadHostetServicesPerSubscription();
 				task.setSubscriptionId(sub.getId());
-				Future<?> submit = threadPool.submit(task);
+				Future<?> submit = getBatch().submit(sub.getId(), task);
 				futures.add(submit);
 			}
 			try {
@@ -67,11 +62,12 @@ public class LoadingHostedServicesTask extends LoadingTask<Map<String, ArrayList
 				AccountCachingExceptionEvent event = new AccountCachingExceptionEvent(this);
 				event.setException(e);
 				event.setMessage("Timed out while waiting for cloud services, please try again");
-				threadPool.shutdownNow();
+				cancel(futures);
 				fireRestAPIErrorEvent(event);
 				return new ConcurrentHashMap<String, ArrayList<HostedService>>();
 			}
 			catch (InterruptedException e) {
+				cancel(futures);
 				return new ConcurrentHashMap<String, ArrayList<HostedService>>();
 			}
 		}
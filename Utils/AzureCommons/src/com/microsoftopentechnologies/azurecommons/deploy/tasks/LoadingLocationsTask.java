@@ -19,9 +19,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -43,20 +41,17 @@ public class LoadingLocationsTask extends LoadingTask<Map<String, ArrayList<Loca
 	private final WindowsAzureServiceManagement service = getServiceInstance();
 	private final Map<String, ArrayList<Location>> locationsServicesMap = new ConcurrentHashMap<String, ArrayList<Location>>();
 	private List<Future<?>> futures = new ArrayList<Future<?>>();
-	private ScheduledExecutorService threadPool;
 
 	@Override
 	public Map<String, ArrayList<Location>> call() throws Exception {
 
 		List<Subscription> subscriptions = data.getPublishProfile().getSubscriptions();
 		if (!subscriptions.isEmpty()) {
-			int numberOfSubscriptions = data.getPublishProfile().getSubscriptions().size();
-			threadPool = Executors.newScheduledThreadPool(numberOfSubscriptions);
 			for (Subscription sub : data.getPublishProfile().getSubscriptions()) {
 				LoadLocationsPerSubscription task = new LoadLocationsPerSubscription();
 				task.setSubscriptionId(sub.getId());
                 task.setConfiguration(data.getConfiguration(sub.getId()));
-				Future<?> submit = threadPool.submit(task);
+				Future<?> submit = getBatch().submit(sub.getId(), task);
 				futures.add(submit);
 			}
 			try {
@@ -68,11 +63,12 @@ public class LoadingLocationsTask extends LoadingTask<Map<String, ArrayList<Loca
 				AccountCachingExceptionEvent event = new AccountCachingExceptionEvent(this);
 				event.setException(e);
 				event.setMessage("Timed out while waiting for locations, please try again");
-				threadPool.shutdownNow();
+				cancel(futures);
 				fireRestAPIErrorEvent(event);
 				return new ConcurrentHashMap<String, ArrayList<Location>>();
 			}
 			catch (InterruptedException e) {
+				cancel(futures);
 				return new ConcurrentHashMap<String, ArrayList<Location>>();
 			}
 		}
@@ -19,9 +19,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -43,18 +41,15 @@ public class LoadingStorageAccountTask extends LoadingTask<Map<String, StorageSe
 	private final WindowsAzureServiceManagement service = getServiceInstance();
 	private final Map<String, StorageServices> storageServicesMap = new ConcurrentHashMap<String, StorageServices>();
 	private List<Future<?>> futures = new ArrayList<Future<?>>();
-	private ScheduledExecutorService threadPool;
 
 	@Override
 	public Map<String, StorageServices> call() throws Exception {
 		List<Subscription> subscriptions = data.getPublishProfile().getSubscriptions();
 		if (!subscriptions.isEmpty()) {
-			int numberOfSubscriptions = data.getPublishProfile().getSubscriptions().size();
-			threadPool = Executors.newScheduledThreadPool(numberOfSubscriptions);
 			for (Subscription sub : data.getPublishProfile().getSubscriptions()) {
 				LoadStorageAccountsPerSubscription task = new LoadStorageAccountsPerSubscription();
 				task.setSubscriptionId(sub.getId());
-				Future<?> submit = threadPool.submit(task);
+				Future<?> submit = getBatch().submit(sub.getId(), task);
 				futures.add(submit);
 			}
 			try {
@@ -66,11 +61,12 @@ public class LoadingStorageAccountTask extends LoadingTask<Map<String, StorageSe
 				AccountCachingExceptionEvent event = new AccountCachingExceptionEvent(this);
 				event.setException(e);
 				event.setMessage("Timed out while waiting for storage services, please try again");
-				threadPool.shutdownNow();
+				cancel(futures);
 				fireRestAPIErrorEvent(event);
 				return new ConcurrentHashMap<String, StorageServices>();
 			}
 			catch (InterruptedException e) {
+				cancel(futures);
 				return new ConcurrentHashMap<String, StorageServices>();	
 			}
 		}
@@ -17,9 +17,7 @@ package com.microsoftopentechnologies.azurecommons.deploy.tasks;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -37,7 +35,6 @@ public class LoadingSubscriptionTask extends LoadingTask<List<Subscription>> {
 	private final WindowsAzureServiceManagement service = getServiceInstance();
 	private final List<Subscription> subscriptions = new ArrayList<Subscription>();
 	private List<Future<?>> futures = new ArrayList<Future<?>>();
-	private ScheduledExecutorService threadPool;
 
 	private AtomicBoolean errorHappened = new AtomicBoolean(false);
 
@@ -53,13 +50,11 @@ public class LoadingSubscriptionTask extends LoadingTask<List<Subscription>> {
 
 	@Override
 	public List<Subscription> call() throws Exception {
-		int numberOfSubscriptions = subs.size();
-		threadPool = Executors.newScheduledThreadPool(numberOfSubscriptions);
 		for (Subscription s : subs) {
 			LoadSubscription loadSubscription = new LoadSubscription();
 			loadSubscription.setSubscriptionId(s.getId());
 			loadSubscription.setConfiguration(data.getConfiguration(s.getId()));
-			Future<?> submit = threadPool.submit(loadSubscription);
+			Future<?> submit = getBatch().submit(s.getId(), loadSubscription);
 			futures.add(submit);
 		}
 
@@ -67,19 +62,18 @@ public class LoadingSubscriptionTask extends LoadingTask<List<Subscription>> {
 			for (Future<?> future : futures) {
 				future.get(OPERATION_TIMEOUT, TimeUnit.SECONDS);
 			}
-			threadPool.shutdownNow();
-			threadPool.awaitTermination(OPERATION_TIMEOUT * numberOfSubscriptions, TimeUnit.SECONDS);
 		}
 		catch (TimeoutException e) {
 			AccountCachingExceptionEvent event = new AccountCachingExceptionEvent(this);
 			event.setException(e);
 			event.setMessage("Timed out while waiting for subscriptions, please try again");
-			threadPool.shutdownNow();
+			cancel(futures);
 			fireRestAPIErrorEvent(event);
 			return new ArrayList<Subscription>();
 
 		}
 		catch (InterruptedException e) {
+			cancel(futures);
 			return new ArrayList<Subscription>();
 		}
 		if (errorHappened.get() == true) {
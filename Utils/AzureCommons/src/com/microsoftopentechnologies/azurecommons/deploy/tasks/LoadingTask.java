@@ -15,7 +15,9 @@
 */
 package com.microsoftopentechnologies.azurecommons.deploy.tasks;
 
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import javax.swing.event.EventListenerList;
 
@@ -28,6 +30,7 @@ public abstract class LoadingTask<T> implements Callable<T>, Runnable {
 	
 	protected PublishData data;
 	private T dataResult;
+	private LoadingTaskScheduler.Batch batch;
 	
 	protected EventListenerList listeners = new EventListenerList();
 	
@@ -43,6 +46,22 @@ public abstract class LoadingTask<T> implements Callable<T>, Runnable {
 		this.data = data;
 	}
 
+	/**
+	 * Sets the batch the REST calls of this task are submitted to, so that they are
+	 * cancelled with the other tasks loading the same publish data.
+	 * @param batch
+	 */
+	public synchronized void setBatch(LoadingTaskScheduler.Batch batch) {
+		this.batch = batch;
+	}
+
+	protected synchronized LoadingTaskScheduler.Batch getBatch() {
+		if (batch == null) {
+			batch = LoadingTaskScheduler.getInstance().newBatch();
+		}
+		return batch;
+	}
+
 	public T getDataResult() {
 		return dataResult;
 	}
@@ -80,6 +99,12 @@ public abstract class LoadingTask<T> implements Callable<T>, Runnable {
 		return instance;
 	}
 	
+	protected static void cancel(List<Future<?>> futures) {
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+	}
+
 	protected void fireRestAPIErrorEvent(AccountCachingExceptionEvent e) {
 		Object[] list = listeners.getListenerList();
 		for (int i = 0; i < list.length; i += 2) {
@@ -0,0 +1,316 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.microsoftopentechnologies.azurecommons.deploy.tasks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the REST calls loading subscriptions, cloud services, storage accounts and locations
+ * on a fixed number of threads shared by all the loading tasks.
+ * <p>
+ * Calls wait in a queue per subscription and the queues take turns, so that a subscription with
+ * many calls to make does not hold back the others. The loading tasks themselves, which only wait
+ * for their calls, run on threads of their own that end when idle. Calls and tasks are submitted
+ * in batches, cancelled together when the progress monitor or job which started them is cancelled.
+ */
+public final class LoadingTaskScheduler {
+
+	private static final int MAX_CALLS = 8;
+	private static final long IDLE_TIMEOUT = 60;
+
+	private static final LoadingTaskScheduler INSTANCE = new LoadingTaskScheduler(MAX_CALLS);
+
+	/** Tasks submitted together, cancelled together. */
+	public final class Batch {
+		private final List<Future<?>> futures = new ArrayList<Future<?>>();
+		private boolean cancelled;
+
+		private Batch() {
+		}
+
+		/**
+		 * Queues a REST call of the subscription.
+		 * @param subscriptionId
+		 * @param task
+		 * @return future of the call
+		 */
+		public <T> Future<T> submit(String subscriptionId, Callable<T> task) {
+			Call<T> call = new Call<T>(subscriptionId, task);
+			if (add(call)) {
+				enqueue(call);
+			}
+			return call;
+		}
+
+		public Future<?> submit(String subscriptionId, Runnable task) {
+			return submit(subscriptionId, Executors.callable(task));
+		}
+
+		/**
+		 * Starts a task waiting for calls submitted to this batch.
+		 * @param task
+		 * @return future of the task
+		 */
+		public Future<?> start(Runnable task) {
+			FutureTask<Object> future = new FutureTask<Object>(
+					withContextClassLoader(Executors.callable(task)));
+			if (add(future)) {
+				waiters.execute(future);
+			}
+			return future;
+		}
+
+		/**
+		 * Cancels the tasks and calls of the batch, interrupting those running,
+		 * and any submitted later.
+		 */
+		public void cancel() {
+			List<Future<?>> toCancel;
+			synchronized (this) {
+				cancelled = true;
+				toCancel = new ArrayList<Future<?>>(futures);
+				futures.clear();
+			}
+			for (Future<?> future : toCancel) {
+				future.cancel(true);
+			}
+		}
+
+		private boolean add(Future<?> future) {
+			synchronized (this) {
+				if (!cancelled) {
+					futures.add(future);
+					return true;
+				}
+			}
+			future.cancel(false);
+			return false;
+		}
+	}
+
+	/** A queued REST call, run with the class loader of the thread which submitted it. */
+	private final class Call<T> extends FutureTask<T> {
+		private final String subscriptionId;
+		private final long queuedAt = System.nanoTime();
+
+		private Call(String subscriptionId, Callable<T> task) {
+			super(withContextClassLoader(task));
+			this.subscriptionId = subscriptionId == null ? "" : subscriptionId;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean result = super.cancel(mayInterruptIfRunning);
+			if (result) {
+				dequeue(this);
+			}
+			return result;
+		}
+	}
+
+	private final int maxCalls;
+	private final ThreadPoolExecutor workers;
+	private final ThreadPoolExecutor waiters;
+	// queued calls by subscription id, in the order the subscriptions take turns
+	private final Map<String, LinkedList<Call<?>>> queues = new LinkedHashMap<String, LinkedList<Call<?>>>();
+	private int queued;
+	private int running;
+
+	// metrics, guarded by queues
+	private long completed;
+	private long totalWaitNanos;
+	private long maxWaitNanos;
+	private long totalRunNanos;
+
+	private LoadingTaskScheduler(int maxCalls) {
+		this.maxCalls = maxCalls;
+		workers = new ThreadPoolExecutor(maxCalls, maxCalls, IDLE_TIMEOUT, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("Account loading"));
+		workers.allowCoreThreadTimeOut(true);
+		waiters = new ThreadPoolExecutor(0, Integer.MAX_VALUE, IDLE_TIMEOUT, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new DaemonThreadFactory("Account loading task"));
+	}
+
+	public static LoadingTaskScheduler getInstance() {
+		return INSTANCE;
+	}
+
+	public Batch newBatch() {
+		return new Batch();
+	}
+
+	private void enqueue(Call<?> call) {
+		synchronized (queues) {
+			LinkedList<Call<?>> queue = queues.get(call.subscriptionId);
+			if (queue == null) {
+				queue = new LinkedList<Call<?>>();
+				queues.put(call.subscriptionId, queue);
+			}
+			queue.add(call);
+			queued++;
+		}
+		dispatch();
+	}
+
+	private void dequeue(Call<?> call) {
+		synchronized (queues) {
+			LinkedList<Call<?>> queue = queues.get(call.subscriptionId);
+			if (queue != null && queue.remove(call)) {
+				queued--;
+				if (queue.isEmpty()) {
+					queues.remove(call.subscriptionId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts queued calls while threads are free, taking the next call of each subscription in turn.
+	 */
+	private void dispatch() {
+		while (true) {
+			final Call<?> call;
+			synchronized (queues) {
+				if (running >= maxCalls || queues.isEmpty()) {
+					return;
+				}
+				Iterator<Map.Entry<String, LinkedList<Call<?>>>> iterator = queues.entrySet().iterator();
+				Map.Entry<String, LinkedList<Call<?>>> next = iterator.next();
+				LinkedList<Call<?>> queue = next.getValue();
+				call = queue.removeFirst();
+				queued--;
+				// the subscription goes to the end of the line
+				iterator.remove();
+				if (!queue.isEmpty()) {
+					queues.put(next.getKey(), queue);
+				}
+				running++;
+			}
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					long start = System.nanoTime();
+					try {
+						call.run();
+					} finally {
+						finished(call, start, System.nanoTime());
+					}
+				}
+			});
+		}
+	}
+
+	private void finished(Call<?> call, long start, long end) {
+		synchronized (queues) {
+			running--;
+			completed++;
+			long wait = start - call.queuedAt;
+			totalWaitNanos += wait;
+			maxWaitNanos = Math.max(maxWaitNanos, wait);
+			totalRunNanos += end - start;
+		}
+		dispatch();
+	}
+
+	private static <T> Callable<T> withContextClassLoader(final Callable<T> task) {
+		// the shared threads load the azure libraries with the submitter's class loader
+		final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		return new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				Thread thread = Thread.currentThread();
+				ClassLoader previous = thread.getContextClassLoader();
+				thread.setContextClassLoader(classLoader);
+				try {
+					return task.call();
+				} finally {
+					thread.setContextClassLoader(previous);
+				}
+			}
+		};
+	}
+
+	/** Number of calls waiting for a thread. */
+	public int getQueueDepth() {
+		synchronized (queues) {
+			return queued;
+		}
+	}
+
+	/** Number of calls running. */
+	public int getRunningCount() {
+		synchronized (queues) {
+			return running;
+		}
+	}
+
+	/** Number of calls run, including failed and interrupted ones. */
+	public long getCompletedCount() {
+		synchronized (queues) {
+			return completed;
+		}
+	}
+
+	/** Average time the calls run have waited in the queue, in milliseconds. */
+	public long getAverageWaitMillis() {
+		synchronized (queues) {
+			return completed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / completed);
+		}
+	}
+
+	/** Longest time a call run has waited in the queue, in milliseconds. */
+	public long getMaxWaitMillis() {
+		synchronized (queues) {
+			return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+		}
+	}
+
+	/** Average time the calls have run, in milliseconds. */
+	public long getAverageRunMillis() {
+		synchronized (queues) {
+			return completed == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalRunNanos / completed);
+		}
+	}
+
+	private static final class DaemonThreadFactory implements ThreadFactory {
+		private final String name;
+
+		private DaemonThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,349 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.microsoftopentechnologies.azurecommons.deploy.util;
+
+import java.io.Serializable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.microsoft.windowsazure.management.compute.models.HostedServiceListResponse.HostedService;
+import com.microsoft.windowsazure.management.compute.models.HostedServiceProperties;
+import com.microsoft.windowsazure.management.compute.models.HostedServiceStatus;
+import com.microsoft.windowsazure.management.models.LocationsListResponse.Location;
+import com.microsoft.windowsazure.management.storage.models.StorageAccountProperties;
+import com.microsoft.windowsazure.management.storage.models.StorageAccountStatus;
+import com.microsoftopentechnologies.azuremanagementutil.model.StorageService;
+import com.microsoftopentechnologies.azuremanagementutil.model.StorageServices;
+import com.microsoftopentechnologies.azuremanagementutil.model.Subscription;
+
+/**
+ * The details, cloud services, storage accounts and locations of a subscription as last loaded
+ * from the service management API, kept so that the publish wizard can show them before they
+ * are loaded again.
+ * <p>
+ * Only the values read by the wizard and the deployment are kept. The management certificate
+ * is not: the subscription's configuration is still built from the publish settings file.
+ * Cloud services and storage accounts created in the wizard but not yet in Azure are left out.
+ */
+public class SubscriptionSnapshot implements Serializable {
+
+	private static final long serialVersionUID = 4790167421573602117L;
+
+	private static final class HostedServiceEntry implements Serializable {
+		private static final long serialVersionUID = -2081958934706447593L;
+
+		private String serviceName;
+		private URI uri;
+		private String label;
+		private String description;
+		private String location;
+		private String affinityGroup;
+		private HostedServiceStatus status;
+
+		private HostedServiceEntry(HostedService hostedService) {
+			serviceName = hostedService.getServiceName();
+			uri = hostedService.getUri();
+			HostedServiceProperties properties = hostedService.getProperties();
+			if (properties != null) {
+				label = properties.getLabel();
+				description = properties.getDescription();
+				location = properties.getLocation();
+				affinityGroup = properties.getAffinityGroup();
+				status = properties.getStatus();
+			}
+		}
+
+		private HostedService toHostedService() {
+			HostedServiceProperties properties = new HostedServiceProperties();
+			properties.setLabel(label);
+			properties.setDescription(description);
+			properties.setLocation(location);
+			properties.setAffinityGroup(affinityGroup);
+			properties.setStatus(status);
+			HostedService hostedService = new HostedService();
+			hostedService.setServiceName(serviceName);
+			hostedService.setUri(uri);
+			hostedService.setProperties(properties);
+			return hostedService;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof HostedServiceEntry)) {
+				return false;
+			}
+			HostedServiceEntry other = (HostedServiceEntry) obj;
+			return equal(serviceName, other.serviceName) && equal(uri, other.uri)
+					&& equal(label, other.label) && equal(description, other.description)
+					&& equal(location, other.location) && equal(affinityGroup, other.affinityGroup)
+					&& equal(status, other.status);
+		}
+
+		@Override
+		public int hashCode() {
+			return serviceName == null ? 0 : serviceName.hashCode();
+		}
+	}
+
+	private static final class StorageServiceEntry implements Serializable {
+		private static final long serialVersionUID = 2609417052375936384L;
+
+		private String serviceName;
+		private String url;
+		private String primaryKey;
+		private String secondaryKey;
+		private String label;
+		private String description;
+		private String location;
+		private String affinityGroup;
+		private String accountType;
+		private ArrayList<URI> endpoints;
+		private StorageAccountStatus status;
+
+		private StorageServiceEntry(StorageService storageService) {
+			serviceName = storageService.getServiceName();
+			url = storageService.getUrl();
+			primaryKey = storageService.getPrimaryKey();
+			secondaryKey = storageService.getSecondaryKey();
+			StorageAccountProperties properties = storageService.getStorageAccountProperties();
+			if (properties != null) {
+				label = properties.getLabel();
+				description = properties.getDescription();
+				location = properties.getLocation();
+				affinityGroup = properties.getAffinityGroup();
+				accountType = properties.getAccountType();
+				if (properties.getEndpoints() != null) {
+					endpoints = new ArrayList<URI>(properties.getEndpoints());
+				}
+				status = properties.getStatus();
+			}
+		}
+
+		private StorageService toStorageService() {
+			StorageAccountProperties properties = new StorageAccountProperties();
+			properties.setLabel(label);
+			properties.setDescription(description);
+			properties.setLocation(location);
+			properties.setAffinityGroup(affinityGroup);
+			properties.setAccountType(accountType);
+			if (endpoints != null) {
+				properties.setEndpoints(new ArrayList<URI>(endpoints));
+			}
+			properties.setStatus(status);
+			StorageService storageService = new StorageService();
+			storageService.setServiceName(serviceName);
+			storageService.setUrl(url);
+			storageService.setStorageServiceKeys(primaryKey, secondaryKey);
+			storageService.setStorageAccountProperties(properties);
+			return storageService;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof StorageServiceEntry)) {
+				return false;
+			}
+			StorageServiceEntry other = (StorageServiceEntry) obj;
+			return equal(serviceName, other.serviceName) && equal(url, other.url)
+					&& equal(primaryKey, other.primaryKey) && equal(secondaryKey, other.secondaryKey)
+					&& equal(label, other.label) && equal(description, other.description)
+					&& equal(location, other.location) && equal(affinityGroup, other.affinityGroup)
+					&& equal(accountType, other.accountType) && equal(endpoints, other.endpoints)
+					&& equal(status, other.status);
+		}
+
+		@Override
+		public int hashCode() {
+			return serviceName == null ? 0 : serviceName.hashCode();
+		}
+	}
+
+	private static final class LocationEntry implements Serializable {
+		private static final long serialVersionUID = -7143225312079455861L;
+
+		private String name;
+		private String displayName;
+		private ArrayList<String> availableServices;
+
+		private LocationEntry(Location location) {
+			name = location.getName();
+			displayName = location.getDisplayName();
+			if (location.getAvailableServices() != null) {
+				availableServices = new ArrayList<String>(location.getAvailableServices());
+			}
+		}
+
+		private Location toLocation() {
+			Location location = new Location();
+			location.setName(name);
+			location.setDisplayName(displayName);
+			if (availableServices != null) {
+				location.setAvailableServices(new ArrayList<String>(availableServices));
+			}
+			return location;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof LocationEntry)) {
+				return false;
+			}
+			LocationEntry other = (LocationEntry) obj;
+			return equal(name, other.name) && equal(displayName, other.displayName)
+					&& equal(availableServices, other.availableServices);
+		}
+
+		@Override
+		public int hashCode() {
+			return name == null ? 0 : name.hashCode();
+		}
+	}
+
+	private final String subscriptionId;
+	private final long loadedAt;
+	private final Subscription details;
+	private final List<HostedServiceEntry> hostedServices = new ArrayList<HostedServiceEntry>();
+	private final List<StorageServiceEntry> storageServices = new ArrayList<StorageServiceEntry>();
+	private final List<LocationEntry> locations = new ArrayList<LocationEntry>();
+
+	private SubscriptionSnapshot(Subscription subscription, long loadedAt) {
+		subscriptionId = subscription.getId();
+		this.loadedAt = loadedAt;
+		details = new Subscription();
+		copyDetails(subscription, details);
+	}
+
+	/**
+	 * Takes the snapshot of a subscription of the publish data.
+	 * @param publishData
+	 * @param subscription
+	 * @param loadedAt time the data was loaded
+	 * @return snapshot, null if the data of the subscription is not loaded
+	 */
+	public static SubscriptionSnapshot of(PublishData publishData, Subscription subscription, long loadedAt) {
+		String id = subscription.getId();
+		if (id == null || subscription.getName() == null || subscription.getName().equals(id)
+				|| publishData.getServicesPerSubscription() == null
+				|| publishData.getStoragesPerSubscription() == null
+				|| publishData.getLocationsPerSubscription() == null) {
+			return null;
+		}
+		List<HostedService> services = publishData.getServicesPerSubscription().get(id);
+		StorageServices storages = publishData.getStoragesPerSubscription().get(id);
+		List<Location> locations = publishData.getLocationsPerSubscription().get(id);
+		if (services == null || storages == null || locations == null) {
+			return null;
+		}
+		SubscriptionSnapshot snapshot = new SubscriptionSnapshot(subscription, loadedAt);
+		for (HostedService hostedService : services) {
+			// not created yet
+			if (hostedService.getUri() != null && !hostedService.getUri().toString().isEmpty()) {
+				snapshot.hostedServices.add(new HostedServiceEntry(hostedService));
+			}
+		}
+		if (!storages.isEmpty()) {
+			for (StorageService storageService : storages) {
+				if (storageService.getUrl() != null && !storageService.getUrl().isEmpty()) {
+					snapshot.storageServices.add(new StorageServiceEntry(storageService));
+				}
+			}
+		}
+		for (Location location : locations) {
+			snapshot.locations.add(new LocationEntry(location));
+		}
+		return snapshot;
+	}
+
+	public String getSubscriptionId() {
+		return subscriptionId;
+	}
+
+	/** Time the data was loaded, in milliseconds. */
+	public long getLoadedAt() {
+		return loadedAt;
+	}
+
+	/**
+	 * Sets the name, status and quotas of the subscription as they were loaded,
+	 * leaving its management URL and certificate as they are.
+	 * @param subscription
+	 */
+	public void applyDetails(Subscription subscription) {
+		copyDetails(details, subscription);
+	}
+
+	public ArrayList<HostedService> getHostedServices() {
+		ArrayList<HostedService> list = new ArrayList<HostedService>();
+		for (HostedServiceEntry entry : hostedServices) {
+			list.add(entry.toHostedService());
+		}
+		return list;
+	}
+
+	public StorageServices getStorageServices() {
+		List<StorageService> list = new ArrayList<StorageService>();
+		for (StorageServiceEntry entry : storageServices) {
+			list.add(entry.toStorageService());
+		}
+		StorageServices services = new StorageServices();
+		services.setStorageServices(list);
+		return services;
+	}
+
+	public ArrayList<Location> getLocations() {
+		ArrayList<Location> list = new ArrayList<Location>();
+		for (LocationEntry entry : locations) {
+			list.add(entry.toLocation());
+		}
+		return list;
+	}
+
+	public boolean hasSameDetails(SubscriptionSnapshot other) {
+		return equal(details.getName(), other.details.getName())
+				&& equal(details.getSubscriptionStatus(), other.details.getSubscriptionStatus());
+	}
+
+	public boolean hasSameHostedServices(SubscriptionSnapshot other) {
+		return hostedServices.equals(other.hostedServices);
+	}
+
+	public boolean hasSameStorageServices(SubscriptionSnapshot other) {
+		return storageServices.equals(other.storageServices);
+	}
+
+	public boolean hasSameLocations(SubscriptionSnapshot other) {
+		return locations.equals(other.locations);
+	}
+
+	private static void copyDetails(Subscription from, Subscription to) {
+		to.setSubscriptionID(from.getSubscriptionID());
+		to.setSubscriptionName(from.getSubscriptionName());
+		to.setSubscriptionStatus(from.getSubscriptionStatus());
+		to.setAccountAdminLiveEmailId(from.getAccountAdminLiveEmailId());
+		to.setServiceAdminLiveEmailId(from.getServiceAdminLiveEmailId());
+		to.setMaxCoreCount(from.getMaxCoreCount());
+		to.setMaxStorageAccounts(from.getMaxStorageAccounts());
+		to.setMaxHostedServices(from.getMaxHostedServices());
+		to.setCurrentCoreCount(from.getCurrentCoreCount());
+		to.setCurrentHostedServices(from.getCurrentHostedServices());
+		to.setCurrentStorageAccounts(from.getCurrentStorageAccounts());
+	}
+
+	private static boolean equal(Object first, Object second) {
+		return first == null ? second == null : first.equals(second);
+	}
+}
@@ -0,0 +1,221 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.microsoftopentechnologies.azurecommons.deploy.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.microsoft.windowsazure.management.compute.models.HostedServiceListResponse.HostedService;
+import com.microsoft.windowsazure.management.models.LocationsListResponse.Location;
+import com.microsoftopentechnologies.azuremanagementutil.model.StorageServices;
+import com.microsoftopentechnologies.azuremanagementutil.model.Subscription;
+
+/**
+ * Snapshots of subscriptions kept in a file, so that the publish wizard can open with the
+ * subscriptions loaded in a previous session and refresh them in the background.
+ * <p>
+ * Snapshots older than the time to live are not used. The file is read on first use and
+ * written again whenever a snapshot is updated; a file which cannot be read is ignored.
+ */
+public class SubscriptionSnapshotStore {
+
+	private static final Logger LOG = Logger.getLogger(SubscriptionSnapshotStore.class.getName());
+
+	private final File file;
+	private final long timeToLive;
+	// by subscription id, read from the file on first use
+	private Map<String, SubscriptionSnapshot> snapshots;
+
+	/**
+	 * @param file file holding the snapshots
+	 * @param timeToLive age in milliseconds after which a snapshot is not used
+	 */
+	public SubscriptionSnapshotStore(File file, long timeToLive) {
+		this.file = file;
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Returns the snapshot of the subscription if it is not older than the time to live.
+	 * @param subscriptionId
+	 * @return snapshot, or null
+	 */
+	public synchronized SubscriptionSnapshot get(String subscriptionId) {
+		SubscriptionSnapshot snapshot = getSnapshots().get(subscriptionId);
+		if (snapshot == null) {
+			return null;
+		}
+		long age = System.currentTimeMillis() - snapshot.getLoadedAt();
+		return age < 0 || age > timeToLive ? null : snapshot;
+	}
+
+	/**
+	 * Fills the publish data from the snapshots of its subscriptions, if all of them have one.
+	 * @param publishData
+	 * @return true if the publish data was restored, false if it has to be loaded
+	 */
+	public synchronized boolean restore(PublishData publishData) {
+		List<Subscription> subscriptions = publishData.getPublishProfile().getSubscriptions();
+		if (subscriptions == null || subscriptions.isEmpty()) {
+			return false;
+		}
+		List<SubscriptionSnapshot> found = new ArrayList<SubscriptionSnapshot>();
+		for (Subscription subscription : subscriptions) {
+			SubscriptionSnapshot snapshot = get(subscription.getId());
+			if (snapshot == null) {
+				return false;
+			}
+			found.add(snapshot);
+		}
+		Map<String, ArrayList<HostedService>> services = new HashMap<String, ArrayList<HostedService>>();
+		Map<String, StorageServices> storages = new HashMap<String, StorageServices>();
+		Map<String, ArrayList<Location>> locations = new HashMap<String, ArrayList<Location>>();
+		for (int i = 0; i < subscriptions.size(); i++) {
+			SubscriptionSnapshot snapshot = found.get(i);
+			snapshot.applyDetails(subscriptions.get(i));
+			services.put(snapshot.getSubscriptionId(), snapshot.getHostedServices());
+			storages.put(snapshot.getSubscriptionId(), snapshot.getStorageServices());
+			locations.put(snapshot.getSubscriptionId(), snapshot.getLocations());
+		}
+		synchronized (publishData) {
+			publishData.setServicesPerSubscription(services);
+			publishData.setStoragesPerSubscription(storages);
+			publishData.setLocationsPerSubscription(locations);
+		}
+		return true;
+	}
+
+	/**
+	 * Takes new snapshots of the loaded subscriptions of the publish data and writes the file.
+	 * @param publishData
+	 */
+	public synchronized void update(PublishData publishData) {
+		long now = System.currentTimeMillis();
+		boolean changed = false;
+		synchronized (publishData) {
+			for (Subscription subscription : publishData.getPublishProfile().getSubscriptions()) {
+				SubscriptionSnapshot snapshot = SubscriptionSnapshot.of(publishData, subscription, now);
+				if (snapshot != null) {
+					getSnapshots().put(snapshot.getSubscriptionId(), snapshot);
+					changed = true;
+				}
+			}
+		}
+		if (changed) {
+			write();
+		}
+	}
+
+	public synchronized void remove(String subscriptionId) {
+		if (getSnapshots().remove(subscriptionId) != null) {
+			write();
+		}
+	}
+
+	private Map<String, SubscriptionSnapshot> getSnapshots() {
+		if (snapshots == null) {
+			snapshots = read();
+		}
+		return snapshots;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, SubscriptionSnapshot> read() {
+		Map<String, SubscriptionSnapshot> map = new HashMap<String, SubscriptionSnapshot>();
+		if (!file.isFile()) {
+			return map;
+		}
+		ObjectInputStream input = null;
+		try {
+			input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			map.putAll((Map<String, SubscriptionSnapshot>) input.readObject());
+		} catch (Exception e) {
+			// written by another version or damaged, the subscriptions are loaded again
+			map.clear();
+		} finally {
+			close(input);
+		}
+		return map;
+	}
+
+	private void write() {
+		// write a new file and replace the old one, so that a failed write does not damage it
+		File temp = new File(file.getPath() + ".tmp");
+		ObjectOutputStream output = null;
+		boolean written = false;
+		try {
+			output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			output.writeObject(new HashMap<String, SubscriptionSnapshot>(snapshots));
+			// flushes the buffer, a failure means the file is incomplete
+			output.close();
+			output = null;
+			written = true;
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Could not write the subscription snapshots to " + temp, e);
+		} finally {
+			close(output);
+		}
+		if (!written || !replace(temp, file)) {
+			temp.delete();
+		}
+	}
+
+	/*
+	 * renameTo does not replace an existing file on every platform. The old file is moved aside then,
+	 * and only deleted once the new one is in place, or moved back if that fails.
+	 */
+	private static boolean replace(File source, File target) {
+		if (source.renameTo(target)) {
+			return true;
+		}
+		File old = new File(target.getPath() + ".old");
+		old.delete();
+		if (!target.renameTo(old)) {
+			return false;
+		}
+		if (source.renameTo(target)) {
+			old.delete();
+			return true;
+		}
+		if (!old.renameTo(target)) {
+			LOG.warning("Could not restore the subscription snapshots from " + old);
+		}
+		return false;
+	}
+
+	private static void close(Closeable stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
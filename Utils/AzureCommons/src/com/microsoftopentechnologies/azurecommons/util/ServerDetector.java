@@ -0,0 +1,351 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.microsoftopentechnologies.azurecommons.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+import com.interopbridges.tools.windowsazure.WindowsAzureInvalidProjectOperationException;
+import com.interopbridges.tools.windowsazure.WindowsAzureProjectManager;
+
+/**
+ * Detects the server installed in a directory using the detectpath and
+ * detecttext attributes of the server templates in componentsets.xml.
+ * <p>
+ * The patterns are compiled once per template file. Detection walks the
+ * directory one path level at a time for all servers together, so each
+ * directory is listed and each candidate file is read at most once. The walk
+ * stops when the calling thread is interrupted.
+ */
+public final class ServerDetector {
+
+	// larger files are scanned line by line instead of being read into memory
+	private static final long MAX_BUFFERED_SIZE = 4 * 1024 * 1024;
+	// directories matched by a wildcard path part, followed per server
+	private static final int MAX_WILDCARD_MATCHES = 64;
+
+	private static final Map<String, ServerDetector> DETECTORS =
+			new HashMap<String, ServerDetector>();
+
+	/** Compiled detectpath and detecttext of a server template. */
+	private static final class Signature {
+		private final String serverName;
+		private final int order;
+		private final String[] pathParts;
+		// null for the parts without wildcards
+		private final Pattern[] pathPatterns;
+		private final Pattern textPattern;
+
+		private Signature(String serverName, int order, String detectPath,
+				String detectText) {
+			this.serverName = serverName;
+			this.order = order;
+			pathParts = detectPath.split("/");
+			pathPatterns = new Pattern[pathParts.length];
+			for (int i = 0; i < pathParts.length; i++) {
+				if (pathParts[i].contains("*") || pathParts[i].contains("?")) {
+					pathPatterns[i] = Pattern.compile("^"
+							+ windowsPathToRegex(pathParts[i]) + "$");
+				}
+			}
+			textPattern = detectText == null ? null : Pattern.compile(
+					detectText, Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+		}
+
+		/**
+		 * A server whose file content matched is more specific than one
+		 * matched by path only, then a longer path is more specific.
+		 */
+		private boolean isBetterThan(Signature other) {
+			if ((textPattern != null) != (other.textPattern != null)) {
+				return textPattern != null;
+			}
+			if (pathParts.length != other.pathParts.length) {
+				return pathParts.length > other.pathParts.length;
+			}
+			return order < other.order;
+		}
+	}
+
+	/** A server whose detectpath matched up to a directory. */
+	private static final class Candidate {
+		private final Signature signature;
+		private final File dir;
+
+		private Candidate(Signature signature, File dir) {
+			this.signature = signature;
+			this.dir = dir;
+		}
+	}
+
+	/** Bytes of a file seen as ISO-8859-1 characters, without decoding them. */
+	private static final class ByteCharSequence implements CharSequence {
+		private final ByteBuffer buffer;
+		private final int offset;
+		private final int length;
+
+		private ByteCharSequence(ByteBuffer buffer, int offset, int length) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buffer.get(offset + index) & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new ByteCharSequence(buffer, offset + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder(length);
+			for (int i = 0; i < length; i++) {
+				builder.append(charAt(i));
+			}
+			return builder.toString();
+		}
+	}
+
+	private final long lastModified;
+	private final long length;
+	private final List<Signature> signatures = new ArrayList<Signature>();
+	private final int maxPathParts;
+
+	private ServerDetector(File templateFile)
+			throws WindowsAzureInvalidProjectOperationException {
+		lastModified = templateFile.lastModified();
+		length = templateFile.length();
+		Map<String, String> serverDetectors = WindowsAzureProjectManager
+				.getServerTemplateDetectors(templateFile);
+		Map<String, String> serverPatterns = WindowsAzureProjectManager
+				.getServerTemplatePatterns(templateFile);
+		String[] serverNames = WindowsAzureProjectManager
+				.getServerTemplateNames(templateFile);
+		int maxParts = 0;
+		for (int i = 0; i < serverNames.length; i++) {
+			String pathPatternText = serverDetectors.get(serverNames[i]);
+			if (pathPatternText == null || pathPatternText.isEmpty()) {
+				continue;
+			}
+			Signature signature = new Signature(serverNames[i], i,
+					pathPatternText, serverPatterns.get(serverNames[i]));
+			signatures.add(signature);
+			maxParts = Math.max(maxParts, signature.pathParts.length);
+		}
+		maxPathParts = maxParts;
+	}
+
+	/**
+	 * Returns the detector for the server templates of componentsets.xml,
+	 * compiling them again only if the file has changed.
+	 *
+	 * @param templateFile
+	 * @return
+	 * @throws WindowsAzureInvalidProjectOperationException
+	 */
+	public static ServerDetector getInstance(File templateFile)
+			throws WindowsAzureInvalidProjectOperationException {
+		String key = templateFile.getAbsolutePath();
+		synchronized (DETECTORS) {
+			ServerDetector detector = DETECTORS.get(key);
+			if (detector != null
+					&& detector.lastModified == templateFile.lastModified()
+					&& detector.length == templateFile.length()) {
+				return detector;
+			}
+			detector = new ServerDetector(templateFile);
+			DETECTORS.put(key, detector);
+			return detector;
+		}
+	}
+
+	/**
+	 * Returns the name of the server best matching the directory, or null if
+	 * no server matched or the calling thread was interrupted.
+	 *
+	 * @param path
+	 * @return
+	 */
+	public String detect(File path) {
+		if (path == null || !path.isDirectory()) {
+			return null;
+		}
+		Map<File, String[]> listings = new HashMap<File, String[]>();
+		Map<File, CharSequence> contents = new HashMap<File, CharSequence>();
+		Signature best = null;
+
+		List<Candidate> candidates = new ArrayList<Candidate>();
+		for (Signature signature : signatures) {
+			candidates.add(new Candidate(signature, path));
+		}
+		for (int level = 0; level < maxPathParts && !candidates.isEmpty(); level++) {
+			List<Candidate> next = new ArrayList<Candidate>();
+			for (Candidate candidate : candidates) {
+				if (Thread.currentThread().isInterrupted()) {
+					return null;
+				}
+				Signature signature = candidate.signature;
+				if (best != null && !signature.isBetterThan(best)) {
+					continue;
+				}
+				boolean terminal = level == signature.pathParts.length - 1;
+				Pattern pathPattern = signature.pathPatterns[level];
+				if (pathPattern == null) {
+					File file = new File(candidate.dir, signature.pathParts[level]);
+					if (!file.exists()) {
+						continue;
+					}
+					if (!terminal) {
+						next.add(new Candidate(signature, file));
+					} else if (file.isDirectory()
+							|| signature.textPattern == null
+							|| isPatternInFile(file, signature.textPattern, contents)) {
+						best = signature;
+					}
+					continue;
+				}
+				String[] fileNames = listings.get(candidate.dir);
+				if (fileNames == null) {
+					fileNames = candidate.dir.list();
+					if (fileNames == null) {
+						fileNames = new String[0];
+					}
+					listings.put(candidate.dir, fileNames);
+				}
+				int matches = 0;
+				for (String fileName : fileNames) {
+					if (!pathPattern.matcher(fileName).matches()) {
+						continue;
+					}
+					File file = new File(candidate.dir, fileName);
+					if (!terminal) {
+						if (file.isDirectory() && matches++ < MAX_WILDCARD_MATCHES) {
+							next.add(new Candidate(signature, file));
+						}
+					} else if (signature.textPattern == null
+							|| (file.isFile() && isPatternInFile(file,
+									signature.textPattern, contents))) {
+						best = signature;
+						break;
+					}
+				}
+			}
+			candidates = next;
+		}
+		return best == null ? null : best.serverName;
+	}
+
+	/**
+	 * Converts Windows path into regex including wildcards.
+	 *
+	 * @param windowsPath
+	 * @return
+	 */
+	private static String windowsPathToRegex(String windowsPath) {
+		// Escape special characters
+		String regex = windowsPath.replaceAll(
+				"([\\\"\\+\\(\\)\\^\\$\\.\\{\\}\\[\\]\\|\\\\])", "\\\\$1");
+
+		// Replace wildcards
+		return regex.replace("*", ".*").replace("?", ".");
+	}
+
+	/**
+	 * Looks for a pattern in a text file, reading the file only once for all
+	 * the servers checking it.
+	 *
+	 * @param file
+	 * @param pattern
+	 * @param contents files already read
+	 * @return True if a pattern is found, else false
+	 */
+	private static boolean isPatternInFile(File file, Pattern pattern,
+			Map<File, CharSequence> contents) {
+		if (file.isDirectory()) {
+			return false;
+		}
+		if (file.length() > MAX_BUFFERED_SIZE) {
+			return isPatternInLargeFile(file, pattern);
+		}
+		CharSequence content = contents.get(file);
+		if (content == null) {
+			FileInputStream stream = null;
+			try {
+				// read rather than mapped: a mapping keeps the file locked
+				// on Windows until it is garbage collected
+				stream = new FileInputStream(file);
+				byte[] bytes = new byte[(int) file.length()];
+				int length = 0;
+				int n;
+				while (length < bytes.length
+						&& (n = stream.read(bytes, length, bytes.length - length)) != -1) {
+					length += n;
+				}
+				content = new ByteCharSequence(ByteBuffer.wrap(bytes), 0, length);
+			} catch (Exception e) {
+				content = "";
+			} finally {
+				if (stream != null) {
+					try {
+						stream.close();
+					} catch (Exception e) {
+						// ignore
+					}
+				}
+			}
+			contents.put(file, content);
+		}
+		return pattern.matcher(content).find();
+	}
+
+	private static boolean isPatternInLargeFile(File file, Pattern pattern) {
+		Scanner fileScanner = null;
+		try {
+			fileScanner = new Scanner(file);
+			while (fileScanner.hasNextLine()) {
+				if (Thread.currentThread().isInterrupted()) {
+					return false;
+				}
+				if (pattern.matcher(fileScanner.nextLine()).find()) {
+					return true;
+				}
+			}
+			return false;
+		} catch (Exception e) {
+			return false;
+		} finally {
+			if (fileScanner != null) {
+				fileScanner.close();
+			}
+		}
+	}
+}
@@ -17,7 +17,6 @@ package com.microsoftopentechnologies.azurecommons.util;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -25,7 +24,6 @@ import java.net.InetAddress;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
@@ -68,184 +66,27 @@ public class WAEclipseHelperMethods {
 		}
 	}
 
-	/**
-	 * Converts Windows path into regex including wildcards.
-	 * 
-	 * @param windowsPath
-	 * @return
-	 */
-	private static String windowsPathToRegex(String windowsPath) {
-		if (windowsPath == null) {
-			return null;
-		}
-
-		// Escape special characters
-		String regex = windowsPath.replaceAll(
-				"([\\\"\\+\\(\\)\\^\\$\\.\\{\\}\\[\\]\\|\\\\])", "\\\\$1");
-
-		// Replace wildcards
-		return regex.replace("*", ".*").replace("?", ".");
-	}
-
-	/**
-	 * Looks for a pattern in a text file
-	 * 
-	 * @param file
-	 * @param pattern
-	 * @return True if a pattern is found, else false
-	 * @throws FileNotFoundException
-	 */
-	private static boolean isPatternInFile(File file, String patternText) {
-		Scanner fileScanner = null;
-
-		if (file.isDirectory()) {
-			return false;
-		}
-		try {
-			fileScanner = new Scanner(file);
-			Pattern pattern = Pattern.compile(patternText,
-					Pattern.CASE_INSENSITIVE);
-			Matcher matcher = null;
-			while (fileScanner.hasNextLine()) {
-				String line = fileScanner.nextLine();
-				matcher = pattern.matcher(line);
-				if (matcher.find()) {
-					return true;
-				}
-			}
-			return false;
-		} catch (Exception e) {
-			return false;
-		} finally {
-			if (fileScanner != null) {
-				fileScanner.close();
-			}
-		}
-	}
-
 	/**
 	 * Returns the server name whose detection patterns is matched under path.
+	 * Returns null if the calling thread is interrupted while detecting.
 	 * 
-	 * @param serverDetectors
 	 * @param path
+	 * @param templateFilePath
 	 * @return
 	 */
 	public static String detectServer(File path, String templateFilePath) {
-		final Map<String, String> serverDetectors;
-		final Map<String, String> serverPatterns;
-
 		if (templateFilePath == null || path == null || !path.isDirectory()
 				|| !path.exists()) {
 			return null;
 		}
 
 		// Get the server detectors from the templates
-		final File templateFile = new File(templateFilePath);
 		try {
-			if (null == (serverDetectors = WindowsAzureProjectManager
-					.getServerTemplateDetectors(templateFile))) {
-				return null;
-			} else if (null == (serverPatterns = WindowsAzureProjectManager
-					.getServerTemplatePatterns(templateFile))) {
-				return null;
-			}
+			return ServerDetector.getInstance(new File(templateFilePath))
+					.detect(path);
 		} catch (WindowsAzureInvalidProjectOperationException e) {
 			return null;
 		}
-
-		// Check each path
-		boolean foundSoFar = false;
-		String serverName = null;
-		File basePathFile = null;
-		for (Map.Entry<String, String> entry : serverDetectors.entrySet()) {
-			serverName = entry.getKey();
-			String pathPatternText = entry.getValue();
-			String textPatternText = serverPatterns.get(serverName);
-			if (pathPatternText == null || pathPatternText.isEmpty()) {
-				continue;
-			}
-
-			// Fast path: Check the pattern directly (like, if it has no wild
-			// cards)
-			basePathFile = new File(path, pathPatternText);
-			if (basePathFile.exists()) {
-				// Check for the required pattern inside (if any)
-				if (basePathFile.isDirectory() || textPatternText == null
-						|| isPatternInFile(basePathFile, textPatternText)) {
-					return serverName;
-				} else {
-					continue;
-				}
-			}
-
-			// Split pattern path into parts and check for existence of each
-			// part
-			basePathFile = path;
-			String[] pathParts = pathPatternText.split("/");
-			foundSoFar = false;
-			for (int i = 0; i < pathParts.length; i++) {
-				String pathPart = pathParts[i];
-
-				// Try direct match first
-				File pathPartFile = new File(basePathFile, pathPart);
-				if (pathPartFile.exists()) {
-					foundSoFar = true;
-
-					// Check for wildcards
-				} else if (!pathPart.contains("*") && !pathPart.contains("?")) {
-					foundSoFar = false;
-
-					// Wildcards present, so check pattern
-				} else {
-					String[] fileNames = basePathFile.list();
-					String pathPatternRegex = "^"
-							+ windowsPathToRegex(pathPart) + "$";
-					Pattern pathPattern = Pattern.compile(pathPatternRegex);
-					Matcher matcher = pathPattern.matcher("");
-					foundSoFar = false;
-					for (String fileName : fileNames) {
-						matcher.reset(fileName);
-						if (matcher.find()) {
-							File file;
-							foundSoFar = true;
-
-							if (textPatternText == null) {
-								// No text pattern to look for inside, so allow
-								// for the match to proceed
-								break;
-							} else if (i != pathParts.length - 1) {
-								// Path part not terminal, so allow the match to
-								// proceed
-								break;
-							} else if (!(file = new File(basePathFile, fileName))
-									.isFile()) {
-								// Terminal path not a file so don't proceed
-								// with this file
-								continue;
-							} else if (isPatternInFile(file, textPatternText)) {
-								// Internal text pattern matched, so success
-								return serverName;
-							}
-						}
-					}
-				}
-
-				// If this path part worked so far, expand the base path and dig
-				// deeper
-				if (foundSoFar) {
-					basePathFile = new File(basePathFile, pathPart);
-				} else {
-					break;
-				}
-			}
-
-			// If matched a full path, then success
-			if (foundSoFar) {
-				return serverName;
-			}
-		}
-
-		return null;
 	}
 
 	/**
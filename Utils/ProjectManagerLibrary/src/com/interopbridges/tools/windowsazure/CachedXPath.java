@@ -0,0 +1,200 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.interopbridges.tools.windowsazure;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import javax.xml.xpath.XPathFunctionResolver;
+import javax.xml.xpath.XPathVariableResolver;
+
+import org.xml.sax.InputSource;
+
+/**
+ * XPath that compiles every expression once and evaluates the compiled expression afterwards.
+ * The project model evaluates the same expressions over and over, e.g. for every role and
+ * endpoint shown in the properties pages.
+ * <p>
+ * Thread safety: neither XPath nor XPathExpression objects may be used by several threads at
+ * the same time, so every thread compiles into its own cache, holding the {@link #MAX_CACHED}
+ * most recently used expressions. Expressions are cached by their string together with the
+ * namespace context and resolvers set when they were compiled, which they keep using. Each
+ * instance holds its own context and resolvers, like any XPath, so it should not be shared
+ * once they are set; the documents evaluated still must not be modified concurrently.
+ */
+final class CachedXPath implements XPath {
+
+	private static final int MAX_CACHED = 512;
+
+	// plain JDK objects only, so the threads do not keep the plugin's classes loaded
+	private static final ThreadLocal<XPath> XPATH = new ThreadLocal<XPath>();
+	private static final ThreadLocal<Map<Key, XPathExpression>> EXPRESSIONS =
+			new ThreadLocal<Map<Key, XPathExpression>>();
+
+	/** An expression with the context and resolvers it is compiled with, compared by identity. */
+	private static final class Key {
+		private final String expression;
+		private final NamespaceContext namespaceContext;
+		private final XPathVariableResolver variableResolver;
+		private final XPathFunctionResolver functionResolver;
+
+		private Key(String expression, NamespaceContext namespaceContext,
+				XPathVariableResolver variableResolver,
+				XPathFunctionResolver functionResolver) {
+			this.expression = expression;
+			this.namespaceContext = namespaceContext;
+			this.variableResolver = variableResolver;
+			this.functionResolver = functionResolver;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return expression.equals(other.expression)
+					&& namespaceContext == other.namespaceContext
+					&& variableResolver == other.variableResolver
+					&& functionResolver == other.functionResolver;
+		}
+
+		@Override
+		public int hashCode() {
+			return expression.hashCode() * 31
+					+ System.identityHashCode(namespaceContext) * 17
+					+ System.identityHashCode(variableResolver) * 7
+					+ System.identityHashCode(functionResolver);
+		}
+	}
+
+	private NamespaceContext namespaceContext;
+	private XPathVariableResolver variableResolver;
+	private XPathFunctionResolver functionResolver;
+
+	CachedXPath() {
+
+	}
+
+	/** Returns the compiled expression, compiling it on first use by the current thread. */
+	public XPathExpression compile(String expression) throws XPathExpressionException {
+		if (expression == null) {
+			throw new NullPointerException();
+		}
+		Map<Key, XPathExpression> expressions = EXPRESSIONS.get();
+		if (expressions == null) {
+			// access order, the least recently used expression is evicted first
+			expressions = new LinkedHashMap<Key, XPathExpression>(64, 0.75f, true);
+			EXPRESSIONS.set(expressions);
+		}
+		Key key = new Key(expression, namespaceContext, variableResolver, functionResolver);
+		XPathExpression compiled = expressions.get(key);
+		if (compiled == null) {
+			XPath xPath = XPATH.get();
+			if (xPath == null) {
+				xPath = XPathFactory.newInstance().newXPath();
+				XPATH.set(xPath);
+			}
+			// the setters don't take null, reset() clears them after compiling
+			if (namespaceContext != null) {
+				xPath.setNamespaceContext(namespaceContext);
+			}
+			if (variableResolver != null) {
+				xPath.setXPathVariableResolver(variableResolver);
+			}
+			if (functionResolver != null) {
+				xPath.setXPathFunctionResolver(functionResolver);
+			}
+			try {
+				compiled = xPath.compile(expression);
+			} finally {
+				xPath.reset();
+			}
+			expressions.put(key, compiled);
+			if (expressions.size() > MAX_CACHED) {
+				Iterator<XPathExpression> eldest = expressions.values().iterator();
+				eldest.next();
+				eldest.remove();
+			}
+		}
+		return compiled;
+	}
+
+	public Object evaluate(String expression, Object item, QName returnType)
+			throws XPathExpressionException {
+		return compile(expression).evaluate(item, returnType);
+	}
+
+	public String evaluate(String expression, Object item) throws XPathExpressionException {
+		return (String) evaluate(expression, item, XPathConstants.STRING);
+	}
+
+	public Object evaluate(String expression, InputSource source, QName returnType)
+			throws XPathExpressionException {
+		return compile(expression).evaluate(source, returnType);
+	}
+
+	public String evaluate(String expression, InputSource source) throws XPathExpressionException {
+		return (String) evaluate(expression, source, XPathConstants.STRING);
+	}
+
+	public void reset() {
+		namespaceContext = null;
+		variableResolver = null;
+		functionResolver = null;
+	}
+
+	public void setXPathVariableResolver(XPathVariableResolver resolver) {
+		if (resolver == null) {
+			throw new NullPointerException();
+		}
+		variableResolver = resolver;
+	}
+
+	public XPathVariableResolver getXPathVariableResolver() {
+		return variableResolver;
+	}
+
+	public void setXPathFunctionResolver(XPathFunctionResolver resolver) {
+		if (resolver == null) {
+			throw new NullPointerException();
+		}
+		functionResolver = resolver;
+	}
+
+	public XPathFunctionResolver getXPathFunctionResolver() {
+		return functionResolver;
+	}
+
+	public void setNamespaceContext(NamespaceContext nsContext) {
+		if (nsContext == null) {
+			throw new NullPointerException();
+		}
+		namespaceContext = nsContext;
+	}
+
+	public NamespaceContext getNamespaceContext() {
+		return namespaceContext;
+	}
+}
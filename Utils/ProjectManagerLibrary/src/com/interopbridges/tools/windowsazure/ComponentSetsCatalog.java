@@ -0,0 +1,291 @@
+/**
+* Copyright 2015 Microsoft Open Technologies, Inc.
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+*  you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+*	 http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+*  distributed under the License is distributed on an "AS IS" BASIS,
+*  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+*  See the License for the specific language governing permissions and
+*  limitations under the License.
+*/
+package com.interopbridges.tools.windowsazure;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Immutable index of the JDK and server templates in a componentsets.xml file.
+ * <p>
+ * A catalog is read once per file and componentsets version and shared by all callers; it is read
+ * again when the digest of the file's content changes, even if the version was not increased; a
+ * time stamp may not change when a file is written twice within a second.
+ * Lookups by name ignoring case return the first matching template, like the XPath queries this
+ * replaces, and exact lookups match the way those queries did.
+ */
+final class ComponentSetsCatalog {
+
+	/** An element of componentsets.xml, with its attributes in document order. */
+	static final class Item {
+		private final String nodeName;
+		private final Map<String, String> attributes;
+
+		private Item(Element element) {
+			nodeName = element.getNodeName();
+			Map<String, String> attrs = new LinkedHashMap<String, String>();
+			NamedNodeMap nodeMap = element.getAttributes();
+			for (int i = 0; i < nodeMap.getLength(); i++) {
+				Node attr = nodeMap.item(i);
+				attrs.put(attr.getNodeName(), attr.getNodeValue());
+			}
+			attributes = Collections.unmodifiableMap(attrs);
+		}
+
+		String getNodeName() {
+			return nodeName;
+		}
+
+		/** Returns the attribute value, or an empty string like Element.getAttribute. */
+		String getAttribute(String name) {
+			String value = attributes.get(name);
+			return value == null ? "" : value;
+		}
+
+		int getAttributeCount() {
+			return attributes.size();
+		}
+	}
+
+	/** A componentset: its own element, its child elements with attributes and its downloads. */
+	static final class ComponentSet {
+		private final Item element;
+		private final List<Item> children;
+		private final List<Item> downloads;
+
+		private ComponentSet(Element compSet) {
+			element = new Item(compSet);
+			List<Item> childList = new ArrayList<Item>();
+			List<Item> downloadList = new ArrayList<Item>();
+			for (Node child = compSet.getFirstChild(); child != null; child = child.getNextSibling()) {
+				if (child.getNodeType() != Node.ELEMENT_NODE) {
+					continue;
+				}
+				if (child.hasAttributes()) {
+					childList.add(new Item((Element) child));
+				}
+				if (child.getNodeName().equals("downloads")) {
+					for (Node download = child.getFirstChild(); download != null;
+							download = download.getNextSibling()) {
+						if (download.getNodeType() == Node.ELEMENT_NODE
+								&& download.getNodeName().equals("download")
+								&& download.hasAttributes()) {
+							downloadList.add(new Item((Element) download));
+						}
+					}
+				}
+			}
+			children = Collections.unmodifiableList(childList);
+			downloads = Collections.unmodifiableList(downloadList);
+		}
+
+		String getName() {
+			return element.getAttribute("name");
+		}
+
+		Item getElement() {
+			return element;
+		}
+
+		/** Child elements having attributes, in document order. */
+		List<Item> getChildren() {
+			return children;
+		}
+
+		/** downloads/download elements having attributes, in document order. */
+		List<Item> getDownloads() {
+			return downloads;
+		}
+	}
+
+	private static final class CacheEntry {
+		private final byte[] digest;
+		private final ComponentSetsCatalog catalog;
+
+		private CacheEntry(byte[] digest, ComponentSetsCatalog catalog) {
+			this.digest = digest;
+			this.catalog = catalog;
+		}
+	}
+
+	// by absolute path of the file, access is synchronized on the map
+	private static final Map<String, CacheEntry> CATALOGS = new HashMap<String, CacheEntry>();
+
+	private final String version;
+	private final Map<String, List<ComponentSet>> setsByType = new HashMap<String, List<ComponentSet>>();
+	// keys are type + '/' + name, lower case for the lookups ignoring case
+	private final Map<String, ComponentSet> setsByName = new HashMap<String, ComponentSet>();
+	private final Map<String, ComponentSet> setsByNameIgnoreCase = new HashMap<String, ComponentSet>();
+	private final Map<String, List<Item>> downloadsByName = new HashMap<String, List<Item>>();
+	private final Map<String, Item> downloadsByNameIgnoreCase = new HashMap<String, Item>();
+	private final Map<String, ComponentSet> setsByDownloadIgnoreCase = new HashMap<String, ComponentSet>();
+
+	/**
+	 * Returns the catalog of the componentsets.xml file.
+	 *
+	 * @param templateFile
+	 * @return catalog
+	 * @throws WindowsAzureInvalidProjectOperationException if the file cannot be read
+	 */
+	static ComponentSetsCatalog get(File templateFile)
+			throws WindowsAzureInvalidProjectOperationException {
+		String key = templateFile.getAbsolutePath();
+		byte[] content;
+		byte[] digest;
+		try {
+			content = ParserXMLUtility.readFile(templateFile);
+			digest = MessageDigest.getInstance("SHA-256").digest(content);
+		} catch (Exception e) {
+			throw new WindowsAzureInvalidProjectOperationException(
+					WindowsAzureConstants.EXCP_RETRIEVE_DATA + key, e);
+		}
+		synchronized (CATALOGS) {
+			CacheEntry entry = CATALOGS.get(key);
+			if (entry != null && Arrays.equals(entry.digest, digest)) {
+				return entry.catalog;
+			}
+		}
+		ComponentSetsCatalog catalog = new ComponentSetsCatalog(
+				ParserXMLUtility.parseXMLResource(new ByteArrayInputStream(content)));
+		synchronized (CATALOGS) {
+			CacheEntry entry = CATALOGS.get(key);
+			// another thread may have read the same content meanwhile
+			if (entry != null && Arrays.equals(entry.digest, digest)) {
+				return entry.catalog;
+			}
+			CATALOGS.put(key, new CacheEntry(digest, catalog));
+		}
+		return catalog;
+	}
+
+	private ComponentSetsCatalog(Document compDoc) {
+		Element root = compDoc.getDocumentElement();
+		boolean isComponentSets = root != null && root.getNodeName().equals("componentsets");
+		// like /componentsets/@version, empty if not set
+		version = isComponentSets ? root.getAttribute("version") : "";
+		if (!isComponentSets) {
+			return;
+		}
+		for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if (node.getNodeType() != Node.ELEMENT_NODE
+					|| !node.getNodeName().equals("componentset")
+					|| !((Element) node).hasAttribute("type")) {
+				continue;
+			}
+			ComponentSet compSet = new ComponentSet((Element) node);
+			String type = compSet.getElement().getAttribute("type");
+			List<ComponentSet> sets = setsByType.get(type);
+			if (sets == null) {
+				sets = new ArrayList<ComponentSet>();
+				setsByType.put(type, sets);
+			}
+			sets.add(compSet);
+
+			String name = compSet.getName();
+			String nameKey = type + '/' + name;
+			if (!setsByName.containsKey(nameKey)) {
+				setsByName.put(nameKey, compSet);
+			}
+			if (!setsByNameIgnoreCase.containsKey(lowerCase(nameKey))) {
+				setsByNameIgnoreCase.put(lowerCase(nameKey), compSet);
+			}
+			// downloads of all componentsets having this name
+			List<Item> downloads = downloadsByName.get(nameKey);
+			if (downloads == null) {
+				downloads = new ArrayList<Item>();
+				downloadsByName.put(nameKey, downloads);
+			}
+			downloads.addAll(compSet.getDownloads());
+			for (Item download : compSet.getDownloads()) {
+				String downloadKey = lowerCase(type + '/' + download.getAttribute("name"));
+				if (!downloadsByNameIgnoreCase.containsKey(downloadKey)) {
+					downloadsByNameIgnoreCase.put(downloadKey, download);
+					setsByDownloadIgnoreCase.put(downloadKey, compSet);
+				}
+			}
+		}
+	}
+
+	private static String lowerCase(String key) {
+		return key.toLowerCase(Locale.ENGLISH);
+	}
+
+	/** The componentsets version, empty if the file has none. */
+	String getVersion() {
+		return version;
+	}
+
+	/** All componentsets of the type, in document order. */
+	List<ComponentSet> getComponentSets(String type) {
+		List<ComponentSet> sets = setsByType.get(type);
+		return sets == null ? Collections.<ComponentSet>emptyList() : Collections.unmodifiableList(sets);
+	}
+
+	/** First componentset of the type having exactly this name, or null. */
+	ComponentSet getComponentSet(String type, String name) {
+		if (name == null) {
+			return null;
+		}
+		return setsByName.get(type + '/' + name);
+	}
+
+	/** First componentset of the type having this name ignoring case, or null. */
+	ComponentSet findComponentSet(String type, String name) {
+		if (name == null) {
+			return null;
+		}
+		return setsByNameIgnoreCase.get(lowerCase(type + '/' + name));
+	}
+
+	/** Downloads of the componentsets of the type having exactly this name, in document order. */
+	List<Item> getDownloads(String type, String name) {
+		if (name == null) {
+			return Collections.<Item>emptyList();
+		}
+		List<Item> downloads = downloadsByName.get(type + '/' + name);
+		return downloads == null ? Collections.<Item>emptyList() : Collections.unmodifiableList(downloads);
+	}
+
+	/** First download of a componentset of the type having this name ignoring case, or null. */
+	Item findDownload(String type, String downloadName) {
+		if (downloadName == null) {
+			return null;
+		}
+		return downloadsByNameIgnoreCase.get(lowerCase(type + '/' + downloadName));
+	}
+
+	/** Componentset of the first download having this name ignoring case, or null. */
+	ComponentSet findComponentSetOfDownload(String type, String downloadName) {
+		if (downloadName == null) {
+			return null;
+		}
+		return setsByDownloadIgnoreCase.get(lowerCase(type + '/' + downloadName));
+	}
+}
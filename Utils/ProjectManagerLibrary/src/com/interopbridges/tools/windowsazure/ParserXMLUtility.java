@@ -15,12 +15,18 @@
 */
 package com.interopbridges.tools.windowsazure;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilder;
@@ -33,7 +39,6 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -43,6 +48,33 @@ final class ParserXMLUtility {
 
 	private static final int BUFF_SIZE = 1024;
 
+	/*
+	 * Documents parsed from files, by absolute path, e.g. the project files that the decorators,
+	 * the builder and the property pages load over and over. parseXMLFile still reads the file,
+	 * but returns a copy of the cached document as long as the content has the same digest; a
+	 * time stamp may not change when a file is written twice within a second. Every caller gets
+	 * its own copy and may change it. The save methods drop the entry of the file they write.
+	 * Access is synchronized on the map.
+	 */
+	private static final int MAX_CACHED_DOCUMENTS = 32;
+	// copies don't keep the encoding declared in the file, saveXMLFile needs it
+	private static final String XML_ENCODING = "xmlEncoding";
+	private static final Map<String, CachedDocument> DOCUMENTS =
+			new LinkedHashMap<String, CachedDocument>(16, 0.75f, true);
+
+	private static final class CachedDocument {
+		private final byte[] digest;
+		private final Document doc;
+		private final String xmlEncoding;
+
+		private CachedDocument(byte[] digest, Document doc,
+				String xmlEncoding) {
+			this.digest = digest;
+			this.doc = doc;
+			this.xmlEncoding = xmlEncoding;
+		}
+	}
+
 	private ParserXMLUtility() {
 
 	}
@@ -58,14 +90,36 @@ final class ParserXMLUtility {
 	protected static Document parseXMLFile(final String fileName)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
+			File xmlFile = new File(fileName);
+			String key = xmlFile.getAbsolutePath();
+			byte[] content = readFile(xmlFile);
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+			synchronized (DOCUMENTS) {
+				CachedDocument cached = DOCUMENTS.get(key);
+				if (cached != null && Arrays.equals(cached.digest, digest)) {
+					Document copy = (Document) cached.doc.cloneNode(true);
+					copy.setUserData(XML_ENCODING, cached.xmlEncoding, null);
+					return copy;
+				}
+			}
 			DocumentBuilder docBuilder;
 			Document doc = null;
 			DocumentBuilderFactory docBuilderFactory = DocumentBuilderFactory
 					.newInstance();
 			docBuilderFactory.setIgnoringElementContentWhitespace(true);
 			docBuilder = docBuilderFactory.newDocumentBuilder();
-			File xmlFile = new File(fileName);
-			doc = docBuilder.parse(xmlFile);
+			doc = docBuilder.parse(new ByteArrayInputStream(content),
+					xmlFile.toURI().toString());
+			Document copy = (Document) doc.cloneNode(true);
+			synchronized (DOCUMENTS) {
+				DOCUMENTS.put(key, new CachedDocument(digest, copy,
+						doc.getXmlEncoding()));
+				if (DOCUMENTS.size() > MAX_CACHED_DOCUMENTS) {
+					Iterator<CachedDocument> eldest = DOCUMENTS.values().iterator();
+					eldest.next();
+					eldest.remove();
+				}
+			}
 			return doc;
 		} catch (Exception e) {
 			throw new WindowsAzureInvalidProjectOperationException(
@@ -114,19 +168,11 @@ final class ParserXMLUtility {
 			throws IOException, WindowsAzureInvalidProjectOperationException {
 		File xmlFile = null;
 		FileOutputStream fos = null;
-		Transformer transformer;
 		try {
 			xmlFile = new File(fileName);
+			forget(xmlFile);
 			fos = new FileOutputStream(xmlFile);
-			TransformerFactory transFactory = TransformerFactory.newInstance();
-			transformer = transFactory.newTransformer();
-			DOMSource source = new DOMSource(doc);
-			StreamResult destination = new StreamResult(fos);
-			// transform source into result will do save
-			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-			transformer.setOutputProperty(
-					"{http://xml.apache.org/xslt}indent-amount", "2");
-			transformer.transform(source, destination);
+			transform(doc, fos);
 		} catch (Exception excp) {
 			throw new WindowsAzureInvalidProjectOperationException(
 					WindowsAzureConstants.EXCP_SAVE + fileName, excp);
@@ -138,6 +184,86 @@ final class ParserXMLUtility {
 		return true;
 	}
 
+	/**
+	 * Saves XML document to file unless the file already has the same
+	 * content, so that unchanged files keep their time stamp.
+	 * 
+	 * @param fileName
+	 * @param doc
+	 * @return true if the file was written
+	 * @throws IOException
+	 * @throws WindowsAzureInvalidProjectOperationException
+	 */
+	protected static boolean saveXMLFileIfChanged(String fileName, Document doc)
+			throws IOException, WindowsAzureInvalidProjectOperationException {
+		File xmlFile = new File(fileName);
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		try {
+			transform(doc, content);
+		} catch (Exception excp) {
+			throw new WindowsAzureInvalidProjectOperationException(
+					WindowsAzureConstants.EXCP_SAVE + fileName, excp);
+		}
+		byte[] bytes = content.toByteArray();
+		if (xmlFile.length() == bytes.length
+				&& Arrays.equals(readFile(xmlFile), bytes)) {
+			return false;
+		}
+		forget(xmlFile);
+		FileOutputStream fos = new FileOutputStream(xmlFile);
+		try {
+			fos.write(bytes);
+		} finally {
+			fos.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Drops the cached document of a file about to be written.
+	 */
+	private static void forget(File xmlFile) {
+		synchronized (DOCUMENTS) {
+			DOCUMENTS.remove(xmlFile.getAbsolutePath());
+		}
+	}
+
+	private static void transform(Document doc, OutputStream out)
+			throws Exception {
+		TransformerFactory transFactory = TransformerFactory.newInstance();
+		Transformer transformer = transFactory.newTransformer();
+		String encoding = doc.getXmlEncoding();
+		if (encoding == null) {
+			encoding = (String) doc.getUserData(XML_ENCODING);
+		}
+		if (encoding != null) {
+			transformer.setOutputProperty(OutputKeys.ENCODING, encoding);
+		}
+		DOMSource source = new DOMSource(doc);
+		StreamResult destination = new StreamResult(out);
+		// transform source into result will do save
+		transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+		transformer.setOutputProperty(
+				"{http://xml.apache.org/xslt}indent-amount", "2");
+		transformer.transform(source, destination);
+	}
+
+	static byte[] readFile(File file) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		FileInputStream fis = new FileInputStream(file);
+		try {
+			byte[] buf = new byte[BUFF_SIZE];
+			int len = fis.read(buf);
+			while (len > 0) {
+				content.write(buf, 0, len);
+				len = fis.read(buf);
+			}
+		} finally {
+			fis.close();
+		}
+		return content.toByteArray();
+	}
+
 	public static void copyDir(File source, final File destination)
 			throws IOException, WindowsAzureInvalidProjectOperationException {
 
@@ -198,6 +324,15 @@ final class ParserXMLUtility {
 
 	}
 
+	/**
+	 * Returns the XPath to evaluate expressions on the project files with. It compiles every
+	 * expression only once per thread, see {@link CachedXPath} for its thread safety. Every call
+	 * returns a new instance, which may be given its own namespace context and resolvers.
+	 */
+	public static XPath getXPath() {
+		return new CachedXPath();
+	}
+
 	/** Generic API to delete elements from DOM */
 	public static void deleteElement(Document doc, String expr)
 			throws XPathExpressionException {
@@ -205,7 +340,7 @@ final class ParserXMLUtility {
 			throw new IllegalArgumentException(
 					WindowsAzureConstants.INVALID_ARG);
 		} else {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = getXPath();
 			Element element = (Element) xPath.evaluate(expr, doc,
 					XPathConstants.NODE);
 
@@ -224,7 +359,7 @@ final class ParserXMLUtility {
 			throw new IllegalArgumentException(
 					WindowsAzureConstants.INVALID_ARG);
 
-		XPath xPath = XPathFactory.newInstance().newXPath();
+		XPath xPath = getXPath();
 		return xPath.evaluate(expr, doc);
 	}
 
@@ -235,7 +370,7 @@ final class ParserXMLUtility {
 			throw new IllegalArgumentException(
 					WindowsAzureConstants.INVALID_ARG);
 
-		XPath xPath = XPathFactory.newInstance().newXPath();
+		XPath xPath = getXPath();
 		Node node = (Node) xPath.evaluate(expr, doc, XPathConstants.NODE);
 		node.setNodeValue(value);
 	}
@@ -312,7 +447,7 @@ final class ParserXMLUtility {
 					WindowsAzureConstants.INVALID_ARG);
 		} else {
 			try {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = getXPath();
 				Element element = null;
 				if (expr != null)
 					element = (Element) xPath.evaluate(expr, doc,
@@ -359,7 +494,7 @@ final class ParserXMLUtility {
 					WindowsAzureConstants.INVALID_ARG);
 		} else {
 			try {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = getXPath();
 				Element element = null;
 				if (expr != null)
 					element = (Element) xPath.evaluate(expr, doc,
@@ -405,7 +540,7 @@ final class ParserXMLUtility {
 			throw new IllegalArgumentException(WindowsAzureConstants.INVALID_ARG);
 		} else {
 			try {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = getXPath();
 				Element element = (Element) xPath.evaluate(nodeExpression, doc, XPathConstants.NODE);
 	
 				// If element doesn't exist create one
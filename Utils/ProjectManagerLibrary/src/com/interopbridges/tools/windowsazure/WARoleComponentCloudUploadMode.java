@@ -17,6 +17,7 @@ package com.interopbridges.tools.windowsazure;
 public enum WARoleComponentCloudUploadMode {
 	never,
 	always,
-	auto
+	auto,
+	content
 }
 
@@ -17,7 +17,6 @@ package com.interopbridges.tools.windowsazure;
 
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -52,7 +51,7 @@ public class WindowsAzureCertificate {
 	private Element getCscfgCertNode()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = wProj.getConfigFileDoc();
 			String expr = String.format(WindowsAzureConstants.CERT_ROLE_NAME,
 					wRole.getName(), this.getName());
@@ -72,7 +71,7 @@ public class WindowsAzureCertificate {
 	private Element getCsdefCertNode()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = wProj.getdefinitionFileDoc();
 			String expr = String.format(WindowsAzureConstants.WR_CERT,
 					wRole.getName(), this.getName());
@@ -17,7 +17,6 @@ package com.interopbridges.tools.windowsazure;
 
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -78,7 +77,7 @@ public class WindowsAzureEndpoint {
 		try {
 			Node epNode = null;
 			if (!getName().isEmpty()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWindowsAzureProjMgr().getdefinitionFileDoc();
 				String expr = "";
 
@@ -205,7 +204,7 @@ public class WindowsAzureEndpoint {
 				}
 				epProt = String.format("%s-%s", minPort, maxPort);
 				String expr = "./AllocatePublicPortFrom/FixedPortRange";
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Element eleFxdPortRan = (Element) xPath.evaluate(expr,
 						getThisEndPointNode(), XPathConstants.NODE);
 				eleFxdPortRan.setAttribute(WindowsAzureConstants.ATTR_MINPORT,
@@ -469,9 +468,13 @@ public class WindowsAzureEndpoint {
 	 */
 	public WindowsAzureEndpointType getEndPointType()
 			throws WindowsAzureInvalidProjectOperationException {
+		String key = wRole.getName() + "/endpoint/" + getName() + "/type";
+		if (getWindowsAzureProjMgr().hasDerivedValue(key)) {
+			return (WindowsAzureEndpointType) getWindowsAzureProjMgr().getDerivedValue(key);
+		}
 		WindowsAzureEndpointType type = null;
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWindowsAzureProjMgr().getdefinitionFileDoc();
 			String expr = String.format(WindowsAzureConstants.ENDPOINT
 					+ "/*[@name='" + getName() + "']", wRole.getName());
@@ -487,7 +490,7 @@ public class WindowsAzureEndpoint {
 			throw new WindowsAzureInvalidProjectOperationException(
 					"Exception occurred", e);
 		}
-		return type;
+		return getWindowsAzureProjMgr().putDerivedValue(key, type);
 	}
 
 	/**
@@ -505,7 +508,7 @@ public class WindowsAzureEndpoint {
 
 				if (getEndPointType().equals(
 						WindowsAzureEndpointType.InstanceInput)) {
-					XPath xPath = XPathFactory.newInstance().newXPath();
+					XPath xPath = ParserXMLUtility.getXPath();
 					String VarExpr = String.format(
 							WindowsAzureConstants.VAR_WITH_SPECIFIC_NAME,
 							wRole.getName(), getName() + "_PUBLICPORT");
@@ -633,7 +636,7 @@ public class WindowsAzureEndpoint {
 					eleInstanceNode.appendChild(eleAllPubPort);
 
 					wRole.setVarInDefFile(getName() + "_PUBLICPORT");
-					XPath xPath = XPathFactory.newInstance().newXPath();
+					XPath xPath = ParserXMLUtility.getXPath();
 					String VarExpr = String.format(
 							WindowsAzureConstants.VAR_WITH_SPECIFIC_NAME,
 							wRole.getName(), getName() + "_PUBLICPORT");
@@ -674,7 +677,7 @@ public class WindowsAzureEndpoint {
 
 			if (getEndPointType()
 					.equals(WindowsAzureEndpointType.InstanceInput)) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWindowsAzureProjMgr().getdefinitionFileDoc();
 				String VarExpr = String.format(
 						WindowsAzureConstants.VAR_WITH_SPECIFIC_NAME,
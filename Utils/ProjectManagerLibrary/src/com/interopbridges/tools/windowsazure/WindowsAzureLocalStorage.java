@@ -16,7 +16,6 @@
 package com.interopbridges.tools.windowsazure;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -74,7 +73,7 @@ public class WindowsAzureLocalStorage {
 	private Element getLocalStorageNode()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = wProj.getdefinitionFileDoc();
 			String expr = String.format(WindowsAzureConstants.LS_NAME,
 					wRole.getName(), this.getName());
@@ -127,7 +126,7 @@ public class WindowsAzureLocalStorage {
 			lsEle.setAttribute(WindowsAzureConstants.ATTR_NAME, lsName);
 
 			// change in corresponding <RoleInstanceValue>
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = wProj.getdefinitionFileDoc();
 			String expr = String.format(
 					WindowsAzureConstants.ROLE_INSTANCE_NODE, wRole.getName(),
@@ -222,13 +221,18 @@ public class WindowsAzureLocalStorage {
 	 */
 	public String getPathEnv()
 			throws WindowsAzureInvalidProjectOperationException {
+		String key = wRole.getName() + "/localstorage/" + getName() + "/pathenv";
+		if (wProj.hasDerivedValue(key)) {
+			pathEnv = (String) wProj.getDerivedValue(key);
+			return pathEnv;
+		}
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = wProj.getdefinitionFileDoc();
 			String expr = String.format(WindowsAzureConstants.VAR_LS_ENV_NAME,
 					wRole.getName(), getName());
 			pathEnv = xPath.evaluate(expr, doc);
-			return pathEnv;
+			return wProj.putDerivedValue(key, pathEnv);
 		} catch (Exception ex) {
 			throw new WindowsAzureInvalidProjectOperationException(
 					"Exception in getPathEnv", ex);
@@ -268,7 +272,7 @@ public class WindowsAzureLocalStorage {
 				// set path environment variable
 				wRole.setVarInDefFile(pathEnv);
 				wRole.lsVarList.add(pathEnv);
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = wProj.getdefinitionFileDoc();
 				String expr = String.format(
 						WindowsAzureConstants.ROLE_INSTANCE_NODE,
@@ -326,7 +330,7 @@ public class WindowsAzureLocalStorage {
 					WindowsAzureConstants.INVALID_ARG);
 		}
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = wProj.getdefinitionFileDoc();
 			String expr = String.format(
 					WindowsAzureConstants.VAR_WITH_SPECIFIC_NAME,
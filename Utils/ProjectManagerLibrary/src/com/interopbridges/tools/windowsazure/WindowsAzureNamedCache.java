@@ -20,7 +20,6 @@ import java.util.Map;
 
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -45,7 +44,7 @@ public class WindowsAzureNamedCache {
 		Element ele = null;
 		try {
 			Document doc = wProj.getConfigFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = String.format(
 					WindowsAzureConstants.CONFIG_SETTING_ROLE, wRole.getName(),
 					WindowsAzureConstants.SET_NAMEDCACHE);
@@ -43,7 +43,6 @@ import java.util.zip.ZipFile;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Comment;
 import org.w3c.dom.Document;
@@ -51,6 +50,9 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.w3c.dom.events.Event;
+import org.w3c.dom.events.EventListener;
+import org.w3c.dom.events.EventTarget;
 
 /**
  * Class representing Azure project.
@@ -68,6 +70,33 @@ public class WindowsAzureProjectManager {
 	protected Map<String, Vector<String>> mapActivity = new HashMap<String, Vector<String>>();
 	private static final int BUFF_SIZE = 1024;
 
+	/*
+	 * Values the role, endpoint and local storage getters derive from the documents, e.g. instance
+	 * counts and cloud URLs, keyed by the object and the value. The documents remain the model and
+	 * are written only on save(), any change to one of them clears the values. Documents that
+	 * don't report their changes disable the values.
+	 */
+	private final Map<String, Object> derivedValues = new HashMap<String, Object>();
+	private boolean derivedValuesEnabled = true;
+	private final EventListener derivedValuesInvalidator = new EventListener() {
+		@Override
+		public void handleEvent(Event evt) {
+			derivedValues.clear();
+		}
+	};
+
+	/*
+	 * Whether a document changed since it was loaded or last saved, see isModified(). Documents
+	 * that don't report their changes are always considered changed.
+	 */
+	private boolean modified;
+	private final EventListener modificationTracker = new EventListener() {
+		@Override
+		public void handleEvent(Event evt) {
+			modified = true;
+		}
+	};
+
 	private static enum WAvmSize {
 		EXTRASMALL, SMALL, MEDIUM, LARGE, EXTRALARGE, A5, A6, A7, A8, A9, STANDARD_D1, STANDARD_D2, STANDARD_D3, STANDARD_D4,
 		STANDARD_D11, STANDARD_D12, STANDARD_D13, STANDARD_D14
@@ -85,11 +114,11 @@ public class WindowsAzureProjectManager {
 
 	WindowsAzureProjectManager(File projDirectoryPath)
 			throws WindowsAzureInvalidProjectOperationException {
-		XPath xPath = XPathFactory.newInstance().newXPath();
+		XPath xPath = ParserXMLUtility.getXPath();
 		
 		packageFilePath = String.format("%s%s%s", projDirectoryPath,
 				File.separator, "package.xml");
-		packageFileDoc = ParserXMLUtility.parseXMLFile(packageFilePath);
+		packageFileDoc = observe(ParserXMLUtility.parseXMLFile(packageFilePath));
 		projDirPath = projDirectoryPath.toString();
 		roleList = new ArrayList<WindowsAzureRole>();
 		if (packageFileDoc != null) {
@@ -373,7 +402,7 @@ public class WindowsAzureProjectManager {
 		boolean isvalid = true;
 		try {
 
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getdefinitionFileDoc();
 			String expr = WindowsAzureConstants.INS_FIX_RANGE_EXPR;
 
@@ -465,12 +494,15 @@ public class WindowsAzureProjectManager {
 	/**
 	 * This API can be used as a single point of contact to update any project
 	 * configuration for SA files. As of now updating sdk version in session
-	 * affinity files but in future can be extended
+	 * affinity files but in future can be extended. Files which already have
+	 * the version are left as they are.
 	 * 
+	 * @return true if a file was written
 	 * @throws WindowsAzureInvalidProjectOperationException
 	 */
-	public void performRoleUpdatesForSA()
+	public boolean performRoleUpdatesForSA()
 			throws WindowsAzureInvalidProjectOperationException {
+		boolean updated = false;
 		try {
 			// get latest sdk version
 			String sdkVersion = getLatestAzureVersionForSA();
@@ -494,6 +526,9 @@ public class WindowsAzureProjectManager {
 							WindowsAzureConstants.SA_FOLDER_NAME,
 							File.separator,
 							WindowsAzureConstants.SA_CONFIG_FILE);
+					if (hasSAVersion(destPath, sdkVersion)) {
+						continue;
+					}
 
 					Document saConfigDoc = ParserXMLUtility
 							.parseXMLResource(this.getClass()
@@ -503,12 +538,35 @@ public class WindowsAzureProjectManager {
 							WindowsAzureConstants.SA_NEW_VERSION_ATTR,
 							sdkVersion);
 					ParserXMLUtility.saveXMLFile(destPath, saConfigDoc);
+					updated = true;
 				}
 			}
 		} catch (Exception e) {
 			throw new WindowsAzureInvalidProjectOperationException(
 					WindowsAzureConstants.EXCP_ROLE_UPDATES, e);
 		}
+		return updated;
+	}
+
+	/**
+	 * Checks whether the SA configuration file exists and has the version.
+	 * 
+	 * @param path
+	 * @param sdkVersion
+	 * @return false if the file is missing, has another version or cannot be
+	 *         read
+	 */
+	private boolean hasSAVersion(String path, String sdkVersion) {
+		if (!new File(path).exists()) {
+			return false;
+		}
+		try {
+			return sdkVersion.equals(ParserXMLUtility.getExpressionValue(
+					ParserXMLUtility.parseXMLFile(path),
+					WindowsAzureConstants.SA_NEW_VERSION_ATTR));
+		} catch (Exception e) {
+			return false;
+		}
 	}
 
 	/**
@@ -517,6 +575,20 @@ public class WindowsAzureProjectManager {
 	 * @throws WindowsAzureInvalidProjectOperationException
 	 */
 	public void save() throws WindowsAzureInvalidProjectOperationException {
+		saveChanges();
+	}
+
+	/**
+	 * Serializes and saves WindowsAzureProjectManager to disk, writing only
+	 * the files whose content changed. Documents are not serialized at all
+	 * unless they changed since they were loaded or last saved.
+	 * 
+	 * @return true if a file or directory was written
+	 * @throws WindowsAzureInvalidProjectOperationException
+	 */
+	public boolean saveChanges()
+			throws WindowsAzureInvalidProjectOperationException {
+		boolean written = false;
 		try {
 
 			// If not current version and if version is V1.7.0 then update it
@@ -525,9 +597,16 @@ public class WindowsAzureProjectManager {
 					&& WindowsAzureConstants.V17_VERSION.equals(getVersion()))
 				setVersion(WindowsAzureConstants.VERSION);
 
-			ParserXMLUtility.saveXMLFile(configFilePath, getConfigFileDoc());
-			ParserXMLUtility.saveXMLFile(defFilePath, getdefinitionFileDoc());
-			ParserXMLUtility.saveXMLFile(packageFilePath, getPackageFileDoc());
+			// derived values are disabled when the documents don't report changes
+			if (modified || !derivedValuesEnabled) {
+				written |= ParserXMLUtility.saveXMLFileIfChanged(configFilePath,
+						getConfigFileDoc());
+				written |= ParserXMLUtility.saveXMLFileIfChanged(defFilePath,
+						getdefinitionFileDoc());
+				written |= ParserXMLUtility.saveXMLFileIfChanged(
+						packageFilePath, getPackageFileDoc());
+				modified = false;
+			}
 
 			if (mapActivity.containsKey("add")) {
 				Vector<String> value = mapActivity.get("add");
@@ -570,6 +649,7 @@ public class WindowsAzureProjectManager {
 					zipFile.close();
 				}
 				mapActivity.remove("add");
+				written = true;
 			}
 
 			if (mapActivity.containsKey("rename")) {
@@ -582,6 +662,7 @@ public class WindowsAzureProjectManager {
 									+ "to : " + value.elementAt(1));
 				}
 				mapActivity.remove("rename");
+				written = true;
 			}
 
 			if (mapActivity.containsKey("delete")) {
@@ -596,12 +677,14 @@ public class WindowsAzureProjectManager {
 					}
 				}
 				mapActivity.remove("delete");
+				written = true;
 			}
 			if (mapActivity.containsKey("addProxyFilesForRole")) {
 				Vector<String> value = mapActivity.get("addProxyFilesForRole");
 				copySAResources(value.get(0));
 
 				mapActivity.remove("addProxyFilesForRole");
+				written = true;
 
 			}
 			if (mapActivity.containsKey("delProxyFilesForRole")) {
@@ -613,15 +696,17 @@ public class WindowsAzureProjectManager {
 				File file = new File(dirPath);
 				WindowsAzureProjectManager.deleteDir(file);
 				mapActivity.remove("delProxyFilesForRole");
+				written = true;
 			}
 
 			// Method which updates role configurations
-			performRoleUpdatesForSA();
+			written |= performRoleUpdatesForSA();
 		} catch (Exception ex) {
 			ex.printStackTrace();
 			throw new WindowsAzureInvalidProjectOperationException(
 					WindowsAzureConstants.EXCP_SAVE, ex);
 		}
+		return written;
 	}
 
 	/**
@@ -634,7 +719,7 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		String sName = "";
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			if (getdefinitionFileDoc() != null) {
 				sName = xPath.evaluate(WindowsAzureConstants.SERVICE_NAME,
 						getdefinitionFileDoc());
@@ -729,7 +814,7 @@ public class WindowsAzureProjectManager {
 	public WindowsAzurePackageType getPackageType()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = WindowsAzureConstants.PROJECT_TYPE;
 			Document doc = packageFileDoc;
 			String packageType = xPath.evaluate(expr, doc);
@@ -762,7 +847,7 @@ public class WindowsAzureProjectManager {
 			for (WindowsAzureRole role : roles) {
 				InstanceMap.put(role.getName(), role.getInstances());
 			}
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Node node = (Node) xPath.evaluate(
 					WindowsAzureConstants.PROJECT_TYPE, packageFileDoc,
 					XPathConstants.NODE);
@@ -865,7 +950,7 @@ public class WindowsAzureProjectManager {
 	public String getPortalURL()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = WindowsAzureConstants.PORTAL_URL;
 			Document doc = packageFileDoc;
 			String portalURL = xPath.evaluate(expr, doc);
@@ -885,7 +970,7 @@ public class WindowsAzureProjectManager {
 	public void setPortalURL(String url)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Element element = (Element) xPath.evaluate(
 					WindowsAzureConstants.WINAZURE_PACKAGE, packageFileDoc,
 					XPathConstants.NODE);
@@ -913,7 +998,7 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			if (roleList.isEmpty()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				NodeList nodeList = (NodeList) xPath.evaluate(
 						WindowsAzureConstants.WORKER_ROLE,
 						getdefinitionFileDoc(), XPathConstants.NODESET);
@@ -1078,7 +1163,7 @@ public class WindowsAzureProjectManager {
 	public void addRoleInPackageXml(String roleName)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getPackageFileDoc();
 			Element eleRole = doc.createElement("workerrole");
 			eleRole.setAttribute("approotdir", String.format("%s%s%s",
@@ -1112,7 +1197,7 @@ public class WindowsAzureProjectManager {
 		}
 		WindowsAzureRole role = null;
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getPackageFileDoc();
 			String expr = String.format(WindowsAzureConstants.WA_PACK_NAME,
 					path.getName());
@@ -1149,7 +1234,7 @@ public class WindowsAzureProjectManager {
 		try {
 			if (value) {
 				// Create entries in configuration (cscfg) file
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getConfigFileDoc();
 				NodeList listRoles = (NodeList) xPath
 						.evaluate(WindowsAzureConstants.ROLE, doc,
@@ -1187,7 +1272,7 @@ public class WindowsAzureProjectManager {
 
 				// Create entries in package.xml
 				doc = getPackageFileDoc();
-				xPath = XPathFactory.newInstance().newXPath();
+				xPath = ParserXMLUtility.getXPath();
 				String expr = WindowsAzureConstants.PROJ_PROPERTY;
 				Element eleProjProperty = (Element) xPath.evaluate(expr, doc,
 						XPathConstants.NODE);
@@ -1211,7 +1296,7 @@ public class WindowsAzureProjectManager {
 							XPathConstants.NODE);
 					root.insertBefore(eleProj, eleTarget);
 				} else {
-					xPath = XPathFactory.newInstance().newXPath();
+					xPath = ParserXMLUtility.getXPath();
 					expr = WindowsAzureConstants.PROJ_REMOTE_ACCESS;
 					Element eleRemoteAccess = (Element) xPath.evaluate(expr,
 							doc, XPathConstants.NODE);
@@ -1236,7 +1321,7 @@ public class WindowsAzureProjectManager {
 				removeCertificatesFromConfigFile();
 
 				// Remove entries from package file
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				String expr = WindowsAzureConstants.PROJ_REMOTE_ACCESS;
 				Document doc = getPackageFileDoc();
 				Element element = (Element) xPath.evaluate(expr, doc,
@@ -1244,7 +1329,7 @@ public class WindowsAzureProjectManager {
 				if (element != null) {
 					element.getParentNode().removeChild(element);
 				}
-				xPath = XPathFactory.newInstance().newXPath();
+				xPath = ParserXMLUtility.getXPath();
 				expr = WindowsAzureConstants.PROJ_REMOTE_DESKTOP;
 				element = (Element) xPath.evaluate(expr, doc,
 						XPathConstants.NODE);
@@ -1253,7 +1338,7 @@ public class WindowsAzureProjectManager {
 				}
 				// Remove entries from definition (csdef) file
 				doc = getdefinitionFileDoc();
-				xPath = XPathFactory.newInstance().newXPath();
+				xPath = ParserXMLUtility.getXPath();
 				expr = WindowsAzureConstants.PROJ_IMPORT_ACCESS;
 				NodeList listImport = (NodeList) xPath.evaluate(expr, doc,
 						XPathConstants.NODESET);
@@ -1278,7 +1363,7 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException,
 			XPathExpressionException {
 		Document doc = getdefinitionFileDoc();
-		XPath xPath = XPathFactory.newInstance().newXPath();
+		XPath xPath = ParserXMLUtility.getXPath();
 		String expr = WindowsAzureConstants.WORKER_ROLE;
 		NodeList listWorkerRoles = (NodeList) xPath.evaluate(expr, doc,
 				XPathConstants.NODESET);
@@ -1317,7 +1402,7 @@ public class WindowsAzureProjectManager {
 			WindowsAzureInvalidProjectOperationException {
 		// Remove from cscfg
 		Document doc = getConfigFileDoc();
-		XPath xPath = XPathFactory.newInstance().newXPath();
+		XPath xPath = ParserXMLUtility.getXPath();
 		String expr = WindowsAzureConstants.FPRINT_ALL;
 		NodeList listCertificates = (NodeList) xPath.evaluate(expr, doc,
 				XPathConstants.NODESET);
@@ -1394,7 +1479,7 @@ public class WindowsAzureProjectManager {
 	protected void addRemoteForwarder()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getConfigFileDoc();
 			String expr = WindowsAzureConstants.RF_ENABLED;
 			Element eleRemForwarder = (Element) xPath.evaluate(expr, doc,
@@ -1443,7 +1528,7 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			Document doc = getConfigFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = String.format("%s%s%s%s",
 					WindowsAzureConstants.CONFIG_SETTING, "[@name='", setting,
 					"']");
@@ -1469,7 +1554,7 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		Boolean isRemoteAccess = false;
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = WindowsAzureConstants.PROJ_REMOTE_ACCESS + "/@value";
 			Document doc = packageFileDoc;
 			String remAccStatus = xPath.evaluate(expr, doc);
@@ -1492,7 +1577,7 @@ public class WindowsAzureProjectManager {
 	public String getRemoteAccessUsername()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getConfigFileDoc();
 			String attrName = WindowsAzureConstants.REMOTEACCESS_USERNAME;
 			String expr = String.format("%s%s%s%s",
@@ -1533,7 +1618,7 @@ public class WindowsAzureProjectManager {
 		String attrVal = "";
 		try {
 			if (numValues != 0) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getConfigFileDoc();
 				int noOfRoles = ((NodeList) xPath
 						.evaluate(WindowsAzureConstants.ROLE, doc,
@@ -1596,7 +1681,7 @@ public class WindowsAzureProjectManager {
 	public String getRemoteAccessEncryptedPassword()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getConfigFileDoc();
 			String attrName = WindowsAzureConstants.REMOTEACCESS_PASSWORD;
 			String expr = String.format("%s%s%s%s",
@@ -1656,7 +1741,7 @@ public class WindowsAzureProjectManager {
 	public Date getRemoteAccessAccountExpiration()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getConfigFileDoc();
 			String attrName = WindowsAzureConstants.REMOTEACCESS_EXPIRY;
 			String expr = String.format("%s%s%s%s",
@@ -1725,7 +1810,7 @@ public class WindowsAzureProjectManager {
 	public String getRemoteAccessCertificatePath()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = WindowsAzureConstants.PROJ_REMOTE_DESKTOP + "/@value";
 			Document doc = packageFileDoc;
 			return xPath.evaluate(expr, doc);
@@ -1751,12 +1836,12 @@ public class WindowsAzureProjectManager {
 		}
 		try {
 			Document doc = getPackageFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = WindowsAzureConstants.PROJ_PROPERTY;
 			Element eleProjProperty = (Element) xPath.evaluate(expr, doc,
 					XPathConstants.NODE);
 
-			xPath = XPathFactory.newInstance().newXPath();
+			xPath = ParserXMLUtility.getXPath();
 			expr = WindowsAzureConstants.PROJ_REMOTE_DESKTOP;
 			Element eleCerPath = (Element) xPath.evaluate(expr, doc,
 					XPathConstants.NODE);
@@ -1770,7 +1855,7 @@ public class WindowsAzureProjectManager {
 				eleCerPath.setAttribute("value", path);
 			}
 			// Delete the comment corresponding to default .cer
-			xPath = XPathFactory.newInstance().newXPath();
+			xPath = ParserXMLUtility.getXPath();
 			expr = String.format("%s%s%s%s%s",
 					WindowsAzureConstants.PROJ_PROPERTY, "/comment()",
 					"[contains(.,'", WindowsAzureConstants.THUMBPRINT_NOTE,
@@ -1794,7 +1879,7 @@ public class WindowsAzureProjectManager {
 	public String getRemoteAccessCertificateFingerprint()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getConfigFileDoc();
 			String attrName = WindowsAzureConstants.REMOTEACCESS_FINGERPRINT;
 			String expr = String.format("%s%s%s%s",
@@ -1835,7 +1920,7 @@ public class WindowsAzureProjectManager {
 		try {
 			String attrVal = "";
 			if (numAttr != 0) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getConfigFileDoc();
 				int noOfRoles = ((NodeList) xPath
 						.evaluate(WindowsAzureConstants.ROLE, doc,
@@ -1885,7 +1970,7 @@ public class WindowsAzureProjectManager {
 			}
 			// Delete the comment corresponding to default .cer
 			Document doc = getConfigFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = String.format("%s%s%s%s", WindowsAzureConstants.ROLE,
 					"/Certificates/comment()[contains(.,'",
 					WindowsAzureConstants.THUMBPRINT_NOTE, "')]");
@@ -1906,7 +1991,7 @@ public class WindowsAzureProjectManager {
 			int version = 0;
 			String currVersion = WindowsAzureConstants.VERSION;
 			Document doc = getPackageFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = WindowsAzureConstants.CREATOR_VER + "/@value";
 			String strVersion = xPath.evaluate(expr, doc);
 			if (!strVersion.isEmpty()) {
@@ -1959,6 +2044,52 @@ public class WindowsAzureProjectManager {
 		}
 	}
 
+	/**
+	 * Clears the derived values and marks the project modified whenever the
+	 * document changes.
+	 */
+	private Document observe(Document doc) {
+		if (doc instanceof EventTarget) {
+			((EventTarget) doc).addEventListener("DOMSubtreeModified",
+					derivedValuesInvalidator, true);
+			((EventTarget) doc).addEventListener("DOMSubtreeModified",
+					modificationTracker, true);
+		} else {
+			derivedValuesEnabled = false;
+			derivedValues.clear();
+		}
+		return doc;
+	}
+
+	/**
+	 * Checks whether a value derived from the documents is known, it may be
+	 * <B>null</B>.
+	 * 
+	 * @param key
+	 * @return true if getDerivedValue returns the current value
+	 */
+	protected boolean hasDerivedValue(String key) {
+		return derivedValues.containsKey(key);
+	}
+
+	protected Object getDerivedValue(String key) {
+		return derivedValues.get(key);
+	}
+
+	/**
+	 * Remembers a value derived from the documents until they change.
+	 * 
+	 * @param key
+	 * @param value
+	 * @return value
+	 */
+	protected <T> T putDerivedValue(String key, T value) {
+		if (derivedValuesEnabled) {
+			derivedValues.put(key, value);
+		}
+		return value;
+	}
+
 	/**
 	 * Gets document for ServiceConfiguration.cscfg.
 	 * 
@@ -1968,7 +2099,7 @@ public class WindowsAzureProjectManager {
 	protected Document getConfigFileDoc()
 			throws WindowsAzureInvalidProjectOperationException {
 		if (configFileDoc == null) {
-			configFileDoc = ParserXMLUtility.parseXMLFile(configFilePath);
+			configFileDoc = observe(ParserXMLUtility.parseXMLFile(configFilePath));
 		}
 		return configFileDoc;
 	}
@@ -1998,7 +2129,7 @@ public class WindowsAzureProjectManager {
 	protected Document getdefinitionFileDoc()
 			throws WindowsAzureInvalidProjectOperationException {
 		if (definitionFileDoc == null) {
-			definitionFileDoc = ParserXMLUtility.parseXMLFile(defFilePath);
+			definitionFileDoc = observe(ParserXMLUtility.parseXMLFile(defFilePath));
 			if (definitionFileDoc == null) {
 				throw new WindowsAzureInvalidProjectOperationException(
 						WindowsAzureConstants.EXCP_RETRIEVE_DATA
@@ -2420,7 +2551,7 @@ public class WindowsAzureProjectManager {
 			RuntimeException {
 		String emmulatorPath = "";
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			emmulatorPath = xPath
 					.evaluate(WindowsAzureConstants.EMULATORTOOLSDIR,
 							getPackageFileDoc());
@@ -2473,7 +2604,7 @@ public class WindowsAzureProjectManager {
 		String packDir = "";
 		try {
 
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			packDir = xPath.evaluate(WindowsAzureConstants.PACKAGEDIR,
 					getPackageFileDoc());
 			packDir = getValOfVarInpac(packDir.substring(
@@ -2492,7 +2623,7 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		String val = "";
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = String.format(WindowsAzureConstants.PROPERTY_VAL,
 					varName);
 			Element ele = (Element) xPath.evaluate(expr, getPackageFileDoc(),
@@ -2558,12 +2689,9 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			ArrayList<String> serverList = new ArrayList<String>();
-			NodeList compSet = getComponentSets(templateFile, "server");
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() != 0) {
-					Element ele = (Element) compSet.item(i);
-					serverList.add(ele.getAttribute("name"));
-				}
+			for (ComponentSetsCatalog.ComponentSet compSet
+					: ComponentSetsCatalog.get(templateFile).getComponentSets("server")) {
+				serverList.add(compSet.getName());
 			}
 
 			return serverList.toArray(new String[serverList.size()]);
@@ -2588,25 +2716,22 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			ArrayList<String> thrdJdkList = new ArrayList<String>();
-			NodeList compSet = getComponentSets(templateFile, "JDK");
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() != 0) {
-					Element ele = (Element) compSet.item(i);
-					String name = ele.getAttribute("name");
-					if (!name.equalsIgnoreCase("JDK")) {
-						String status = ele.getAttribute("status");
-						if (!status.equalsIgnoreCase("deprecated")) {
-							// not deprecated then simply add
-							thrdJdkList.add(name);
-						} else if(status.equalsIgnoreCase("deprecated")
-								&& !depJdkName.isEmpty()
-								&& name.equalsIgnoreCase(depJdkName)) {
-							/*
-							 * deprecated but it needs to be added
-							 * as user have used that JDK in project.
-							 */
-							thrdJdkList.add(name);
-						}
+			for (ComponentSetsCatalog.ComponentSet compSet
+					: ComponentSetsCatalog.get(templateFile).getComponentSets("JDK")) {
+				String name = compSet.getName();
+				if (!name.equalsIgnoreCase("JDK")) {
+					String status = compSet.getElement().getAttribute("status");
+					if (!status.equalsIgnoreCase("deprecated")) {
+						// not deprecated then simply add
+						thrdJdkList.add(name);
+					} else if(status.equalsIgnoreCase("deprecated")
+							&& !depJdkName.isEmpty()
+							&& name.equalsIgnoreCase(depJdkName)) {
+						/*
+						 * deprecated but it needs to be added
+						 * as user have used that JDK in project.
+						 */
+						thrdJdkList.add(name);
 					}
 				}
 			}
@@ -2630,16 +2755,13 @@ public class WindowsAzureProjectManager {
 	public static String getFirstDefaultThirdPartyJdkName(File templateFile)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			NodeList compSet = getComponentSets(templateFile, "JDK");
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() != 0) {
-					Element ele = (Element) compSet.item(i);
-					String name = ele.getAttribute("name");
-					if (!name.equalsIgnoreCase("JDK")
-							&& ele.getAttribute("default").equalsIgnoreCase("true")
-							&& !ele.getAttribute("status").equalsIgnoreCase("deprecated")) {
-						return name;
-					}
+			for (ComponentSetsCatalog.ComponentSet compSet
+					: ComponentSetsCatalog.get(templateFile).getComponentSets("JDK")) {
+				String name = compSet.getName();
+				if (!name.equalsIgnoreCase("JDK")
+						&& compSet.getElement().getAttribute("default").equalsIgnoreCase("true")
+						&& !compSet.getElement().getAttribute("status").equalsIgnoreCase("deprecated")) {
+					return name;
 				}
 			}
 		} catch (Exception e) {
@@ -2664,33 +2786,23 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			ArrayList<String> thrdSrvList = new ArrayList<String>();
-			NodeList compSet = getComponentSets(templateFile, "server");
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() != 0) {
-					Element ele = (Element) compSet.item(i);
-					String name = ele.getAttribute("name");
-					if (name.equalsIgnoreCase(srvName)) {
-						NodeList downloadSet = getDownloadSets(templateFile, "server", srvName);
-						for (int j = 0; j < downloadSet.getLength(); j++) {
-							if (downloadSet.item(j).getAttributes().getLength() != 0) {
-								Element downloadEle = (Element) downloadSet.item(j);
-								String downloadName = downloadEle.getAttribute("name");
-								String status = downloadEle.getAttribute("status");
-								if (!status.equalsIgnoreCase("deprecated")) {
-									// not deprecated then simply add
-									thrdSrvList.add(downloadName);
-								} else if(status.equalsIgnoreCase("deprecated")
-										&& !depSrvName.isEmpty()
-										&& downloadName.equalsIgnoreCase(depSrvName)) {
-									/*
-									 * deprecated but it needs to be added
-									 * as user have used that server in project.
-									 */
-									thrdSrvList.add(depSrvName);
-								}
-							}
-						}
-						break;
+			ComponentSetsCatalog catalog = ComponentSetsCatalog.get(templateFile);
+			if (catalog.findComponentSet("server", srvName) != null) {
+				for (ComponentSetsCatalog.Item download
+						: catalog.getDownloads("server", srvName)) {
+					String downloadName = download.getAttribute("name");
+					String status = download.getAttribute("status");
+					if (!status.equalsIgnoreCase("deprecated")) {
+						// not deprecated then simply add
+						thrdSrvList.add(downloadName);
+					} else if(status.equalsIgnoreCase("deprecated")
+							&& !depSrvName.isEmpty()
+							&& downloadName.equalsIgnoreCase(depSrvName)) {
+						/*
+						 * deprecated but it needs to be added
+						 * as user have used that server in project.
+						 */
+						thrdSrvList.add(depSrvName);
 					}
 				}
 			}
@@ -2712,25 +2824,16 @@ public class WindowsAzureProjectManager {
 	
 	public static String getServerNameUsingThirdPartyServerName(String thrdSrvName, File templateFile)
 			throws WindowsAzureInvalidProjectOperationException {
-		String name = "";
-		try {
-			NodeList compSet = getComponentSets(templateFile, "server");
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() != 0) {
-					Element ele = (Element) compSet.item(i);
-					name = ele.getAttribute("name");
-					NodeList downloadSet = getDownloadSets(templateFile, "server", name);
-					for (int j = 0; j < downloadSet.getLength(); j++) {
-						if (downloadSet.item(j).getAttributes().getLength() != 0) {
-							Element downloadEle = (Element) downloadSet.item(j);
-							if (downloadEle.getAttribute("name").equalsIgnoreCase(thrdSrvName)) {
-								return name;
-							}
-						}
-					}
-				}
+		try {
+			ComponentSetsCatalog catalog = ComponentSetsCatalog.get(templateFile);
+			ComponentSetsCatalog.ComponentSet compSet =
+					catalog.findComponentSetOfDownload("server", thrdSrvName);
+			if (compSet != null) {
+				return compSet.getName();
 			}
-			return name;
+			// not found, name of the last server template as before
+			List<ComponentSetsCatalog.ComponentSet> compSets = catalog.getComponentSets("server");
+			return compSets.isEmpty() ? "" : compSets.get(compSets.size() - 1).getName();
 		} catch (Exception e) {
 			throw new WindowsAzureInvalidProjectOperationException(
 					"Exception while getting server name with the help of third party server name", e);
@@ -2752,30 +2855,23 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			ArrayList<String> thrdSrvList = new ArrayList<String>();
-			NodeList compSet = getComponentSets(templateFile, "server");
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() != 0) {
-					Element ele = (Element) compSet.item(i);
-					String name = ele.getAttribute("name");
-					NodeList downloadSet = getDownloadSets(templateFile, "server", name);
-					for (int j = 0; j < downloadSet.getLength(); j++) {
-						if (downloadSet.item(j).getAttributes().getLength() != 0) {
-							Element downloadEle = (Element) downloadSet.item(j);
-							String downloadName = downloadEle.getAttribute("name");
-							String status = downloadEle.getAttribute("status");
-							if (!status.equalsIgnoreCase("deprecated")) {
-								// not deprecated then simply add
-								thrdSrvList.add(downloadName);
-							} else if(status.equalsIgnoreCase("deprecated")
-									&& !depSrvName.isEmpty()
-									&& downloadName.equalsIgnoreCase(depSrvName)) {
-								/*
-								 * deprecated but it needs to be added
-								 * as user have used that server in project.
-								 */
-								thrdSrvList.add(depSrvName);
-							}
-						}
+			ComponentSetsCatalog catalog = ComponentSetsCatalog.get(templateFile);
+			for (ComponentSetsCatalog.ComponentSet compSet : catalog.getComponentSets("server")) {
+				for (ComponentSetsCatalog.Item download
+						: catalog.getDownloads("server", compSet.getName())) {
+					String downloadName = download.getAttribute("name");
+					String status = download.getAttribute("status");
+					if (!status.equalsIgnoreCase("deprecated")) {
+						// not deprecated then simply add
+						thrdSrvList.add(downloadName);
+					} else if(status.equalsIgnoreCase("deprecated")
+							&& !depSrvName.isEmpty()
+							&& downloadName.equalsIgnoreCase(depSrvName)) {
+						/*
+						 * deprecated but it needs to be added
+						 * as user have used that server in project.
+						 */
+						thrdSrvList.add(depSrvName);
 					}
 				}
 			}
@@ -2799,25 +2895,16 @@ public class WindowsAzureProjectManager {
 	public static String getDefaultThirdPartySrvName(File templateFile, String srvName)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			NodeList compSet = getComponentSets(templateFile, "server");
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() != 0) {
-					Element ele = (Element) compSet.item(i);
-					String name = ele.getAttribute("name");
-					if (name.equalsIgnoreCase(srvName)) {
-						NodeList downloadSet = getDownloadSets(templateFile, "server", srvName);
-						for (int j = 0; j < downloadSet.getLength(); j++) {
-							if (downloadSet.item(j).getAttributes().getLength() != 0) {
-								Element downloadEle = (Element) downloadSet.item(j);
-								if (!downloadEle.getAttribute("status").equalsIgnoreCase("deprecated")
-										&& downloadEle.getAttribute("default").equalsIgnoreCase("true")) {
-									return downloadEle.getAttribute("name");
-								}
-							}
-						}
+			ComponentSetsCatalog catalog = ComponentSetsCatalog.get(templateFile);
+			if (catalog.findComponentSet("server", srvName) != null) {
+				for (ComponentSetsCatalog.Item download
+						: catalog.getDownloads("server", srvName)) {
+					if (!download.getAttribute("status").equalsIgnoreCase("deprecated")
+							&& download.getAttribute("default").equalsIgnoreCase("true")) {
+						return download.getAttribute("name");
 					}
 				}
-			}	
+			}
 		} catch (Exception e) {
 			throw new WindowsAzureInvalidProjectOperationException(
 					"Exception while getting default third party server name", e);
@@ -2835,23 +2922,16 @@ public class WindowsAzureProjectManager {
 	public static String getFirstDefaultThirdPartySrvName(File templateFile)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			NodeList compSet = getComponentSets(templateFile, "server");
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() != 0) {
-					Element ele = (Element) compSet.item(i);
-					String name = ele.getAttribute("name");
-					NodeList downloadSet = getDownloadSets(templateFile, "server", name);
-					for (int j = 0; j < downloadSet.getLength(); j++) {
-						if (downloadSet.item(j).getAttributes().getLength() != 0) {
-							Element downloadEle = (Element) downloadSet.item(j);
-							if (!downloadEle.getAttribute("status").equalsIgnoreCase("deprecated")
-									&& downloadEle.getAttribute("default").equalsIgnoreCase("true")) {
-								return downloadEle.getAttribute("name");
-							}
-						}
+			ComponentSetsCatalog catalog = ComponentSetsCatalog.get(templateFile);
+			for (ComponentSetsCatalog.ComponentSet compSet : catalog.getComponentSets("server")) {
+				for (ComponentSetsCatalog.Item download
+						: catalog.getDownloads("server", compSet.getName())) {
+					if (!download.getAttribute("status").equalsIgnoreCase("deprecated")
+							&& download.getAttribute("default").equalsIgnoreCase("true")) {
+						return download.getAttribute("name");
 					}
 				}
-			}	
+			}
 		} catch (Exception e) {
 			throw new WindowsAzureInvalidProjectOperationException(
 					"Exception while getting default third party server name", e);
@@ -2889,16 +2969,11 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		String licenseUrl = "";
 		try {
-			NodeList compSet = getComponentSets(templateFile, "JDK");
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() != 0) {
-					Element ele = (Element) compSet.item(i);
-					if (ele.getAttribute("name").equalsIgnoreCase(jdkName)) {
-						licenseUrl = ele
-								.getAttribute(WindowsAzureConstants.ATTR_LCNS_VAL);
-						return licenseUrl;
-					}
-				}
+			ComponentSetsCatalog.ComponentSet compSet =
+					ComponentSetsCatalog.get(templateFile).findComponentSet("JDK", jdkName);
+			if (compSet != null) {
+				licenseUrl = compSet.getElement()
+						.getAttribute(WindowsAzureConstants.ATTR_LCNS_VAL);
 			}
 			return licenseUrl;
 		} catch (Exception e) {
@@ -2919,14 +2994,10 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		String cloudValue = "";
 		try {
-			NodeList nodeList = getThirdPartyJdkCmpntSets(jdkName, templateFile);
-			if (nodeList != null) {
-				for (int i = 0; i < nodeList.getLength(); i++) {
-					Node compNode = (Node) nodeList.item(i);
-					if (!compNode.hasAttributes()) {
-						continue;
-					}
-					Element compEle = (Element) compNode;
+			ComponentSetsCatalog.ComponentSet compSet =
+					getThirdPartyJdkCmpntSet(jdkName, templateFile);
+			if (compSet != null) {
+				for (ComponentSetsCatalog.Item compEle : compSet.getChildren()) {
 					if (compEle.getNodeName().equalsIgnoreCase("startupenv")
 							&& compEle.getAttribute("type").equalsIgnoreCase(
 									"jdk.home")) {
@@ -2971,21 +3042,10 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		String attributeVal = "";
 		try {
-			NodeList compSet = getComponentSets(templateFile, "server");
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() != 0) {
-					Element ele = (Element) compSet.item(i);
-					String name = ele.getAttribute("name");
-					NodeList downloadSet = getDownloadSets(templateFile, "server", name);
-					for (int j = 0; j < downloadSet.getLength(); j++) {
-						if (downloadSet.item(j).getAttributes().getLength() != 0) {
-							Element downloadEle = (Element) downloadSet.item(j);
-							if (downloadEle.getAttribute("name").equalsIgnoreCase(srvName)) {
-								return downloadEle.getAttribute(attribute);
-							}
-						}
-					}
-				}
+			ComponentSetsCatalog.Item download =
+					ComponentSetsCatalog.get(templateFile).findDownload("server", srvName);
+			if (download != null) {
+				attributeVal = download.getAttribute(attribute);
 			}
 			return attributeVal;
 		} catch (Exception e) {
@@ -3023,14 +3083,10 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		String cldAltSrc = "";
 		try {
-			NodeList nodeList = getThirdPartyJdkCmpntSets(jdkName, templateFile);
-			if (nodeList != null) {
-				for (int i = 0; i < nodeList.getLength(); i++) {
-					Node compNode = (Node) nodeList.item(i);
-					if (!compNode.hasAttributes()) {
-						continue;
-					}
-					Element compEle = (Element) compNode;
+			ComponentSetsCatalog.ComponentSet compSet =
+					getThirdPartyJdkCmpntSet(jdkName, templateFile);
+			if (compSet != null) {
+				for (ComponentSetsCatalog.Item compEle : compSet.getChildren()) {
 					if (compEle.getNodeName().equalsIgnoreCase("component")) {
 						cldAltSrc = compEle
 								.getAttribute(WindowsAzureConstants.ATTR_CLD_ALT_SRC);
@@ -3047,72 +3103,23 @@ public class WindowsAzureProjectManager {
 	}
 
 	/**
-	 * Returns NodeList of componentset elements with type="JDK" and third party
-	 * JDK name.
+	 * Returns componentset with type="JDK" and third party JDK name.
 	 * 
 	 * @param jdkName
 	 * @param templateFile
-	 * @return
+	 * @return componentset, null if JDK name is empty or not found
 	 * @throws WindowsAzureInvalidProjectOperationException
-	 * @throws XPathExpressionException
 	 */
-	private static NodeList getThirdPartyJdkCmpntSets(String jdkName,
-			File templateFile)
-			throws WindowsAzureInvalidProjectOperationException,
-			XPathExpressionException {
-		NodeList nodelist = null;
-		// parse template file and find componentset name
-		Document compDoc = ParserXMLUtility.parseXMLFile(templateFile
-				.getAbsolutePath());
-		XPath xPath = XPathFactory.newInstance().newXPath();
+	private static ComponentSetsCatalog.ComponentSet getThirdPartyJdkCmpntSet(
+			String jdkName, File templateFile)
+			throws WindowsAzureInvalidProjectOperationException {
+		ComponentSetsCatalog.ComponentSet compSet = null;
 		// check for third party JDK
 		if (jdkName != null && !jdkName.isEmpty()) {
-			String expr = String.format(WindowsAzureConstants.TEMP_SERVER_COMP,
-					"JDK", jdkName);
-			Element compSet = (Element) xPath.evaluate(expr, compDoc,
-					XPathConstants.NODE);
-			if (compSet != null) {
-				nodelist = compSet.getChildNodes();
-			}
+			compSet = ComponentSetsCatalog.get(templateFile).getComponentSet("JDK", jdkName);
 		}
-		return nodelist;
-	}
-
-	/**
-	 * Returns NodeList of componentset elements with type="type".
-	 * 
-	 * @throws WindowsAzureInvalidProjectOperationException
-	 * @throws XPathExpressionException
-	 */
-	private static NodeList getComponentSets(File templateFile, String type)
-			throws WindowsAzureInvalidProjectOperationException,
-			XPathExpressionException {
-		XPath xPath = XPathFactory.newInstance().newXPath();
-		Document compDoc = ParserXMLUtility.parseXMLFile(templateFile
-				.getAbsolutePath());
-		String expr = String.format(WindowsAzureConstants.TEMP_COMPONENTSET,
-				type);
-		return (NodeList) xPath.evaluate(expr, compDoc, XPathConstants.NODESET);
-	}
-
-	/**
-	 * Returns NodeList of downloads elements.
-	 * @param templateFile
-	 * @param type - JDK or server
-	 * @param name - JDK or server name
-	 * @return
-	 * @throws WindowsAzureInvalidProjectOperationException
-	 * @throws XPathExpressionException
-	 */
-	private static NodeList getDownloadSets(File templateFile, String type, String name)
-			throws WindowsAzureInvalidProjectOperationException,
-			XPathExpressionException {
-		XPath xPath = XPathFactory.newInstance().newXPath();
-		Document compDoc = ParserXMLUtility.parseXMLFile(templateFile.getAbsolutePath());
-		String expr = String.format(WindowsAzureConstants.DOWNLOADSET, type, name);
-		return (NodeList) xPath.evaluate(expr, compDoc, XPathConstants.NODESET);
+		return compSet;
 	}
-	
 
 	/**
 	 * Returns the componentsets.xml version in plugins folder.
@@ -3124,18 +3131,7 @@ public class WindowsAzureProjectManager {
 
 	public static String getComponentSetsVersion(File templateFile)
 			throws WindowsAzureInvalidProjectOperationException {
-		Document compDoc = ParserXMLUtility.parseXMLFile(templateFile
-				.getAbsolutePath());
-
-		String value = null;
-		try {
-			value = ParserXMLUtility.getExpressionValue(compDoc,
-					WindowsAzureConstants.COMPONENTSETS_VERSION);
-		} catch (Exception e) {
-			// value will be null in this case , just print the stack trace
-			e.printStackTrace();
-		}
-		return value;
+		return ComponentSetsCatalog.get(templateFile).getVersion();
 	}
 
 	/**
@@ -3197,13 +3193,11 @@ public class WindowsAzureProjectManager {
 		final HashMap<String, String> serverDetectors = new HashMap<String, String>();
 
 		try {
-			final NodeList compSet = getComponentSets(templateFile, "server");
-
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() > 1) {
-					Element ele = (Element) compSet.item(i);
-					String serverName = ele.getAttribute("name");
-					String serverDetector = ele.getAttribute(attrName);
+			for (ComponentSetsCatalog.ComponentSet compSet
+					: ComponentSetsCatalog.get(templateFile).getComponentSets("server")) {
+				if (compSet.getElement().getAttributeCount() > 1) {
+					String serverName = compSet.getName();
+					String serverDetector = compSet.getElement().getAttribute(attrName);
 					if (!serverName.isEmpty() && !serverDetector.isEmpty()) {
 						serverDetectors.put(serverName, serverDetector);
 					}
@@ -3310,16 +3304,11 @@ public class WindowsAzureProjectManager {
 			throws WindowsAzureInvalidProjectOperationException {
 		String httpPort = "";
 		try {
-			NodeList compSet = getComponentSets(templateFile, "server");
-			for (int i = 0; i < compSet.getLength(); i++) {
-				if (compSet.item(i).getAttributes().getLength() != 0) {
-					Element ele = (Element) compSet.item(i);
-					if (ele.getAttribute("name").equalsIgnoreCase(srvName)) {
-						httpPort = ele
-								.getAttribute(WindowsAzureConstants.ATTR_HTTP_PORT);
-						return httpPort;
-					}
-				}
+			ComponentSetsCatalog.ComponentSet compSet =
+					ComponentSetsCatalog.get(templateFile).findComponentSet("server", srvName);
+			if (compSet != null) {
+				httpPort = compSet.getElement()
+						.getAttribute(WindowsAzureConstants.ATTR_HTTP_PORT);
 			}
 			return httpPort;
 		} catch (Exception e) {
@@ -3337,7 +3326,7 @@ public class WindowsAzureProjectManager {
 		try {
 			Document packageFileDoc = getPackageFileDoc();
 
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 
 			// Add cspack location
 			String nodeExpr = String.format(WindowsAzureConstants.PROJ_GLOBAL_PROPERTY, "cspack.dir");
@@ -29,7 +29,6 @@ import java.util.Vector;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Comment;
 import org.w3c.dom.Document;
@@ -136,7 +135,7 @@ public class WindowsAzureRole {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			Document doc = getWinProjMgr().getdefinitionFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = String.format(WindowsAzureConstants.WR_NAME,
 					getName());
 			Node role = (Node) xPath.evaluate(expr, doc, XPathConstants.NODE);
@@ -155,7 +154,7 @@ public class WindowsAzureRole {
 	private void setNameInConfigFile(String name)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document configDoc = getWinProjMgr().getConfigFileDoc();
 			if (configDoc != null) {
 				String expr = String.format(WindowsAzureConstants.ROLE_NAME,
@@ -175,7 +174,7 @@ public class WindowsAzureRole {
 	private void setNameInPackageFile(String name)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document projDoc = getWinProjMgr().getPackageFileDoc();
 			String expr = WindowsAzureConstants.PROJ_PROPERTIES;
 			NodeList properties = (NodeList) xPath.evaluate(expr, projDoc,
@@ -217,10 +216,15 @@ public class WindowsAzureRole {
 	 */
 	public String getInstances()
 			throws WindowsAzureInvalidProjectOperationException {
+		String key = getName() + "/instances";
+		if (winProjMgr.hasDerivedValue(key)) {
+			this.instances = (String) winProjMgr.getDerivedValue(key);
+			return this.instances;
+		}
 		try {
 			String expr = "";
 			Document doc = null;
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String count = "";
 			if (winProjMgr.getPackageType().equals(
 					WindowsAzurePackageType.LOCAL)
@@ -240,7 +244,7 @@ public class WindowsAzureRole {
 				doc = getWinProjMgr().getConfigFileDoc();
 				this.instances = xPath.evaluate(expr, doc);
 			}
-			return this.instances;
+			return winProjMgr.putDerivedValue(key, this.instances);
 		} catch (Exception ex) {
 			throw new WindowsAzureInvalidProjectOperationException(
 					WindowsAzureConstants.EXCP_GET_INSTANCES, ex);
@@ -276,7 +280,7 @@ public class WindowsAzureRole {
 				ParserXMLUtility.deleteElement(doc, expr);
 			}
 
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document configDoc = getWinProjMgr().getConfigFileDoc();
 			String expr = String.format(WindowsAzureConstants.ROLE_INSTANCES,
 					getName());
@@ -317,7 +321,7 @@ public class WindowsAzureRole {
 			if (getName() != null) {
 				Document doc = getWinProjMgr().getdefinitionFileDoc();
 				String objName = getName();
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 
 				String expr = String.format(WindowsAzureConstants.WR_NAME,
 						objName);
@@ -349,7 +353,7 @@ public class WindowsAzureRole {
 			if (winEndPtList.isEmpty()) {
 				Document doc = getWinProjMgr().getdefinitionFileDoc();
 				String objName = getName();
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				String expr = String.format(
 						WindowsAzureConstants.INPUTS_WR_NAME, objName);
 				NodeList endPtList = (NodeList) xPath.evaluate(expr, doc,
@@ -430,7 +434,7 @@ public class WindowsAzureRole {
 			winAzureEndpoint.setLocalPort(endptEle.getAttribute("localPort"));
 
 			String expr = WindowsAzureConstants.INS_FIX_RANGE;
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Element eleFxdPortRan = (Element) xPath.evaluate(expr, endptEle,
 					XPathConstants.NODE);
 
@@ -456,7 +460,7 @@ public class WindowsAzureRole {
 	private WindowsAzureEndpoint createWinIntenalEndPt(Element endptEle)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			WindowsAzureEndpoint winAzureEndpoint = new WindowsAzureEndpoint(
 					getWinProjMgr(), this);
 			winAzureEndpoint.setName(endptEle
@@ -539,7 +543,7 @@ public class WindowsAzureRole {
 		try {
 			// newEndPoint.set
 			Document doc = getWinProjMgr().getdefinitionFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 
 			String expr1 = String.format(WindowsAzureConstants.WR_NAME,
 					getName());
@@ -969,7 +973,7 @@ public class WindowsAzureRole {
 			ParserXMLUtility.deleteElement(doc, expr);
 
 			// delete properties from package.xml
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			expr = WindowsAzureConstants.PROJ_PROPERTIES;
 			NodeList properties = (NodeList) xPath.evaluate(expr, doc,
 					XPathConstants.NODESET);
@@ -1000,7 +1004,7 @@ public class WindowsAzureRole {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			if (this.accUsername.isEmpty()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWinProjMgr().getConfigFileDoc();
 				String expr = String.format(
 						WindowsAzureConstants.RA_ROLE_UNAME_VAL, getName());
@@ -1022,7 +1026,7 @@ public class WindowsAzureRole {
 	protected void setAccUsername(String username)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getConfigFileDoc();
 			String expr = String.format(WindowsAzureConstants.RA_ROLE_UNAME,
 					getName());
@@ -1056,7 +1060,7 @@ public class WindowsAzureRole {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			if (this.accPassword.isEmpty()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWinProjMgr().getConfigFileDoc();
 				String expr = String.format(
 						WindowsAzureConstants.RA_ROLE_PWD_VAL, getName());
@@ -1078,7 +1082,7 @@ public class WindowsAzureRole {
 	protected void setAccPassword(String password)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getConfigFileDoc();
 			String expr = String.format(WindowsAzureConstants.RA_ROLE_PWD,
 					getName());
@@ -1112,7 +1116,7 @@ public class WindowsAzureRole {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			if (this.accExpiryDate.isEmpty()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWinProjMgr().getConfigFileDoc();
 				String expr = String.format(
 						WindowsAzureConstants.RA_ROLE_EXPIRY_VAL, getName());
@@ -1134,7 +1138,7 @@ public class WindowsAzureRole {
 	protected void setAccExpiryDate(String expiryDate)
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getConfigFileDoc();
 			String expr = String.format(WindowsAzureConstants.RA_ROLE_EXPIRY,
 					getName());
@@ -1168,7 +1172,7 @@ public class WindowsAzureRole {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			if (this.certThumbprint.isEmpty()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWinProjMgr().getConfigFileDoc();
 				String expr = String.format(
 						WindowsAzureConstants.RA_ROLE_TPRINT_TPRINT, getName());
@@ -1199,7 +1203,7 @@ public class WindowsAzureRole {
 				}
 			}
 
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getConfigFileDoc();
 			String expr = String.format(WindowsAzureConstants.RA_ROLE_FPRINT,
 					getName());
@@ -1283,7 +1287,7 @@ public class WindowsAzureRole {
 	protected void disableDebugging()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getPackageFileDoc();
 			String expr = String.format(
 					WindowsAzureConstants.WA_PACK_SENV_NAME, getName(),
@@ -1326,7 +1330,7 @@ public class WindowsAzureRole {
 		// =-agentlib:jdwp=transport=dt_socket,server=y,address=8081,suspend=n
 		Boolean isEnabled = false;
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String agentLib = "-agentlib:jdwp=";
 			Document doc = getWinProjMgr().getPackageFileDoc();
 			String expr = String.format(
@@ -1370,7 +1374,7 @@ public class WindowsAzureRole {
 			WindowsAzureEndpoint endPt = null;
 
 			if (getDebuggingEnabled()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWinProjMgr().getPackageFileDoc();
 				String expr = String.format(
 						WindowsAzureConstants.WA_PACK_SENV_NAME, getName(),
@@ -1448,7 +1452,7 @@ public class WindowsAzureRole {
 
 				String port = endPoint.getPrivatePortWrapper();
 				String agentLib = "-agentlib:jdwp=";
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWinProjMgr().getPackageFileDoc();
 				String expr = String.format(
 						WindowsAzureConstants.WA_PACK_SENV_NAME, getName(),
@@ -1509,7 +1513,7 @@ public class WindowsAzureRole {
 		try {
 			Boolean status = false;
 			String agentLib = "-agentlib:jdwp=";
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getPackageFileDoc();
 			String expr = String.format(
 					WindowsAzureConstants.WA_PACK_SENV_NAME, getName(),
@@ -1562,7 +1566,7 @@ public class WindowsAzureRole {
 		}
 		try {
 			String agentLib = "-agentlib:jdwp=";
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getPackageFileDoc();
 			String expr = String.format(
 					WindowsAzureConstants.WA_PACK_SENV_NAME, getName(),
@@ -1682,7 +1686,7 @@ public class WindowsAzureRole {
 
 		try {
 			if (envVarMap.isEmpty()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWinProjMgr().getPackageFileDoc();
 				String expr = String.format(
 						WindowsAzureConstants.WA_PACK_STARTUPENV, getName());
@@ -1712,7 +1716,7 @@ public class WindowsAzureRole {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			if (lsVarList.isEmpty()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWinProjMgr().getdefinitionFileDoc();
 				String expr = String.format(WindowsAzureConstants.VARIABLE,
 						getName());
@@ -1747,7 +1751,7 @@ public class WindowsAzureRole {
 					WindowsAzureConstants.INVALID_ARG);
 		}
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getPackageFileDoc();
 			String expr = String.format(
 					WindowsAzureConstants.WA_PACK_SENV_NAME, getName(), name)
@@ -1778,7 +1782,7 @@ public class WindowsAzureRole {
 		}
 		try {
 			Document doc = getWinProjMgr().getPackageFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			// check first the env is already present, if yes. edit the same
 			String env = String.format(WindowsAzureConstants.WA_PACK_SENV_NAME,
 					getName(), name);
@@ -1816,7 +1820,7 @@ public class WindowsAzureRole {
 					WindowsAzureConstants.INVALID_ARG);
 		}
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getPackageFileDoc();
 			String expr = String
 					.format(WindowsAzureConstants.WA_PACK_SENV_NAME, getName(),
@@ -1853,7 +1857,7 @@ public class WindowsAzureRole {
 
 		try {
 			if (locStoMap.isEmpty()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWinProjMgr().getdefinitionFileDoc();
 				String expr = String.format(
 						WindowsAzureConstants.LOCAL_STORAGE, getName());
@@ -1905,7 +1909,7 @@ public class WindowsAzureRole {
 					WindowsAzureConstants.INVALID_ARG);
 		}
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getdefinitionFileDoc();
 			String expr = String.format(WindowsAzureConstants.LS_NAME,
 					getName(), name);
@@ -1931,7 +1935,7 @@ public class WindowsAzureRole {
 		try {
 
 			Document doc = getWinProjMgr().getdefinitionFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 
 			// Check <LocalResources>, if not find create new
 			// Find RunTime tag, if not present create new
@@ -2436,7 +2440,7 @@ public class WindowsAzureRole {
 		try {
 			Comment taskComment = doc
 					.createComment(WindowsAzureConstants.STARTUP_TASK_COMMENTS);
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Element element = (Element) xPath.evaluate(nodeExpr, doc,
 					XPathConstants.NODE);
 			element.insertBefore(taskComment,
@@ -2573,7 +2577,7 @@ public class WindowsAzureRole {
 			Document definitionFiledoc, String nodeExpr)
 			throws XPathExpressionException {
 
-		XPath xPath = XPathFactory.newInstance().newXPath();
+		XPath xPath = ParserXMLUtility.getXPath();
 		Element element = (Element) xPath.evaluate(nodeExpr, definitionFiledoc,
 				XPathConstants.NODE);
 
@@ -2872,7 +2876,7 @@ public class WindowsAzureRole {
 		try {
 			Document packageFileDoc = getWinProjMgr().getPackageFileDoc();
 			if (packageFileDoc != null) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				String endPointExpr = null;
 				endPointExpr = String.format(attrName, this.getName());
 
@@ -2911,7 +2915,7 @@ public class WindowsAzureRole {
 		Document packageFileDoc = getWinProjMgr().getPackageFileDoc();
 		try {
 			if (packageFileDoc != null) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				String endPointExpr = null;
 				// Change in startup task
 				if (value.getEndPointType() == WindowsAzureEndpointType.Input) {
@@ -2948,7 +2952,7 @@ public class WindowsAzureRole {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			if (winCompList.isEmpty()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = winProjMgr.getPackageFileDoc();
 				String expr = String.format(WindowsAzureConstants.COMPONENT,
 						getName());
@@ -2981,7 +2985,7 @@ public class WindowsAzureRole {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			Document doc = getWinProjMgr().getPackageFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = String.format(WindowsAzureConstants.WA_PACK_NAME,
 					getName());
 			Element role = (Element) xPath.evaluate(expr, doc,
@@ -3039,7 +3043,7 @@ public class WindowsAzureRole {
 		}
 		String cmpntStr = String.format(WindowsAzureConstants.COMPONENT,
 				getName());
-		XPath xPath = XPathFactory.newInstance().newXPath();
+		XPath xPath = ParserXMLUtility.getXPath();
 		Document pacDoc = winProjMgr.getPackageFileDoc();
 		try {
 			NodeList cmpNodes = (NodeList) xPath.evaluate(cmpntStr, pacDoc,
@@ -3150,9 +3154,13 @@ public class WindowsAzureRole {
 	 */
 	public String getJDKSourcePath()
 			throws WindowsAzureInvalidProjectOperationException {
+		String key = getName() + "/jdk.deploy/importsrc";
+		if (winProjMgr.hasDerivedValue(key)) {
+			return (String) winProjMgr.getDerivedValue(key);
+		}
 		String sourcePath = null;
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = winProjMgr.getPackageFileDoc();
 			String expr = String.format(WindowsAzureConstants.COMPONENT_TYPE,
 					getName(), "jdk.deploy");
@@ -3172,7 +3180,7 @@ public class WindowsAzureRole {
 					"Exception while geting getJDKSourcePath", ex);
 		}
 
-		return sourcePath;
+		return winProjMgr.putDerivedValue(key, sourcePath);
 	}
 
 	/**
@@ -3188,7 +3196,7 @@ public class WindowsAzureRole {
 		String envVal = "";
 		try {
 			// parse template file and find componentset name
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document compDoc = ParserXMLUtility.parseXMLFile(templateFile
 					.getAbsolutePath());
 			String expr = String.format(
@@ -3238,7 +3246,7 @@ public class WindowsAzureRole {
 		String envVal = "";
 		try {
 			// parse template file and find componentset name
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document compDoc = ParserXMLUtility.parseXMLFile(templateFile
 					.getAbsolutePath());
 			String expr = String.format(WindowsAzureConstants.TEMP_SERVER_COMP,
@@ -3299,7 +3307,7 @@ public class WindowsAzureRole {
 				return;
 			}
 
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = winProjMgr.getPackageFileDoc();
 			String expr = String.format(WindowsAzureConstants.COMPONENT_TYPE,
 					getName(), "jdk.deploy");
@@ -3469,7 +3477,7 @@ public class WindowsAzureRole {
 			}
 
 			// parse component.xml and go the selected server
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document pacDoc = winProjMgr.getPackageFileDoc();
 			Document compDoc = ParserXMLUtility.parseXMLFile(templateFile
 					.getAbsolutePath());
@@ -3705,7 +3713,7 @@ public class WindowsAzureRole {
 			throws WindowsAzureInvalidProjectOperationException {
 		// find all components and env have type server...
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = winProjMgr.getPackageFileDoc();
 			if (type.equalsIgnoreCase("server.")) {
 				// remove server property
@@ -3792,10 +3800,14 @@ public class WindowsAzureRole {
 	 */
 	public String getServerSourcePath()
 			throws WindowsAzureInvalidProjectOperationException {
+		String key = getName() + "/server.deploy/importsrc";
+		if (winProjMgr.hasDerivedValue(key)) {
+			return (String) winProjMgr.getDerivedValue(key);
+		}
 		try {
 			String srcPath = null;
 
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = winProjMgr.getPackageFileDoc();
 			String expr = String.format(WindowsAzureConstants.SERVER_TYPE,
 					getName(), "server.deploy");
@@ -3809,7 +3821,7 @@ public class WindowsAzureRole {
 					srcPath = null;
 				}
 			}
-			return srcPath;
+			return winProjMgr.putDerivedValue(key, srcPath);
 		} catch (Exception e) {
 			throw new WindowsAzureInvalidProjectOperationException(
 					"Exception in getServerSourcePath", e);
@@ -3832,7 +3844,7 @@ public class WindowsAzureRole {
 			throw new IllegalArgumentException();
 		}
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = winProjMgr.getPackageFileDoc();
 			String expr = String.format(
 					WindowsAzureConstants.WA_PACK_SENV_TYPE, getName(),
@@ -3891,9 +3903,13 @@ public class WindowsAzureRole {
 	 */
 	public String getServerName()
 			throws WindowsAzureInvalidProjectOperationException {
+		String key = getName() + "/servername";
+		if (winProjMgr.hasDerivedValue(key)) {
+			return (String) winProjMgr.getDerivedValue(key);
+		}
 		try {
 			String srcPath = null;
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = winProjMgr.getPackageFileDoc();
 			String expr = String.format(WindowsAzureConstants.SERVER_PROP_PATH,
 					getName());
@@ -3903,7 +3919,7 @@ public class WindowsAzureRole {
 				srcPath = property
 						.getAttribute(WindowsAzureConstants.ATTR_VALUE);
 			}
-			return srcPath;
+			return winProjMgr.putDerivedValue(key, srcPath);
 		} catch (Exception e) {
 			throw new WindowsAzureInvalidProjectOperationException(
 					"Exception in getServerName", e);
@@ -3934,7 +3950,7 @@ public class WindowsAzureRole {
 		try {
 			List<WindowsAzureRoleComponent> comps = getComponents();
 			// find appropriate component node in template file
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document compDoc = ParserXMLUtility.parseXMLFile(templateFile
 					.getAbsolutePath());
 			String expr = String.format(WindowsAzureConstants.SERVER_APP,
@@ -4064,7 +4080,7 @@ public class WindowsAzureRole {
 			throw new IllegalArgumentException();
 		}
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = winProjMgr.getPackageFileDoc();
 			String expr = String.format(
 					WindowsAzureConstants.COMPONENT_TYPE_IMPORTAS, getName(),
@@ -4105,7 +4121,7 @@ public class WindowsAzureRole {
 		}
 
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = winProjMgr.getdefinitionFileDoc();
 
 			// Find Startup tag
@@ -4161,8 +4177,12 @@ public class WindowsAzureRole {
 			throw new IllegalArgumentException(
 					WindowsAzureConstants.INVALID_ARG);
 		}
+		String key = getName() + "/envtype/" + varName;
+		if (getWinProjMgr().hasDerivedValue(key)) {
+			return (String) getWinProjMgr().getDerivedValue(key);
+		}
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getPackageFileDoc();
 			String expr = String
 					.format(WindowsAzureConstants.WA_PACK_SENV_NAME, getName(),
@@ -4172,7 +4192,7 @@ public class WindowsAzureRole {
 			if (type.isEmpty()) {
 				type = null;
 			}
-			return type;
+			return getWinProjMgr().putDerivedValue(key, type);
 		} catch (Exception ex) {
 			throw new WindowsAzureInvalidProjectOperationException(
 					WindowsAzureConstants.EXCP, ex);
@@ -4194,7 +4214,7 @@ public class WindowsAzureRole {
 					WindowsAzureConstants.INVALID_ARG);
 		}
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = getWinProjMgr().getPackageFileDoc();
 			String expr = String.format(
 					WindowsAzureConstants.WA_PACK_SENV_TYPE, getName(), type)
@@ -4224,7 +4244,7 @@ public class WindowsAzureRole {
 		}
 		try {
 			Document doc = getWinProjMgr().getPackageFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			// check first the env is already present, if yes. edit the same
 			String env = String.format(WindowsAzureConstants.WA_PACK_SENV_NAME,
 					getName(), varName);
@@ -4288,7 +4308,7 @@ public class WindowsAzureRole {
 		Element ele = null;
 		try {
 			Document doc = getWinProjMgr().getConfigFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = String.format(
 					WindowsAzureConstants.CONFIG_SETTING_ROLE, getName(),
 					settingName);
@@ -4480,7 +4500,7 @@ public class WindowsAzureRole {
 		Element eleImport = null;
 		try {
 			Document doc = getWinProjMgr().getdefinitionFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			String expr = String.format(WindowsAzureConstants.IMPORT_NANE,
 					getName(), moduleName);
 			eleImport = (Element) xPath
@@ -4505,7 +4525,7 @@ public class WindowsAzureRole {
 		try {
 			if (isCachingEnable()) {
 				Document doc = getWinProjMgr().getConfigFileDoc();
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				String expr = String.format(
 						WindowsAzureConstants.CONFIG_SETTING_ROLE_VAL,
 						getName(), WindowsAzureConstants.SET_CACHESIZEPER);
@@ -4606,6 +4626,10 @@ public class WindowsAzureRole {
 	 */
 	public String getProperty(String property)
 			throws WindowsAzureInvalidProjectOperationException {
+		String key = getName() + "/property/" + property;
+		if (getWinProjMgr().hasDerivedValue(key)) {
+			return (String) getWinProjMgr().getDerivedValue(key);
+		}
 		String propVal = null;
 		try {
 			Document packageFileDoc = getWinProjMgr().getPackageFileDoc();
@@ -4613,14 +4637,14 @@ public class WindowsAzureRole {
 				String propName = String.format(property, getName());
 				String nodeExpr = String.format(
 						WindowsAzureConstants.ROLE_PROP_VAL, propName);
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				propVal = xPath.evaluate(nodeExpr, packageFileDoc);
 			}
 		} catch (Exception ex) {
 			throw new WindowsAzureInvalidProjectOperationException(
 					WindowsAzureConstants.EXCP, ex);
 		}
-		return propVal;
+		return getWinProjMgr().putDerivedValue(key, propVal);
 	}
 
 	/**
@@ -5026,13 +5050,17 @@ public class WindowsAzureRole {
 	 */
 	public String getServerCloudURL()
 			throws WindowsAzureInvalidProjectOperationException {
+		String key = getName() + "/server.deploy/cloudurl";
+		if (winProjMgr.hasDerivedValue(key)) {
+			return (String) winProjMgr.getDerivedValue(key);
+		}
 		try {
 			if (getServerSourcePath() == null) {
 				throw new WindowsAzureInvalidProjectOperationException(
 						"Server is not configured");
 			} else {
 				String url = null;
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = winProjMgr.getPackageFileDoc();
 				String expr = String.format(WindowsAzureConstants.SERVER_TYPE,
 						getName(), "server.deploy");
@@ -5041,7 +5069,7 @@ public class WindowsAzureRole {
 				if (node != null) {
 					url = node.getAttribute(WindowsAzureConstants.ATTR_CURL);
 				}
-				return url;
+				return winProjMgr.putDerivedValue(key, url);
 			}
 		} catch (Exception ex) {
 			throw new WindowsAzureInvalidProjectOperationException("", ex);
@@ -5098,7 +5126,7 @@ public class WindowsAzureRole {
 						"Server is not configured");
 			} else {
 				String key = null;
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = winProjMgr.getPackageFileDoc();
 				String expr = String.format(WindowsAzureConstants.SERVER_TYPE,
 						getName(), "server.deploy");
@@ -5161,7 +5189,7 @@ public class WindowsAzureRole {
 				throw new WindowsAzureInvalidProjectOperationException(
 						"Server is not configured");
 			} else {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = winProjMgr.getPackageFileDoc();
 				String expr = String.format(WindowsAzureConstants.SERVER_TYPE,
 						getName(), "server.deploy");
@@ -5226,13 +5254,17 @@ public class WindowsAzureRole {
 	 */
 	public String getJDKCloudURL()
 			throws WindowsAzureInvalidProjectOperationException {
+		String key = getName() + "/jdk.deploy/cloudurl";
+		if (winProjMgr.hasDerivedValue(key)) {
+			return (String) winProjMgr.getDerivedValue(key);
+		}
 		try {
 			if (getJDKSourcePath() == null) {
 				throw new WindowsAzureInvalidProjectOperationException(
 						"JDK is not configured");
 			} else {
 				String url = null;
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = winProjMgr.getPackageFileDoc();
 				String expr = String.format(WindowsAzureConstants.SERVER_TYPE,
 						getName(), "jdk.deploy");
@@ -5241,7 +5273,7 @@ public class WindowsAzureRole {
 				if (node != null) {
 					url = node.getAttribute(WindowsAzureConstants.ATTR_CURL);
 				}
-				return url;
+				return winProjMgr.putDerivedValue(key, url);
 			}
 		} catch (Exception ex) {
 			throw new WindowsAzureInvalidProjectOperationException("", ex);
@@ -5297,7 +5329,7 @@ public class WindowsAzureRole {
 						"Server is not configured");
 			} else {
 				String key = null;
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = winProjMgr.getPackageFileDoc();
 				String expr = String.format(WindowsAzureConstants.SERVER_TYPE,
 						getName(), "jdk.deploy");
@@ -5359,7 +5391,7 @@ public class WindowsAzureRole {
 				throw new WindowsAzureInvalidProjectOperationException(
 						"JDK is not configured");
 			} else {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = winProjMgr.getPackageFileDoc();
 				String expr = String.format(WindowsAzureConstants.SERVER_TYPE,
 						getName(), "jdk.deploy");
@@ -5476,7 +5508,7 @@ public class WindowsAzureRole {
 				throw new WindowsAzureInvalidProjectOperationException(
 						"JDK is not configured");
 			} else {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = winProjMgr.getPackageFileDoc();
 				String expr = String.format(
 						WindowsAzureConstants.WA_PACK_SENV_NAME, getName(),
@@ -5499,7 +5531,7 @@ public class WindowsAzureRole {
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
 			if (certMap.isEmpty()) {
-				XPath xPath = XPathFactory.newInstance().newXPath();
+				XPath xPath = ParserXMLUtility.getXPath();
 				Document doc = getWinProjMgr().getConfigFileDoc();
 				String expr = String.format(WindowsAzureConstants.CERT_LIST,
 						getName());
@@ -5547,7 +5579,7 @@ public class WindowsAzureRole {
 		try {
 			// add entry in cscfg
 			Document doc = getWinProjMgr().getConfigFileDoc();
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 
 			String expr1 = String.format(WindowsAzureConstants.ROLE_NAME,
 					getName());
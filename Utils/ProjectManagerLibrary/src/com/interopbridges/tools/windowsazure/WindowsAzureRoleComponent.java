@@ -17,7 +17,6 @@ package com.interopbridges.tools.windowsazure;
 
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -128,7 +127,7 @@ public class WindowsAzureRoleComponent {
 	private Element getComponentNode()
 			throws WindowsAzureInvalidProjectOperationException {
 		try {
-			XPath xPath = XPathFactory.newInstance().newXPath();
+			XPath xPath = ParserXMLUtility.getXPath();
 			Document doc = wProj.getPackageFileDoc();
 			String expr = "";
 			Element component = null;